@@ -0,0 +1,121 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.algos3d.Remesh;
+import org.jcae.mesh.amibe.algos3d.SmoothNodes3DBg;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.projection.MeshLiaison;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks mesh algorithms.  A new mesh is created before each
+ * invocation because algorithms modify it, so these benchmarks run
+ * in single shot mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlgorithmBenchmark
+{
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int triangles;
+
+	/**
+	 * Number of threads used by algorithms.  This is a separate state
+	 * so that other benchmarks are not run once per thread count.
+	 */
+	@State(Scope.Thread)
+	public static class Threads
+	{
+		@Param({"1", "4"})
+		public int threads;
+	}
+
+	private Mesh mesh;
+
+	@Setup(org.openjdk.jmh.annotations.Level.Trial)
+	public void disableLogs()
+	{
+		// Algorithms are verbose, this would alter timings
+		Logger.getLogger("org.jcae.mesh").setLevel(Level.WARNING);
+	}
+
+	@Setup(org.openjdk.jmh.annotations.Level.Invocation)
+	public void createMesh()
+	{
+		mesh = MeshGenerator.createTorus(triangles, true);
+	}
+
+	/**
+	 * Removes 3 triangles out of 4.
+	 */
+	@Benchmark
+	public Mesh qemDecimate(Threads t)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", Integer.toString(triangles / 4));
+		options.put("threads", Integer.toString(t.threads));
+		new QEMDecimateHalfEdge(mesh, options).compute();
+		return mesh;
+	}
+
+	/**
+	 * Remeshes with a slightly smaller edge length, so that most vertices
+	 * are inserted or moved.
+	 */
+	@Benchmark
+	public Mesh remesh(Threads t)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("size", Double.toString(0.8 * MeshGenerator.edgeLength(triangles)));
+		options.put("threads", Integer.toString(t.threads));
+		return new Remesh(MeshLiaison.create(mesh), options).compute().getOutputMesh();
+	}
+
+	@Benchmark
+	public Mesh smoothNodes3DBg(Threads t)
+	{
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "5");
+		options.put("relaxation", "0.6");
+		options.put("threads", Integer.toString(t.threads));
+		return new SmoothNodes3DBg(MeshLiaison.create(mesh), options).compute().getOutputMesh();
+	}
+}
@@ -0,0 +1,201 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates meshes used by benchmarks.  Meshes are regular triangulations
+ * of a torus with major radius 3 and minor radius 1, so that they are
+ * closed manifold surfaces with any number of triangles, and contain no
+ * degenerated triangles.  Vertices can be moved randomly within the torus
+ * surface to give some work to smoothers and decimators.
+ */
+public final class MeshGenerator
+{
+	static final double MAJOR_RADIUS = 3.0;
+	static final double MINOR_RADIUS = 1.0;
+
+	private MeshGenerator()
+	{
+	}
+
+	/**
+	 * Returns the number of vertices along the minor circle so that
+	 * the torus has approximately <code>triangles</code> triangles.
+	 * There are 3 times more vertices along the major circle.
+	 */
+	private static int minorSubdivisions(int triangles)
+	{
+		return Math.max(3, (int) Math.round(Math.sqrt(triangles / 6.0)));
+	}
+
+	/**
+	 * Returns the approximate edge length of a generated torus.
+	 *
+	 * @param triangles  number of triangles
+	 * @return edge length
+	 */
+	public static double edgeLength(int triangles)
+	{
+		return 2.0 * Math.PI * MINOR_RADIUS / minorSubdivisions(triangles);
+	}
+
+	/**
+	 * Returns mesh traits used by benchmarks: default 3D traits with
+	 * a node list.
+	 *
+	 * @return mesh traits
+	 */
+	public static MeshTraitsBuilder getTraits()
+	{
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeList();
+		return mtb;
+	}
+
+	/**
+	 * Creates a torus.  Adjacency relations are computed.
+	 *
+	 * @param triangles  approximate number of triangles
+	 * @param jitter  if <code>true</code>, vertices are randomly moved
+	 * @return mesh
+	 */
+	public static Mesh createTorus(int triangles, boolean jitter)
+	{
+		Mesh mesh = createTorusSoup(triangles, jitter);
+		mesh.buildAdjacency();
+		return mesh;
+	}
+
+	/**
+	 * Creates a torus without adjacency relations.
+	 *
+	 * @param triangles  approximate number of triangles
+	 * @param jitter  if <code>true</code>, vertices are randomly moved
+	 * @return mesh
+	 */
+	public static Mesh createTorusSoup(int triangles, boolean jitter)
+	{
+		int nv = minorSubdivisions(triangles);
+		int nu = 3 * nv;
+		Mesh mesh = new Mesh(getTraits());
+		Random rand = new Random(0x5eedL);
+		Vertex [] v = new Vertex[nu * nv];
+		for (int i = 0; i < nu; i++)
+		{
+			for (int j = 0; j < nv; j++)
+			{
+				double u = i;
+				double w = j;
+				if (jitter)
+				{
+					u += 0.3 * (rand.nextDouble() - 0.5);
+					w += 0.3 * (rand.nextDouble() - 0.5);
+				}
+				u *= 2.0 * Math.PI / nu;
+				w *= 2.0 * Math.PI / nv;
+				double r = MAJOR_RADIUS + MINOR_RADIUS * Math.cos(w);
+				v[i * nv + j] = mesh.createVertex(r * Math.cos(u), r * Math.sin(u), MINOR_RADIUS * Math.sin(w));
+				v[i * nv + j].setLabel(i * nv + j + 1);
+				mesh.add(v[i * nv + j]);
+			}
+		}
+		for (int i = 0; i < nu; i++)
+		{
+			int i1 = (i + 1) % nu;
+			for (int j = 0; j < nv; j++)
+			{
+				int j1 = (j + 1) % nv;
+				Triangle t1 = mesh.createTriangle(v[i * nv + j], v[i1 * nv + j], v[i * nv + j1]);
+				Triangle t2 = mesh.createTriangle(v[i1 * nv + j], v[i1 * nv + j1], v[i * nv + j1]);
+				t1.setGroupId(1);
+				t2.setGroupId(1);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+		return mesh;
+	}
+
+	/**
+	 * Creates random points close to a torus.
+	 *
+	 * @param n  number of points
+	 * @param seed  random seed
+	 * @return random points
+	 */
+	public static Location [] randomPoints(int n, long seed)
+	{
+		Random rand = new Random(seed);
+		Location [] ret = new Location[n];
+		for (int k = 0; k < n; k++)
+		{
+			double u = 2.0 * Math.PI * rand.nextDouble();
+			double w = 2.0 * Math.PI * rand.nextDouble();
+			double r = MAJOR_RADIUS + MINOR_RADIUS * (1.0 + 0.2 * (rand.nextDouble() - 0.5)) * Math.cos(w);
+			ret[k] = new Location(r * Math.cos(u), r * Math.sin(u), MINOR_RADIUS * Math.sin(w));
+		}
+		return ret;
+	}
+
+	/**
+	 * Creates an empty temporary directory.
+	 *
+	 * @param prefix  directory prefix
+	 * @return a new directory
+	 * @throws IOException if directory cannot be created
+	 */
+	public static File createTempDir(String prefix) throws IOException
+	{
+		File ret = File.createTempFile(prefix, ".dir");
+		if (!ret.delete() || !ret.mkdir())
+			throw new IOException("Cannot create directory "+ret);
+		return ret;
+	}
+
+	/**
+	 * Removes a directory and its content.
+	 *
+	 * @param dir  directory
+	 */
+	public static void deleteDir(File dir)
+	{
+		File [] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+			{
+				if (f.isDirectory())
+					deleteDir(f);
+				else
+					f.delete();
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,107 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.xmldata.AmibeReader;
+import org.jcae.mesh.xmldata.DoubleFileReader;
+import org.jcae.mesh.xmldata.IntFileReader;
+import org.jcae.mesh.xmldata.MeshReader;
+import org.jcae.mesh.xmldata.MeshWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+/**
+ * Benchmarks reading Amibe files.  A mesh is written once per trial
+ * into a temporary directory, which is removed at the end of the trial.
+ * Files are likely to be in the system cache, so these benchmarks mostly
+ * measure parsing and mesh creation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ReaderBenchmark
+{
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int triangles;
+
+	private File dir;
+
+	@Setup(Level.Trial)
+	public void writeMesh() throws IOException
+	{
+		Logger.getLogger("org.jcae.mesh").setLevel(java.util.logging.Level.WARNING);
+		dir = MeshGenerator.createTempDir("amibe-bench");
+		Mesh mesh = MeshGenerator.createTorus(triangles, false);
+		MeshWriter.writeObject3D(mesh, dir.getPath(), null);
+	}
+
+	@TearDown(Level.Trial)
+	public void removeMesh()
+	{
+		MeshGenerator.deleteDir(dir);
+	}
+
+	@Benchmark
+	public Mesh meshReader() throws IOException
+	{
+		Mesh mesh = new Mesh(MeshGenerator.getTraits());
+		MeshReader.readObject3D(mesh, dir.getPath());
+		return mesh;
+	}
+
+	/**
+	 * Reads raw arrays of nodes and triangles.
+	 */
+	@Benchmark
+	public double amibeReader() throws IOException, SAXException
+	{
+		AmibeReader.Dim3 reader = new AmibeReader.Dim3(dir.getPath());
+		AmibeReader.SubMesh sm = reader.getSubmeshes().get(0);
+		DoubleFileReader nodes = sm.getNodes();
+		double [] xyz = new double[(int) nodes.size()];
+		nodes.get(xyz);
+		nodes.close();
+		IntFileReader trias = sm.getTriangles();
+		int [] ids = new int[(int) trias.size()];
+		trias.get(ids);
+		trias.close();
+		return xyz[xyz.length - 1] + ids[ids.length - 1];
+	}
+}
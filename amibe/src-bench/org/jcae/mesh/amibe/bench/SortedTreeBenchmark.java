@@ -0,0 +1,97 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.ds.HalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.util.IndexedDAryHeap;
+import org.jcae.mesh.amibe.util.QSortedTree;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link QSortedTree} implementations on a real workload.
+ * Operations performed on the priority queue during a QEM decimation
+ * are recorded once per trial, and replayed on each implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortedTreeBenchmark
+{
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int triangles;
+
+	@Param({"PAVLSortedTree", "PRedBlackSortedTree", "IndexedDAryHeap"})
+	public String implementation;
+
+	private SortedTreeTrace trace;
+	private Object [] objects;
+
+	@Setup(Level.Trial)
+	public void recordTrace() throws Exception
+	{
+		Logger.getLogger("org.jcae.mesh").setLevel(java.util.logging.Level.WARNING);
+		Mesh mesh = MeshGenerator.createTorus(triangles, true);
+		Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", Integer.toString(triangles / 4));
+		QEMDecimateHalfEdge algo = new QEMDecimateHalfEdge(mesh, options);
+		trace = new SortedTreeTrace();
+		// The priority queue is private, there is no need to expose it
+		// in the API only for benchmarks.
+		Field f = AbstractAlgoHalfEdge.class.getDeclaredField("tree");
+		f.setAccessible(true);
+		f.set(algo, new SortedTreeTrace.Recorder<HalfEdge>(new IndexedDAryHeap<HalfEdge>(), trace));
+		algo.compute();
+		objects = trace.createObjects();
+	}
+
+	@SuppressWarnings("unchecked")
+	private QSortedTree<Object> newTree() throws Exception
+	{
+		return (QSortedTree<Object>) Class.forName("org.jcae.mesh.amibe.util."+implementation).newInstance();
+	}
+
+	@Benchmark
+	public long replay() throws Exception
+	{
+		return trace.replay(newTree(), objects);
+	}
+}
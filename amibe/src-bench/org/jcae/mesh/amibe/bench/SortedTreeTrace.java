@@ -0,0 +1,295 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.util.QSortedTree;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sequence of operations performed on a {@link QSortedTree}.  A trace is
+ * recorded by wrapping the tree used by an algorithm into a {@link Recorder}
+ * instance, and can then be replayed on other {@link QSortedTree}
+ * implementations.  Objects are replaced by anonymous objects during replay,
+ * so that hashing costs are similar.
+ *
+ * <p>
+ * All implementations must return nodes in the same order, otherwise
+ * the replayed sequence would not make sense; this is the case for
+ * implementations in <code>org.jcae.mesh.amibe.util</code>.
+ * </p>
+ */
+public final class SortedTreeTrace
+{
+	private static final int INSERT = 0;
+	private static final int REMOVE = 1;
+	private static final int UPDATE = 2;
+	private static final int CONTAINS = 3;
+	private static final int ITERATOR = 4;
+	private static final int HAS_NEXT = 5;
+	private static final int NEXT = 6;
+	private static final int IS_EMPTY = 7;
+	private static final int CLEAR = 8;
+	private static final int BEGIN_BULK_LOAD = 9;
+	private static final int END_BULK_LOAD = 10;
+
+	// Operation codes
+	private final TIntArrayList ops = new TIntArrayList();
+	// Object or iterator index for each operation
+	private final TIntArrayList args = new TIntArrayList();
+	// Values of INSERT and UPDATE operations
+	private final TDoubleArrayList values = new TDoubleArrayList();
+	private int nrObjects;
+	private int nrIterators;
+
+	/**
+	 * Returns the number of recorded operations.
+	 *
+	 * @return the number of recorded operations
+	 */
+	public int size()
+	{
+		return ops.size();
+	}
+
+	/**
+	 * Creates objects to be passed to {@link #replay}.
+	 *
+	 * @return an array of distinct objects
+	 */
+	public Object [] createObjects()
+	{
+		Object [] ret = new Object[nrObjects];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = new Object();
+		return ret;
+	}
+
+	/**
+	 * Replays this trace.
+	 *
+	 * @param tree  an empty tree
+	 * @param objects  objects returned by {@link #createObjects}
+	 * @return a value depending on results, to prevent dead code elimination
+	 */
+	public long replay(QSortedTree<Object> tree, Object [] objects)
+	{
+		List<Iterator<QSortedTree.Node<Object>>> iterators = new ArrayList<Iterator<QSortedTree.Node<Object>>>(nrIterators);
+		long ret = 0L;
+		int nextValue = 0;
+		int n = ops.size();
+		for (int i = 0; i < n; i++)
+		{
+			int arg = args.getQuick(i);
+			switch (ops.getQuick(i))
+			{
+				case INSERT:
+					tree.insert(objects[arg], values.getQuick(nextValue++));
+					break;
+				case REMOVE:
+					if (tree.remove(objects[arg]))
+						ret++;
+					break;
+				case UPDATE:
+					if (tree.update(objects[arg], values.getQuick(nextValue++)))
+						ret++;
+					break;
+				case CONTAINS:
+					if (tree.contains(objects[arg]))
+						ret++;
+					break;
+				case ITERATOR:
+					iterators.add(tree.iterator());
+					break;
+				case HAS_NEXT:
+					if (iterators.get(arg).hasNext())
+						ret++;
+					break;
+				case NEXT:
+					ret += iterators.get(arg).next().getData().hashCode();
+					break;
+				case IS_EMPTY:
+					if (tree.isEmpty())
+						ret++;
+					break;
+				case CLEAR:
+					tree.clear();
+					break;
+				case BEGIN_BULK_LOAD:
+					tree.beginBulkLoad();
+					break;
+				case END_BULK_LOAD:
+					tree.endBulkLoad();
+					break;
+				default:
+					throw new IllegalStateException();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Tree recording operations into a trace and forwarding them to
+	 * another tree.
+	 */
+	public static final class Recorder<E> extends QSortedTree<E>
+	{
+		private static final long serialVersionUID = 1L;
+		private final transient QSortedTree<E> delegate;
+		private final transient SortedTreeTrace trace;
+		private final transient IdentityHashMap<Object, Integer> ids = new IdentityHashMap<Object, Integer>();
+
+		/**
+		 * Creates a recorder.
+		 *
+		 * @param delegate  tree which performs operations
+		 * @param trace  trace in which operations are recorded
+		 */
+		public Recorder(QSortedTree<E> delegate, SortedTreeTrace trace)
+		{
+			this.delegate = delegate;
+			this.trace = trace;
+		}
+
+		private void record(int op, int arg)
+		{
+			trace.ops.add(op);
+			trace.args.add(arg);
+		}
+
+		private int id(E o)
+		{
+			Integer ret = ids.get(o);
+			if (ret == null)
+			{
+				ret = Integer.valueOf(trace.nrObjects);
+				trace.nrObjects++;
+				ids.put(o, ret);
+			}
+			return ret.intValue();
+		}
+
+		@Override
+		public boolean isEmpty()
+		{
+			record(IS_EMPTY, 0);
+			return delegate.isEmpty();
+		}
+
+		@Override
+		public void insert(E o, double value)
+		{
+			record(INSERT, id(o));
+			trace.values.add(value);
+			delegate.insert(o, value);
+		}
+
+		@Override
+		public boolean remove(E o)
+		{
+			record(REMOVE, id(o));
+			return delegate.remove(o);
+		}
+
+		@Override
+		public boolean update(E o, double value)
+		{
+			record(UPDATE, id(o));
+			trace.values.add(value);
+			return delegate.update(o, value);
+		}
+
+		@Override
+		public void clear()
+		{
+			record(CLEAR, 0);
+			delegate.clear();
+		}
+
+		@Override
+		public boolean contains(E o)
+		{
+			record(CONTAINS, id(o));
+			return delegate.contains(o);
+		}
+
+		@Override
+		public int size()
+		{
+			return delegate.size();
+		}
+
+		@Override
+		public double getRootValue()
+		{
+			return delegate.getRootValue();
+		}
+
+		@Override
+		public Iterator<QSortedTree.Node<E>> iterator()
+		{
+			final int index = trace.nrIterators;
+			trace.nrIterators++;
+			record(ITERATOR, index);
+			final Iterator<QSortedTree.Node<E>> it = delegate.iterator();
+			return new Iterator<QSortedTree.Node<E>>()
+			{
+				public boolean hasNext()
+				{
+					record(HAS_NEXT, index);
+					return it.hasNext();
+				}
+				public QSortedTree.Node<E> next()
+				{
+					record(NEXT, index);
+					return it.next();
+				}
+				public void remove()
+				{
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public Iterator<QSortedTree.Node<E>> backwardIterator()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void beginBulkLoad()
+		{
+			record(BEGIN_BULK_LOAD, 0);
+			delegate.beginBulkLoad();
+		}
+
+		@Override
+		public void endBulkLoad()
+		{
+			record(END_BULK_LOAD, 0);
+			delegate.endBulkLoad();
+		}
+	}
+}
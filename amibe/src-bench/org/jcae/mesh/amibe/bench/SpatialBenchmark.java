@@ -0,0 +1,148 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.bench;
+
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.EuclidianMetric3D;
+import org.jcae.mesh.amibe.metrics.KdTree;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Metric;
+import org.jcae.mesh.amibe.metrics.StaticKdTree;
+import org.jcae.mesh.amibe.projection.TriangleKdTree;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks spatial queries: nearest vertex lookups in {@link KdTree}
+ * and {@link StaticKdTree}, and closest triangle lookups in
+ * {@link TriangleKdTree}.  Trees are
+ * built once per trial, timings are given per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialBenchmark
+{
+	private static final int QUERIES = 4096;
+
+	@Param({"10000", "100000", "1000000", "10000000"})
+	public int triangles;
+
+	private final Metric metric = new EuclidianMetric3D();
+	private KdTree<Vertex> kdTree;
+	private StaticKdTree<Vertex> staticKdTree;
+	private TriangleKdTree triangleKdTree;
+	private Vertex [] vertexQueries;
+	private Location [] queries;
+	private final Location projection = new Location();
+
+	@Setup(Level.Trial)
+	public void createTrees()
+	{
+		Mesh mesh = MeshGenerator.createTorus(triangles, true);
+		double [] bbox = new double[6];
+		for (int i = 0; i < 3; i++)
+		{
+			bbox[i] = Double.MAX_VALUE;
+			bbox[i+3] = - Double.MAX_VALUE;
+		}
+		double [] xyz = new double[3];
+		for (Vertex v : mesh.getNodes())
+		{
+			v.get(xyz);
+			for (int i = 0; i < 3; i++)
+			{
+				bbox[i] = Math.min(bbox[i], xyz[i]);
+				bbox[i+3] = Math.max(bbox[i+3], xyz[i]);
+			}
+		}
+		kdTree = new KdTree<Vertex>(bbox);
+		for (Vertex v : mesh.getNodes())
+			kdTree.add(v);
+		staticKdTree = new StaticKdTree<Vertex>(mesh.getNodes());
+		triangleKdTree = new TriangleKdTree(mesh);
+
+		queries = MeshGenerator.randomPoints(QUERIES, 42L);
+		vertexQueries = new Vertex[QUERIES];
+		for (int i = 0; i < QUERIES; i++)
+			vertexQueries[i] = mesh.createVertex(queries[i].getX(), queries[i].getY(), queries[i].getZ());
+	}
+
+	@TearDown(Level.Trial)
+	public void release()
+	{
+		kdTree = null;
+		staticKdTree = null;
+		triangleKdTree = null;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void kdTreeNearestVertex(Blackhole bh)
+	{
+		for (Vertex v : vertexQueries)
+			bh.consume(kdTree.getNearestVertex(metric, v));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void staticKdTreeNearestVertex(Blackhole bh)
+	{
+		for (Vertex v : vertexQueries)
+			bh.consume(staticKdTree.getNearestVertex(metric, v));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public int [] staticKdTreeBatchNearest()
+	{
+		return staticKdTree.getNearestVertices(queries, 1, null);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public void triangleKdTreeClosestTriangle(Blackhole bh)
+	{
+		for (Location l : queries)
+		{
+			Triangle t = triangleKdTree.getClosestTriangle(l, projection, -1);
+			bh.consume(t);
+		}
+	}
+}
@@ -54,6 +54,17 @@ public class OCCGeomCurve3D implements CADGeomCurve3D
 		return myCurve.value((float) p);
 	}
 	
+	public void arrayValues(int n, double [] p, double [] xyz)
+	{
+		assert myCurve != null;
+		// Parameters are stored into xyz, and Adaptor3d_Curve.arrayValues
+		// replaces them by point coordinates.  They are converted to
+		// float to give the same results as value().
+		for (int i = 0; i < n; i++)
+			xyz[3*i] = (float) p[i];
+		myCurve.arrayValues(n, xyz);
+	}
+	
 	public double [] getRange()
 	{
 		return range;
@@ -26,6 +26,11 @@ import org.jcae.opencascade.jni.GeomAPI_ProjectPointOnSurf;
 
 public class OCCGeomSurface implements CADGeomSurface
 {
+	// Flags and placeholder for GeomLProp_SLProps.arrayProperties
+	private static final int D1U = 1;
+	private static final int D1V = 2;
+	private static final int NORMAL = 4;
+	private static final double [] EMPTY = new double[0];
 	private Geom_Surface mySurface = null;
 	private GeomLProp_SLProps myLprop = null;
 	
@@ -48,6 +53,27 @@ public class OCCGeomSurface implements CADGeomSurface
 		return mySurface.value(u, v);
 	}
 	
+	public void arrayValues(int n, double [] uv, double [] xyz,
+		double [] d1U, double [] d1V, double [] normal)
+	{
+		if (xyz != null)
+			mySurface.arrayValues(n, uv, xyz);
+		int what = 0;
+		if (d1U != null)
+			what |= D1U;
+		if (d1V != null)
+			what |= D1V;
+		if (normal != null)
+			what |= NORMAL;
+		if (what == 0)
+			return;
+		assert null != myLprop;
+		myLprop.arrayProperties(n, uv, what,
+			d1U == null ? EMPTY : d1U,
+			d1V == null ? EMPTY : d1V,
+			normal == null ? EMPTY : normal);
+	}
+	
 	public void dinit(int degree)
 	{
 		myLprop = new GeomLProp_SLProps(degree, 0.0001);
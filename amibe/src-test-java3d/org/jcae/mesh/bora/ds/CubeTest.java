@@ -23,7 +23,9 @@ import org.jcae.mesh.cad.CADShapeEnum;
 import org.jcae.mesh.amibe.ds.SubMesh1D;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -33,10 +35,98 @@ public class CubeTest
 	private static final String dir = System.getProperty("test.dir", "test")+File.separator+"input";
 
 	@Test public void cube()
+	{
+		cube(1);
+	}
+
+	@Test public void cubeParallel()
+	{
+		cube(4);
+	}
+
+	@Test public void cubeIncremental()
+	{
+		cubeIncremental(1);
+	}
+
+	@Test public void cubeIncrementalParallel()
+	{
+		cubeIncremental(4);
+	}
+
+	private static int countDiscretizations(BCADGraphCell root, CADShapeEnum type)
+	{
+		// Both orientations of a shape share their discretizations
+		Set<BDiscretization> seen = new HashSet<BDiscretization>();
+		for (Iterator<BCADGraphCell> its = root.shapesExplorer(type); its.hasNext(); )
+			seen.addAll(its.next().getDiscretizations());
+		return seen.size();
+	}
+
+	private void cubeIncremental(int threads)
+	{
+		String file = dir+File.separator+"cube.brep";
+
+		BModel model = new BModel(file, "outCache"+threads);
+		model.cleanWorkDirectory();
+		model.setCache(true);
+		model.setThreads(threads);
+		BCADGraphCell root = model.getGraph().getRootCell();
+		BSubMesh submesh = model.newMesh();
+		Constraint [] cons = new Constraint[6];
+		double l = 2.0;
+		int i = 0;
+		for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.FACE); its.hasNext(); )
+		{
+			Hypothesis h = new Hypothesis();
+			h.setElement("T3");
+			h.setLength(l);
+			cons[i] = new Constraint(its.next(), h);
+			submesh.add(cons[i]);
+			i++;
+			l *= 0.5;
+		}
+		// Cache is empty, each discretization is counted once even if
+		// its edge is visited with both orientations
+		model.compute();
+		assertEquals(0, model.getCacheHits());
+		int nrEdgeDisc = countDiscretizations(root, CADShapeEnum.EDGE);
+		int nrFaceDisc = countDiscretizations(root, CADShapeEnum.FACE);
+		assertEquals(12, nrEdgeDisc);
+		assertEquals(6, nrFaceDisc);
+
+		// Nothing changed, all edges and faces are read from cache
+		model.resetConstraints();
+		model.compute();
+		assertEquals(nrEdgeDisc + nrFaceDisc, model.getCacheHits());
+
+		// Edges of f0 are constrained by smaller lengths on adjacent
+		// faces, only f0 is computed again
+		model.resetConstraints();
+		submesh.remove(cons[0]);
+		Hypothesis h = new Hypothesis();
+		h.setElement("T3");
+		h.setLength(1.0);
+		submesh.add(new Constraint(cons[0].getGraphCell(), h));
+		model.compute();
+		assertEquals(nrEdgeDisc + nrFaceDisc - 1, model.getCacheHits());
+
+		int nrEdges = 0;
+		for (Iterator<BCADGraphCell> its = root.shapesExplorer(CADShapeEnum.EDGE); its.hasNext(); )
+		{
+			SubMesh1D mesh1d = (SubMesh1D) its.next().getDiscretizations().iterator().next().getMesh();
+			assertNotNull(mesh1d);
+			nrEdges += mesh1d.getEdges().size();
+		}
+		assertTrue(nrEdges > 0);
+	}
+
+	private void cube(int threads)
 	{
 		String file = dir+File.separator+"cube.brep";
 
 		BModel model = new BModel(file, "out");
+		model.setThreads(threads);
 		BCADGraphCell root = model.getGraph().getRootCell();
 		BSubMesh submesh = model.newMesh();
 
@@ -0,0 +1,177 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.algos1d;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.jcae.mesh.amibe.ds.MMesh1D;
+import org.jcae.mesh.cad.CADShapeFactory;
+import org.jcae.mesh.xmldata.MMesh1DWriter;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that 1D algorithms give the same mesh with 1 and several threads.
+ * These tests need occjava and are skipped when it is not available.
+ */
+public class EdgeWorkersTest
+{
+	private static final String OCC_FACTORY = "org.jcae.mesh.cad.occ.OCCShapeFactory";
+	private static final String dir = System.getProperty("test.dir", "test");
+
+	private static String getGeometryFile(String type)
+	{
+		return dir + File.separator + "input" + File.separator + type +".brep";
+	}
+
+	@BeforeClass public static void checkOCC()
+	{
+		boolean available;
+		try
+		{
+			Class.forName(OCC_FACTORY);
+			CADShapeFactory factory = CADShapeFactory.getFactory();
+			available = factory.getClass().getName().equals(OCC_FACTORY);
+			// Native library is loaded when the first shape is created
+			if (available)
+				factory.newShape(getGeometryFile("cube"));
+		}
+		catch (ClassNotFoundException ex)
+		{
+			available = false;
+		}
+		catch (LinkageError ex)
+		{
+			available = false;
+		}
+		Assume.assumeTrue(available);
+	}
+
+	private static byte [] readFile(File f) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			byte [] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				out.write(buffer, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static void readDirectory(File d, String prefix, Map<String, byte []> files)
+		throws IOException
+	{
+		for (File f : d.listFiles())
+		{
+			if (f.isDirectory())
+				readDirectory(f, prefix + f.getName() + "/", files);
+			else
+				files.put(prefix + f.getName(), readFile(f));
+		}
+	}
+
+	private static void delete(File f)
+	{
+		if (f.isDirectory())
+		{
+			for (File c : f.listFiles())
+				delete(c);
+		}
+		f.delete();
+	}
+
+	/**
+	 * Computes 1D mesh of a geometry, and returns the content of files
+	 * written by MMesh1DWriter.
+	 */
+	private static Map<String, byte []> mesh1D(String type, double size,
+		double deflection, int threads) throws IOException
+	{
+		String brepFile = getGeometryFile(type);
+		MMesh1D mesh1D = new MMesh1D(brepFile);
+		HashMap<String, String> options1d = new HashMap<String, String>();
+		options1d.put("size", ""+size);
+		options1d.put("threads", ""+threads);
+		if (deflection <= 0.0)
+			new UniformLength(mesh1D, options1d).compute();
+		else
+		{
+			options1d.put("deflection", ""+deflection);
+			new UniformLengthDeflection(mesh1D, options1d).compute();
+			new Compat1D2D(mesh1D, options1d).compute();
+		}
+		File outputDir = File.createTempFile("amibe1d", "");
+		outputDir.delete();
+		outputDir.mkdirs();
+		try
+		{
+			MMesh1DWriter.writeObject(mesh1D, outputDir.getPath(), brepFile);
+			Map<String, byte []> files = new TreeMap<String, byte []>();
+			readDirectory(outputDir, "", files);
+			return files;
+		}
+		finally
+		{
+			delete(outputDir);
+		}
+	}
+
+	private static void checkThreads(String type, double size, double deflection)
+		throws IOException
+	{
+		Map<String, byte []> expected = mesh1D(type, size, deflection, 1);
+		assertFalse(expected.isEmpty());
+		for (int threads : new int[] { 2, 4 })
+		{
+			Map<String, byte []> files = mesh1D(type, size, deflection, threads);
+			assertEquals(expected.keySet(), files.keySet());
+			for (Map.Entry<String, byte []> e : expected.entrySet())
+				assertArrayEquals(type+" "+e.getKey()+" threads="+threads,
+					e.getValue(), files.get(e.getKey()));
+		}
+	}
+
+	@Test public void uniformLength() throws IOException
+	{
+		checkThreads("2cubes", 0.05, 0.0);
+		checkThreads("torus", 0.05, 0.0);
+	}
+
+	@Test public void uniformLengthDeflection() throws IOException
+	{
+		checkThreads("cylinder", 0.05, 0.01);
+		checkThreads("shell_hole", 0.1, 0.05);
+	}
+}
@@ -110,9 +110,15 @@ public class QEMDecimateHalfEdgeTest
 	}
 	
 	private void testShell(int m, int n)
+	{
+		testShell(m, n, 1);
+	}
+
+	private void testShell(int m, int n, int threads)
 	{
 		final Map<String, String> options = new HashMap<String, String>();
 		options.put("size", "0.1");
+		options.put("threads", ""+threads);
 		mesh = new Mesh();
 		createMxNShell(m, n);
 		mesh.buildAdjacency();
@@ -126,9 +132,15 @@ public class QEMDecimateHalfEdgeTest
 	}
 
 	private void testCross(int m, int n)
+	{
+		testCross(m, n, 1);
+	}
+
+	private void testCross(int m, int n, int threads)
 	{
 		final Map<String, String> options = new HashMap<String, String>();
 		options.put("size", "0.1");
+		options.put("threads", ""+threads);
 		mesh = new Mesh();
 		createMxNShell(m, n);
 		rotateMxNShellAroundY(m, n, 90);
@@ -272,6 +284,82 @@ public class QEMDecimateHalfEdgeTest
 		testShell(30, 30);
 	}
 
+	@Test public void testShellLargeParallel()
+	{
+		testShell(30, 30, 4);
+	}
+
+	@Test public void testShellNMLargeParallel()
+	{
+		testCross(10, 10, 4);
+	}
+
+	private int decimateSphere(int threads)
+	{
+		return decimateSphere(threads, 0.5);
+	}
+
+	private int decimateSphere(int threads, double batchTolerance)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("maxtriangles", "200");
+		options.put("threads", ""+threads);
+		options.put("batchTolerance", ""+batchTolerance);
+		mesh = SphereBuilder.createShuffledSphereMesh(3);
+		assertTrue("Mesh is not valid", mesh.isValid());
+		new QEMDecimateHalfEdge(mesh, options).compute();
+		assertTrue("Mesh is not valid", mesh.isValid());
+		return AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+	}
+
+	@Test public void testSphereParallel()
+	{
+		int sequential = decimateSphere(1);
+		int parallel = decimateSphere(4);
+		assertTrue("Final number of triangles: "+sequential, Math.abs(sequential - 200) <= 2);
+		assertTrue("Final number of triangles: "+parallel, Math.abs(parallel - sequential) <= 2);
+	}
+
+	// Distance between triangle centroids and the unit sphere
+	private double sphereDeviation()
+	{
+		double ret = 0.0;
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (!t.isWritable())
+				continue;
+			double x = 0.0, y = 0.0, z = 0.0;
+			for (int i = 0; i < 3; i++)
+			{
+				Vertex p = t.getV(i);
+				x += p.getX();
+				y += p.getY();
+				z += p.getZ();
+			}
+			double d = 1.0 - Math.sqrt(x*x + y*y + z*z) / 3.0;
+			ret = Math.max(ret, Math.abs(d));
+		}
+		return ret;
+	}
+
+	// Batches only contain edges whose cost is lower than
+	// (1 + batchTolerance) times the lowest cost, geometric error
+	// must not grow more than that.
+	@Test public void testSphereParallelError()
+	{
+		decimateSphere(1, 0.0);
+		double sequential = sphereDeviation();
+		decimateSphere(4, 0.0);
+		assertEquals(sequential, sphereDeviation(), 1.e-12);
+		for (double batchTolerance : new double[] { 0.5, 1.0 })
+		{
+			decimateSphere(4, batchTolerance);
+			double parallel = sphereDeviation();
+			assertTrue("Deviation: "+parallel+" > "+sequential,
+				parallel <= (1.0 + batchTolerance) * sequential);
+		}
+	}
+
 	@Test public void testShellNM1()
 	{
 		testCross(3, 2);
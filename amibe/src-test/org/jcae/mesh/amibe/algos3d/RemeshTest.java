@@ -29,6 +29,9 @@ import org.jcae.mesh.xmldata.MeshReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.logging.Level;
@@ -192,4 +195,65 @@ public class RemeshTest
 		assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
 	}
 
+	private static List<String> getTriangles(Mesh mesh)
+	{
+		List<String> ret = new ArrayList<String>();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(org.jcae.mesh.amibe.ds.AbstractHalfEdge.OUTER))
+				continue;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 3; i++)
+				sb.append(t.getV(i).getX()+" "+t.getV(i).getY()+" "+t.getV(i).getZ()+" ");
+			ret.add(sb.toString());
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+
+	private static List<String> remeshTorus(int threads) throws IOException
+	{
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeList();
+		Mesh mesh = new Mesh(mtb);
+		MeshReader.readObject3D(mesh, "test"+File.separator+"input"+File.separator+"torus1426");
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.05");
+		options.put("coplanarity", "0.9");
+		options.put("threads", Integer.toString(threads));
+		Mesh newMesh = new Remesh(MeshLiaison.create(mesh, mtb), options).compute().getOutputMesh();
+		assertTrue("Mesh is not valid", newMesh.isValid());
+		assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
+		return getTriangles(newMesh);
+	}
+
+	private static List<String> remeshSphere(Mesh mesh, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("size", "0.05");
+		options.put("threads", Integer.toString(threads));
+		Mesh newMesh = new Remesh(MeshLiaison.create(mesh), options).compute().getOutputMesh();
+		assertTrue("Mesh is not valid", newMesh.isValid());
+		assertTrue("Mesh contains inverted triangles", newMesh.checkNoInvertedTriangles());
+		return getTriangles(newMesh);
+	}
+
+	@Test public void testSphereParallel()
+	{
+		// Vertex locations depend on hash codes, the same background
+		// mesh is remeshed
+		Mesh mesh = SphereBuilder.createShuffledSphereMesh(3);
+		// Results do not depend on the number of threads
+		List<String> expected = remeshSphere(mesh, 1);
+		assertEquals(expected, remeshSphere(mesh, 2));
+		assertEquals(expected, remeshSphere(mesh, 4));
+	}
+
+	@Test public void testTorusParallel() throws IOException
+	{
+		// Results do not depend on the number of threads
+		List<String> expected = remeshTorus(1);
+		assertEquals(expected, remeshTorus(2));
+		assertEquals(expected, remeshTorus(4));
+	}
 }
@@ -31,6 +31,7 @@ import org.jcae.mesh.xmldata.MeshReader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.logging.Level;
@@ -157,6 +158,45 @@ public class SmoothNodes3DBgTest
 		assertTrue("Min. angle too small: "+(qmin*60.0), qmin > 0.85);
 	}
 	
+	private static double[] smoothParallel(Mesh bgMesh, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "5");
+		options.put("refresh", "true");
+		options.put("threads", Integer.toString(threads));
+		Mesh smoothedMesh = new SmoothNodes3DBg(MeshLiaison.create(bgMesh), options).compute().getOutputMesh();
+		assertTrue("Mesh is not valid", smoothedMesh.isValid());
+		assertTrue(smoothedMesh.checkNoInvertedTriangles());
+		return getCoordinates(smoothedMesh);
+	}
+
+	private static double[] getCoordinates(Mesh m)
+	{
+		double [] ret = new double[3*m.getNodes().size()];
+		int i = 0;
+		for (Vertex n : m.getNodes())
+		{
+			ret[i++] = n.getX();
+			ret[i++] = n.getY();
+			ret[i++] = n.getZ();
+		}
+		return ret;
+	}
+
+	@Test public void testSphereParallel()
+	{
+		// Node order depends on hash codes, try several meshes
+		for (int run = 0; run < 5; run++)
+		{
+			mesh = SphereBuilder.createShuffledSphereMesh(3);
+			double [] sequential = smoothParallel(mesh, 1);
+			assertFalse(Arrays.equals(getCoordinates(mesh), sequential));
+			// Vertices are moved in the same order
+			assertArrayEquals(sequential, smoothParallel(mesh, 2), 0.0);
+			assertArrayEquals(sequential, smoothParallel(mesh, 4), 0.0);
+		}
+	}
+
 	@Test public void test4Neighbors()
 	{
 		/*   v2       v3
@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
@@ -162,6 +163,82 @@ public class SmoothNodes3DTest
 		}
 	}
  
+	private static double[] getCoordinates(Mesh m)
+	{
+		double [] ret = new double[3*m.getNodes().size()];
+		int i = 0;
+		for (Vertex n : m.getNodes())
+		{
+			ret[i++] = n.getX();
+			ret[i++] = n.getY();
+			ret[i++] = n.getZ();
+		}
+		return ret;
+	}
+
+	private static void smoothParallel(Mesh m, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "5");
+		options.put("threads", Integer.toString(threads));
+		new SmoothNodes3D(m, options).compute();
+		assertTrue("Mesh is not valid", m.isValid());
+		assertTrue(m.checkNoInvertedTriangles());
+	}
+
+	@Test public void testSphereParallel()
+	{
+		mesh = SphereBuilder.createShuffledSphereMesh(3);
+		double [] initial = getCoordinates(mesh);
+		smoothParallel(mesh, 2);
+		double [] coords2 = getCoordinates(mesh);
+		assertFalse(Arrays.equals(initial, coords2));
+		int i = 0;
+		for (Vertex n : mesh.getNodes())
+		{
+			n.moveTo(initial[i], initial[i+1], initial[i+2]);
+			i += 3;
+		}
+		// Results do not depend on the number of threads
+		smoothParallel(mesh, 4);
+		assertArrayEquals(coords2, getCoordinates(mesh), 0.0);
+	}
+
+	private static void smoothRefresh(Mesh m, int threads)
+	{
+		final Map<String, String> options = new HashMap<String, String>();
+		options.put("iterations", "5");
+		options.put("refresh", "true");
+		options.put("threads", Integer.toString(threads));
+		new SmoothNodes3D(m, options).compute();
+		assertTrue("Mesh is not valid", m.isValid());
+	}
+
+	@Test public void testSphereParallelRefresh()
+	{
+		// Node order depends on hash codes, try several meshes
+		for (int run = 0; run < 10; run++)
+		{
+			mesh = SphereBuilder.createShuffledSphereMesh(3);
+			double [] initial = getCoordinates(mesh);
+			smoothRefresh(mesh, 1);
+			double [] sequential = getCoordinates(mesh);
+			assertFalse(Arrays.equals(initial, sequential));
+			for (int threads = 2; threads <= 4; threads += 2)
+			{
+				int i = 0;
+				for (Vertex n : mesh.getNodes())
+				{
+					n.moveTo(initial[i], initial[i+1], initial[i+2]);
+					i += 3;
+				}
+				// Vertices are moved in the same order
+				smoothRefresh(mesh, threads);
+				assertArrayEquals(sequential, getCoordinates(mesh), 0.0);
+			}
+		}
+	}
+
 	@Test public void testTorus()
 	{
 		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
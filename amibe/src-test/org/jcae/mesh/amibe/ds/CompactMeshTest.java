@@ -0,0 +1,208 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompactMeshTest
+{
+	private Mesh mesh;
+
+	@Before public void createMesh()
+	{
+		MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault3D();
+		mtb.addNodeList();
+		mesh = new Mesh(mtb);
+	}
+
+	// m Vertex on rows, n Vertex on columns
+	private void createMxNShell(int m, int n)
+	{
+		Vertex [] v = new Vertex[m*n];
+		for (int j = 0; j < n; j++)
+			for (int i = 0; i < m; i++)
+			{
+				v[m*j+i] = mesh.createVertex(i, j, 0.0);
+				v[m*j+i].setLabel(m*j+i+1);
+				mesh.add(v[m*j+i]);
+			}
+		for (int j = 0; j < n-1; j++)
+			for (int i = 0; i < m-1; i++)
+			{
+				Triangle t0 = mesh.createTriangle(v[m*j+i], v[m*j+i+1], v[m*(j+1)+i]);
+				Triangle t1 = mesh.createTriangle(v[m*j+i+1], v[m*(j+1)+i+1], v[m*(j+1)+i]);
+				t0.setGroupId(j);
+				t1.setGroupId(j);
+				mesh.add(t0);
+				mesh.add(t1);
+			}
+		mesh.buildAdjacency();
+	}
+
+	// Three triangles sharing the same edge
+	private void createBook()
+	{
+		Vertex v0 = mesh.createVertex(0.0, 0.0, 0.0);
+		Vertex v1 = mesh.createVertex(0.0, 0.0, 1.0);
+		Vertex [] v = new Vertex[] {
+			v0, v1,
+			mesh.createVertex(1.0, 0.0, 0.0),
+			mesh.createVertex(0.0, 1.0, 0.0),
+			mesh.createVertex(-1.0, 0.0, 0.0)
+		};
+		for (Vertex vv : v)
+			mesh.add(vv);
+		mesh.add(mesh.createTriangle(v0, v1, v[2]));
+		mesh.add(mesh.createTriangle(v0, v1, v[3]));
+		mesh.add(mesh.createTriangle(v1, v0, v[4]));
+		mesh.buildAdjacency();
+	}
+
+	@Test public void compactShell()
+	{
+		createMxNShell(4, 5);
+		int nrTriangles = mesh.getTriangles().size();
+		int nrNodes = mesh.getNodes().size();
+		CompactMesh storage = mesh.compact();
+		assertTrue(mesh.getTriangles().isEmpty());
+		assertTrue(mesh.getNodes().isEmpty());
+		assertEquals(nrTriangles, storage.getNumberOfTriangles());
+		assertEquals(nrNodes, storage.getNumberOfVertices());
+		// Check adjacency relations
+		for (int e = 0; e < 3 * storage.getNumberOfTriangles(); e++)
+		{
+			if (storage.isOuter(e / 3))
+				continue;
+			int s = storage.sym(e);
+			assertTrue("Edge "+e+" has no symmetric edge", s >= 0);
+			assertEquals(e, storage.sym(s));
+			assertEquals(storage.origin(e), storage.destination(s));
+			assertEquals(storage.destination(e), storage.origin(s));
+		}
+		// Loop around an inner vertex (1, 1, 0)
+		int inner = 5;
+		assertEquals(1.0, storage.getX(inner), 0.0);
+		assertEquals(1.0, storage.getY(inner), 0.0);
+		assertEquals(inner+1, storage.getVertexLabel(inner));
+		int ot = storage.getIncidentHalfEdge(inner);
+		int d = storage.destination(ot);
+		int cnt = 0;
+		do
+		{
+			assertEquals(inner, storage.origin(ot));
+			assertFalse(storage.hasAttributes(ot, AbstractHalfEdge.OUTER));
+			cnt++;
+			ot = storage.nextOriginLoop(ot);
+		}
+		while (storage.destination(ot) != d);
+		assertEquals(6, cnt);
+	}
+
+	@Test public void roundTripShell()
+	{
+		createMxNShell(4, 5);
+		int nrTriangles = mesh.getTriangles().size();
+		int nrNodes = mesh.getNodes().size();
+		double area = 0.0;
+		for (Triangle t : mesh.getTriangles())
+			if (t.isWritable())
+				area += t.getAbstractHalfEdge().area(mesh);
+		CompactMesh storage = mesh.compact();
+		mesh.expand(storage);
+		assertEquals(0, storage.getNumberOfTriangles());
+		assertEquals(nrTriangles, mesh.getTriangles().size());
+		assertEquals(nrNodes, mesh.getNodes().size());
+		// Labels are kept
+		boolean [] labels = new boolean[nrNodes+1];
+		for (Vertex v : mesh.getNodes())
+		{
+			assertFalse(labels[v.getLabel()]);
+			labels[v.getLabel()] = true;
+			assertEquals(v.getLabel(), 4*(int) v.getY()+(int) v.getX()+1);
+		}
+		assertTrue(mesh.isValid());
+		assertTrue(mesh.checkVertexLinks());
+		double newArea = 0.0;
+		int[] groups = new int[4];
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (!t.isWritable())
+				continue;
+			newArea += t.getAbstractHalfEdge().area(mesh);
+			groups[t.getGroupId()]++;
+		}
+		assertEquals(area, newArea, 1.e-12);
+		for (int g : groups)
+			assertEquals(6, g);
+	}
+
+	@Test public void nonManifold()
+	{
+		createBook();
+		int nrTriangles = mesh.getTriangles().size();
+		// Origin and apex of each fan of edge (v0,v1) in first triangle,
+		// fans may have different orientations
+		AbstractHalfEdge h = mesh.getTriangles().iterator().next().getAbstractHalfEdge();
+		while (h.origin().getX() != 0.0 || h.origin().getZ() != 0.0 || h.destination().getZ() != 1.0)
+			h = h.next();
+		List<Vertex> origins = new ArrayList<Vertex>();
+		List<Vertex> apices = new ArrayList<Vertex>();
+		for (Iterator<AbstractHalfEdge> it = h.fanIterator(); it.hasNext(); )
+		{
+			AbstractHalfEdge fan = it.next();
+			origins.add(fan.origin());
+			apices.add(fan.apex());
+		}
+		assertEquals(3, apices.size());
+		CompactMesh storage = mesh.compact();
+		int ot = CompactMesh.halfEdge(0, 0);
+		while (storage.origin(ot) != 0 || storage.destination(ot) != 1)
+			ot = CompactMesh.next(ot);
+		assertTrue(storage.hasAttributes(ot, AbstractHalfEdge.NONMANIFOLD));
+		int f = ot;
+		for (int i = 0; i < apices.size(); i++)
+		{
+			f = storage.nextFan(f);
+			assertFalse(storage.hasAttributes(f, AbstractHalfEdge.OUTER));
+			assertEquals(origins.get(i).getZ(), storage.getZ(storage.origin(f)), 0.0);
+			assertEquals(1, storage.origin(f) + storage.destination(f));
+			assertEquals(apices.get(i).getX(), storage.getX(storage.apex(f)), 0.0);
+			assertEquals(apices.get(i).getY(), storage.getY(storage.apex(f)), 0.0);
+		}
+		assertEquals(ot, f);
+		mesh.expand(storage);
+		assertEquals(nrTriangles, mesh.getTriangles().size());
+		assertTrue(mesh.isValid());
+	}
+
+	@Test(expected=IllegalStateException.class) public void expandNotEmpty()
+	{
+		createBook();
+		CompactMesh storage = mesh.compact();
+		createBook();
+		mesh.expand(storage);
+	}
+}
@@ -21,6 +21,7 @@ package org.jcae.mesh.amibe.ds;
 
 import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import java.util.Iterator;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -132,5 +133,112 @@ public class MeshTest
 		nr = mesh.scratchVirtualBoundaries();
 		assertTrue("Wrong return value of scratchVirtualBoundaries (2 was expected): "+nr, 2 == nr);
 	}
-	
+
+	private Mesh createHalfEdgeMesh()
+	{
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		mtb.add(ttb);
+		return new Mesh(mtb);
+	}
+
+	// Check that sym() is an involution and count edges having given
+	// attributes
+	private int checkSymmetry(Mesh m, int attributes)
+	{
+		int ret = 0;
+		for (Triangle t : m.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			AbstractHalfEdge ot = t.getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				ot = ot.next();
+				assertTrue(ot.hasSymmetricEdge());
+				assertTrue(ot.sym().sym() == ot);
+				assertTrue(ot.sym().origin() == ot.destination());
+				if (ot.hasAttributes(attributes))
+					ret++;
+			}
+		}
+		return ret;
+	}
+
+	private void nonManifoldEdge(boolean [] reversed)
+	{
+		mesh = createHalfEdgeMesh();
+		Vertex v0 = mesh.createVertex(0.0, 0.0, 0.0);
+		Vertex v1 = mesh.createVertex(1.0, 0.0, 0.0);
+		for (int i = 0; i < reversed.length; i++)
+		{
+			double angle = 2.0 * Math.PI * i / reversed.length;
+			Vertex apex = mesh.createVertex(0.5, Math.cos(angle), Math.sin(angle));
+			if (reversed[i])
+				mesh.add(mesh.createTriangle(v1, v0, apex));
+			else
+				mesh.add(mesh.createTriangle(v0, v1, apex));
+		}
+		mesh.buildAdjacency();
+		assertEquals(reversed.length, checkSymmetry(mesh, AbstractHalfEdge.NONMANIFOLD));
+		// End points of non-manifold edges have one link per fan
+		assertTrue(v0.getLink() instanceof Triangle[]);
+		assertEquals(reversed.length, ((Triangle[]) v0.getLink()).length);
+		AbstractHalfEdge ot = v0.getIncidentAbstractHalfEdge(((Triangle[]) v0.getLink())[0], null);
+		if (ot.destination() != v1)
+			ot = ot.prev();
+		int cnt = 0;
+		for (Iterator<AbstractHalfEdge> it = ot.fanIterator(); it.hasNext(); it.next())
+			cnt++;
+		assertEquals(reversed.length, cnt);
+	}
+
+	@Test public void nonManifoldEdges()
+	{
+		nonManifoldEdge(new boolean[] { false, true, false });
+		nonManifoldEdge(new boolean[] { false, false, true });
+		nonManifoldEdge(new boolean[] { false, true, false, true });
+		nonManifoldEdge(new boolean[] { true, true, false, false, true });
+	}
+
+	@Test public void junction()
+	{
+		mesh = createHalfEdgeMesh();
+		Vertex v = mesh.createVertex(0.0, 0.0, 0.0);
+		mesh.add(mesh.createTriangle(v, mesh.createVertex(1.0, 0.0, 0.0), mesh.createVertex(0.0, 1.0, 0.0)));
+		mesh.add(mesh.createTriangle(v, mesh.createVertex(-1.0, 0.0, 0.0), mesh.createVertex(0.0, -1.0, 0.0)));
+		mesh.buildAdjacency();
+		assertTrue(v.getLink() instanceof Triangle[]);
+		assertEquals(2, ((Triangle[]) v.getLink()).length);
+		assertEquals(6, checkSymmetry(mesh, AbstractHalfEdge.BOUNDARY));
+	}
+
+	@Test public void parallelAdjacency()
+	{
+		mesh = createHalfEdgeMesh();
+		createMxNShell(60, 40);
+		mesh.buildAdjacency(0, 4);
+		assertEquals(2*59*39 + 2*(59+39), mesh.getTriangles().size());
+		assertEquals(2*(59+39), checkSymmetry(mesh, AbstractHalfEdge.BOUNDARY));
+		assertEquals(0, checkSymmetry(mesh, AbstractHalfEdge.NONMANIFOLD));
+	}
+
+	@Test(expected=IllegalStateException.class) public void vertexNotInNodeList()
+	{
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		mtb.addTriangleList();
+		mtb.addNodeList();
+		mtb.add(ttb);
+		mesh = new Mesh(mtb);
+		createMxNShell(3, 3);
+		for (int i = 1; i < v.length; i++)
+			mesh.add(v[i]);
+		// This label is the index of another vertex in node list
+		v[0].setLabel(0);
+		mesh.buildAdjacency(0, 1);
+	}
 }
@@ -0,0 +1,149 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import org.jcae.mesh.amibe.util.WorkerPool;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class StaticKdTreeTest
+{
+	private static List<Location> randomPoints(int n, long seed)
+	{
+		Random rand = new Random(seed);
+		List<Location> ret = new ArrayList<Location>(n);
+		for (int i = 0; i < n; i++)
+		{
+			// Many points share the same x coordinate
+			ret.add(new Location(rand.nextInt(20), rand.nextDouble(), 10.0 * rand.nextDouble()));
+		}
+		return ret;
+	}
+
+	private static double distance2(Location a, Location b)
+	{
+		return a.sqrDistance3D(b);
+	}
+
+	@Test public void nearestVertex()
+	{
+		List<Location> points = randomPoints(5000, 1L);
+		StaticKdTree<Location> tree = new StaticKdTree<Location>(points);
+		assertEquals(points.size(), tree.size());
+		Metric metric = new EuclidianMetric3D(2.0);
+		for (Location q : randomPoints(500, 2L))
+		{
+			Location found = tree.getNearestVertex(metric, q);
+			double best = Double.MAX_VALUE;
+			for (Location p : points)
+				best = Math.min(best, metric.distance2(q, p));
+			assertEquals(best, metric.distance2(q, found), 0.0);
+		}
+	}
+
+	@Test public void empty()
+	{
+		StaticKdTree<Location> tree = new StaticKdTree<Location>(new ArrayList<Location>());
+		assertNull(tree.getNearestVertex(new EuclidianMetric3D(), new Location()));
+		List<Location> result = new ArrayList<Location>();
+		assertEquals(0, tree.getNearestVertices(new Location(), 3, result));
+		assertEquals(0, tree.getVerticesInRadius(new Location(), 1.0, result));
+	}
+
+	@Test public void kNearest()
+	{
+		List<Location> points = randomPoints(3000, 3L);
+		StaticKdTree<Location> tree = new StaticKdTree<Location>(points);
+		int k = 7;
+		Location [] queries = randomPoints(300, 4L).toArray(new Location[0]);
+		int [] batch = tree.getNearestVertices(queries, k, null);
+		double [] d = new double[points.size()];
+		for (int i = 0; i < queries.length; i++)
+		{
+			for (int j = 0; j < d.length; j++)
+				d[j] = distance2(queries[i], points.get(j));
+			Arrays.sort(d);
+			List<Location> result = new ArrayList<Location>();
+			assertEquals(k, tree.getNearestVertices(queries[i], k, result));
+			for (int j = 0; j < k; j++)
+			{
+				assertEquals(d[j], distance2(queries[i], result.get(j)), 0.0);
+				assertTrue(result.get(j) == tree.getVertex(batch[k * i + j]));
+			}
+		}
+		// Less points than k
+		List<Location> result = new ArrayList<Location>();
+		StaticKdTree<Location> small = new StaticKdTree<Location>(points.subList(0, 5));
+		assertEquals(5, small.getNearestVertices(queries[0], k, result));
+		int [] r = small.getNearestVertices(new Location[] { queries[0] }, k, null);
+		assertEquals(-1, r[5]);
+		assertEquals(-1, r[6]);
+	}
+
+	@Test public void radius()
+	{
+		List<Location> points = randomPoints(3000, 5L);
+		StaticKdTree<Location> tree = new StaticKdTree<Location>(points);
+		double radius = 0.8;
+		Location [] queries = randomPoints(300, 6L).toArray(new Location[0]);
+		int [][] batch = tree.getVerticesInRadius(queries, radius, null);
+		for (int i = 0; i < queries.length; i++)
+		{
+			HashSet<Location> expected = new HashSet<Location>();
+			for (Location p : points)
+			{
+				if (distance2(queries[i], p) <= radius * radius)
+					expected.add(p);
+			}
+			HashSet<Location> found = new HashSet<Location>();
+			tree.getVerticesInRadius(queries[i], radius, found);
+			assertEquals(expected, found);
+			assertEquals(expected.size(), batch[i].length);
+			for (int j : batch[i])
+				assertTrue(expected.contains(tree.getVertex(j)));
+		}
+	}
+
+	@Test public void parallel()
+	{
+		List<Location> points = randomPoints(200000, 7L);
+		Location [] queries = randomPoints(2000, 8L).toArray(new Location[0]);
+		StaticKdTree<Location> tree = new StaticKdTree<Location>(points);
+		int [] expected = tree.getNearestVertices(queries, 4, null);
+		WorkerPool pool = new WorkerPool(4);
+		try
+		{
+			StaticKdTree<Location> ptree = new StaticKdTree<Location>(points, pool);
+			int [] found = ptree.getNearestVertices(queries, 4, pool);
+			for (int i = 0; i < expected.length; i++)
+				assertEquals(distance2(queries[i / 4], tree.getVertex(expected[i])),
+					distance2(queries[i / 4], ptree.getVertex(found[i])), 0.0);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+}
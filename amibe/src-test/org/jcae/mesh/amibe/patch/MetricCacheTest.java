@@ -0,0 +1,70 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.amibe.patch;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class MetricCacheTest
+{
+	@Test public void hits()
+	{
+		MetricCache cache = new MetricCache(10);
+		MetricOnSurface m = new MetricOnSurface(1.0, 0.0, 2.0);
+		assertNull(cache.get(0.5, 0.25));
+		cache.put(0.5, 0.25, m);
+		assertSame(m, cache.get(0.5, 0.25));
+		assertSame(m, cache.get(0.5, 0.25));
+		assertNull(cache.get(0.25, 0.5));
+		assertNull(cache.get(-0.0, 0.0));
+		cache.put(0.0, 0.0, m);
+		assertNull(cache.get(-0.0, 0.0));
+		assertEquals(2L, cache.getHits());
+		assertEquals(4L, cache.getMisses());
+		assertEquals(2, cache.size());
+	}
+
+	@Test public void eviction()
+	{
+		int capacity = 100;
+		MetricCache cache = new MetricCache(capacity);
+		for (int i = 0; i < capacity; i++)
+			cache.put(i, 0.0, new MetricOnSurface(i, 0.0, 1.0));
+		// Touch first entry so that it is the most recently used one
+		assertNotNull(cache.get(0.0, 0.0));
+		cache.put(capacity, 0.0, new MetricOnSurface(1.0, 0.0, 1.0));
+		assertEquals(capacity, cache.size());
+		assertNotNull(cache.get(0.0, 0.0));
+		assertNull(cache.get(1.0, 0.0));
+		assertNotNull(cache.get(capacity, 0.0));
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test public void disabled()
+	{
+		MetricCache cache = new MetricCache(0);
+		cache.put(0.5, 0.5, new MetricOnSurface(1.0, 0.0, 1.0));
+		assertNull(cache.get(0.5, 0.5));
+		assertEquals(0, cache.size());
+		assertEquals(1L, cache.getMisses());
+	}
+}
@@ -0,0 +1,145 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.amibe.projection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import org.jcae.mesh.amibe.algos3d.SphereBuilder;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.util.WorkerPool;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TriangleKdTreeTest
+{
+	private static Mesh mesh;
+	private static Location[] points;
+
+	@BeforeClass public static void createMesh()
+	{
+		mesh = SphereBuilder.createShuffledSphereMesh(4);
+		Random rand = new Random(1234L);
+		points = new Location[4999];
+		for(int i = 0; i < points.length; i++)
+		{
+			double r = 0.5 + rand.nextDouble();
+			double theta = Math.PI * rand.nextDouble();
+			double phi = 2.0 * Math.PI * rand.nextDouble();
+			points[i] = new Location(r * Math.sin(theta) * Math.cos(phi),
+				r * Math.sin(theta) * Math.sin(phi), r * Math.cos(theta));
+		}
+	}
+
+	private static Location[] newLocations(int n)
+	{
+		Location[] toReturn = new Location[n];
+		for(int i = 0; i < n; i++)
+			toReturn[i] = new Location();
+		return toReturn;
+	}
+
+	private static Triangle[] sequential(TriangleKdTree kdTree, Location[] projections)
+	{
+		Triangle[] toReturn = new Triangle[points.length];
+		for(int i = 0; i < points.length; i++)
+			toReturn[i] = kdTree.getClosestTriangle(points[i], projections[i], -1);
+		return toReturn;
+	}
+
+	private static void check(Triangle[] expected, Location[] expectedProj,
+		Triangle[] actual, Location[] actualProj)
+	{
+		assertEquals(expected.length, actual.length);
+		for(int i = 0; i < expected.length; i++)
+		{
+			assertNotNull(actual[i]);
+			assertSame(expected[i], actual[i]);
+			assertEquals(0.0, expectedProj[i].sqrDistance3D(actualProj[i]), 0.0);
+		}
+	}
+
+	@Test public void batchProjection()
+	{
+		TriangleKdTree kdTree = new TriangleKdTree(mesh);
+		Location[] expectedProj = newLocations(points.length);
+		Triangle[] expected = sequential(kdTree, expectedProj);
+		WorkerPool pool = new WorkerPool(4);
+		try
+		{
+			Location[] proj = newLocations(points.length);
+			Triangle[] actual = kdTree.getClosestTriangles(points, proj, -1, pool);
+			check(expected, expectedProj, actual, proj);
+			// Tree must not have been modified
+			check(expected, expectedProj, sequential(kdTree, proj), proj);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	@Test public void concurrentContexts()
+	{
+		final TriangleKdTree kdTree = new TriangleKdTree(mesh);
+		Location[] expectedProj = newLocations(points.length);
+		Triangle[] expected = sequential(kdTree, expectedProj);
+		final int nrThreads = 4;
+		WorkerPool pool = new WorkerPool(nrThreads);
+		try
+		{
+			List<Callable<Location[]>> tasks = new ArrayList<Callable<Location[]>>();
+			final Triangle[][] results = new Triangle[nrThreads][];
+			for(int t = 0; t < nrThreads; t++)
+			{
+				final int thread = t;
+				tasks.add(new Callable<Location[]>()
+				{
+					public Location[] call()
+					{
+						// Each thread processes all points in a different
+						// order, 4999 is prime
+						TriangleKdTree.QueryContext qc = kdTree.createQueryContext();
+						Location[] proj = newLocations(points.length);
+						results[thread] = new Triangle[points.length];
+						for(int k = 0; k < points.length; k++)
+						{
+							int i = (k * (2 * thread + 1)) % points.length;
+							results[thread][i] = qc.getClosestTriangle(points[i], proj[i], -1);
+						}
+						return proj;
+					}
+				});
+			}
+			List<Location[]> proj = pool.invokeAll(tasks);
+			for(int t = 0; t < nrThreads; t++)
+				check(expected, expectedProj, results[t], proj.get(t));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.junit.Before;
+import java.util.Iterator;
+import java.util.Random;
+
+public class IndexedDAryHeapTest extends QSortedTreeTest
+{
+	@Before public void createTree()
+	{
+		tree = new IndexedDAryHeap<Integer>();
+	}
+
+	@Test public void iterator()
+	{
+		tree.insert(Integer.valueOf(6), 6.0);
+		tree.insert(Integer.valueOf(2), 2.0);
+		tree.insert(Integer.valueOf(7), 7.0);
+		tree.insert(Integer.valueOf(1), 1.0);
+		tree.insert(Integer.valueOf(4), 4.0);
+		tree.insert(Integer.valueOf(5), 5.0);
+		tree.insert(Integer.valueOf(3), 3.0);
+		assertEquals(1.0, tree.getRootValue(), 0.0);
+		int i = 1;
+		for (Iterator<QSortedTree.Node<Integer>> it = tree.iterator(); it.hasNext(); i++)
+			assertTrue(it.next().getData().equals(Integer.valueOf(i)));
+		assertEquals(8, i);
+	}
+
+	@Test public void iteratorFreshNodes()
+	{
+		for (int i = 0; i < 20; i++)
+			tree.insert(Integer.valueOf(i), (double) i);
+		Iterator<QSortedTree.Node<Integer>> it = tree.iterator();
+		QSortedTree.Node<Integer> first = it.next();
+		for (int i = 1; i < 20; i++)
+		{
+			QSortedTree.Node<Integer> node = it.next();
+			assertNotSame(first, node);
+			it.hasNext();
+			assertEquals(Integer.valueOf(i), node.getData());
+			assertEquals((double) i, node.getValue(), 0.0);
+		}
+		assertFalse(it.hasNext());
+		assertEquals(Integer.valueOf(0), first.getData());
+	}
+
+	@Test public void backwardIterator()
+	{
+		tree.insert(Integer.valueOf(6), 6.0);
+		tree.insert(Integer.valueOf(2), 2.0);
+		tree.insert(Integer.valueOf(7), 7.0);
+		tree.insert(Integer.valueOf(1), 1.0);
+		tree.insert(Integer.valueOf(4), 4.0);
+		tree.insert(Integer.valueOf(5), 5.0);
+		tree.insert(Integer.valueOf(3), 3.0);
+		int i = 7;
+		for (Iterator<QSortedTree.Node<Integer>> it = tree.backwardIterator(); it.hasNext(); i--)
+			assertTrue(it.next().getData().equals(Integer.valueOf(i)));
+		assertEquals(0, i);
+	}
+
+	@Test public void removeWhileIterating()
+	{
+		// This is how AbstractAlgoHalfEdge skips objects which
+		// cannot be processed
+		int n = 200;
+		for (int i = 0; i < n; i++)
+			tree.insert(Integer.valueOf(i), (double) ((7 * i) % n));
+		double last = -1.0;
+		int cnt = 0;
+		for (Iterator<QSortedTree.Node<Integer>> it = tree.iterator(); it.hasNext(); )
+		{
+			QSortedTree.Node<Integer> node = it.next();
+			assertTrue(node.getValue() > last);
+			last = node.getValue();
+			if (node.getData().intValue() % 3 != 0)
+				tree.remove(node.getData());
+			cnt++;
+		}
+		assertEquals(n, cnt);
+		assertEquals(n / 3 + 1, tree.size());
+	}
+
+	@Test public void foobar()
+	{
+		// Check with various lengths
+		for (int n = 10; n < 100; n+=2)
+		{
+			unitTest1(n);
+			unitTest2(n);
+			unitTest3(n);
+			unitTest4(n);
+		}
+	}
+
+	@Test public void random()
+	{
+		// Insert and remove in random order
+		for (int n = 3; n < 100; n+=2)
+		{
+			unitTest5(200, n);
+			unitTest6(200, n);
+		}
+	}
+
+	@Test public void large()
+	{
+		int n = 1000;
+		unitTest1(n);
+		unitTestIterator(n);
+	}
+
+	@Test public void bulkLoad()
+	{
+		int n = 1000;
+		tree.beginBulkLoad();
+		for (int i = n - 1; i >= 0; i--)
+			tree.insert(Integer.valueOf(i), i);
+		tree.update(Integer.valueOf(0), 2 * n);
+		tree.remove(Integer.valueOf(1));
+		tree.endBulkLoad();
+		int i = 2;
+		for (Iterator<QSortedTree.Node<Integer>> it = tree.iterator(); it.hasNext(); i++)
+		{
+			if (i == n)
+				assertTrue(it.next().getData().equals(Integer.valueOf(0)));
+			else
+				assertTrue(it.next().getData().equals(Integer.valueOf(i)));
+		}
+		assertEquals(n + 1, i);
+	}
+
+	@Test public void decreaseKey()
+	{
+		IndexedDAryHeap<Integer> heap = (IndexedDAryHeap<Integer>) tree;
+		for (int i = 0; i < 100; i++)
+			heap.insert(Integer.valueOf(i), i);
+		heap.decreaseKey(Integer.valueOf(50), -1.0);
+		assertEquals(Integer.valueOf(50), heap.poll());
+		assertEquals(Integer.valueOf(0), heap.poll());
+		assertEquals(98, heap.size());
+	}
+
+	// Objects must be processed in the same order as with PAVLSortedTree,
+	// even when values are equal.
+	@Test public void sameOrderAsPAVL()
+	{
+		QSortedTree<Integer> ref = new PAVLSortedTree<Integer>();
+		Random rand = new Random(1234L);
+		int n = 500;
+		for (int step = 0; step < 20000; step++)
+		{
+			Integer o = Integer.valueOf(rand.nextInt(n));
+			double value = rand.nextInt(20);
+			int action = rand.nextInt(4);
+			if (action == 0)
+			{
+				assertEquals(ref.remove(o), tree.remove(o));
+			}
+			else if (ref.contains(o))
+			{
+				assertTrue(tree.update(o, value));
+				ref.update(o, value);
+			}
+			else
+			{
+				ref.insert(o, value);
+				tree.insert(o, value);
+			}
+			assertEquals(ref.size(), tree.size());
+			if (action == 3 && !ref.isEmpty())
+			{
+				Iterator<QSortedTree.Node<Integer>> it = tree.iterator();
+				for (Iterator<QSortedTree.Node<Integer>> itRef = ref.iterator(); itRef.hasNext(); )
+				{
+					QSortedTree.Node<Integer> expected = itRef.next();
+					QSortedTree.Node<Integer> node = it.next();
+					assertEquals(expected.getData(), node.getData());
+					assertEquals(expected.getValue(), node.getValue(), 0.0);
+				}
+				assertFalse(it.hasNext());
+			}
+		}
+	}
+
+	private static class Item implements IndexedDAryHeap.Element
+	{
+		private int heapId = -1;
+		public int getHeapId()
+		{
+			return heapId;
+		}
+		public void setHeapId(int id)
+		{
+			heapId = id;
+		}
+	}
+
+	@Test public void elements()
+	{
+		IndexedDAryHeap<Item> heap = new IndexedDAryHeap<Item>();
+		Item [] items = new Item[100];
+		for (int i = 0; i < items.length; i++)
+		{
+			items[i] = new Item();
+			heap.insert(items[i], items.length - i);
+		}
+		assertTrue(heap.remove(items[10]));
+		assertEquals(-1, items[10].getHeapId());
+		assertFalse(heap.contains(items[10]));
+		assertFalse(heap.remove(items[10]));
+		heap.update(items[0], -1.0);
+		assertSame(items[0], heap.poll());
+		assertSame(items[99], heap.poll());
+		assertEquals(97, heap.size());
+		// Identifiers are reset by clear(), and an identifier left by
+		// a discarded heap is not valid in another heap.
+		heap.clear();
+		assertEquals(-1, items[50].getHeapId());
+		IndexedDAryHeap<Item> other = new IndexedDAryHeap<Item>();
+		other.insert(items[1], 1.0);
+		other.insert(items[2], 2.0);
+		IndexedDAryHeap<Item> third = new IndexedDAryHeap<Item>();
+		third.insert(items[3], 3.0);
+		assertFalse(third.contains(items[1]));
+		assertFalse(third.contains(items[2]));
+		assertTrue(third.contains(items[3]));
+	}
+}
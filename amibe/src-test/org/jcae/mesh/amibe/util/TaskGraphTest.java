@@ -0,0 +1,152 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TaskGraphTest
+{
+	private static class Task implements Runnable
+	{
+		private final List<Integer> log;
+		private final int id;
+		private final Task [] dependencies;
+		private volatile boolean done;
+		private volatile boolean valid = true;
+
+		Task(List<Integer> log, int id, Task [] dependencies)
+		{
+			this.log = log;
+			this.id = id;
+			this.dependencies = dependencies;
+		}
+
+		public void run()
+		{
+			for (Task t : dependencies)
+				valid &= t.done;
+			log.add(id);
+			done = true;
+		}
+	}
+
+	private static List<Integer> runRandomGraph(int threads, Task [] tasks)
+	{
+		List<Integer> log = Collections.synchronizedList(new ArrayList<Integer>());
+		Random rand = new Random(12345L);
+		TaskGraph graph = new TaskGraph();
+		for (int i = 0; i < tasks.length; i++)
+		{
+			int nr = i == 0 ? 0 : rand.nextInt(Math.min(i, 4));
+			int [] deps = new int[nr];
+			Task [] depTasks = new Task[nr];
+			for (int k = 0; k < nr; k++)
+			{
+				deps[k] = rand.nextInt(i);
+				depTasks[k] = tasks[deps[k]];
+			}
+			tasks[i] = new Task(log, i, depTasks);
+			assertEquals(i, graph.add(tasks[i], deps));
+		}
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			graph.run(pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return log;
+	}
+
+	@Test public void sequential()
+	{
+		Task [] tasks = new Task[200];
+		List<Integer> log = runRandomGraph(1, tasks);
+		assertEquals(tasks.length, log.size());
+		for (int i = 0; i < tasks.length; i++)
+			assertEquals(i, log.get(i).intValue());
+	}
+
+	@Test public void dependencies()
+	{
+		Task [] tasks = new Task[1000];
+		List<Integer> log = runRandomGraph(4, tasks);
+		assertEquals(tasks.length, log.size());
+		for (Task t : tasks)
+		{
+			assertTrue(t.done);
+			assertTrue("Task "+t.id+" was run before its dependencies", t.valid);
+		}
+	}
+
+	@Test public void exception()
+	{
+		final AtomicInteger count = new AtomicInteger();
+		Runnable ok = new Runnable()
+		{
+			public void run()
+			{
+				count.incrementAndGet();
+			}
+		};
+		TaskGraph graph = new TaskGraph();
+		int a = graph.add(ok);
+		int b = graph.add(new Runnable()
+		{
+			public void run()
+			{
+				throw new IllegalStateException("failure");
+			}
+		}, a);
+		graph.add(ok, b);
+		graph.add(ok, a);
+		WorkerPool pool = new WorkerPool(2);
+		try
+		{
+			graph.run(pool);
+			fail("Exception not thrown");
+		}
+		catch (IllegalStateException ex)
+		{
+			assertEquals("failure", ex.getMessage());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		// Dependents of the failed task are not run
+		assertTrue(count.get() <= 2);
+	}
+
+	@Test(expected=IllegalArgumentException.class) public void cycle()
+	{
+		TaskGraph graph = new TaskGraph();
+		int a = graph.add(new Thread());
+		graph.add(new Thread(), a + 1);
+	}
+}
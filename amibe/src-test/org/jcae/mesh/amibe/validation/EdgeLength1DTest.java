@@ -0,0 +1,158 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.jcae.mesh.amibe.ds.MEdge1D;
+import org.jcae.mesh.amibe.ds.MNode1D;
+import org.jcae.mesh.cad.CADEdge;
+import org.jcae.mesh.cad.CADExplorer;
+import org.jcae.mesh.cad.CADFace;
+import org.jcae.mesh.cad.CADGeomCurve2D;
+import org.jcae.mesh.cad.CADGeomCurve3D;
+import org.jcae.mesh.cad.CADIterator;
+import org.jcae.mesh.cad.CADShape;
+import org.jcae.mesh.cad.CADShapeEnum;
+import org.jcae.mesh.cad.CADShapeFactory;
+import org.jcae.mesh.cad.CADWireExplorer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class EdgeLength1DTest
+{
+	// Unit circle parameterized by angle
+	private static final CADGeomCurve3D CIRCLE = (CADGeomCurve3D) Proxy.newProxyInstance(
+		CADGeomCurve3D.class.getClassLoader(), new Class<?>[] { CADGeomCurve3D.class },
+		new InvocationHandler()
+		{
+			public Object invoke(Object proxy, Method method, Object [] args)
+			{
+				if (!method.getName().equals("value"))
+					throw new UnsupportedOperationException(method.getName());
+				double t = ((Double) args[0]).doubleValue();
+				return new double[] { Math.cos(t), Math.sin(t), 0.0 };
+			}
+		});
+
+	private static final CADEdge EDGE = (CADEdge) Proxy.newProxyInstance(
+		CADEdge.class.getClassLoader(), new Class<?>[] { CADEdge.class },
+		new InvocationHandler()
+		{
+			public Object invoke(Object proxy, Method method, Object [] args)
+			{
+				if (method.getName().equals("hashCode"))
+					return Integer.valueOf(System.identityHashCode(proxy));
+				if (method.getName().equals("equals"))
+					return Boolean.valueOf(proxy == args[0]);
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+
+	// Factory which only knows how to build curve of EDGE
+	private static class CircleFactory extends CADShapeFactory
+	{
+		@Override
+		public CADGeomCurve3D newCurve3D(CADEdge E)
+		{
+			if (E != EDGE)
+				throw new IllegalArgumentException("Unknown edge: "+E);
+			return CIRCLE;
+		}
+		@Override
+		public CADShape newShape(Object o)
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADShape newShape(CADShape s1, CADShape s2, char op)
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADShape newShape(String fileName)
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADExplorer newExplorer()
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADWireExplorer newWireExplorer()
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		protected CADShapeEnum getShapeEnumInstance(String name)
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		protected Iterator<CADShapeEnum> newShapeEnumIterator(CADShapeEnum start, CADShapeEnum end)
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADIterator newIterator()
+		{
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public CADGeomCurve2D newCurve2D(CADEdge E, CADFace F)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@BeforeClass public static void setFactory()
+	{
+		CADShapeFactory.setFactory(new CircleFactory());
+	}
+
+	@Test public void testThreads()
+	{
+		// Edges with increasing lengths, so that several chunks are needed
+		int n = 2000;
+		List<MEdge1D> edges = new ArrayList<MEdge1D>(n);
+		for (int i = 0; i < n; i++)
+		{
+			double t = 0.001 * i;
+			edges.add(new MEdge1D(new MNode1D(t, null), new MNode1D(2.0 * t, null)));
+		}
+		EdgeLength1D proc = new EdgeLength1D();
+		proc.setCADEdge(EDGE);
+		QualityEvaluator eval = new QualityEvaluator(proc);
+		eval.setThreads(4);
+		QualityStatistics stats = eval.compute(edges)[0];
+		assertEquals(n, stats.size());
+		assertEquals(0.0f, stats.getMinValue(), 0.0f);
+		assertEquals(0, stats.getMinIndex());
+		assertEquals(n - 1, stats.getMaxIndex());
+		double t = 0.001 * (n - 1);
+		assertEquals((float) (2.0 * Math.sin(0.5 * t)), stats.getMaxValue(), 1.e-6f);
+	}
+}
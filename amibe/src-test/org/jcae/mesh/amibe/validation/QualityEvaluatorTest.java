@@ -0,0 +1,156 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class QualityEvaluatorTest
+{
+	private List<Triangle> triangles;
+
+	// Bumpy shell with m Vertex on rows, n Vertex on columns
+	@Before public void createMesh()
+	{
+		int m = 60, n = 50;
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		Random rand = new Random(3L);
+		Vertex [] v = new Vertex[m*n];
+		for (int j = 0; j < n; j++)
+			for (int i = 0; i < m; i++)
+				v[m*j+i] = mesh.createVertex(i + 0.3 * rand.nextDouble(),
+					j + 0.3 * rand.nextDouble(), 0.2 * rand.nextDouble());
+		for (int j = 0; j < n-1; j++)
+		{
+			for (int i = 0; i < m-1; i++)
+			{
+				mesh.add(mesh.createTriangle(v[m*j+i], v[m*j+i+1], v[m*(j+1)+i]));
+				mesh.add(mesh.createTriangle(v[m*j+i+1], v[m*(j+1)+i+1], v[m*(j+1)+i]));
+			}
+		}
+		mesh.buildAdjacency();
+		triangles = new ArrayList<Triangle>(mesh.getTriangles());
+	}
+
+	private QualityStatistics [] compute(int threads)
+	{
+		QualityEvaluator eval = new QualityEvaluator(new MinAngleFace(),
+			new Area(), new DihedralAngle());
+		eval.setThreads(threads);
+		eval.setTarget(0, (float) Math.PI/3.0f);
+		eval.split(0, 0.0f, 1.0f, 10);
+		eval.split(2, -1.0f, 1.0f, 7);
+		return eval.compute(triangles);
+	}
+
+	@Test public void testThreads()
+	{
+		QualityStatistics [] s1 = compute(1);
+		QualityStatistics [] s3 = compute(3);
+		for (int k = 0; k < s1.length; k++)
+		{
+			assertEquals(triangles.size(), s3[k].size());
+			assertEquals(s1[k].getMinValue(), s3[k].getMinValue(), 0.0f);
+			assertEquals(s1[k].getMinIndex(), s3[k].getMinIndex());
+			assertEquals(s1[k].getMaxValue(), s3[k].getMaxValue(), 0.0f);
+			assertEquals(s1[k].getMaxIndex(), s3[k].getMaxIndex());
+			assertEquals(s1[k].getMeanValue(), s3[k].getMeanValue(), 1.e-5f);
+			assertEquals(s1[k].getStandardDeviation(), s3[k].getStandardDeviation(), 1.e-5f);
+			assertArrayEquals(s1[k].getHistogram(), s3[k].getHistogram());
+			for (double p = 0.0; p <= 1.0; p += 0.05)
+				assertEquals(s1[k].getValueByPercent(p), s3[k].getValueByPercent(p), 0.0f);
+		}
+	}
+
+	// Procedure without public constructor without argument
+	private static class ScaledArea extends QualityProcedure
+	{
+		private final Area area = new Area();
+		private final float scale;
+		ScaledArea(float scale)
+		{
+			this.scale = scale;
+		}
+		@Override
+		protected void setValidationFeatures()
+		{
+			type = QualityProcedure.FACE;
+		}
+		@Override
+		public float quality(Object o)
+		{
+			return scale * area.quality(o);
+		}
+	}
+
+	@Test public void testSingleThreadFallback()
+	{
+		QualityEvaluator eval = new QualityEvaluator(new ScaledArea(2.0f));
+		eval.setThreads(4);
+		QualityStatistics stats = eval.compute(triangles)[0];
+		assertEquals(triangles.size(), stats.size());
+		assertEquals(2.0f * compute(1)[1].getMaxValue(), stats.getMaxValue(), 0.0f);
+	}
+
+	@Test public void testQualityFloat()
+	{
+		QualityStatistics stats = compute(2)[0];
+		QualityFloat data = new QualityFloat(triangles.size());
+		data.setQualityProcedure(new MinAngleFace());
+		data.setTarget((float) Math.PI/3.0f);
+		float [] values = new float[triangles.size()];
+		for (int i = 0; i < values.length; i++)
+		{
+			data.compute(triangles.get(i));
+			values[i] = new MinAngleFace().quality(triangles.get(i)) * (3.0f / (float) Math.PI);
+		}
+		data.finish();
+		data.split(0.0f, 1.0f, 10);
+		assertEquals(data.getMeanValue(), stats.getMeanValue(), 1.e-5f);
+		assertEquals(data.getStandardDeviation(), stats.getStandardDeviation(), 1.e-5f);
+		assertEquals(data.getValueByPercent(0.0), stats.getMinValue(), 0.0f);
+		assertEquals(data.getValueByPercent(1.0), stats.getMaxValue(), 0.0f);
+		int [] histogram = stats.getHistogram();
+		int total = 0;
+		for (int h : histogram)
+			total += h;
+		assertEquals(triangles.size(), total);
+
+		Arrays.sort(values);
+		assertEquals(values[0], stats.getMinValue(), 0.0f);
+		assertEquals(values[values.length - 1], stats.getMaxValue(), 0.0f);
+		for (double p = 0.01; p < 1.0; p += 0.01)
+		{
+			float exact = values[(int) (p * values.length)];
+			float approx = stats.getValueByPercent(p);
+			assertTrue(approx <= exact);
+			assertEquals(exact, approx, exact * 1.e-4f);
+		}
+	}
+}
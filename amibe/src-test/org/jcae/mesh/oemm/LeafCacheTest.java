@@ -0,0 +1,134 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.oemm;
+
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import gnu.trove.set.hash.TIntHashSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class LeafCacheTest
+{
+	private static File dir;
+	private static OEMM oemm;
+
+	@BeforeClass public static void createOEMM() throws IOException
+	{
+		dir = File.createTempFile("oemm", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+		RawStorageTest.writeSphereSoup(new File(dir, "soup"), 120, 60);
+		RawStorageTest.buildOEMM(dir, null);
+		oemm = Storage.readOEMMStructure(new File(dir, "oemm").getPath());
+		assertTrue(oemm.getNumberOfLeaves() > 8);
+	}
+
+	@AfterClass public static void deleteOEMM()
+	{
+		RawStorageTest.deleteDir(dir);
+	}
+
+	private static TIntHashSet firstLeaves(int n)
+	{
+		TIntHashSet ret = new TIntHashSet();
+		for (int i = 0; i < n; i++)
+			ret.add(i);
+		return ret;
+	}
+
+	// Returns a string representation of vertices and triangles, sorted by labels
+	private static Map<Integer, String> describe(Mesh mesh)
+	{
+		Map<Integer, String> ret = new TreeMap<Integer, String>();
+		for (Vertex v : mesh.getNodes())
+			ret.put(Integer.valueOf(v.getLabel()), v.getX()+" "+v.getY()+" "+v.getZ()+" "+v.isWritable());
+		int cnt = 0;
+		StringBuilder sb = new StringBuilder();
+		for (Triangle t : mesh.getTriangles())
+		{
+			cnt++;
+			for (int i = 0; i < 3; i++)
+				sb.append(t.getV(i).getLabel()).append(' ');
+			sb.append(t.getGroupId()).append(' ').append(t.isWritable()).append('\n');
+		}
+		ret.put(Integer.valueOf(Integer.MIN_VALUE), sb.toString());
+		return ret;
+	}
+
+	@Test public void sameMesh()
+	{
+		TIntHashSet leaves = firstLeaves(4);
+		Mesh expected = new MeshReader(oemm).buildMesh(leaves);
+		MeshReader reader = new MeshReader(oemm);
+		LeafCache cache = new LeafCache(oemm, 1L << 30);
+		reader.setCache(cache);
+		assertEquals(describe(expected), describe(reader.buildMesh(leaves)));
+		assertEquals(4, cache.getMisses());
+		// Leaves are now read from cache
+		assertEquals(describe(expected), describe(reader.buildMesh(leaves)));
+		assertEquals(4, cache.getMisses());
+		assertTrue(cache.getHits() > 0);
+	}
+
+	@Test public void eviction()
+	{
+		LeafCache cache = new LeafCache(oemm, 1L << 30);
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			cache.get(i);
+		long total = cache.getMemory();
+		cache = new LeafCache(oemm, total / 3);
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			cache.get(i);
+		assertTrue(cache.getMemory() <= total / 3);
+		// Last leaf is still in cache, first one has been evicted
+		assertNotNull(cache.peek(oemm.getNumberOfLeaves() - 1));
+		assertNull(cache.peek(0));
+		cache.invalidate(firstLeaves(oemm.getNumberOfLeaves()));
+		assertEquals(0L, cache.getMemory());
+	}
+
+	@Test public void prefetch()
+	{
+		MeshReader reader = new MeshReader(oemm);
+		LeafCache cache = new LeafCache(oemm, 1L << 30);
+		reader.setCache(cache);
+		TIntHashSet leaves = firstLeaves(2);
+		cache.prefetch(leaves);
+		reader.buildMesh(leaves);
+		cache.shutdown();
+		// Leaves are read only once, either by prefetching thread
+		// or by reader
+		TIntHashSet all = new TIntHashSet(leaves);
+		for (int i = 0; i < 2; i++)
+			all.addAll(oemm.leaves[i].adjLeaves);
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+			if (all.contains(i))
+				cache.get(i);
+		assertEquals(all.size(), cache.getMisses());
+	}
+}
@@ -0,0 +1,173 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.oemm;
+
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class LevelOfDetailTest
+{
+	private static File dir;
+	private static OEMM oemm;
+	private static LevelOfDetail lod;
+
+	// Writes a triangulated torus into a triangle soup.  Unlike spheres,
+	// there are no degenerated triangles, which cannot be decimated.
+	private static void writeTorusSoup(File soup, int nu, int nv) throws IOException
+	{
+		double [][] v = new double[nu * nv][];
+		for (int i = 0; i < nu; i++)
+		{
+			double u = 2.0 * Math.PI * i / nu;
+			for (int j = 0; j < nv; j++)
+			{
+				double w = 2.0 * Math.PI * j / nv;
+				double r = 3.0 + Math.cos(w);
+				v[i * nv + j] = new double[] { r * Math.cos(u), r * Math.sin(u), Math.sin(w) };
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(soup)));
+		for (int i = 0; i < nu; i++)
+		{
+			int i1 = (i + 1) % nu;
+			for (int j = 0; j < nv; j++)
+			{
+				int j1 = (j + 1) % nv;
+				int [][] triangles = new int[][] {
+					{ i * nv + j, i1 * nv + j, i * nv + j1 },
+					{ i1 * nv + j, i1 * nv + j1, i * nv + j1 } };
+				for (int [] t : triangles)
+				{
+					for (int k : t)
+						for (int c = 0; c < 3; c++)
+							out.writeDouble(v[k][c]);
+					out.writeInt(1);
+					out.writeInt(0);
+				}
+			}
+		}
+		out.close();
+	}
+
+	@BeforeClass public static void createOEMM() throws IOException
+	{
+		dir = File.createTempFile("oemm", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+		writeTorusSoup(new File(dir, "soup"), 150, 50);
+		RawStorageTest.buildOEMM(dir, null);
+		oemm = Storage.readOEMMStructure(new File(dir, "oemm").getPath());
+		assertFalse(LevelOfDetail.exists(oemm));
+		LevelOfDetail.build(oemm, 3, 4);
+		assertTrue(LevelOfDetail.exists(oemm));
+		lod = new LevelOfDetail(oemm);
+	}
+
+	@AfterClass public static void deleteOEMM()
+	{
+		RawStorageTest.deleteDir(dir);
+	}
+
+	@Test public void levels()
+	{
+		boolean decimated = false;
+		for (int i = 0; i < oemm.getNumberOfLeaves(); i++)
+		{
+			assertEquals(oemm.leaves[i].tn, lod.getNumberOfTriangles(i, 0));
+			assertEquals(0.0, lod.getError(i, 0), 0.0);
+			for (int l = 1; l < lod.getNumberOfLevels(i); l++)
+			{
+				decimated = true;
+				assertTrue(lod.getNumberOfTriangles(i, l) < lod.getNumberOfTriangles(i, l - 1));
+				assertTrue(lod.getError(i, l) > lod.getError(i, l - 1));
+			}
+			for (int l = 0; l < lod.getNumberOfLevels(i); l++)
+			{
+				LevelOfDetail.Level level = lod.read(i, l);
+				assertEquals(3 * lod.getNumberOfVertices(i, l), level.coords.length);
+				assertEquals(3 * lod.getNumberOfTriangles(i, l), level.triangles.length);
+			}
+		}
+		assertTrue(decimated);
+	}
+
+	// Merges vertices of all leaves by their coordinates, and checks that
+	// every edge is shared by exactly two triangles.
+	private static void checkClosed(int [] levels)
+	{
+		Map<String, Integer> vertexIds = new HashMap<String, Integer>();
+		Map<Long, Integer> edges = new HashMap<Long, Integer>();
+		for (int i = 0; i < levels.length; i++)
+		{
+			LevelOfDetail.Level level = lod.read(i, levels[i]);
+			int [] ids = new int[level.coords.length / 3];
+			for (int j = 0; j < ids.length; j++)
+			{
+				String key = level.coords[3*j]+" "+level.coords[3*j+1]+" "+level.coords[3*j+2];
+				Integer id = vertexIds.get(key);
+				if (id == null)
+				{
+					id = Integer.valueOf(vertexIds.size());
+					vertexIds.put(key, id);
+				}
+				ids[j] = id.intValue();
+			}
+			for (int t = 0; t < level.triangles.length; t += 3)
+			{
+				for (int j = 0; j < 3; j++)
+				{
+					int v1 = ids[level.triangles[t+j]];
+					int v2 = ids[level.triangles[t+(j+1)%3]];
+					if (v1 == v2)
+						continue;
+					Long key = Long.valueOf(((long) Math.min(v1, v2) << 32) | Math.max(v1, v2));
+					Integer cnt = edges.get(key);
+					edges.put(key, Integer.valueOf(cnt == null ? 1 : cnt.intValue() + 1));
+				}
+			}
+		}
+		for (Map.Entry<Long, Integer> e : edges.entrySet())
+			assertEquals("Edge "+e.getKey(), 2, e.getValue().intValue());
+	}
+
+	@Test public void noCracks()
+	{
+		int n = oemm.getNumberOfLeaves();
+		int [] levels = new int[n];
+		checkClosed(levels);
+		// Coarsest levels
+		for (int i = 0; i < n; i++)
+			levels[i] = lod.getNumberOfLevels(i) - 1;
+		checkClosed(levels);
+		// Alternate finest and coarsest levels
+		for (int i = 0; i < n; i += 2)
+			levels[i] = 0;
+		checkClosed(levels);
+	}
+}
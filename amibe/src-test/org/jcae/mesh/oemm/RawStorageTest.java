@@ -0,0 +1,181 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.oemm;
+
+import org.jcae.mesh.amibe.util.WorkerPool;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class RawStorageTest
+{
+	private static final int LEVEL = 5;
+	private static final int MAX_TRIANGLES = 400;
+
+	// Writes a triangulated sphere into a triangle soup.  Triangles
+	// of each slice belong to distinct groups.
+	static void writeSphereSoup(File soup, int nu, int nv) throws IOException
+	{
+		double [][] v = new double[nu * (nv + 1)][];
+		for (int i = 0; i < nu; i++)
+		{
+			double u = 2.0 * Math.PI * i / nu;
+			for (int j = 0; j <= nv; j++)
+			{
+				double w = Math.PI * j / nv - 0.5 * Math.PI;
+				v[i * (nv + 1) + j] = new double[] {
+					Math.cos(w) * Math.cos(u),
+					Math.cos(w) * Math.sin(u),
+					Math.sin(w) };
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(soup)));
+		for (int i = 0; i < nu; i++)
+		{
+			int i1 = (i + 1) % nu;
+			for (int j = 0; j < nv; j++)
+			{
+				writeTriangle(out, v[i * (nv + 1) + j], v[i1 * (nv + 1) + j], v[i * (nv + 1) + j + 1], i + 1);
+				writeTriangle(out, v[i1 * (nv + 1) + j], v[i1 * (nv + 1) + j + 1], v[i * (nv + 1) + j + 1], i + 1);
+			}
+		}
+		out.close();
+	}
+
+	private static void writeTriangle(DataOutputStream out, double [] p0, double [] p1, double [] p2, int group)
+		throws IOException
+	{
+		for (double [] p : new double[][] { p0, p1, p2 })
+			for (int k = 0; k < 3; k++)
+				out.writeDouble(p[k]);
+		out.writeInt(group);
+		out.writeInt(0);
+	}
+
+	static void buildOEMM(File dir, WorkerPool pool)
+	{
+		String soupFile = new File(dir, "soup").getPath();
+		OEMM oemm = new OEMM(LEVEL);
+		if (!RawStorage.countTriangles(oemm, soupFile, true, pool))
+			assertTrue(RawStorage.countTriangles(oemm, soupFile, true, pool));
+		Aggregate.compute(oemm, MAX_TRIANGLES);
+		RawStorage.dispatch(oemm, soupFile, new File(dir, "dispatched").getPath(),
+			new File(dir, "dispatched.data").getPath(), pool);
+		RawStorage.indexOEMM(new File(dir, "dispatched").getPath(), new File(dir, "oemm").getPath(), pool);
+	}
+
+	private static void readFiles(File root, String prefix, Map<String, byte[]> ret) throws IOException
+	{
+		for (File f : root.listFiles())
+		{
+			String name = prefix + f.getName();
+			if (f.isDirectory())
+				readFiles(f, name + "/", ret);
+			else
+			{
+				byte [] content = new byte[(int) f.length()];
+				FileInputStream in = new FileInputStream(f);
+				int offset = 0;
+				while (offset < content.length)
+					offset += in.read(content, offset, content.length - offset);
+				in.close();
+				ret.put(name, content);
+			}
+		}
+	}
+
+	static void deleteDir(File dir)
+	{
+		for (File f : dir.listFiles())
+		{
+			if (f.isDirectory())
+				deleteDir(f);
+			else
+				f.delete();
+		}
+		dir.delete();
+	}
+
+	// Parallel builder must write the same files as the sequential one,
+	// whatever the number of threads is.
+	@Test public void parallelBuild() throws IOException
+	{
+		File dir = File.createTempFile("oemm", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+		try
+		{
+			writeSphereSoup(new File(dir, "soup"), 120, 60);
+			buildOEMM(dir, null);
+			Map<String, byte[]> expected = new TreeMap<String, byte[]>();
+			readFiles(dir, "", expected);
+			assertTrue(expected.size() > 10);
+			for (int threads = 1; threads <= 3; threads += 2)
+			{
+				deleteDir(new File(dir, "oemm"));
+				WorkerPool pool = new WorkerPool(threads);
+				try
+				{
+					buildOEMM(dir, pool);
+				}
+				finally
+				{
+					pool.shutdown();
+				}
+				Map<String, byte[]> files = new TreeMap<String, byte[]>();
+				readFiles(dir, "", files);
+				assertEquals(expected.keySet(), files.keySet());
+				for (Map.Entry<String, byte[]> e : expected.entrySet())
+					assertTrue("File "+e.getKey()+" differs with "+threads+" threads",
+						Arrays.equals(e.getValue(), files.get(e.getKey())));
+			}
+			OEMM oemm = Storage.readOEMMStructure(new File(dir, "oemm").getPath());
+			// Count triangles of an existing OEMM
+			String soupFile = new File(dir, "soup").getPath();
+			RawStorage.countTriangles(oemm, soupFile, false);
+			int [] expectedCount = new int[oemm.getNumberOfLeaves()];
+			for (int i = 0; i < expectedCount.length; i++)
+				expectedCount[i] = oemm.leaves[i].tn;
+			WorkerPool pool = new WorkerPool(3);
+			try
+			{
+				assertTrue(RawStorage.countTriangles(oemm, soupFile, false, pool));
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+			for (int i = 0; i < expectedCount.length; i++)
+				assertEquals(expectedCount[i], oemm.leaves[i].tn);
+		}
+		finally
+		{
+			deleteDir(dir);
+		}
+	}
+}
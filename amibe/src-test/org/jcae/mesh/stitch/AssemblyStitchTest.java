@@ -0,0 +1,214 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2011, by EADS France
+ */
+
+package org.jcae.mesh.stitch;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jcae.mesh.amibe.algos3d.Fuse;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AssemblyStitch}.
+ */
+public class AssemblyStitchTest {
+
+	/** Add a plate meshed with n x n quads */
+	private void addPlate(Mesh mesh, double[] origin, double[] u, double[] v,
+		int n, int group)
+	{
+		Vertex[][] vs = new Vertex[n + 1][n + 1];
+		for(int i = 0; i <= n; i++)
+		{
+			for(int j = 0; j <= n; j++)
+			{
+				double a = (double) i / n;
+				double b = (double) j / n;
+				vs[i][j] = mesh.createVertex(
+					origin[0] + a * u[0] + b * v[0],
+					origin[1] + a * u[1] + b * v[1],
+					origin[2] + a * u[2] + b * v[2]);
+			}
+		}
+		for(int i = 0; i < n; i++)
+		{
+			for(int j = 0; j < n; j++)
+			{
+				Triangle t1 = mesh.createTriangle(vs[i][j], vs[i+1][j], vs[i+1][j+1]);
+				Triangle t2 = mesh.createTriangle(vs[i][j], vs[i+1][j+1], vs[i][j+1]);
+				t1.setGroupId(group);
+				t2.setGroupId(group);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+		if(group > 0)
+			mesh.setGroupName(group, Integer.toString(group));
+	}
+
+	/**
+	 * Create 2 floors with 2 vertical plates standing slightly above each
+	 * of them, and a far plate.
+	 */
+	private Mesh createAssembly()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		double[] x = new double[]{2, 0, 0};
+		double[] y = new double[]{0, 2, 0};
+		double[] z = new double[]{0, 0, 1};
+		int group = 1;
+		for(double x0: new double[]{0, 5})
+		{
+			addPlate(mesh, new double[]{x0, 0, 0}, x, y, 8, group++);
+			addPlate(mesh, new double[]{x0 + 0.55, 0, 0.02}, y, z, 5, group++);
+			addPlate(mesh, new double[]{x0 + 1.45, 0, 0.02}, y, z, 7, group++);
+		}
+		addPlate(mesh, new double[]{20, 20, 20}, x, y, 2, group);
+		return mesh;
+	}
+
+	private List<String> dump(Mesh mesh)
+	{
+		List<String> toReturn = new ArrayList<String>();
+		for(Triangle t: mesh.getTriangles())
+		{
+			StringBuilder sb = new StringBuilder();
+			sb.append(t.getGroupId());
+			for(int i = 0; i < 3; i++)
+				sb.append(' ').append(t.getV(i).getX()).append(' ')
+					.append(t.getV(i).getY()).append(' ').append(t.getV(i).getZ());
+			toReturn.add(sb.toString());
+		}
+		Collections.sort(toReturn);
+		return toReturn;
+	}
+
+	private Mesh stitch(int threads, AssemblyStitch[] out)
+	{
+		Mesh mesh = createAssembly();
+		AssemblyStitch as = new AssemblyStitch(mesh);
+		as.setMaxDistance(0.1);
+		as.setTolerance(0.01);
+		as.setThreads(threads);
+		as.compute();
+		out[0] = as;
+		return mesh;
+	}
+
+	/**
+	 * Previous implementation of NonManifoldStitch.stitch, which stitches
+	 * all pairs of groups sequentially.
+	 */
+	private void stitchAllPairs(Mesh mesh, double maxDist, double cleanTol)
+	{
+		int nbGroup = mesh.getNumberOfGroups();
+		TDoubleArrayList tmpCoords = new TDoubleArrayList();
+		TIntArrayList tmpTria = new TIntArrayList();
+		for(int gid1 = 1; gid1 < nbGroup; gid1++)
+		{
+			Mesh workingMesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+			tmpTria.clear();
+			tmpCoords.clear();
+			mesh.popGroup(tmpCoords, tmpTria, null, gid1);
+			workingMesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid1);
+			for(int gid2 = gid1+1; gid2 <= nbGroup; gid2++)
+			{
+				tmpTria.clear();
+				tmpCoords.clear();
+				mesh.popGroup(tmpCoords, tmpTria, null, gid2);
+				workingMesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid2);
+
+				workingMesh.clearAdjacency();
+				workingMesh.buildAdjacency();
+				NonManifoldStitch nms = new NonManifoldStitch(workingMesh);
+				nms.setMaxDistance(maxDist);
+				nms.setTolerance(cleanTol);
+				nms.stitchBoth(gid1, gid2, 0);
+
+				tmpTria.clear();
+				tmpCoords.clear();
+				workingMesh.popGroup(tmpCoords, tmpTria, null, gid2);
+				mesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid2);
+			}
+			tmpTria.clear();
+			tmpCoords.clear();
+			workingMesh.popGroup(tmpCoords, tmpTria, null, gid1);
+			mesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid1);
+		}
+		new Fuse(mesh, cleanTol).compute();
+	}
+
+	@Test public void testPairs()
+	{
+		AssemblyStitch[] as = new AssemblyStitch[1];
+		Mesh mesh = stitch(1, as);
+		// Vertical plates are only stitched to their floor
+		assertEquals(4, as[0].getNumberOfPairs());
+		assertEquals(2, as[0].getNumberOfRounds());
+		assertTrue(as[0].getStitchTime() >= 0);
+		// Floors are split along vertical plates
+		assertTrue(mesh.getTriangles().size() > 2 * (2 * (64 + 25 + 49) + 4));
+	}
+
+	@Test public void testThreads()
+	{
+		AssemblyStitch[] as = new AssemblyStitch[1];
+		assertEquals(dump(stitch(1, as)), dump(stitch(3, as)));
+	}
+
+	@Test public void testSameAsAllPairs()
+	{
+		AssemblyStitch[] as = new AssemblyStitch[1];
+		Mesh expected = createAssembly();
+		stitchAllPairs(expected, 0.1, 0.01);
+		assertEquals(dump(expected), dump(stitch(2, as)));
+	}
+
+	/** Triangles outside groups 1 to getNumberOfGroups() are not stitched */
+	@Test public void testIgnoredGroups()
+	{
+		Mesh mesh = createAssembly();
+		addPlate(mesh, new double[]{0.95, 0, 0.02}, new double[]{0, 2, 0},
+			new double[]{0, 0, 1}, 3, 0);
+		List<String> before = new ArrayList<String>();
+		for(String s: dump(mesh))
+			if(s.startsWith("0 "))
+				before.add(s);
+		AssemblyStitch as = new AssemblyStitch(mesh);
+		as.setMaxDistance(0.1);
+		as.setTolerance(0.01);
+		as.compute();
+		List<String> after = new ArrayList<String>();
+		for(String s: dump(mesh))
+			if(s.startsWith("0 "))
+				after.add(s);
+		assertEquals(18, before.size());
+		assertEquals(before, after);
+		assertEquals(4, as.getNumberOfPairs());
+	}
+}
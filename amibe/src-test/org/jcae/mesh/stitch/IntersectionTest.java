@@ -0,0 +1,90 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2013, by EADS France
+ */
+package org.jcae.mesh.stitch;
+
+import java.util.List;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.projection.TriangleKdTree;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntersectionTest {
+	private static final int N = 40;
+
+	/** Add a NxN grid of the z=0 plane if vertical is false, x=0.51 otherwise */
+	private static void addGrid(Mesh mesh, boolean vertical, int group)
+	{
+		Vertex[] v = new Vertex[(N + 1) * (N + 1)];
+		for(int j = 0; j <= N; j++)
+		{
+			for(int i = 0; i <= N; i++)
+			{
+				double a = (double) i / N, b = (double) j / N;
+				if(vertical)
+					v[j * (N + 1) + i] = mesh.createVertex(0.51, a, b - 0.505);
+				else
+					v[j * (N + 1) + i] = mesh.createVertex(a, b, 0.0);
+			}
+		}
+		for(int j = 0; j < N; j++)
+		{
+			for(int i = 0; i < N; i++)
+			{
+				int k = j * (N + 1) + i;
+				Triangle t1 = mesh.createTriangle(v[k], v[k + 1], v[k + N + 2]);
+				Triangle t2 = mesh.createTriangle(v[k], v[k + N + 2], v[k + N + 1]);
+				t1.setGroupId(group);
+				t2.setGroupId(group);
+				mesh.add(t1);
+				mesh.add(t2);
+			}
+		}
+	}
+
+	@Test public void threads()
+	{
+		Mesh mesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		addGrid(mesh, false, 0);
+		addGrid(mesh, true, 1);
+		TriangleKdTree kdTree = new TriangleKdTree(mesh);
+		Intersection inter = new Intersection(mesh, kdTree);
+		inter.setThreads(1);
+		List<Vertex> expected = inter.intersect(0, 1, 1e-6);
+		assertFalse(expected.isEmpty());
+		inter.setThreads(4);
+		List<Vertex> beams = inter.intersect(0, 1, 1e-6);
+		assertEquals(expected.size(), beams.size());
+		for(int i = 0; i < beams.size(); i++)
+		{
+			assertEquals(expected.get(i).getX(), beams.get(i).getX(), 0.0);
+			assertEquals(expected.get(i).getY(), beams.get(i).getY(), 0.0);
+			assertEquals(expected.get(i).getZ(), beams.get(i).getZ(), 0.0);
+		}
+		// Intersection line is x=0.51, z=0
+		for(Vertex v: beams)
+		{
+			assertEquals(0.51, v.getX(), 1e-9);
+			assertEquals(0.0, v.getZ(), 1e-9);
+		}
+	}
+}
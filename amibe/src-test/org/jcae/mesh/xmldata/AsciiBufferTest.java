@@ -0,0 +1,93 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AsciiBufferTest
+{
+	private static final NumberFormat FORMAT_D25_16 = new MeshExporter.FormatD25_16();
+	private static final NumberFormat FORMAT_I10 = new MeshExporter.FormatI10();
+
+	// Compare bytes written into a PrintStream
+	private static void assertBytes(String message, String expected, AsciiBuffer b)
+		throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		b.writeTo(out);
+		assertArrayEquals(message, expected.getBytes(), out.toByteArray());
+	}
+
+	private static void checkD25_16(double v) throws IOException
+	{
+		AsciiBuffer b = new AsciiBuffer(32);
+		b.appendD25_16(v);
+		assertBytes("Value: "+v, FORMAT_D25_16.format(v), b);
+	}
+
+	@Test public void specialD25_16() throws IOException
+	{
+		double [] values = {
+			0.0, -0.0, 1.0, -1.0, 0.1, 1.0/3.0, -2.0/3.0, 10.0, 99.5, 1e-3,
+			1e7, 123456789.0, 1E-24, 15E24, 1e99, 1e100, 1e-99, 1e-100,
+			2e23, 4.35e-5, Double.MAX_VALUE, -Double.MAX_VALUE,
+			Double.MIN_VALUE, Double.MIN_NORMAL,
+			Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN
+		};
+		for (double v : values)
+			checkD25_16(v);
+	}
+
+	@Test public void randomD25_16() throws IOException
+	{
+		Random rand = new Random(1234L);
+		for (int i = 0; i < 100000; i++)
+		{
+			checkD25_16(rand.nextGaussian() * Math.pow(10.0, rand.nextInt(40) - 20));
+			checkD25_16(Double.longBitsToDouble(rand.nextLong()));
+		}
+	}
+
+	@Test public void formatI10() throws IOException
+	{
+		long [] values = { 0L, 1L, -1L, 42L, 999999999L, 1000000000L, -99999999L, -999999999L };
+		for (long v : values)
+		{
+			AsciiBuffer b = new AsciiBuffer(32);
+			b.appendI10(v);
+			assertBytes("Value: "+v, FORMAT_I10.format(v), b);
+		}
+	}
+
+	@Test public void concatenation() throws IOException
+	{
+		AsciiBuffer b = new AsciiBuffer(1);
+		b.append("   ").append(Long.MIN_VALUE).append(' ').append(-17L).append(' ');
+		b.append(0.1).append(' ').append(-1.5e-12).append(" \u00e9t\u00e9").newLine();
+		assertBytes(null, "   "+Long.MIN_VALUE+" "+(-17L)+" "+0.1+" "+(-1.5e-12)+" \u00e9t\u00e9"+
+			System.getProperty("line.separator"), b);
+	}
+}
@@ -0,0 +1,90 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AsciiNumbersTest
+{
+	private static void checkDouble(String s)
+	{
+		byte [] b = s.getBytes();
+		double expected = Double.parseDouble(s.replace('D', 'E'));
+		double value = AsciiNumbers.parseDouble(ByteBuffer.wrap(b), 0, b.length);
+		assertEquals(s, Double.doubleToRawLongBits(expected), Double.doubleToRawLongBits(value));
+	}
+
+	private static int parseInt(String s)
+	{
+		byte [] b = s.getBytes();
+		return AsciiNumbers.parseInt(ByteBuffer.wrap(b), 0, b.length);
+	}
+
+	@Test public void specialDoubles()
+	{
+		String [] values = {
+			"0", "-0.0", "1", "+1.5", ".5", "5.", "1.0000000000000000D+00",
+			"-4.3500000000000000D-05", "1.0E308", "1.7976931348623157E308",
+			"2.2250738585072014E-308", "4.9E-324", "1e-400", "1e400",
+			"9007199254740993", "1.00000000000000000000001", "1e23",
+			"123456789012345678", "Infinity", "-NaN", "1.0d"
+		};
+		for (String s : values)
+			checkDouble(s);
+	}
+
+	@Test(expected=NumberFormatException.class) public void invalidDouble()
+	{
+		checkDouble("1.0D");
+	}
+
+	@Test public void randomDoubles()
+	{
+		Random rand = new Random(1234L);
+		MeshExporter.FormatD25_16 format = new MeshExporter.FormatD25_16();
+		for (int i = 0; i < 100000; i++)
+		{
+			double d = Double.longBitsToDouble(rand.nextLong());
+			if (Double.isNaN(d) || Double.isInfinite(d))
+				continue;
+			checkDouble(Double.toString(d));
+			checkDouble(format.format(d).trim());
+			checkDouble(format.format(rand.nextGaussian() * Math.pow(10.0, rand.nextInt(30) - 15)).trim());
+		}
+	}
+
+	@Test public void integers()
+	{
+		assertEquals(0, parseInt("0"));
+		assertEquals(-12, parseInt("-12"));
+		assertEquals(12, parseInt("+12"));
+		assertEquals(Integer.MAX_VALUE, parseInt(Integer.toString(Integer.MAX_VALUE)));
+		assertEquals(Integer.MIN_VALUE, parseInt(Integer.toString(Integer.MIN_VALUE)));
+	}
+
+	@Test(expected=NumberFormatException.class) public void invalidInteger()
+	{
+		parseInt("12a");
+	}
+}
@@ -0,0 +1,251 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.jcae.mesh.xmldata.AmibeReader.SubMesh;
+import org.xml.sax.SAXException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CompressedChunksTest
+{
+	private File dir;
+
+	@Before public void createDir() throws IOException
+	{
+		dir = File.createTempFile("compressed", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+	}
+
+	@After public void deleteDir()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		File [] files = f.listFiles();
+		if (files != null)
+		{
+			for (File c : files)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private static DataOutputStream create(File f, int elementSize, int stride)
+		throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(
+			new CompressedOutputStream(f, elementSize, stride)));
+	}
+
+	@Test public void testInts() throws IOException
+	{
+		// More than 2 chunks, with small and large deltas
+		int n = 2 * CompressedChunks.CHUNK_RECORDS + 123;
+		int [] values = new int[n];
+		Random rand = new Random(1L);
+		for (int i = 0; i < n; i++)
+			values[i] = (i % 7 == 0 ? rand.nextInt() : i / 3 + rand.nextInt(10) - 5);
+		values[0] = Integer.MIN_VALUE;
+		values[1] = Integer.MAX_VALUE;
+		values[2] = -1;
+		File f = new File(dir, "ints.bin" + CompressedChunks.SUFFIX);
+		DataOutputStream out = create(f, 4, 1);
+		for (int v : values)
+			out.writeInt(v);
+		out.close();
+
+		IntFileReader reader = new PrimitiveFileReaderFactory().getIntReader(
+			new File(dir, "ints.bin"));
+		assertTrue(reader instanceof IntFileReaderByChunks);
+		assertEquals(n, reader.size());
+		for (int i = 0; i < n; i++)
+			assertEquals(values[i], reader.get());
+		assertTrue(reader.isEOF());
+		for (int i = n - 1; i >= 0; i -= 997)
+			assertEquals(values[i], reader.get(i));
+		int [] dst = new int[CompressedChunks.CHUNK_RECORDS + 10];
+		int start = CompressedChunks.CHUNK_RECORDS - 5;
+		assertEquals(dst.length, reader.get(start, dst));
+		for (int i = 0; i < dst.length; i++)
+			assertEquals(values[start + i], dst[i]);
+		assertEquals(values[start + dst.length], reader.get());
+		assertEquals(n - 100, reader.get(100, new int[n]));
+		reader.close();
+	}
+
+	@Test public void testDoubles() throws IOException
+	{
+		int n = CompressedChunks.CHUNK_RECORDS + 7;
+		double [] values = new double[3 * n];
+		Random rand = new Random(2L);
+		for (int i = 0; i < values.length; i++)
+			values[i] = 100.0 * rand.nextGaussian();
+		values[0] = Double.NaN;
+		values[1] = -0.0;
+		values[2] = Double.NEGATIVE_INFINITY;
+		values[3] = Double.MIN_VALUE;
+		File f = new File(dir, "doubles.bin" + CompressedChunks.SUFFIX);
+		DataOutputStream out = create(f, 8, 3);
+		for (double v : values)
+			out.writeDouble(v);
+		out.close();
+
+		DoubleFileReader reader = new PrimitiveFileReaderFactory().getDoubleReader(f);
+		assertEquals(values.length, reader.size());
+		double [] dst = new double[values.length];
+		assertEquals(values.length, reader.get(dst));
+		for (int i = 0; i < values.length; i++)
+			assertEquals(Double.doubleToRawLongBits(values[i]),
+				Double.doubleToRawLongBits(dst[i]));
+		double [] coords = new double[3];
+		reader.get(3 * (n - 1), coords);
+		assertEquals(values[3 * n - 1], coords[2], 0.0);
+		reader.close();
+	}
+
+	@Test public void testEmpty() throws IOException
+	{
+		File f = new File(dir, "empty.bin" + CompressedChunks.SUFFIX);
+		create(f, 4, 1).close();
+		IntFileReader reader = new PrimitiveFileReaderFactory().getIntReader(f);
+		assertEquals(0, reader.size());
+		assertTrue(reader.isEOF());
+		assertEquals(0, reader.get(new int[4]));
+		reader.close();
+	}
+
+	private static int countWorkers() throws InterruptedException
+	{
+		// Threads of a pool which has been shut down terminate shortly
+		int ret = 0;
+		for (int k = 0; k < 100; k++)
+		{
+			ret = 0;
+			for (Thread t : Thread.getAllStackTraces().keySet())
+			{
+				if (t.isAlive() && t.getName().startsWith("amibe-worker-"))
+					ret++;
+			}
+			if (ret == 0)
+				break;
+			Thread.sleep(20L);
+		}
+		return ret;
+	}
+
+	@Test public void testThreadsReleased() throws IOException, InterruptedException
+	{
+		int workers = countWorkers();
+		int n = 3 * CompressedChunks.CHUNK_RECORDS;
+		File f = new File(dir, "ints.bin" + CompressedChunks.SUFFIX);
+		DataOutputStream out = create(f, 4, 1);
+		for (int i = 0; i < n; i++)
+			out.writeInt(i);
+		out.close();
+		assertEquals(workers, countWorkers());
+
+		// Reading the last chunk releases threads
+		IntFileReader reader = new PrimitiveFileReaderFactory().getIntReader(f);
+		for (int i = 0; i < n; i++)
+			assertEquals(i, reader.get());
+		assertEquals(workers, countWorkers());
+		// Random access decodes again, close releases threads
+		assertEquals(5, reader.get(5));
+		reader.close();
+		assertEquals(workers, countWorkers());
+	}
+
+	@Test public void testAmibe() throws IOException, SAXException
+	{
+		File raw = new File(dir, "raw");
+		File compressed = new File(dir, "compressed");
+		int n = 30;
+		for (File d : new File[]{raw, compressed})
+		{
+			AmibeWriter.Dim3 out = new AmibeWriter.Dim3(d.getPath(), false,
+				false, d == compressed);
+			for (int i = 0; i <= n; i++)
+			{
+				out.addNode(i, 0.0, 0.1 * i);
+				out.addNode(i, 1.0, 0.1 * i);
+			}
+			for (int i = 0; i < n; i++)
+			{
+				out.addTriangle(2 * i, 2 * i + 2, 2 * i + 1);
+				out.addTriangle(2 * i + 2, 2 * i + 3, 2 * i + 1);
+			}
+			out.addBeam(0, 2);
+			out.nextGroup("first");
+			for (int i = 0; i < n; i++)
+				out.addTriaToGroup(i);
+			out.addBeamToGroup(0);
+			out.nextGroup("second");
+			for (int i = n; i < 2 * n; i++)
+				out.addTriaToGroup(i);
+			out.finish();
+		}
+		assertTrue(new File(compressed, "jcae3d.files/nodes3d.bin" + CompressedChunks.SUFFIX).exists());
+		assertFalse(new File(compressed, "jcae3d.files/nodes3d.bin").exists());
+
+		SubMesh smR = new AmibeReader.Dim3(raw.getPath()).getSubmeshes().get(0);
+		SubMesh smC = new AmibeReader.Dim3(compressed.getPath()).getSubmeshes().get(0);
+		assertEquals(smR.getNumberOfNodes(), smC.getNumberOfNodes());
+		assertEquals(smR.getNumberOfTrias(), smC.getNumberOfTrias());
+		for (String name : new String[]{"first", "second"})
+		{
+			AmibeReader.Group gR = smR.getGroup(name);
+			AmibeReader.Group gC = smC.getGroup(name);
+			assertArrayEquals(gR.readTria3(), gC.readTria3());
+			assertArrayEquals(gR.readBeams(), gC.readBeams());
+			int [] ids = gC.readTria3Ids();
+			assertArrayEquals(smR.readNodes(ids), smC.readNodes(ids), 0.0f);
+		}
+
+		MappedMesh mR = smR.getMappedMesh();
+		MappedMesh mC = smC.getMappedMesh();
+		assertEquals(mR.getNumberOfNodes(), mC.getNumberOfNodes());
+		for (int i = 0; i < mR.getNumberOfNodes(); i++)
+			for (int c = 0; c < 3; c++)
+				assertEquals(mR.getCoordinate(i, c), mC.getCoordinate(i, c), 0.0);
+		MappedMesh gR = mR.getGroup(smR.getGroup("second"));
+		MappedMesh gC = mC.getGroup(smC.getGroup("second"));
+		assertEquals(n, gC.getNumberOfTriangles());
+		for (int i = 0; i < n; i++)
+		{
+			assertEquals(gR.getTriangleId(i), gC.getTriangleId(i));
+			for (int j = 0; j < 3; j++)
+				assertEquals(gR.getTriangleVertex(i, j), gC.getTriangleVertex(i, j));
+		}
+		gR.close();
+		gC.close();
+		mR.close();
+		mC.close();
+	}
+}
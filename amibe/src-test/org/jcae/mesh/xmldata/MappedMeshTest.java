@@ -0,0 +1,143 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+import org.jcae.mesh.xmldata.AmibeReader.SubMesh;
+import org.xml.sax.SAXException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MappedMeshTest
+{
+	private File dir;
+
+	@Before public void createMesh() throws IOException
+	{
+		dir = File.createTempFile("mappedmesh", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+		// A strip of 2*n triangles, split into 2 groups
+		int n = 50;
+		AmibeWriter.Dim3 out = new AmibeWriter.Dim3(dir.getPath());
+		for (int i = 0; i <= n; i++)
+		{
+			out.addNode(i, 0.0, 0.5 * i);
+			out.addNode(i, 1.0, 0.5 * i);
+		}
+		for (int i = 0; i < n; i++)
+		{
+			out.addTriangle(2 * i, 2 * i + 2, 2 * i + 1);
+			out.addTriangle(2 * i + 2, 2 * i + 3, 2 * i + 1);
+		}
+		out.nextGroup("even");
+		for (int i = 0; i < 2 * n; i += 2)
+			out.addTriaToGroup(i);
+		out.nextGroup("odd");
+		for (int i = 1; i < 2 * n; i += 2)
+			out.addTriaToGroup(i);
+		out.finish();
+	}
+
+	@After public void deleteDir()
+	{
+		File [] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+			{
+				File [] sub = f.listFiles();
+				if (sub != null)
+				{
+					for (File s : sub)
+						s.delete();
+				}
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test public void testWholeMesh() throws IOException, SAXException
+	{
+		SubMesh sm = new AmibeReader.Dim3(dir.getPath()).getSubmeshes().get(0);
+		MappedMesh mesh = sm.getMappedMesh();
+		assertEquals(3, mesh.getDimension());
+		assertEquals(sm.getNumberOfNodes(), mesh.getNumberOfNodes());
+		assertEquals(sm.getNumberOfTrias(), mesh.getNumberOfTriangles());
+		DoubleFileReader nodes = sm.getNodes();
+		double [] coords = new double[3];
+		for (int i = 0; i < mesh.getNumberOfNodes(); i++)
+		{
+			mesh.getNode(i, coords);
+			for (int c = 0; c < 3; c++)
+			{
+				double expected = nodes.get();
+				assertEquals(expected, coords[c], 0.0);
+				assertEquals(expected, mesh.getCoordinate(i, c), 0.0);
+			}
+		}
+		nodes.close();
+		IntFileReader trias = sm.getTriangles();
+		int [] vertices = new int[3];
+		for (int i = 0; i < mesh.getNumberOfTriangles(); i++)
+		{
+			assertEquals(i, mesh.getTriangleId(i));
+			mesh.getTriangle(i, vertices);
+			for (int j = 0; j < 3; j++)
+			{
+				int expected = trias.get();
+				assertEquals(expected, vertices[j]);
+				assertEquals(expected, mesh.getTriangleVertex(i, j));
+			}
+		}
+		trias.close();
+		mesh.close();
+	}
+
+	@Test public void testGroups() throws IOException, SAXException
+	{
+		SubMesh sm = new AmibeReader.Dim3(dir.getPath()).getSubmeshes().get(0);
+		MappedMesh mesh = sm.getMappedMesh();
+		for (AmibeReader.Group g : sm.getGroups())
+		{
+			MappedMesh view = mesh.getGroup(g);
+			int [] ids = g.readTria3Ids();
+			int [] expected = g.readTria3();
+			assertEquals(ids.length, view.getNumberOfTriangles());
+			assertEquals(mesh.getNumberOfNodes(), view.getNumberOfNodes());
+			int [] vertices = new int[3];
+			for (int i = 0; i < ids.length; i++)
+			{
+				assertEquals(ids[i], view.getTriangleId(i));
+				view.getTriangle(i, vertices);
+				for (int j = 0; j < 3; j++)
+				{
+					assertEquals(expected[3 * i + j], vertices[j]);
+					assertEquals(expected[3 * i + j], view.getTriangleVertex(i, j));
+				}
+			}
+			view.close();
+		}
+		mesh.close();
+	}
+}
@@ -0,0 +1,222 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.text.NumberFormat;
+import org.xml.sax.SAXException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class UNV2AmibeTest
+{
+	private static final NumberFormat FORMAT_D25_16 = new MeshExporter.FormatD25_16();
+	private static final NumberFormat FORMAT_I10 = new MeshExporter.FormatI10();
+	private File dir;
+
+	@Before public void createDir() throws IOException
+	{
+		dir = File.createTempFile("unv2amibe", ".dir");
+		assertTrue(dir.delete() && dir.mkdir());
+	}
+
+	@After public void deleteDir()
+	{
+		delete(dir);
+	}
+
+	private static void delete(File f)
+	{
+		File [] files = f.listFiles();
+		if (files != null)
+		{
+			for (File c : files)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private static String line(int... values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int v : values)
+			sb.append(FORMAT_I10.format(v));
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a mesh with 4 nodes, 2 triangles, a beam, a tetrahedron,
+	 * a group of elements and a group of nodes.
+	 */
+	private static String createUNV(int[] nodes, int[] elements)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("    -1\n   164\n         5mm (milli-newton)            2\n");
+		sb.append("  1.00000000000000000D+03  1.00000000000000000D+03  1.00000000000000000D+00\n");
+		sb.append("  2.73149999999999977D+02\n    -1\n");
+		sb.append("    -1\n  2411\n");
+		double [] coords = { 0.0, 0.0, 0.0, 1.5, 0.0, 0.0, 0.0, -2.25e-3, 0.0, 1.0/3.0, 1e5, 7.0 };
+		for (int i = 0; i < 4; i++)
+		{
+			sb.append(line(nodes[i], 1, 1, 1)).append('\n');
+			for (int k = 0; k < 3; k++)
+				sb.append(FORMAT_D25_16.format(coords[3*i+k]));
+			sb.append('\n');
+		}
+		sb.append("    -1\n    -1\n  2412\n");
+		sb.append(line(elements[0], 91, 1, 1, 1, 3)).append('\n');
+		sb.append(line(nodes[0], nodes[1], nodes[2])).append('\n');
+		sb.append(line(elements[1], 111, 1, 1, 1, 4)).append('\n');
+		sb.append(line(nodes[0], nodes[1], nodes[2], nodes[3])).append('\n');
+		sb.append(line(elements[2], 21, 1, 1, 1, 2)).append('\n');
+		sb.append(line(0, 1, 1)).append('\n');
+		sb.append(line(nodes[2], nodes[3])).append('\n');
+		sb.append(line(elements[3], 91, 1, 1, 1, 3)).append('\n');
+		sb.append(line(nodes[1], nodes[3], nodes[2])).append('\n');
+		sb.append("    -1\n    -1\n  2467\n");
+		sb.append(line(1, 0, 0, 0, 0, 0, 0, 3)).append('\n');
+		sb.append("group1\n");
+		sb.append(line(8, elements[0], 0, 0, 8, elements[3], 0, 0)).append('\n');
+		sb.append(line(8, elements[2], 0, 0)).append('\n');
+		sb.append(line(2, 0, 0, 0, 0, 0, 0, 1)).append('\n');
+		sb.append("group2\n");
+		sb.append(line(7, nodes[3], 0, 0)).append('\n');
+		sb.append("    -1\n");
+		return sb.toString();
+	}
+
+	private File writeUNV(String content) throws IOException
+	{
+		File f = new File(dir, "mesh.unv");
+		PrintStream out = new PrintStream(new FileOutputStream(f));
+		out.print(content);
+		out.close();
+		return f;
+	}
+
+	private AmibeReader.SubMesh read(String path) throws IOException, SAXException
+	{
+		return new AmibeReader.Dim3(path).getSubmeshes().get(0);
+	}
+
+	private static double [] readNodes(AmibeReader.SubMesh sm) throws IOException
+	{
+		DoubleFileReader dfr = sm.getNodes();
+		double [] ret = new double[(int) dfr.size()];
+		dfr.get(ret);
+		dfr.close();
+		return ret;
+	}
+
+	private static int [] readTriangles(AmibeReader.SubMesh sm) throws IOException
+	{
+		IntFileReader ifr = sm.getTriangles();
+		int [] ret = new int[(int) ifr.size()];
+		ifr.get(ret);
+		ifr.close();
+		return ret;
+	}
+
+	@Test public void nonContiguousLabels() throws IOException, SAXException
+	{
+		File unv = writeUNV(createUNV(new int[]{ 10, 20, 30, 40 }, new int[]{ 5, 6, 7, 9 }));
+		String out = new File(dir, "amibe").getPath();
+		UNV2Amibe u = new UNV2Amibe();
+		u.setThreads(2);
+		u.importMesh(unv, out);
+		AmibeReader.SubMesh sm = read(out);
+		double [] nodes = readNodes(sm);
+		assertEquals(12, nodes.length);
+		assertEquals(1.5/1000.0, nodes[3], 0.0);
+		assertEquals(-2.25e-3/1000.0, nodes[7], 0.0);
+		assertEquals(1.0/3.0/1000.0, nodes[9], 0.0);
+		assertArrayEquals(new int[]{ 0, 1, 2, 1, 3, 2 }, readTriangles(sm));
+		AmibeReader.Group g = sm.getGroup("group1");
+		assertArrayEquals(new int[]{ 0, 1 }, g.readTria3Ids());
+		assertArrayEquals(new int[]{ 0 }, g.readBeamsIds());
+		assertArrayEquals(new int[]{ 3 }, sm.getGroup("group2").readNodesIds());
+	}
+
+	@Test public void groupWithVolumeElement() throws IOException, SAXException
+	{
+		// Tetrahedron 6 is not imported and is ignored in group1
+		String content = createUNV(new int[]{ 10, 20, 30, 40 }, new int[]{ 5, 6, 7, 9 });
+		content = content.replace(line(1, 0, 0, 0, 0, 0, 0, 3), line(1, 0, 0, 0, 0, 0, 0, 4));
+		content = content.replace(line(8, 7, 0, 0), line(8, 7, 0, 0, 8, 6, 0, 0));
+		String out = new File(dir, "amibe").getPath();
+		new UNV2Amibe().importMesh(writeUNV(content), out);
+		AmibeReader.Group g = read(out).getGroup("group1");
+		assertArrayEquals(new int[]{ 0, 1 }, g.readTria3Ids());
+		assertArrayEquals(new int[]{ 0 }, g.readBeamsIds());
+	}
+
+	private void importInvalid(String content)
+	{
+		try
+		{
+			new UNV2Amibe().importMesh(writeUNV(content), new File(dir, "amibe").getPath());
+			fail("Unknown label not detected");
+		}
+		catch (IOException ex)
+		{
+			// Expected
+		}
+	}
+
+	@Test public void unknownElementLabel()
+	{
+		String content = createUNV(new int[]{ 10, 20, 30, 40 }, new int[]{ 5, 6, 7, 9 });
+		importInvalid(content.replace(line(8, 7, 0, 0), line(8, 8, 0, 0)));
+	}
+
+	@Test public void unknownNodeLabel()
+	{
+		String content = createUNV(new int[]{ 10, 20, 30, 40 }, new int[]{ 5, 6, 7, 9 });
+		importInvalid(content.replace(line(7, 40, 0, 0), line(7, 41, 0, 0)));
+		importInvalid(content.replace(line(10, 20, 30), line(10, 20, 31)));
+	}
+
+	@Test public void sameAsReader() throws IOException, SAXException
+	{
+		// Labels of triangles and beams must be contiguous
+		String content = createUNV(new int[]{ 1, 2, 3, 4 }, new int[]{ 1, 4, 2, 3 });
+		String out1 = new File(dir, "amibe1").getPath();
+		String out2 = new File(dir, "amibe2").getPath();
+		new UNV2Amibe().importMesh(new BufferedReader(new StringReader(content)), out1);
+		UNV2Amibe u = new UNV2Amibe();
+		u.setThreads(1);
+		u.importMesh(writeUNV(content), out2);
+		AmibeReader.SubMesh sm1 = read(out1);
+		AmibeReader.SubMesh sm2 = read(out2);
+		assertArrayEquals(readNodes(sm1), readNodes(sm2), 0.0);
+		assertArrayEquals(readTriangles(sm1), readTriangles(sm2));
+		assertArrayEquals(sm1.getGroup("group1").readTria3Ids(), sm2.getGroup("group1").readTria3Ids());
+		assertArrayEquals(sm1.getGroup("group1").readBeamsIds(), sm2.getGroup("group1").readBeamsIds());
+		assertArrayEquals(sm1.getGroup("group2").readNodesIds(), sm2.getGroup("group2").readNodesIds());
+	}
+}
@@ -19,6 +19,7 @@
 
 package org.jcae.mesh;
 
+import org.jcae.mesh.oemm.LeafCache;
 import org.jcae.mesh.oemm.OEMM;
 import org.jcae.mesh.oemm.Storage;
 import org.jcae.mesh.oemm.MeshReader;
@@ -32,6 +33,7 @@ import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
 
 import java.util.HashMap;
 import java.util.Map;
+import gnu.trove.iterator.TIntIterator;
 import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.File;
@@ -83,8 +85,19 @@ public class MeshOEMMDecimate
 		oemm.walk(c_proc);
 		logger.info("Decimate all octree nodes");
 		MeshReader reader = new MeshReader(oemm);
+		// Memory budget of leaves cache, in megabytes
+		LeafCache cache = new LeafCache(oemm, Long.getLong("org.jcae.mesh.MeshOEMMDecimate.cacheSize", 256L).longValue() << 20);
+		reader.setCache(cache);
 		DecimateProcedure d_proc = new DecimateProcedure(reader, scale, minimalNumberOfTriangles);
-		oemm.walk(d_proc);
+		try
+		{
+			oemm.walk(d_proc);
+		}
+		finally
+		{
+			cache.shutdown();
+		}
+		logger.info("Leaves read from disk: "+cache.getMisses()+", found in cache: "+cache.getHits());
 	}
 	
 	private static void deleteFiles(File decDir)
@@ -145,6 +158,7 @@ public class MeshOEMMDecimate
 		private final int scale;
 		private final int minTN;
 		private final TIntHashSet leaves = new TIntHashSet();
+		private final TIntHashSet prefetch = new TIntHashSet();
 		private final Map<String, String> options = new HashMap<String, String>();
 		private final MeshTraitsBuilder mtb = new MeshTraitsBuilder();
 		
@@ -206,11 +220,23 @@ public class MeshOEMMDecimate
 		private void process(OEMM oemm)
 		{
 			Mesh amesh = reader.buildMesh(mtb, leaves);
+			// Leaves are visited in increasing order, read next
+			// leaf while this mesh is being decimated.
+			int next = 0;
+			for (TIntIterator it = leaves.iterator(); it.hasNext(); )
+				next = Math.max(next, it.next() + 1);
+			if (next < oemm.getNumberOfLeaves())
+			{
+				prefetch.clear();
+				prefetch.add(next);
+				reader.getCache().prefetch(prefetch);
+			}
 			int nrT = AbstractAlgoHalfEdge.countInnerTriangles(amesh);
 			options.clear();
 			options.put("maxtriangles", ""+(nrT / scale));
 			new QEMDecimateHalfEdge(amesh, options).compute();
 			Storage.saveNodes(oemm, amesh, leaves);
+			reader.getCache().invalidate(leaves);
 		}
 	}
 }
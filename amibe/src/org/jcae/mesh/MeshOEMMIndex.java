@@ -24,6 +24,7 @@ package org.jcae.mesh;
 import org.jcae.mesh.oemm.*;
 import org.jcae.mesh.cad.CADShape;
 import org.jcae.mesh.cad.CADShapeFactory;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import java.util.logging.Logger;
 import java.io.File;
 
@@ -46,23 +47,35 @@ public class MeshOEMMIndex
 			oemm.setBoundingBox(bbox);
 		}
 		String soupFile = soupDir+File.separator+"soup";
-		if (!RawStorage.countTriangles(oemm, soupFile))
+		WorkerPool pool = new WorkerPool(Integer.getInteger("org.jcae.mesh.MeshOEMMIndex.threads",
+			Runtime.getRuntime().availableProcessors()).intValue());
+		try
 		{
-			// Bounding box was invalid and has been fixed
-			// in RawStorage.countTriangles(), we need to
-			// count triangles against the new OEMM.
-			logger.info("Invalid bounding box has been detected");
-			if (!RawStorage.countTriangles(oemm, soupFile))
-				throw new RuntimeException("Fatal error... aborting");
+			if (!RawStorage.countTriangles(oemm, soupFile, true, pool))
+			{
+				// Bounding box was invalid and has been fixed
+				// in RawStorage.countTriangles(), we need to
+				// count triangles against the new OEMM.
+				logger.info("Invalid bounding box has been detected");
+				if (!RawStorage.countTriangles(oemm, soupFile, true, pool))
+					throw new RuntimeException("Fatal error... aborting");
+			}
+			Aggregate.compute(oemm, triangles_max);
+			RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data", pool);
+			RawStorage.indexOEMM("dispatched", outDir, pool);
+		}
+		finally
+		{
+			pool.shutdown();
 		}
-		Aggregate.compute(oemm, triangles_max);
-		RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data");
-		RawStorage.indexOEMM("dispatched", outDir);
 		logger.info("End processing");
 	}
 	
 	/**
-	 * Main method, reads 4 arguments and calls mesh() method
+	 * Main method, reads 4 arguments and calls mesh() method.  The number
+	 * of threads can be set with the
+	 * <code>org.jcae.mesh.MeshOEMMIndex.threads</code> system property,
+	 * it defaults to the number of available processors.
 	 * @param args  an array of String, soup directory, OEMM output directory, max level and maximal numbre of triangles by octant.
 	 */
 	public static void main(String args[])
@@ -0,0 +1,60 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh;
+
+import org.jcae.mesh.oemm.LevelOfDetail;
+import org.jcae.mesh.oemm.OEMM;
+import org.jcae.mesh.oemm.Storage;
+import java.util.logging.Logger;
+
+/**
+ * Computes levels of detail of all leaves of an OEMM, they are used by
+ * viewers to display far octants.
+ */
+public class MeshOEMMLevelOfDetail
+{
+	private static final Logger logger=Logger.getLogger(MeshOEMMLevelOfDetail.class.getName());
+
+	/**
+	 * Main method.
+	 * @param args  an array of String, OEMM directory, maximal number of
+	 * levels (default: 4) and ratio between number of triangles of
+	 * consecutive levels (default: 4).
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: MeshOEMMLevelOfDetail oemm [number of levels [ratio]]");
+			System.exit(0);
+		}
+		int nrLevels = 4;
+		int ratio = 4;
+		if (args.length >= 2)
+			nrLevels = Integer.parseInt(args[1]);
+		if (args.length >= 3)
+			ratio = Integer.parseInt(args[2]);
+		logger.info("Read OEMM structure");
+		OEMM oemm = Storage.readOEMMStructure(args[0]);
+		logger.info("Compute "+nrLevels+" levels of detail");
+		LevelOfDetail.build(oemm, nrLevels, ratio);
+		logger.info("End processing");
+	}
+}
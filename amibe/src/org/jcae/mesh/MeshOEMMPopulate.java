@@ -23,6 +23,7 @@ package org.jcae.mesh;
 import org.jcae.mesh.oemm.OEMM;
 import org.jcae.mesh.oemm.RawStorage;
 import org.jcae.mesh.oemm.Storage;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import java.util.logging.Logger;
 
 /**
@@ -45,15 +46,24 @@ public class MeshOEMMPopulate
 		// Read initial OEMM structure
 		logger.info("Start processing");
 		OEMM oemm = Storage.readOEMMStructure(inOEMM);
-		// Count triangles for this new triangle soup
-		int save_nrLeaves = oemm.getNumberOfLeaves();
-		RawStorage.countTriangles(oemm, soupFile, false);
-		if (oemm.getNumberOfLeaves() != save_nrLeaves)
-			throw new RuntimeException("Octree structure does not fit triangle soup");
-		// Convert triangle soup into an intermediate OEMM file
-		RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data");
-		// Convert intermediate OEMM file into final OEMM
-		RawStorage.indexOEMM("dispatched", outOEMM);
+		WorkerPool pool = new WorkerPool(Integer.getInteger("org.jcae.mesh.MeshOEMMIndex.threads",
+			Runtime.getRuntime().availableProcessors()).intValue());
+		try
+		{
+			// Count triangles for this new triangle soup
+			int save_nrLeaves = oemm.getNumberOfLeaves();
+			RawStorage.countTriangles(oemm, soupFile, false, pool);
+			if (oemm.getNumberOfLeaves() != save_nrLeaves)
+				throw new RuntimeException("Octree structure does not fit triangle soup");
+			// Convert triangle soup into an intermediate OEMM file
+			RawStorage.dispatch(oemm, soupFile, "dispatched", "dispatched.data", pool);
+			// Convert intermediate OEMM file into final OEMM
+			RawStorage.indexOEMM("dispatched", outOEMM, pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 		logger.info("End processing");
 	}
 
@@ -28,9 +28,12 @@ import java.io.PrintStream;
 import java.io.InputStream;
 import java.io.FileInputStream;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.text.SimpleDateFormat;
 
 import org.jcae.mesh.amibe.patch.InitialTriangulationException;
@@ -41,6 +44,7 @@ import org.jcae.mesh.amibe.algos1d.*;
 import org.jcae.mesh.amibe.algos2d.*;
 import org.jcae.mesh.amibe.ds.MMesh1D;
 import org.jcae.mesh.amibe.ds.MeshParameters;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.*;
 import org.jcae.mesh.cad.*;
 import java.util.logging.Logger;
@@ -97,6 +101,8 @@ public class Mesher
 	private int minFace=0;
 	private int maxFace=0;
 	private int numFace=0;
+	/** Number of threads used to mesh edges and faces */
+	private int threads=1;
 		
 	/**
 	 * Read system properties which affect the meshing behavior.
@@ -215,6 +221,16 @@ public class Mesher
 			System.setProperty("org.jcae.mesh.Mesher.quadrangles", quadranglesProp);
 		}
 		quadrangles=quadranglesProp.equals("true");
+		
+		String threadsProp = System.getProperty("org.jcae.mesh.Mesher.threads");
+		if (threadsProp == null)
+		{
+			threadsProp = "1";
+			System.setProperty("org.jcae.mesh.Mesher.threads", threadsProp);
+		}
+		threads=Integer.parseInt(threadsProp);
+		if (threads <= 0)
+			threads = Runtime.getRuntime().availableProcessors();
 	}
 	
 	/**
@@ -229,6 +245,7 @@ public class Mesher
 		options1d.put("size", ""+edgeLength);
 		options1d.put("deflection", ""+deflection);
 		MeshParameters mp = new MeshParameters(options1d);
+		options1d.put("threads", ""+threads);
 		if (deflection <= 0.0)
 			new UniformLength(mesh1D, options1d).compute();
 		else
@@ -286,6 +303,7 @@ public class Mesher
 			new CheckDelaunay(mesh).compute();
 			if (mp.hasDeflection() && !mp.hasRelativeDeflection())
 				new EnforceAbsDeflection(mesh).compute();
+			logger.fine("Face "+iFace+": "+mesh.getMetricCache());
 		}
 		else
 		{
@@ -303,6 +321,57 @@ public class Mesher
 		return toReturn;
 	}
 	
+	/**
+	 * Compute 2D meshes concurrently.  Faces are independent once the 1D
+	 * mesh is known, each task creates its own {@link Mesh2D}, mesh traits
+	 * and mesh parameters, and writes its own files, so output does not
+	 * depend on the number of threads.
+	 * @param faceIds face ids
+	 * @param faces topological faces to be meshed
+	 * @param nrFaces total number of faces, for logging purpose
+	 * @param mesh1D the boundary mesh, which is only read by tasks
+	 * @param options2d meshing options
+	 * @param brepFile basename of the BRep file
+	 * @param badGroups list of faces which cannot be meshed, in the same
+	 *        order as serial meshing
+	 */
+	private void mesh2D(final TIntArrayList faceIds, final List<CADFace> faces,
+		final int nrFaces, final MMesh1D mesh1D, final HashMap<String, String> options2d,
+		final String brepFile, TIntArrayList badGroups)
+	{
+		logger.info("Meshing "+faces.size()+" faces with "+threads+" threads");
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(faces.size());
+		for (int i = 0; i < faces.size(); i++)
+		{
+			final int iFace = faceIds.get(i);
+			final CADFace face = faces.get(i);
+			tasks.add(new Callable<Boolean>()
+			{
+				public Boolean call()
+				{
+					logger.info("Meshing face " + iFace+"/"+nrFaces);
+					MeshParameters mp = new MeshParameters(options2d);
+					MeshTraitsBuilder mtb = MeshTraitsBuilder.getDefault2D();
+					return Boolean.valueOf(mesh2D(iFace, face, mesh1D, mp, brepFile, mtb));
+				}
+			});
+		}
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			List<Boolean> result = pool.invokeAll(tasks);
+			for (int i = 0; i < result.size(); i++)
+			{
+				if (!result.get(i).booleanValue())
+					badGroups.add(faceIds.get(i));
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
 	/**
 	 * Export the created mesh to various format
 	 */
@@ -426,6 +495,8 @@ public class Mesher
 				seen.add(expF.current());
 			nrFaces = seen.size();			
 			seen.clear();
+			TIntArrayList faceIds = new TIntArrayList();
+			List<CADFace> faces = new ArrayList<CADFace>();
 			for (expF.init(shape, CADShapeEnum.FACE); expF.more(); expF.next())
 			{
 				CADFace face = (CADFace) expF.current();
@@ -440,10 +511,20 @@ public class Mesher
 				if (seen.contains(face))
 					continue;
 				seen.add(face);
-				logger.info("Meshing face " + iFace+"/"+nrFaces);
-				MeshParameters mp = new MeshParameters(options2d);
-				if(!mesh2D(iFace, face, mesh1D, mp, brepFile, mtb))
-					badGroups.add(iFace);
+				faceIds.add(iFace);
+				faces.add(face);
+			}
+			if (threads > 1 && faces.size() > 1)
+				mesh2D(faceIds, faces, nrFaces, mesh1D, options2d, brepFile, badGroups);
+			else
+			{
+				for (int i = 0; i < faces.size(); i++)
+				{
+					logger.info("Meshing face " + faceIds.get(i)+"/"+nrFaces);
+					MeshParameters mp = new MeshParameters(options2d);
+					if(!mesh2D(faceIds.get(i), faces.get(i), mesh1D, mp, brepFile, mtb))
+						badGroups.add(faceIds.get(i));
+				}
 			}
 		}
 
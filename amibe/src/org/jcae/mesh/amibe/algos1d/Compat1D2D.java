@@ -32,17 +32,28 @@ import org.jcae.mesh.cad.CADVertex;
 import org.jcae.mesh.cad.CADEdge;
 import org.jcae.mesh.cad.CADFace;
 import org.jcae.mesh.cad.CADShapeFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.Map;
 import java.util.logging.Logger;
 
+/**
+ * Refines edge discretizations according to the curvature of adjacent
+ * faces.
+ * When the <code>threads</code> option is greater than 1, edges are
+ * processed concurrently; the resulting mesh does not depend on
+ * this option.
+ * This assumes that the CAD library, OpenCascade by default, can be
+ * called concurrently on distinct edges.
+ */
 public class Compat1D2D
 {
 	private static final Logger LOGGER=Logger.getLogger(Compat1D2D.class.getName());
 	private final MMesh1D mesh1d;
 	private double deflection = 1.0;
 	private boolean relativeDeflection = false;
+	private int threads = 1;
 	
 	/**
 	 * Creates a <code>Compat1D2D</code> instance.
@@ -66,6 +77,8 @@ public class Compat1D2D
 				// Do nothing, this is just to not barf when the same map
 				// is used for all 1d algorithms.
 			}
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -77,14 +90,26 @@ public class Compat1D2D
 	public final void compute()
 	{
 		int nbTEdges = 0, nbNodes = 0, nbEdges = 0;
-		/* Explore the shape for each edge */
+		List<SubMesh1D> submeshes = new ArrayList<SubMesh1D>(mesh1d.getTEdges().size());
 		for (CADEdge E : mesh1d.getTEdges())
 		{
 			SubMesh1D submesh1d = mesh1d.getSubMesh1DFromMap(E);
-			if (null == submesh1d)
-				continue;
-			Set<CADFace> faceset = mesh1d.getAdjacentFaces(E);
-			if (null != faceset && computeEdge(submesh1d, faceset))
+			if (null != submesh1d)
+				submeshes.add(submesh1d);
+		}
+		/* Explore the shape for each edge */
+		boolean [] computed = EdgeWorkers.run(submeshes, threads, new EdgeWorkers.EdgeTask()
+		{
+			public boolean computeEdge(SubMesh1D submesh1d)
+			{
+				Set<CADFace> faceset = mesh1d.getAdjacentFaces(submesh1d.getGeometry());
+				return null != faceset && Compat1D2D.this.computeEdge(submesh1d, faceset);
+			}
+		});
+		for (int i = 0; i < computed.length; i++)
+		{
+			SubMesh1D submesh1d = submeshes.get(i);
+			if (computed[i])
 				nbTEdges++;
 			nbNodes += submesh1d.getNodes().size();
 			nbEdges += submesh1d.getEdges().size();
@@ -92,6 +117,7 @@ public class Compat1D2D
 		LOGGER.fine("Discretized TopoEdges: "+nbTEdges);
 		LOGGER.fine("Edges   "+nbEdges);
 		LOGGER.fine("Nodes   "+nbNodes);
+		mesh1d.updateIDs();
 		assert(mesh1d.isValid());
 	}
 
@@ -0,0 +1,117 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.amibe.algos1d;
+
+import org.jcae.mesh.amibe.ds.SubMesh1D;
+import org.jcae.mesh.amibe.util.WorkerPool;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs a 1D algorithm on several topological edges.  Edges are
+ * independent, a discretization only modifies its own
+ * <code>SubMesh1D</code> instance, so edges can be discretized
+ * concurrently.  Results do not depend on the number of threads.
+ *
+ * <p>
+ * Tasks call {@link org.jcae.mesh.cad.CADShapeFactory#newCurve3D} and
+ * discretize curves, which goes through JNI into OpenCascade with the
+ * default factory.  This assumes that OpenCascade is reentrant when
+ * distinct edges are processed: each task builds its own curve adaptor
+ * and discretizer, and only reads the shared geometry of its edge.
+ * OpenCascade memory manager must then be thread-safe, either by
+ * disabling its optimized allocator (<code>MMGT_OPT=0</code>) or by
+ * setting <code>MMGT_REENTRANT=1</code>.  Other CAD factories must give
+ * the same guarantee, otherwise the <code>threads</code> option of
+ * 1D algorithms must be left to 1.
+ * </p>
+ */
+final class EdgeWorkers
+{
+	/**
+	 * Discretization of a single topological edge.
+	 */
+	interface EdgeTask
+	{
+		/**
+		 * Discretizes a topological edge.
+		 *
+		 * @param submesh1d  the 1D mesh being updated
+		 * @return <code>true</code> if this edge was successfully discretized,
+		 * <code>false</code> otherwise.
+		 */
+		boolean computeEdge(SubMesh1D submesh1d);
+	}
+
+	private EdgeWorkers()
+	{
+	}
+
+	/**
+	 * Runs a task on all edges.
+	 *
+	 * @param submeshes  1D meshes to process
+	 * @param threads  number of threads; edges are processed by the calling
+	 *   thread if it is lower than 2
+	 * @param task  task to run on each edge
+	 * @return  an array containing values returned by
+	 *   {@link EdgeTask#computeEdge}, in the same order as
+	 *   <code>submeshes</code>
+	 */
+	static boolean [] run(List<SubMesh1D> submeshes, int threads, final EdgeTask task)
+	{
+		int n = submeshes.size();
+		boolean [] ret = new boolean[n];
+		if (threads < 2 || n < 2)
+		{
+			for (int i = 0; i < n; i++)
+				ret[i] = task.computeEdge(submeshes.get(i));
+			return ret;
+		}
+		// Edges may have very different costs, so each one is a
+		// distinct task for load balancing
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(n);
+		for (int i = 0; i < n; i++)
+		{
+			final SubMesh1D submesh1d = submeshes.get(i);
+			tasks.add(new Callable<Boolean>()
+			{
+				public Boolean call()
+				{
+					return Boolean.valueOf(task.computeEdge(submesh1d));
+				}
+			});
+		}
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			List<Boolean> result = pool.invokeAll(tasks);
+			for (int i = 0; i < n; i++)
+				ret[i] = result.get(i).booleanValue();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return ret;
+	}
+}
@@ -29,6 +29,7 @@ import org.jcae.mesh.cad.CADGeomCurve3D;
 import org.jcae.mesh.cad.CADVertex;
 import org.jcae.mesh.cad.CADEdge;
 import org.jcae.mesh.cad.CADShapeFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -40,12 +41,18 @@ import java.util.logging.Logger;
  * have the same length, which must be less than the given criterion.
  * The previous discretization nodes and edges are deleted, and replaced
  * by newer ones.
+ * When the <code>threads</code> option is greater than 1, edges are
+ * discretized concurrently; the resulting mesh does not depend on
+ * this option.
+ * This assumes that the CAD library, OpenCascade by default, can be
+ * called concurrently on distinct edges.
  */
 public class UniformLength
 {
 	private static final Logger LOGGER=Logger.getLogger(UniformLength.class.getName());
 	private final MMesh1D mesh1d;
 	private double maxlen = -1.0;
+	private int threads = 1;
 	
 	/**
 	 * Creates a <code>UniformLength</code> instance.
@@ -66,6 +73,8 @@ public class UniformLength
 			{
 				// Do nothing
 			}
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -77,20 +86,21 @@ public class UniformLength
 	public final void compute()
 	{
 		int nbTEdges = 0, nbNodes = 0, nbEdges = 0;
-		/*  First compute current nbNodes and nbEdges  */
+		List<SubMesh1D> submeshes = new ArrayList<SubMesh1D>(mesh1d.getTEdges().size());
 		for (CADEdge E : mesh1d.getTEdges())
-		{
-			SubMesh1D submesh1d = mesh1d.getSubMesh1DFromMap(E);
-			nbNodes += submesh1d.getNodes().size();
-			nbEdges += submesh1d.getEdges().size();
-		}
+			submeshes.add(mesh1d.getSubMesh1DFromMap(E));
 		/* Explore the shape for each edge */
-		for (CADEdge E : mesh1d.getTEdges())
+		boolean [] computed = EdgeWorkers.run(submeshes, threads, new EdgeWorkers.EdgeTask()
+		{
+			public boolean computeEdge(SubMesh1D submesh1d)
+			{
+				return UniformLength.this.computeEdge(submesh1d);
+			}
+		});
+		for (int i = 0; i < computed.length; i++)
 		{
-			SubMesh1D submesh1d = mesh1d.getSubMesh1DFromMap(E);
-			nbNodes -= submesh1d.getNodes().size();
-			nbEdges -= submesh1d.getEdges().size();
-			if (computeEdge(submesh1d))
+			SubMesh1D submesh1d = submeshes.get(i);
+			if (computed[i])
 				nbTEdges++;
 			nbNodes += submesh1d.getNodes().size();
 			nbEdges += submesh1d.getEdges().size();
@@ -98,6 +108,7 @@ public class UniformLength
 		LOGGER.fine("TopoEdges discretisees "+nbTEdges);
 		LOGGER.fine("Edges   "+nbEdges);
 		LOGGER.fine("Nodes   "+nbNodes);
+		mesh1d.updateIDs();
 		assert(mesh1d.isValid());
 	}
 
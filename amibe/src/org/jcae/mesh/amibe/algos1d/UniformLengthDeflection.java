@@ -31,6 +31,7 @@ import org.jcae.mesh.cad.CADEdge;
 import org.jcae.mesh.cad.CADShapeFactory;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -40,12 +41,18 @@ import java.util.logging.Logger;
  * have the same length, which must be less than the given criterion.
  * The previous discretization nodes and edges are deleted, and replaced
  * by newer ones.
+ * When the <code>threads</code> option is greater than 1, edges are
+ * discretized concurrently; the resulting mesh does not depend on
+ * this option.
+ * This assumes that the CAD library, OpenCascade by default, can be
+ * called concurrently on distinct edges.
  */
 public class UniformLengthDeflection
 {
 	private static final Logger LOGGER = Logger.getLogger(UniformLengthDeflection.class.getName());
 	private final MMesh1D mesh1d;
 	private double maxlen = -1.0;
+	private int threads = 1;
 	private double deflection = 1.0;
 	private boolean relativeDeflection = false;
 	
@@ -68,6 +75,8 @@ public class UniformLengthDeflection
 				relativeDeflection = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("size"))
 				maxlen = Double.valueOf(val).doubleValue();
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -80,20 +89,21 @@ public class UniformLengthDeflection
 	public final void compute()
 	{
 		int nbTEdges = 0, nbNodes = 0, nbEdges = 0;
-		/*  First compute current nbNodes and nbEdges  */
+		List<SubMesh1D> submeshes = new ArrayList<SubMesh1D>(mesh1d.getTEdges().size());
 		for (CADEdge E : mesh1d.getTEdges())
-		{
-			SubMesh1D submesh1d = mesh1d.getSubMesh1DFromMap(E);
-			nbNodes += submesh1d.getNodes().size();
-			nbEdges += submesh1d.getEdges().size();
-		}
+			submeshes.add(mesh1d.getSubMesh1DFromMap(E));
 		/* Explore the shape for each edge */
-		for (CADEdge E : mesh1d.getTEdges())
+		boolean [] computed = EdgeWorkers.run(submeshes, threads, new EdgeWorkers.EdgeTask()
+		{
+			public boolean computeEdge(SubMesh1D submesh1d)
+			{
+				return UniformLengthDeflection.this.computeEdge(submesh1d);
+			}
+		});
+		for (int i = 0; i < computed.length; i++)
 		{
-			SubMesh1D submesh1d = mesh1d.getSubMesh1DFromMap(E);
-			nbNodes -= submesh1d.getNodes().size();
-			nbEdges -= submesh1d.getEdges().size();
-			if (computeEdge(submesh1d))
+			SubMesh1D submesh1d = submeshes.get(i);
+			if (computed[i])
 				nbTEdges++;
 			nbNodes += submesh1d.getNodes().size();
 			nbEdges += submesh1d.getEdges().size();
@@ -101,6 +111,7 @@ public class UniformLengthDeflection
 		LOGGER.fine("TopoEdges discretisees "+nbTEdges);
 		LOGGER.fine("Edges   "+nbEdges);
 		LOGGER.fine("Nodes   "+nbNodes);
+		mesh1d.updateIDs();
 		assert(mesh1d.isValid());
 	}
 
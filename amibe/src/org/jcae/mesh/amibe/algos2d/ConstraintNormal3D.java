@@ -81,6 +81,14 @@ public class ConstraintNormal3D
 		mesh.pushCompGeom(3);
 		LOGGER.fine(" Checking inverted triangles");
 
+		// Work arrays for surface evaluations
+		double [] uv = new double[8];
+		double [] xyz = new double[12];
+		double [] xo = new double[3];
+		double [] xd = new double[3];
+		double [] xa = new double[3];
+		double [] xn = new double[3];
+		double [] normal = new double[3];
 		double [] vect1 = new double[3];
 		double [] vect2 = new double[3];
 		double [] vect3 = new double[3];
@@ -133,12 +141,22 @@ public class ConstraintNormal3D
 					Vertex p2 = ot.destination();
 					Vertex apex1 = ot.apex();
 					Vertex apex2 = sym.apex();
-					double [] xo = surface.value(p1.getX(), p1.getY());
-					double [] xd = surface.value(p2.getX(), p2.getY());
-					double [] xa = surface.value(apex1.getX(), apex1.getY());
-					double [] xn = surface.value(apex2.getX(), apex2.getY());
-					surface.setParameter(0.5*(p1.getX()+p2.getX()), 0.5*(p1.getY()+p2.getY()));
-					double [] normal = surface.normal();
+					uv[0] = p1.getX();
+					uv[1] = p1.getY();
+					uv[2] = p2.getX();
+					uv[3] = p2.getY();
+					uv[4] = apex1.getX();
+					uv[5] = apex1.getY();
+					uv[6] = apex2.getX();
+					uv[7] = apex2.getY();
+					surface.arrayValues(4, uv, xyz, null, null, null);
+					System.arraycopy(xyz, 0, xo, 0, 3);
+					System.arraycopy(xyz, 3, xd, 0, 3);
+					System.arraycopy(xyz, 6, xa, 0, 3);
+					System.arraycopy(xyz, 9, xn, 0, 3);
+					uv[0] = 0.5*(p1.getX()+p2.getX());
+					uv[1] = 0.5*(p1.getY()+p2.getY());
+					surface.arrayValues(1, uv, null, null, null, normal);
 					for (int k = 0; k < 3; k++)
 					{
 						vect1[k] = xd[k] - xo[k];
@@ -28,7 +28,9 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.patch.VirtualHalfEdge2D;
 import org.jcae.mesh.amibe.patch.Vertex2D;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
+import org.jcae.mesh.cad.CADGeomSurface;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,6 +46,7 @@ import java.util.logging.Logger;
 public class EnforceAbsDeflection
 {
 	private static final Logger LOGGER=Logger.getLogger(EnforceAbsDeflection.class.getName());
+	private static final int BATCH_SIZE = 1024;
 	private final Mesh2D mesh;
 	
 	/**
@@ -64,7 +67,6 @@ public class EnforceAbsDeflection
 		mesh.pushCompGeom(3);
 		LOGGER.fine(" Enforcing absolute deflection");
 
-		Vertex [] p = new Vertex[4];
 		double [] v1 = new double[3];
 		double [] v2 = new double[3];
 		double [] v3 = new double[3];
@@ -72,35 +74,58 @@ public class EnforceAbsDeflection
 		boolean redo = false;
 		int niter = mesh.getTriangles().size();
 		double defl = mesh.getMeshParameters().getDeflection();
+		CADGeomSurface surface = mesh.getGeomSurface();
 		Vertex2D c = (Vertex2D) mesh.createVertex(0.0, 0.0);
+		// Surface is evaluated on triangle vertices and centroids by
+		// batches in order to reduce overhead of CAD calls.
+		Triangle [] batch = new Triangle[BATCH_SIZE];
+		double [] uv = new double[8*BATCH_SIZE];
+		double [] xyz = new double[12*BATCH_SIZE];
 		do
 		{
 			redo = false;
 			ArrayList<Triangle> badTriangles = new ArrayList<Triangle>();
-			for (Triangle t: mesh.getTriangles())
+			Iterator<Triangle> it = mesh.getTriangles().iterator();
+			while (it.hasNext())
 			{
-				if (t.hasAttributes(AbstractHalfEdge.OUTER))
-					continue;
-				mesh.moveVertexToCentroid(c, t);
-				double [] xyz = mesh.getGeomSurface().value(c.getX(), c.getY());
-				// mesh.createVertex() cannot be used because mesh is a
-				// Mesh2D instance and we want to create 3D instances.
-				p[3] = new Vertex(null, xyz[0], xyz[1], xyz[2]);
-				for (int i = 0; i < 3; i++)
+				int nr = 0;
+				while (nr < BATCH_SIZE && it.hasNext())
 				{
-					Vertex v = t.getV(i);
-					xyz = mesh.getGeomSurface().value(v.getX(), v.getY());
-					p[i] = new Vertex(null, xyz[0], xyz[1], xyz[2]);
+					Triangle t = it.next();
+					if (t.hasAttributes(AbstractHalfEdge.OUTER))
+						continue;
+					mesh.moveVertexToCentroid(c, t);
+					uv[8*nr]   = c.getX();
+					uv[8*nr+1] = c.getY();
+					for (int i = 0; i < 3; i++)
+					{
+						Vertex v = t.getV(i);
+						uv[8*nr+2*i+2] = v.getX();
+						uv[8*nr+2*i+3] = v.getY();
+					}
+					batch[nr] = t;
+					nr++;
 				}
-				p[1].sub(p[0], v1);
-				p[2].sub(p[0], v2);
-				p[3].sub(p[0], v3);
-				Matrix3D.prodVect3D(v1, v2, v4);
-				double norm = Matrix3D.norm(v4);
-				if (norm > 0.0)
+				if (nr == 0)
+					break;
+				surface.arrayValues(4*nr, uv, xyz, null, null, null);
+				for (int k = 0; k < nr; k++)
 				{
-					if (Math.abs(Matrix3D.prodSca(v4, v3)) > defl * norm)
-						badTriangles.add(t);
+					// xyz contains centroid, then triangle vertices
+					int offset = 12*k;
+					for (int j = 0; j < 3; j++)
+					{
+						v1[j] = xyz[offset+6+j] - xyz[offset+3+j];
+						v2[j] = xyz[offset+9+j] - xyz[offset+3+j];
+						v3[j] = xyz[offset+j] - xyz[offset+3+j];
+					}
+					Matrix3D.prodVect3D(v1, v2, v4);
+					double norm = Matrix3D.norm(v4);
+					if (norm > 0.0)
+					{
+						if (Math.abs(Matrix3D.prodSca(v4, v3)) > defl * norm)
+							badTriangles.add(batch[k]);
+					}
 				}
 			}
 			for (Triangle t: badTriangles)
@@ -29,8 +29,15 @@ import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
 import org.jcae.mesh.amibe.util.QSortedTree;
-import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.IndexedDAryHeap;
+import org.jcae.mesh.amibe.util.WorkerPool;
+import gnu.trove.list.array.TDoubleArrayList;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.io.ObjectOutputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
@@ -57,9 +64,25 @@ public abstract class AbstractAlgoHalfEdge
 	private boolean noSwapAfterProcessing = false;
 	double minCos = 0.95;
 	boolean moreTriangles = false;
-	private QSortedTree<HalfEdge> tree = new PAVLSortedTree<HalfEdge>();
+	private QSortedTree<HalfEdge> tree = new IndexedDAryHeap<HalfEdge>();
 	
 	private final Collection<HalfEdge> notProcessedObjects = HashFactory.createSet();
+
+	// Parallel mode, see setParallel()
+	int threads = 1;
+	double batchTolerance = 0.0;
+	private int maxBatchSize = 4096;
+	private WorkerPool workers;
+	private int nrBatches = 0;
+	// When deferCosts is true, edges whose cost has to be computed are
+	// stored into deferredEdges, and costs are computed concurrently
+	// by flushDeferredCosts().
+	private boolean deferCosts = false;
+	// Actions performed by flushDeferredCosts(), when an edge is deferred
+	// several times, the last constant is kept.
+	private enum CostAction { ADD, ADD_IF_LOWER, UPDATE }
+	private final Map<HalfEdge, CostAction> deferredEdges = new LinkedHashMap<HalfEdge, CostAction>();
+
 	protected abstract void preProcessAllHalfEdges();
 	protected void postProcessAllHalfEdges()
 	{
@@ -101,11 +124,33 @@ public abstract class AbstractAlgoHalfEdge
 		thisLogger().info("Run "+getClass().getName());
 		mesh.getTrace().println("# Begin "+getClass().getName());
 		preProcessAllHalfEdges();
-		thisLogger().info("Compute initial tree");
-		computeTree();
-		postComputeTree();
-		thisLogger().info("Initial number of triangles: "+countInnerTriangles(mesh));
-		processAllHalfEdges();
+		if (threads > 1 && !canComputeCostConcurrently())
+			thisLogger().warning("Costs cannot be computed concurrently by "+getClass().getName()+", parallel mode is disabled");
+		else if (threads > 1)
+			workers = new WorkerPool(threads);
+		long parallelStartTime = System.nanoTime();
+		try
+		{
+			thisLogger().info("Compute initial tree");
+			computeTree();
+			postComputeTree();
+			thisLogger().info("Initial number of triangles: "+countInnerTriangles(mesh));
+			if (workers != null)
+			{
+				processAllHalfEdgesInBatches();
+				logParallelSpeedUp(System.nanoTime() - parallelStartTime);
+			}
+			else
+				processAllHalfEdges();
+		}
+		finally
+		{
+			if (workers != null)
+			{
+				workers.shutdown();
+				workers = null;
+			}
+		}
 		thisLogger().info("Final number of triangles: "+countInnerTriangles(mesh));
 		mesh.getTrace().println("# End "+getClass().getName());
 		postCheck();
@@ -119,6 +164,63 @@ public abstract class AbstractAlgoHalfEdge
 		progressBarStatus = n;
 	}
 
+	/**
+	 * Enables parallel mode.  Instead of processing edges one at a time,
+	 * batches of edges are selected from the priority tree: an edge is
+	 * added to the current batch if its cost is lower than the cost of the
+	 * first edge plus a threshold, and if its neighbourhood does not
+	 * overlap neighbourhoods of edges already selected.  Edges of a batch
+	 * are then processed, and cost updates are collected and computed
+	 * concurrently before being merged back into the tree.
+	 *
+	 * <p>
+	 * Edges of a batch are collapsed one at a time by the calling thread,
+	 * because {@link Mesh}, liaisons and the data maintained by subclasses
+	 * (quadrics, for instance) are not thread-safe; only cost computations
+	 * are run concurrently.  The overall speed-up is thus bounded by the
+	 * fraction of time spent in cost computations, it is logged at the
+	 * end of {@link #compute}.  Results differ from the sequential algorithm since
+	 * edges are not processed in the exact same order, this difference is
+	 * controlled by <code>batchTolerance</code>: an edge is added to the
+	 * current batch if its cost is lower than
+	 * <code>c0 + batchTolerance * max(|c0|, tolerance)</code>, where
+	 * <code>c0</code> is the lowest cost.  With a zero value, only edges
+	 * with the same cost are grouped together.
+	 * </p>
+	 *
+	 * @param nrThreads  number of threads, parallel mode is disabled
+	 *   if this number is lower than 2
+	 * @param batchTolerance  relative cost threshold for building batches
+	 */
+	public void setParallel(int nrThreads, double batchTolerance)
+	{
+		threads = nrThreads;
+		this.batchTolerance = batchTolerance;
+	}
+
+	/**
+	 * Sets the maximal number of edges processed in a batch in parallel mode.
+	 *
+	 * @param n  maximal number of edges in a batch
+	 */
+	public void setMaxBatchSize(int n)
+	{
+		maxBatchSize = n;
+	}
+
+	/**
+	 * Tells whether {@link #cost} can be called concurrently by several
+	 * threads, as long as mesh is not modified.  Parallel mode is enabled
+	 * only if this method returns <code>true</code>.
+	 *
+	 * @return <code>false</code>, subclasses must override this method
+	 * to enable parallel mode
+	 */
+	protected boolean canComputeCostConcurrently()
+	{
+		return false;
+	}
+
 	public static int countInnerTriangles(final Mesh mesh)
 	{
 		int ret = 0;
@@ -157,6 +259,8 @@ public abstract class AbstractAlgoHalfEdge
 			}
 		}
 		//  Compute edge cost
+		deferCosts = (workers != null);
+		tree.beginBulkLoad();
 		nrTriangles = 0;
 		for (Triangle af: mesh.getTriangles())
 		{
@@ -173,6 +277,12 @@ public abstract class AbstractAlgoHalfEdge
 					addToTree(h);
 			}
 		}
+		if (deferCosts)
+		{
+			flushDeferredCosts();
+			deferCosts = false;
+		}
+		tree.endBulkLoad();
 	}
 
 	void postComputeTree()
@@ -192,6 +302,11 @@ public abstract class AbstractAlgoHalfEdge
 			AbstractHalfEdge.SHARP | AbstractHalfEdge.BOUNDARY |
 			AbstractHalfEdge.NONMANIFOLD) && !tree.contains(h))
 		{
+			if (deferCosts)
+			{
+				deferCost(h, CostAction.ADD_IF_LOWER);
+				return;
+			}
 			double val = cost(h);
 			if (val <= tolerance)
 			{
@@ -211,6 +326,11 @@ public abstract class AbstractAlgoHalfEdge
 			return;
 		if (e.hasAttributes(AbstractHalfEdge.IMMUTABLE))
 			return;
+		if (deferCosts)
+		{
+			deferCost(e, CostAction.ADD);
+			return;
+		}
 		double val = cost(e);
 		// If an edge will not be processed because of its cost, it is
 		// better to not put it in the tree.  One drawback though is
@@ -234,6 +354,8 @@ public abstract class AbstractAlgoHalfEdge
 		{
 			HalfEdge f = (HalfEdge) it.next();
 			HalfEdge h = uniqueOrientation(f);
+			if (deferCosts)
+				deferredEdges.remove(h);
 			if(notProcessedObjects.remove(h))
 				assert !tree.contains(h);
 			if (!tree.remove(h))
@@ -286,73 +408,295 @@ public abstract class AbstractAlgoHalfEdge
 
 			if (noSwapAfterProcessing || minCos < -1.0)
 				continue;
-			
-			// Loop around current.apex with
-			//   current = current.nextApexLoop();
-			// to check all edges which have current.apex
-			// as apical vertex and swap them if this improves
-			// mesh quality.
-			Vertex o = current.origin();
-			boolean redo = true;
-			while(redo)
+			swapAroundApex(current);
+			afterSwapHook();
+		}
+		postProcessAllHalfEdges();
+		return processed > 0;
+	}
+
+	/**
+	 * Loops around <code>current.apex()</code> to check all edges which
+	 * have this vertex as apical vertex, and swaps them if this improves
+	 * mesh quality.
+	 */
+	private void swapAroundApex(HalfEdge current)
+	{
+		Vertex o = current.origin();
+		boolean redo = true;
+		while(redo)
+		{
+			redo = false;
+			while(true)
 			{
-				redo = false;
-				while(true)
+				if (current.checkSwap3D(mesh, minCos) >= 0.0 && current.canSwapTopology())
 				{
-					if (current.checkSwap3D(mesh, minCos) >= 0.0 && current.canSwapTopology())
+					// Swap edge
+					for (int i = 0; i < 3; i++)
 					{
-						// Swap edge
-						for (int i = 0; i < 3; i++)
-						{
-							current = current.next();
-							removeFromTree(current);
-						}
-						HalfEdge sym = current.sym();
-						for (int i = 0; i < 2; i++)
-						{
-							sym = sym.next();
-							removeFromTree(sym);
-						}
-						Vertex a = current.apex();
-						current = (HalfEdge) mesh.edgeSwap(current);
-						swapped++;
-						redo = true;
-						// Now current = (ona)
-						assert a == current.apex();
-						for (int i = 0; i < 3; i++)
-						{
-							current = current.next();
-							for (Iterator<AbstractHalfEdge> it = current.fanIterator(); it.hasNext(); )
-							{
-								HalfEdge e = uniqueOrientation((HalfEdge) it.next());
-								addToTree(e);
-							}
-						}
-						sym = current.next().sym();
-						for (int i = 0; i < 2; i++)
+						current = current.next();
+						removeFromTree(current);
+					}
+					HalfEdge sym = current.sym();
+					for (int i = 0; i < 2; i++)
+					{
+						sym = sym.next();
+						removeFromTree(sym);
+					}
+					Vertex a = current.apex();
+					current = (HalfEdge) mesh.edgeSwap(current);
+					swapped++;
+					redo = true;
+					// Now current = (ona)
+					assert a == current.apex();
+					for (int i = 0; i < 3; i++)
+					{
+						current = current.next();
+						for (Iterator<AbstractHalfEdge> it = current.fanIterator(); it.hasNext(); )
 						{
-							sym = sym.next();
-							for (Iterator<AbstractHalfEdge> it = sym.fanIterator(); it.hasNext(); )
-							{
-								HalfEdge e = uniqueOrientation((HalfEdge) it.next());
-								addToTree(e);
-							}
+							HalfEdge e = uniqueOrientation((HalfEdge) it.next());
+							addToTree(e);
 						}
 					}
-					else
+					sym = current.next().sym();
+					for (int i = 0; i < 2; i++)
 					{
-						current = current.nextApexLoop();
-						if (current.origin() == o)
-							break;
+						sym = sym.next();
+						for (Iterator<AbstractHalfEdge> it = sym.fanIterator(); it.hasNext(); )
+						{
+							HalfEdge e = uniqueOrientation((HalfEdge) it.next());
+							addToTree(e);
+						}
 					}
 				}
+				else
+				{
+					current = current.nextApexLoop();
+					if (current.origin() == o)
+						break;
+				}
 			}
-			afterSwapHook();
 		}
+	}
+
+	private boolean isFinished()
+	{
+		return nrFinal != 0 && ((moreTriangles && nrTriangles >= nrFinal) || (!moreTriangles && nrTriangles <= nrFinal));
+	}
+
+	/**
+	 * Parallel version of {@link #processAllHalfEdges}.  Edges are
+	 * selected by batches, see {@link #setParallel}.  Edges of a batch
+	 * are collapsed sequentially, only cost updates are deferred until the
+	 * end of the batch and computed concurrently.
+	 */
+	private boolean processAllHalfEdgesInBatches()
+	{
+		ArrayList<HalfEdge> batch = new ArrayList<HalfEdge>();
+		TDoubleArrayList batchCosts = new TDoubleArrayList();
+		Set<Vertex> locked = new HashSet<Vertex>();
+		ArrayList<Vertex> region = new ArrayList<Vertex>();
+		int batchSizes = 0;
+		while (!tree.isEmpty() && !isFinished())
+		{
+			// Select a batch of edges with similar costs and disjoint
+			// neighbourhoods
+			batch.clear();
+			batchCosts.resetQuick();
+			locked.clear();
+			double cost0 = 0.0;
+			double maxCost = 0.0;
+			int maxSize = maxBatchSize;
+			// Do not process more edges than needed.  Collapsing an edge
+			// removes 2 triangles in general.
+			if (nrFinal != 0 && !moreTriangles)
+				maxSize = Math.min(maxSize, Math.max(1, (nrTriangles - nrFinal) / 2));
+			for (Iterator<QSortedTree.Node<HalfEdge>> itt = tree.iterator(); itt.hasNext() && batch.size() < maxSize; )
+			{
+				QSortedTree.Node<HalfEdge> q = itt.next();
+				double cost = q.getValue();
+				if (nrFinal == 0 && cost > tolerance)
+					break;
+				if (batch.isEmpty())
+				{
+					cost0 = cost;
+					maxCost = cost0 + batchTolerance * Math.max(Math.abs(cost0), tolerance);
+				}
+				else if (cost > maxCost)
+					break;
+				HalfEdge current = q.getData();
+				assert current == uniqueOrientation(current);
+				if (lockRegion(current, locked, region))
+				{
+					batch.add(current);
+					batchCosts.add(cost);
+				}
+			}
+			if (batch.isEmpty())
+				break;
+			nrBatches++;
+			batchSizes += batch.size();
+			if (thisLogger().isLoggable(Level.FINE))
+				thisLogger().fine("Batch "+nrBatches+": "+batch.size()+" edges, cost in ["+cost0+", "+maxCost+"]");
+
+			deferCosts = true;
+			int processedInBatch = 0;
+			for (int i = 0; i < batch.size(); i++)
+			{
+				HalfEdge current = batch.get(i);
+				if (isFinished())
+					break;
+				// Skip edges which have been removed or whose cost
+				// has been modified by previous contractions
+				if (!tree.contains(current) || deferredEdges.containsKey(current))
+					continue;
+				preProcessEdge();
+				if (!canProcessEdge(current))
+				{
+					if (thisLogger().isLoggable(Level.FINE))
+						thisLogger().fine("Edge not processed: "+current);
+					notProcessed++;
+					tree.remove(current);
+					notProcessedObjects.add(current);
+					continue;
+				}
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					thisLogger().info("Edges processed: "+processed);
+				current = processEdge(current, batchCosts.getQuick(i));
+				afterProcessHook();
+				processed++;
+				processedInBatch++;
+				if (noSwapAfterProcessing || minCos < -1.0)
+					continue;
+				swapAroundApex(current);
+				afterSwapHook();
+			}
+			flushDeferredCosts();
+			deferCosts = false;
+			if (processedInBatch == 0 && tree.isEmpty())
+				break;
+		}
+		if (nrBatches > 0)
+			thisLogger().info("Number of batches: "+nrBatches+", average size: "+
+				((double) batchSizes / nrBatches));
 		postProcessAllHalfEdges();
 		return processed > 0;
 	}
 
+	/**
+	 * Logs the speed-up of the whole parallel run.  Time spent in
+	 * concurrent cost computations would have been spent by a single
+	 * thread, other operations are sequential.
+	 *
+	 * @param elapsed  elapsed time of initial tree computation and
+	 *   edge processing, in nanoseconds
+	 */
+	private void logParallelSpeedUp(long elapsed)
+	{
+		double elapsedMs = elapsed / 1.e6;
+		double costMs = workers.getWallTime();
+		double serialMs = elapsedMs - costMs + costMs * workers.getSpeedUp();
+		thisLogger().info("Parallel mode: "+elapsedMs+" ms, including "+costMs+
+			" ms in concurrent cost computations (speed-up: "+workers.getSpeedUp()+
+			"), overall speed-up: "+(elapsedMs > 0.0 ? serialMs / elapsedMs : 1.0));
+	}
+
+	/**
+	 * Adds edge endpoints and their neighbours to the <code>locked</code>
+	 * set, if none of them is already locked.
+	 *
+	 * @return <code>true</code> if vertices have been locked,
+	 * <code>false</code> otherwise
+	 */
+	private boolean lockRegion(HalfEdge e, Set<Vertex> locked, ArrayList<Vertex> region)
+	{
+		region.clear();
+		Vertex o = e.origin();
+		Vertex d = e.destination();
+		region.add(o);
+		region.add(d);
+		for (Vertex v : new Vertex[] { o, d })
+		{
+			if (!v.isReadable())
+				return false;
+			for (Iterator<Vertex> it = v.getNeighbourIteratorVertex(); it.hasNext(); )
+			{
+				Vertex n = it.next();
+				if (n != mesh.outerVertex)
+					region.add(n);
+			}
+		}
+		for (Vertex v : region)
+		{
+			if (locked.contains(v))
+				return false;
+		}
+		locked.addAll(region);
+		return true;
+	}
+
+	private void deferCost(HalfEdge h, CostAction action)
+	{
+		// Edge is marked so that uniqueOrientation always returns the
+		// same orientation, this attribute is cleared when cost is
+		// computed if edge is not inserted into the tree.
+		h.setAttributes(AbstractHalfEdge.MARKED);
+		CostAction old = deferredEdges.get(h);
+		if (old == null || old.compareTo(action) < 0)
+			deferredEdges.put(h, action);
+	}
+
+	/**
+	 * Computes costs of edges stored by {@link #deferCost} concurrently,
+	 * and updates tree.
+	 */
+	private void flushDeferredCosts()
+	{
+		if (deferredEdges.isEmpty())
+			return;
+		final HalfEdge [] edges = new HalfEdge[deferredEdges.size()];
+		CostAction [] actions = new CostAction[edges.length];
+		int n = 0;
+		for (Map.Entry<HalfEdge, CostAction> entry : deferredEdges.entrySet())
+		{
+			edges[n] = entry.getKey();
+			actions[n] = entry.getValue();
+			n++;
+		}
+		deferredEdges.clear();
+		final double [] costs = new double[n];
+		workers.run(n, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				for (int i = begin; i < end; i++)
+					costs[i] = cost(edges[i]);
+			}
+		});
+		for (int i = 0; i < n; i++)
+		{
+			HalfEdge h = edges[i];
+			double val = costs[i];
+			if (actions[i] == CostAction.UPDATE)
+			{
+				notProcessedObjects.remove(h);
+				if (tree.contains(h))
+					tree.update(h, val);
+				else
+					tree.insert(h, val);
+			}
+			else if (tree.contains(h))
+				tree.update(h, val);
+			else if ((actions[i] == CostAction.ADD && nrFinal != 0) || val <= tolerance)
+			{
+				notProcessedObjects.remove(h);
+				tree.insert(h, val);
+			}
+			else
+				h.clearAttributes(AbstractHalfEdge.MARKED);
+		}
+	}
+
 	public void setNoSwapAfterProcessing(boolean noSwapAfterProcessing)
 	{
 		this.noSwapAfterProcessing = noSwapAfterProcessing;
@@ -423,12 +767,21 @@ public abstract class AbstractAlgoHalfEdge
 
 	protected void updateCost(HalfEdge f)
 	{
+		if (deferCosts)
+		{
+			HalfEdge h = uniqueOrientation(f);
+			notProcessedObjects.remove(h);
+			deferCost(h, CostAction.UPDATE);
+			return;
+		}
 		updateCost(f, cost(f));
 	}
 
 	protected void updateCost(HalfEdge f, double newCost)
 	{
 		HalfEdge h = uniqueOrientation(f);
+		if (deferCosts)
+			deferredEdges.remove(h);
 		// the edge has changed so we want canProcessEdge to be re-evaluated, so
 		// we remove the edge from the notProcessObjects set
 		notProcessedObjects.remove(h);
@@ -444,6 +797,8 @@ public abstract class AbstractAlgoHalfEdge
 	protected HalfEdge removeOneFromTree(HalfEdge e)
 	{
 		HalfEdge h = uniqueOrientation(e);
+		if (deferCosts)
+			deferredEdges.remove(h);
 		if(notProcessedObjects.remove(h))
 		{
 			// and edge cannot be in tree and in notProcessedObjects at the same
@@ -26,7 +26,7 @@ import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
 import org.jcae.mesh.amibe.util.QSortedTree;
-import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.IndexedDAryHeap;
 
 import java.util.Stack;
 import java.util.Iterator;
@@ -52,7 +52,7 @@ public abstract class AbstractAlgoVertex
 	int notInTree = 0;
 	private int progressBarStatus = 10000;
 	double minCos = 0.95;
-	QSortedTree<Vertex> tree = new PAVLSortedTree<Vertex>();
+	QSortedTree<Vertex> tree = new IndexedDAryHeap<Vertex>();
 	private Collection<Vertex> nodeset;
 	
 	protected abstract void preProcessAllVertices();
@@ -115,6 +115,7 @@ public abstract class AbstractAlgoVertex
 			}
 		}
 		//  Compute vertex cost
+		tree.beginBulkLoad();
 		for (Vertex v: nodeset)
 		{
 			if (!canProcessVertex(v))
@@ -126,6 +127,7 @@ public abstract class AbstractAlgoVertex
 					tree.insert(v, val);
 			}
 		}
+		tree.endBulkLoad();
 	}
 
 	void postComputeTree()
@@ -163,7 +165,7 @@ public abstract class AbstractAlgoVertex
 				notProcessed++;
 				// Add a penalty to vertices which could not have been
 				// processed.  This has to be done outside this loop,
-				// because PAVLSortedTree instances must not be modified
+				// because QSortedTree instances must not be modified
 				// when walked through.
 				stackNotProcessedObject.push(current);
 				if (tolerance != 0.0)
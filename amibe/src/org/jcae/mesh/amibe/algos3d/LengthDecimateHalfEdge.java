@@ -54,7 +54,8 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 	 * @param m  the <code>Mesh</code> instance to refine.
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
-	 *        <code>placement</code> and <code>maxtriangles</code>.
+	 *        <code>maxtriangles</code>, <code>threads</code> and
+	 *        <code>batchTolerance</code>.
 	 */
 	public LengthDecimateHalfEdge(final Mesh m, final Map<String, String> options)
 	{
@@ -103,6 +104,16 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 				minCos = Double.parseDouble(val);
 				LOGGER.fine("Minimum dot product of face normals allowed for swapping an edge: "+minCos);
 			}
+			else if ("threads".equals(key))
+			{
+				threads = Integer.parseInt(val);
+				LOGGER.fine("Number of threads: "+threads);
+			}
+			else if ("batchTolerance".equals(key))
+			{
+				batchTolerance = Double.parseDouble(val);
+				LOGGER.fine("Batch tolerance: "+batchTolerance);
+			}
 			else if(!metrics.isKnownOption(key))
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -138,6 +149,12 @@ public class LengthDecimateHalfEdge extends AbstractAlgoHalfEdge
 		metrics.compute();
 	}
 
+	@Override
+	protected boolean canComputeCostConcurrently()
+	{
+		return true;
+	}
+
 	@Override
 	protected final double cost(final HalfEdge e)
 	{
@@ -119,8 +119,17 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	private Quadric3DError q3 = new Quadric3DError();
 	// vCostOpt and qCostOpt must be used only by cost() method.
 	// Their aim is to avoid creating new objects for each cost() call.
-	private final Vertex vCostOpt;
-	private final Quadric3DError qCostOpt = new Quadric3DError();
+	// They are thread-local because costs may be computed concurrently,
+	// see setParallel().
+	private final ThreadLocal<Vertex> vCostOpt;
+	private final ThreadLocal<Quadric3DError> qCostOpt = new ThreadLocal<Quadric3DError>()
+	{
+		@Override
+		protected Quadric3DError initialValue()
+		{
+			return new Quadric3DError();
+		}
+	};
 	private static final boolean testDump = false;
 	private final MetricSupport metrics;
 	private MetricSupport.AnalyticMetricInterface analyticMetric;
@@ -132,7 +141,8 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	 * @param m  the <code>Mesh</code> instance to refine.
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
-	 *        <code>placement</code> and <code>maxtriangles</code>.
+	 *        <code>placement</code>, <code>maxtriangles</code>,
+	 *        <code>threads</code> and <code>batchTolerance</code>.
 	 */
 	public QEMDecimateHalfEdge(final Mesh m, final Map<String, String> options)
 	{
@@ -148,7 +158,14 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 	{
 		super(m, meshLiaison);
 		v3 = m.createVertex(0.0, 0.0, 0.0);
-		vCostOpt = m.createVertex(0.0, 0.0, 0.0);
+		vCostOpt = new ThreadLocal<Vertex>()
+		{
+			@Override
+			protected Vertex initialValue()
+			{
+				return mesh.createVertex(0.0, 0.0, 0.0);
+			}
+		};
 		metrics = new MetricSupport(mesh, options, "maxlength");
 		for (final Map.Entry<String, String> opt: options.entrySet())
 		{
@@ -180,6 +197,16 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 				freeEdgesOnly = Boolean.parseBoolean(val);
 				LOGGER.info("freeEdgesOnly: "+freeEdgesOnly);
 			}
+			else if ("threads".equals(key))
+			{
+				threads = Integer.parseInt(val);
+				LOGGER.info("Number of threads: "+threads);
+			}
+			else if ("batchTolerance".equals(key))
+			{
+				batchTolerance = Double.parseDouble(val);
+				LOGGER.info("Batch tolerance: "+batchTolerance);
+			}
 			// This is a workaround for a bug which currently cannot be found.
 			// When the metric is small close to a non-manifold or boundary
 			// edge, adjacent triangles may be collapsed. So it break the border.
@@ -359,6 +386,12 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		}
 	}
 
+	@Override
+	protected boolean canComputeCostConcurrently()
+	{
+		return true;
+	}
+
 	@Override
 	protected final double cost(final HalfEdge e)
 	{
@@ -385,9 +418,11 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		assert q1 != null : o;
 		final Quadric3DError q2 = quadricMap.get(d);
 		assert q2 != null : d;
-		qCostOpt.computeQuadric3DError(q1, q2);
-		qCostOpt.optimalPlacement(o, d, q1, q2, placement, vCostOpt);
-		final double ret = q1.value(vCostOpt) + q2.value(vCostOpt);
+		final Quadric3DError q = qCostOpt.get();
+		final Vertex v = vCostOpt.get();
+		q.computeQuadric3DError(q1, q2);
+		q.optimalPlacement(o, d, q1, q2, placement, v);
+		final double ret = q1.value(v) + q2.value(v);
 		// TODO: check why this assertion sometimes fail
 		// assert ret >= -1.e-2 : q1+"\n"+q2+"\n"+ret;
 		return ret;
@@ -400,6 +435,10 @@ public class QEMDecimateHalfEdge extends AbstractAlgoHalfEdge
 		final Vertex v1 = current.origin();
 		final Vertex v2 = current.destination();
 		assert v1 != v2 : current;
+		// Edges with a non-writable endpoint have an infinite cost,
+		// but they are processed anyway when maxtriangles is set.
+		if (!v1.isWritable() || !v2.isWritable())
+			return false;
 		final Quadric3DError q1 = quadricMap.get(v1);
 		final Quadric3DError q2 = quadricMap.get(v2);
 		assert q1 != null : v1;
@@ -38,6 +38,7 @@ import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
 
 import gnu.trove.impl.PrimeFinder;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.iterator.TIntIntIterator;
@@ -57,12 +58,33 @@ import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.projection.MapMeshLiaison;
 import org.jcae.mesh.amibe.util.HashFactory;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.Amibe2VTK;
 
 /**
  * Remesh an existing mesh.
  *
  * See org.jcae.mesh.amibe.algos2d.Insertion
+ *
+ * <p>
+ * When the <code>threads</code> option is greater than 1, candidate nodes
+ * are computed concurrently on contiguous ranges of edges at each
+ * iteration; analytic metrics must then be thread-safe.  Edges are
+ * assigned to triangles, distance checks and insertions are performed
+ * sequentially in the same order as with a single thread, so the output
+ * mesh does not depend on the number of threads.  Only candidate
+ * computations are concurrent, time spent there and its speed-up are
+ * logged.  They take about a tenth of the computation time, so the
+ * overall gain is small.
+ * </p>
+ *
+ * <p>
+ * Rejecting candidates which are near existing vertices and inserting
+ * nodes by conflict-free batches (for instance, one batch per kd-tree
+ * cell) is deferred work: each accepted node is added to kd-trees and
+ * to the liaison before the next candidate is checked, and liaisons,
+ * kd-trees and the mesh are not thread-safe.
+ * </p>
  * @author Denis Barbier
  */
 public class Remesh
@@ -76,7 +98,6 @@ public class Remesh
 	private TIntObjectHashMap<KdTree<Vertex>> kdTrees;
 	private final double minlen;
 	private final double maxlen;
-	private int nrFailedInterpolations;
 
 	private final Map<Triangle, Collection<Vertex>> mapTriangleVertices =
 		HashFactory.<Triangle, Collection<Vertex>>createMap();
@@ -92,9 +113,8 @@ public class Remesh
 	private double minCosAfterSwap = -2;
 	// Number of nodes which are too near from existing vertices
 	private int tooNearNodes = 0;
-	private final List<Vertex> triNodes = new ArrayList<Vertex>();
-	private final List<EuclidianMetric3D> triMetrics = new ArrayList<EuclidianMetric3D>();
-	private final List<Vertex> triNeighbor = new ArrayList<Vertex>();
+	private final Candidates triCandidates = new Candidates();
+	private int threads = 1;
 	private final Map <Triangle, Collection<Vertex>> verticesToDispatch =
 		HashFactory.<Triangle, Collection<Vertex>>createMap();
 	//  Map to keep track of all groups near a vertex
@@ -186,6 +206,8 @@ public class Remesh
 				proj = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("allowNearNodes"))
 				nearNodes = Boolean.valueOf(val).booleanValue();
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else if(!metrics.isKnownOption(key))
 				LOGGER.warning("Unknown option: "+key);
 		}
@@ -344,6 +366,34 @@ public class Remesh
 	{
 	}
 
+	/**
+	 * Candidate nodes computed on edges.  In parallel mode, each chunk of
+	 * edges has its own instance.
+	 */
+	private static final class Candidates
+	{
+		private final List<Vertex> nodes = new ArrayList<Vertex>();
+		private final List<EuclidianMetric3D> metrics = new ArrayList<EuclidianMetric3D>();
+		// Existing vertex near each candidate node
+		private final List<Vertex> neighbors = new ArrayList<Vertex>();
+		// Number of failed interpolations
+		private int failed;
+
+		private void clear()
+		{
+			nodes.clear();
+			metrics.clear();
+			neighbors.clear();
+		}
+
+		private void add(Candidates that)
+		{
+			nodes.addAll(that.nodes);
+			metrics.addAll(that.metrics);
+			neighbors.addAll(that.neighbors);
+		}
+	}
+
 	private static boolean isInside(Vertex pos, Triangle t)
 	{
 		double [][] temp = new double[4][3];
@@ -454,8 +504,6 @@ public class Remesh
 		//   F. Go to A if at least one node had been inserted
 
 		int nrIter = 0;
-		AbstractHalfEdge h = null;
-		AbstractHalfEdge sym = null;
 
 		updateCurrentScale();
 		resetMarkedTags();
@@ -463,143 +511,95 @@ public class Remesh
 		// We try to insert new nodes by splitting large edges.  As edge collapse
 		// is costful, nodes are inserted only if it does not create small edges,
 		// which means that nodes are not deleted.
-		// We iterate over all edges, and put candidate nodes into triNodes.
+		// We iterate over all edges, and put candidate nodes into triCandidates.
 		// If an edge has no candidates, either because it is small or because no
 		// nodes can be inserted, it is tagged and will not have to be checked
 		// during next iterations.
 
 		boolean reversed = true;
-		while (true)
+		WorkerPool workers = threads > 1 ? new WorkerPool(threads) : null;
+		try
 		{
-			nrIter++;
-			reversed = !reversed;
-			// Maximal number of nodes which are inserted on an edge
-			int maxNodes = 0;
-			nodes.clear();
-			bgTriangles.clear();
-			groups.clear();
-			surroundingTriangle.clear();
-			mapTriangleVertices.clear();
-			boundaryNodes.clear();
-			skippedNodes = 0;
-			LOGGER.fine("Check all edges");
-			//   Step A. Iterate over all triangles
-			for(Triangle t : mesh.getTriangles())
+			while (true)
 			{
-				if (t.hasAttributes(AbstractHalfEdge.OUTER))
-					continue;
-				h = t.getAbstractHalfEdge(h);
-				sym = t.getAbstractHalfEdge(sym);
-				triNodes.clear();
-				triMetrics.clear();
-				triNeighbor.clear();
-				// Step B. Iterate over its edges which had not been scanned yet
-				int nrTriNodes = 0;
-				for (int i = 0; i < 3; i++)
+				nrIter++;
+				reversed = !reversed;
+				// Maximal number of nodes which are inserted on an edge
+				int maxNodes = 0;
+				nodes.clear();
+				bgTriangles.clear();
+				groups.clear();
+				surroundingTriangle.clear();
+				mapTriangleVertices.clear();
+				boundaryNodes.clear();
+				skippedNodes = 0;
+				LOGGER.fine("Check all edges");
+				if (workers == null)
+					maxNodes = collectCandidates(reversed);
+				else
+					maxNodes = collectCandidatesParallel(workers, reversed);
+				if (nodes.isEmpty())
 				{
-					h = h.next();
-					if (h.hasAttributes(AbstractHalfEdge.MARKED))
-					{
-						// This edge has already been checked and cannot be split
-						continue;
-					}
-
-					// Tag symmetric edge to process edges only once
-					if (!h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
-					{
-						sym = h.sym(sym);
-						sym.setAttributes(AbstractHalfEdge.MARKED);
-					}
+					if (meshingDone())
+						break;
 					else
-					{
-						for (Iterator<AbstractHalfEdge> it = h.fanIterator(); it.hasNext(); )
-						{
-							AbstractHalfEdge f = it.next();
-							f.setAttributes(AbstractHalfEdge.MARKED);
-							f.sym().setAttributes(AbstractHalfEdge.MARKED);
-						}
-					}
+						continue;
+				}
 
-					// Step C. Compute nodes which would be at the right distance
-					//         and store them into a bag (triNodes).
-					int nrNodes = collectCandidatesOnEdge(h, reversed);
-					if (nrNodes > nrTriNodes)
+				// TODO: run step D (checkCandidates) and step E concurrently on spatial
+				// partitions, this needs thread-safe liaisons and kd-trees.
+				// Step E. Iterate over the 'nodes' list and insert all vertices.
+				//         We know that those vertices are not near an existing vertex,
+				//         but we take care to not introduce inverted triangles here.
+				for (Vertex v : nodes)
+				{
+					//  These vertices are not bound to any triangles, so
+					//  they must be removed, otherwise getSurroundingOTriangle
+					//  may return a null pointer.
+					for (int group : groups.get(v))
 					{
-						nrTriNodes = nrNodes;
+						kdTrees.get(group).remove(v);
 					}
-					edgesCheckedDuringIteration++;
 				}
-				// Number of nodes which are inserted on edges of this triangle
-				if (nrTriNodes > maxNodes)
-					maxNodes = nrTriNodes;
-				// Step D. Iterate randomly over this bag and keep only vertices
-				//         which are not too near of an existing vertex; these valid
-			        //         candidate points are inserted into the 'nodes' list.
-				if (!triNodes.isEmpty())
+				insertNodes(maxNodes, true, 0, 0);
+				afterIterationHook();
+				assert mesh.isValid();
+				if (hasRidges)
 				{
-					//  Process in pseudo-random order
-					int prime = PrimeFinder.nextPrime(nrTriNodes);
-					int imax = triNodes.size();
-					while (imax % prime == 0)
-						prime = PrimeFinder.nextPrime(prime+1);
-					if (prime >= imax)
-						prime = 1;
-					Collection<Vertex> newVertices = checkDistanceCandidates(t, prime);
-					if (!newVertices.isEmpty())
-						mapTriangleVertices.put(t, newVertices);
+					assert mesh.checkNoInvertedTriangles();
 				}
-			}
-			if (nodes.isEmpty())
-			{
-				if (meshingDone())
-					break;
-				else
-					continue;
-			}
+				assert mesh.checkNoDegeneratedTriangles();
+				assert surroundingTriangle.isEmpty() : "surroundingTriangle still contains "+surroundingTriangle.size()+" vertices";
 
-			// Step E. Iterate over the 'nodes' list and insert all vertices.
-			//         We know that those vertices are not near an existing vertex,
-			//         but we take care to not introduce inverted triangles here.
-			for (Vertex v : nodes)
-			{
-				//  These vertices are not bound to any triangles, so
-				//  they must be removed, otherwise getSurroundingOTriangle
-				//  may return a null pointer.
-				for (int group : groups.get(v))
+				if (LOGGER.isLoggable(Level.FINE))
 				{
-					kdTrees.get(group).remove(v);
+					LOGGER.fine("Mesh now contains "+mesh.getTriangles().size()+" triangles");
+					if (edgesCheckedDuringIteration > 0)
+						LOGGER.fine(edgesCheckedDuringIteration+" edges checked");
+					if (tooNearNodes > 0)
+						LOGGER.fine(tooNearNodes+" nodes are too near from existing vertices and cannot be inserted");
+					if (skippedNodes > 0)
+						LOGGER.fine(skippedNodes+" nodes are skipped");
+				}
+				if (nodes.size() == skippedNodes)
+				{
+					if (meshingDone())
+						break;
 				}
-			}
-			insertNodes(maxNodes, true, 0, 0);
-			afterIterationHook();
-			assert mesh.isValid();
-			if (hasRidges)
-			{
-				assert mesh.checkNoInvertedTriangles();
-			}
-			assert mesh.checkNoDegeneratedTriangles();
-			assert surroundingTriangle.isEmpty() : "surroundingTriangle still contains "+surroundingTriangle.size()+" vertices";
-
-			if (LOGGER.isLoggable(Level.FINE))
-			{
-				LOGGER.fine("Mesh now contains "+mesh.getTriangles().size()+" triangles");
-				if (edgesCheckedDuringIteration > 0)
-					LOGGER.fine(edgesCheckedDuringIteration+" edges checked");
-				if (tooNearNodes > 0)
-					LOGGER.fine(tooNearNodes+" nodes are too near from existing vertices and cannot be inserted");
-				if (skippedNodes > 0)
-					LOGGER.fine(skippedNodes+" nodes are skipped");
-			}
-			if (nodes.size() == skippedNodes)
-			{
-				if (meshingDone())
-					break;
 			}
 		}
+		finally
+		{
+			if (workers != null)
+				workers.shutdown();
+		}
+		if (workers != null)
+			LOGGER.info("Time spent in parallel candidate computations: "+
+				workers.getWallTime()+" ms, speed-up: "+workers.getSpeedUp());
 		LOGGER.info("Number of inserted vertices: "+processed);
 		LOGGER.fine("Number of iterations to insert all nodes: "+nrIter);
-		if (nrFailedInterpolations > 0)
-			LOGGER.info("Number of failed interpolations: "+nrFailedInterpolations);
+		if (triCandidates.failed > 0)
+			LOGGER.info("Number of failed interpolations: "+triCandidates.failed);
 		LOGGER.config("Leave compute()");
 
 		mesh.getTrace().println("# End Remesh");
@@ -809,7 +809,229 @@ public class Remesh
 		return false;
 	}
 
-	private int collectCandidatesOnEdge(AbstractHalfEdge ot, boolean reversed)
+	/**
+	 * Tag an edge and its symmetric edges so that edges are processed only
+	 * once.
+	 *
+	 * @return <code>false</code> if this edge has already been checked
+	 */
+	private static boolean markEdge(AbstractHalfEdge h)
+	{
+		if (h.hasAttributes(AbstractHalfEdge.MARKED))
+		{
+			// This edge has already been checked and cannot be split
+			return false;
+		}
+
+		// Tag symmetric edge to process edges only once
+		if (!h.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
+		{
+			h.sym().setAttributes(AbstractHalfEdge.MARKED);
+		}
+		else
+		{
+			for (Iterator<AbstractHalfEdge> it = h.fanIterator(); it.hasNext(); )
+			{
+				AbstractHalfEdge f = it.next();
+				f.setAttributes(AbstractHalfEdge.MARKED);
+				f.sym().setAttributes(AbstractHalfEdge.MARKED);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Register candidate nodes which had been found on an edge by
+	 * collectCandidatesOnEdge and stored into triCandidates.
+	 *
+	 * @param ot  edge
+	 * @param nrNodes  number of candidate nodes, or -1 if this edge is small
+	 * @param first  index of the first node in triCandidates
+	 * @return number of candidate nodes on this edge
+	 */
+	private int addCandidatesOnEdge(AbstractHalfEdge ot, int nrNodes, int first)
+	{
+		if (nrNodes < 0)
+		{
+			// This edge is smaller than target size and is not split
+			ot.setAttributes(AbstractHalfEdge.MARKED);
+			return 0;
+		}
+		if (nrNodes == 0)
+			return 0;
+		boolean border = ot.hasAttributes(AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD | AbstractHalfEdge.SHARP);
+		int [] g = getGroups(ot);
+		for (int i = first; i < first + nrNodes; i++)
+		{
+			Vertex v = triCandidates.nodes.get(i);
+			if (border)
+				boundaryNodes.add(v);
+			assert !groups.containsKey(v);
+			groups.put(v, g);
+		}
+		return nrNodes;
+	}
+
+	/**
+	 * Iterate over all triangles, compute candidate nodes on their edges
+	 * and keep valid ones.
+	 *
+	 * @param reversed  tells which endpoint of edges is processed first
+	 * @return maximal number of nodes which are inserted on edges of
+	 *         a triangle
+	 */
+	private int collectCandidates(boolean reversed)
+	{
+		int maxNodes = 0;
+		AbstractHalfEdge h = null;
+		//   Step A. Iterate over all triangles
+		for(Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			h = t.getAbstractHalfEdge(h);
+			triCandidates.clear();
+			// Step B. Iterate over its edges which had not been scanned yet
+			int nrTriNodes = 0;
+			for (int i = 0; i < 3; i++)
+			{
+				h = h.next();
+				if (!markEdge(h))
+					continue;
+
+				// Step C. Compute nodes which would be at the right distance
+				//         and store them into a bag (triCandidates).
+				int first = triCandidates.nodes.size();
+				int nrNodes = addCandidatesOnEdge(h,
+					collectCandidatesOnEdge(h, reversed, triCandidates), first);
+				if (nrNodes > nrTriNodes)
+				{
+					nrTriNodes = nrNodes;
+				}
+				edgesCheckedDuringIteration++;
+			}
+			// Number of nodes which are inserted on edges of this triangle
+			if (nrTriNodes > maxNodes)
+				maxNodes = nrTriNodes;
+			checkCandidates(t, nrTriNodes);
+		}
+		return maxNodes;
+	}
+
+	/**
+	 * Same as collectCandidates, but candidate nodes are computed
+	 * concurrently.  Edges are first assigned to triangles sequentially,
+	 * candidate nodes are then computed on contiguous ranges of edges,
+	 * and they are finally checked in the same order as in
+	 * collectCandidates.
+	 */
+	private int collectCandidatesParallel(WorkerPool workers, final boolean reversed)
+	{
+		final List<AbstractHalfEdge> edges = new ArrayList<AbstractHalfEdge>();
+		List<Triangle> triangles = new ArrayList<Triangle>();
+		TIntArrayList firstEdge = new TIntArrayList();
+		//   Steps A and B.  Edges are HalfEdge instances and can be stored.
+		for(Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			int first = edges.size();
+			AbstractHalfEdge h = t.getAbstractHalfEdge();
+			for (int i = 0; i < 3; i++)
+			{
+				h = h.next();
+				if (markEdge(h))
+					edges.add(h);
+			}
+			if (edges.size() > first)
+			{
+				triangles.add(t);
+				firstEdge.add(first);
+			}
+		}
+		firstEdge.add(edges.size());
+
+		// Step C.  Mesh is not modified, each chunk of edges stores its
+		//          candidate nodes into its own bag.
+		final int [] nrNodes = new int[edges.size()];
+		final Candidates [] chunks = new Candidates[workers.getChunks(edges.size())];
+		workers.run(edges.size(), new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				Candidates c = new Candidates();
+				for (int i = begin; i < end; i++)
+					nrNodes[i] = collectCandidatesOnEdge(edges.get(i), reversed, c);
+				chunks[chunk] = c;
+			}
+		});
+		Candidates all = new Candidates();
+		for (Candidates c : chunks)
+		{
+			all.add(c);
+			triCandidates.failed += c.failed;
+		}
+
+		int maxNodes = 0;
+		int next = 0;
+		for (int k = 0; k < triangles.size(); k++)
+		{
+			triCandidates.clear();
+			int nrTriNodes = 0;
+			for (int i = firstEdge.get(k); i < firstEdge.get(k+1); i++)
+			{
+				int first = triCandidates.nodes.size();
+				for (int j = 0; j < nrNodes[i]; j++)
+				{
+					triCandidates.nodes.add(all.nodes.get(next));
+					triCandidates.metrics.add(all.metrics.get(next));
+					triCandidates.neighbors.add(all.neighbors.get(next));
+					next++;
+				}
+				int n = addCandidatesOnEdge(edges.get(i), nrNodes[i], first);
+				if (n > nrTriNodes)
+					nrTriNodes = n;
+				edgesCheckedDuringIteration++;
+			}
+			if (nrTriNodes > maxNodes)
+				maxNodes = nrTriNodes;
+			checkCandidates(triangles.get(k), nrTriNodes);
+		}
+		assert next == all.nodes.size();
+		return maxNodes;
+	}
+
+	/**
+	 * Step D. Iterate randomly over candidate nodes of a triangle and keep
+	 * only vertices which are not too near of an existing vertex; these valid
+	 * candidate points are inserted into the 'nodes' list.
+	 */
+	private void checkCandidates(Triangle t, int nrTriNodes)
+	{
+		if (!triCandidates.nodes.isEmpty())
+		{
+			//  Process in pseudo-random order
+			int prime = PrimeFinder.nextPrime(nrTriNodes);
+			int imax = triCandidates.nodes.size();
+			while (imax % prime == 0)
+				prime = PrimeFinder.nextPrime(prime+1);
+			if (prime >= imax)
+				prime = 1;
+			Collection<Vertex> newVertices = checkDistanceCandidates(t, prime);
+			if (!newVertices.isEmpty())
+				mapTriangleVertices.put(t, newVertices);
+		}
+	}
+
+	/**
+	 * Compute candidate nodes on an edge and store them into a bag.
+	 * This method does not modify mesh nor instance fields, and can be called
+	 * concurrently with different bags.
+	 *
+	 * @return number of candidate nodes, or -1 if this edge is small
+	 */
+	private int collectCandidatesOnEdge(AbstractHalfEdge ot, boolean reversed,
+		Candidates out)
 	{
 		int nrNodes = 0;
 		int group = ot.getTri().getGroupId();
@@ -821,8 +1043,7 @@ public class Remesh
 		if (edgeLength < currentScale * maxlen)
 		{
 			// This edge is smaller than target size and is not split
-			ot.setAttributes(AbstractHalfEdge.MARKED);
-			return nrNodes;
+			return -1;
 		}
 		EuclidianMetric3D mS = metrics.get(start);
 		EuclidianMetric3D mE = metrics.get(end);
@@ -910,19 +1131,16 @@ public class Remesh
 							break;
 						}
 					}
-					else
-						boundaryNodes.add(last);
-					triNodes.add(last);
-					triMetrics.add(m);
+					out.nodes.add(last);
+					out.metrics.add(m);
 					if (start.getRef() == 0 && end.getRef() != 0)
-						triNeighbor.add(start);
+						out.neighbors.add(start);
 					else if (start.getRef() != 0 && end.getRef() == 0)
-							triNeighbor.add(end);
+							out.neighbors.add(end);
 					else if (m.distance2(np, start) < m.distance2(np, end))
-						triNeighbor.add(start);
+						out.neighbors.add(start);
 					else
-						triNeighbor.add(end);
-					addGroups(ot, last);
+						out.neighbors.add(end);
 					nrNodes++;
 					r--;
 					break;
@@ -944,7 +1162,7 @@ public class Remesh
 			}
 			if (cnt < 0)
 			{
-				nrFailedInterpolations++;
+				out.failed++;
 				return nrNodes;
 			}
 		}
@@ -953,19 +1171,19 @@ public class Remesh
 
 	private Collection<Vertex> checkDistanceCandidates(Triangle t, int step)
 	{
-		int imax = triNodes.size();
+		int imax = triCandidates.nodes.size();
 		int index = imax / 2;
 		Collection<Vertex> newVertices = new ArrayList<Vertex>();
 		int group = t.getGroupId();
 		KdTree<Vertex> kdTreeGroup = kdTrees.get(group);
 		for (int i = 0; i < imax; i++)
 		{
-			Vertex v = triNodes.get(index);
-			EuclidianMetric3D metric = triMetrics.get(index);
+			Vertex v = triCandidates.nodes.get(index);
+			EuclidianMetric3D metric = triCandidates.metrics.get(index);
 			assert metric != null;
 			double localSize = 0.5 * metric.getUnitBallBBox()[0];
 			double localSize2 = localSize * localSize;
-			Triangle bgT = liaison.addVertex(v, triNeighbor.get(index), localSize2, group);
+			Triangle bgT = liaison.addVertex(v, triCandidates.neighbors.get(index), localSize2, group);
 			boolean validCandidate = allowNearNodes;
 			if (!validCandidate)
 			{
@@ -999,9 +1217,8 @@ public class Remesh
 		return newVertices;
 	}
 
-	private void addGroups(AbstractHalfEdge ot, Vertex v)
+	private static int[] getGroups(AbstractHalfEdge ot)
 	{
-		assert !groups.containsKey(v);
 		if (!ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
 		{
 			int g1 = ot.getTri().getGroupId();
@@ -1010,21 +1227,17 @@ public class Remesh
 			{
 				g2 = ot.sym().getTri().getGroupId();
 			}
-			if (g1 == g2 && g1 == -1)
-			{
-				groups.put(v, new int[] {-1});
-			}
 			if (g1 == g2 && g1 != -1)
 			{
-				groups.put(v, new int[] {-1, g1});
+				return new int[] {-1, g1};
 			}
 			else if (g1 == -1 || g2 == -1)
 			{
-				groups.put(v, new int[] {g1, g2});
+				return new int[] {g1, g2};
 			}
 			else
 			{
-				groups.put(v, new int[] {-1, g1, g2});
+				return new int[] {-1, g1, g2};
 			}
 		}
 		else
@@ -1035,7 +1248,7 @@ public class Remesh
 				groupSet.add(it.next().getTri().getGroupId());
 			}
 			groupSet.add(-1);
-			groups.put(v, groupSet.toArray());
+			return groupSet.toArray();
 		}
 	}
 
@@ -25,16 +25,21 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Triangle;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.projection.QuadricProjection;
 import org.jcae.mesh.amibe.projection.LocalSurfaceProjection;
 import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Iterator;
 import java.io.IOException;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
@@ -50,6 +55,16 @@ import java.util.logging.Logger;
  * <a href="http://www.ann.jussieu.fr/~frey/publications/ijnme4198.pdf">Adaptive Triangular-Quadrilateral Mesh Generation</a>, by Houman Borouchaky and
  * Pascal J. Frey.
  * If final position improves vertex quality, point is moved.
+ *
+ * <p>
+ * When the <code>threads</code> option is greater than 1, new locations
+ * of all vertices are computed and projected concurrently from locations
+ * at the beginning of the iteration, and vertices are then moved
+ * sequentially by beginning with worst vertex.  If <code>refresh</code>
+ * is set, vertices are moved in the same order as in sequential mode,
+ * new locations are computed concurrently for batches of non adjacent
+ * vertices, and results do not depend on the number of threads.
+ * </p>
  */
 public class SmoothNodes3D
 {
@@ -71,6 +86,7 @@ public class SmoothNodes3D
 	private TObjectDoubleHashMap<Triangle> qualityMap;
 	private Map<Vertex, LocalSurfaceProjection> nodeProjection;
 	private Collection<Vertex> nodeset;
+	private int threads = 1;
 	
 	/**
 	 * Creates a <code>SmoothNodes3D</code> instance.
@@ -89,8 +105,8 @@ public class SmoothNodes3D
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code> and <code>threads</code>.
 	 */
 	public SmoothNodes3D(final Mesh m, final Map<String, String> options)
 	{
@@ -114,6 +130,8 @@ public class SmoothNodes3D
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else
 				throw new RuntimeException("Unknown option: "+key);
 		}
@@ -126,6 +144,7 @@ public class SmoothNodes3D
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Number of threads: "+threads);
 		}
 	}
 	
@@ -179,10 +198,22 @@ public class SmoothNodes3D
 					continue;
 				nodeProjection.put(v, qP);
 			}
-			for (int i = 0; i < nloop; i++)
+			WorkerPool workers = threads > 1 ? new WorkerPool(threads) : null;
+			try
 			{
-				processAllNodes();
-				postProcessIteration(mesh, i);
+				for (int i = 0; i < nloop; i++)
+				{
+					if (workers != null)
+						processAllNodesParallel(workers);
+					else
+						processAllNodes();
+					postProcessIteration(mesh, i);
+				}
+			}
+			finally
+			{
+				if (workers != null)
+					workers.shutdown();
 			}
 		}
 		LOGGER.info("Number of moved points: "+processed);
@@ -233,50 +264,284 @@ public class SmoothNodes3D
 					LOGGER.info("Vertices processed: "+processed);
 				if (!refresh)
 					continue;
-				assert ot != null;
-				// Update triangle quality
-				Vertex d = ot.destination();
-				do
+				ot = vertexEdge(v, ot);
+				refreshQuality(ot);
+			}
+			else
+				notProcessed++;
+		}
+	}
+
+	/*
+	 * Updates quality of triangles around a vertex which has been moved,
+	 * and quality of its neighbors which are still in the tree.
+	 *
+	 * @param ot  half-edge whose origin is the moved vertex
+	 * @return lowest quality of updated neighbors
+	 */
+	private double refreshQuality(AbstractHalfEdge ot)
+	{
+		double ret = Double.MAX_VALUE;
+		// Update triangle quality
+		Vertex d = ot.destination();
+		do
+		{
+			ot = ot.nextOriginLoop();
+			if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			double qt = triangleQuality(ot);
+			qualityMap.put(ot.getTri(), qt);
+		}
+		while (ot.destination() != d);
+		// Update neighbor vertex quality
+		do
+		{
+			ot = ot.nextOriginLoop();
+			Vertex n = ot.destination();
+			if (n == mesh.outerVertex || !tree.contains(n))
+				continue;
+			if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			ot = ot.next();
+			double qv = vertexQuality(ot);
+			ot = ot.prev();
+			if (qv <= tolerance)
+			{
+				tree.update(n, qv);
+				ret = Math.min(ret, qv);
+			}
+			else
+			{
+				tree.remove(n);
+				notProcessed++;
+			}
+		}
+		while (ot.destination() != d);
+		return ret;
+	}
+	
+	final void postProcessIteration(Mesh mesh, int i)
+	{
+		// Can be overridden
+	}
+	
+	/*
+	 * Moves all nodes using a modified Laplacian smoothing, new locations
+	 * are computed concurrently.
+	 */
+	private void processAllNodesParallel(WorkerPool workers)
+	{
+		// Compute vertex quality
+		final Vertex [] vertices = new Vertex[nodeset.size()];
+		final double [] quality = new double[vertices.length];
+		int nrVertices = 0;
+		for (Vertex v: nodeset)
+		{
+			if (v.isManifold() && v.isMutable() && v.getRef() <= 0)
+				vertices[nrVertices++] = v;
+		}
+		workers.run(nrVertices, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = begin; i < end; i++)
 				{
-					ot = ot.nextOriginLoop();
-					if (ot.hasAttributes(AbstractHalfEdge.OUTER))
-						continue;
-					double qt = triangleQuality(ot);
-					qualityMap.put(ot.getTri(), qt);
+					ot = vertexEdge(vertices[i], ot);
+					quality[i] = vertexQuality(ot);
 				}
-				while (ot.destination() != d);
-				// Update neighbor vertex quality
-				do
+			}
+		});
+		tree.clear();
+		for (int i = 0; i < nrVertices; i++)
+		{
+			if (quality[i] <= tolerance)
+				tree.insert(vertices[i], quality[i]);
+		}
+		if (refresh)
+		{
+			processTreeInBatches(workers, vertices, quality);
+			return;
+		}
+		// Vertices are moved by beginning with worst vertex
+		int k = 0;
+		for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); )
+		{
+			QSortedTree.Node<Vertex> q = itt.next();
+			Vertex v = q.getData();
+			if (v.getRef() != 0 && preserveBoundaries)
+			{
+				notProcessed++;
+				continue;
+			}
+			vertices[k] = v;
+			quality[k] = q.getValue();
+			k++;
+		}
+		tree.clear();
+		final int n = k;
+
+		// Compute new locations
+		final Location [] centroids = new Location[n];
+		final Location [] projections = new Location[n];
+		workers.run(n, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = begin; i < end; i++)
 				{
-					ot = ot.nextOriginLoop();
-					Vertex n = ot.destination();
-					if (n == mesh.outerVertex || !tree.contains(n))
-						continue;
-					if (ot.hasAttributes(AbstractHalfEdge.OUTER))
-						continue;
-					ot = ot.next();
-					double qv = vertexQuality(ot);
-					ot = ot.prev();
-					if (qv <= tolerance)
-						tree.update(n, qv);
-					else
+					ot = vertexEdge(vertices[i], ot);
+					centroids[i] = new Location();
+					computeCentroid(vertices[i], ot, centroids[i]);
+					LocalSurfaceProjection tr = nodeProjection.get(vertices[i]);
+					if (tr != null && tr.canProject())
 					{
-						tree.remove(n);
-						notProcessed++;
+						projections[i] = new Location(centroids[i]);
+						tr.project(projections[i]);
 					}
 				}
-				while (ot.destination() != d);
+			}
+		});
+
+		// Move vertices
+		AbstractHalfEdge ot = null;
+		for (int i = 0; i < n; i++)
+		{
+			Vertex v = vertices[i];
+			ot = vertexEdge(v, ot);
+			boolean moved = false;
+			if (!mesh.checkNewRingNormals(ot, centroids[i]))
+				LOGGER.finer("Point not moved, some triangles would become inverted");
+			else if (projections[i] == null)
+				LOGGER.finer("Point cannot be projected into surface");
+			else
+				moved = moveNode(v, ot, projections[i], quality[i]);
+			if (moved)
+			{
+				processed++;
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
 			}
 			else
 				notProcessed++;
 		}
 	}
-	
-	final void postProcessIteration(Mesh mesh, int i)
+
+	/*
+	 * Moves vertices in the same order as processAllNodes().  Vertices
+	 * are processed by batches of non adjacent vertices, their new
+	 * locations do not depend on each other and are computed concurrently.
+	 * When a refreshed vertex quality becomes lower than the quality of
+	 * remaining vertices of this batch, these vertices are removed from
+	 * the batch, because the refreshed vertex has then to be processed
+	 * first.
+	 */
+	private void processTreeInBatches(WorkerPool workers, final Vertex [] vertices, double [] quality)
 	{
-		// Can be overridden
+		final Location [] centroids = new Location[vertices.length];
+		final Location [] projections = new Location[vertices.length];
+		Set<Vertex> batchVertices = new HashSet<Vertex>();
+		AbstractHalfEdge ot = null;
+		while (!tree.isEmpty())
+		{
+			// Build a batch with the smallest entries
+			int n = 0;
+			batchVertices.clear();
+			for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); )
+			{
+				QSortedTree.Node<Vertex> q = itt.next();
+				Vertex v = q.getData();
+				ot = vertexEdge(v, ot);
+				if (isAdjacent(ot, batchVertices))
+					break;
+				batchVertices.add(v);
+				vertices[n] = v;
+				quality[n] = q.getValue();
+				n++;
+			}
+			workers.run(n, new WorkerPool.RangeTask()
+			{
+				public void run(int chunk, int begin, int end)
+				{
+					AbstractHalfEdge ot = null;
+					for (int i = begin; i < end; i++)
+					{
+						projections[i] = null;
+						if (vertices[i].getRef() != 0 && preserveBoundaries)
+							continue;
+						ot = vertexEdge(vertices[i], ot);
+						centroids[i] = new Location();
+						computeCentroid(vertices[i], ot, centroids[i]);
+						LocalSurfaceProjection tr = nodeProjection.get(vertices[i]);
+						if (tr != null && tr.canProject())
+						{
+							projections[i] = new Location(centroids[i]);
+							tr.project(projections[i]);
+						}
+					}
+				}
+			});
+			// Move vertices, checking normals is not thread-safe
+			for (int i = 0; i < n; i++)
+			{
+				Vertex v = vertices[i];
+				tree.remove(v);
+				if (v.getRef() != 0 && preserveBoundaries)
+				{
+					notProcessed++;
+					continue;
+				}
+				ot = vertexEdge(v, ot);
+				boolean moved = false;
+				if (!mesh.checkNewRingNormals(ot, centroids[i]))
+					LOGGER.finer("Point not moved, some triangles would become inverted");
+				else if (projections[i] == null)
+					LOGGER.finer("Point cannot be projected into surface");
+				else
+					moved = moveNode(v, ot, projections[i], quality[i]);
+				if (!moved)
+				{
+					notProcessed++;
+					continue;
+				}
+				processed++;
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
+				double qmin = refreshQuality(ot);
+				while (n > i + 1 && quality[n - 1] >= qmin)
+					n--;
+			}
+		}
 	}
-	
+
+	/** Tells whether a neighbor of ot.origin() belongs to a set */
+	private boolean isAdjacent(AbstractHalfEdge ot, Set<Vertex> set)
+	{
+		Vertex d = ot.destination();
+		do
+		{
+			ot = ot.nextOriginLoop();
+			if (set.contains(ot.destination()))
+				return true;
+		}
+		while (ot.destination() != d);
+		return false;
+	}
+
+	/** Returns an half-edge whose origin is n */
+	private static AbstractHalfEdge vertexEdge(Vertex n, AbstractHalfEdge ot)
+	{
+		Triangle f = (Triangle) n.getLink();
+ 		ot = f.getAbstractHalfEdge(ot);
+		if (ot.destination() == n)
+			ot = ot.next();
+		else if (ot.apex() == n)
+			ot = ot.prev();
+		assert ot.origin() == n;
+		return ot;
+	}
+
 	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
 	{
 		Triangle f = (Triangle) n.getLink();
@@ -287,6 +552,32 @@ public class SmoothNodes3D
 			ot = ot.prev();
 		assert ot.origin() == n;
 		
+		computeCentroid(n, ot, c);
+		if (!mesh.checkNewRingNormals(ot, c))
+		{
+			LOGGER.finer("Point not moved, some triangles would become inverted");
+			return false;
+		}
+		LocalSurfaceProjection tr = nodeProjection.get(n);
+		if (tr == null || !tr.canProject())
+		{
+			LOGGER.finer("Point cannot be projected into surface");
+			return false;
+		}
+		tr.project(c);
+		return moveNode(n, ot, c, quality);
+	}
+
+	/**
+	 * Computes the new location of a vertex.  This method does not
+	 * modify mesh and can be called concurrently.
+	 *
+	 * @param n  vertex
+	 * @param ot  half-edge whose origin is n, it is left unchanged
+	 * @param c  new location
+	 */
+	private void computeCentroid(Vertex n, AbstractHalfEdge ot, Location c)
+	{
 		//  Compute 3D coordinates centroid
 		int nn = 0;
 		c.moveTo(0, 0, 0);
@@ -326,23 +617,14 @@ public class SmoothNodes3D
 			n.getX() + relaxation * (c.getX() - n.getX()),
 			n.getY() + relaxation * (c.getY() - n.getY()),
 			n.getZ() + relaxation * (c.getZ() - n.getZ()));
-		if (!mesh.checkNewRingNormals(ot, c))
-		{
-			LOGGER.finer("Point not moved, some triangles would become inverted");
-			return false;
-		}
-		LocalSurfaceProjection tr = nodeProjection.get(n);
-		if (tr == null || !tr.canProject())
-		{
-			LOGGER.finer("Point cannot be projected into surface");
-			return false;
-		}
-		tr.project(c);
+	}
 
-		double saveX = c.getX();
-		double saveY = c.getY();
-		double saveZ = c.getZ();
-		n.moveTo(c);
+	private boolean moveNode(Vertex n, AbstractHalfEdge ot, Location target, double quality)
+	{
+		double saveX = n.getX();
+		double saveY = n.getY();
+		double saveZ = n.getZ();
+		n.moveTo(target);
 		if (checkQuality)
 		{
 			// Check that quality has not been degraded
@@ -361,7 +643,7 @@ public class SmoothNodes3D
 		Triangle f = edge.getTri();
 		assert f.getV0() != mesh.outerVertex && f.getV1() != mesh.outerVertex && f.getV2() != mesh.outerVertex : f;
 		double p = f.getV0().distance3D(f.getV1()) + f.getV1().distance3D(f.getV2()) + f.getV2().distance3D(f.getV0());
-		double area = edge.area(mesh);
+		double area = Matrix3D.computeArea3D(edge.origin(), edge.destination(), edge.apex());
 		double ret = scaleFactor * area / p / p;
 		assert ret >= 0.0 && ret <= 1.01;
 		return ret;
@@ -27,11 +27,13 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.projection.MeshLiaison;
 import org.jcae.mesh.amibe.util.QSortedTree;
 import org.jcae.mesh.amibe.util.PAVLSortedTree;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.jcae.mesh.xmldata.MeshWriter;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Collection;
 import java.util.Iterator;
@@ -40,6 +42,7 @@ import gnu.trove.map.hash.TObjectDoubleHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.metrics.MetricSupport;
 import org.jcae.mesh.amibe.projection.MapMeshLiaison;
 
@@ -52,6 +55,21 @@ import org.jcae.mesh.amibe.projection.MapMeshLiaison;
  * <a href="http://www.ann.jussieu.fr/~frey/publications/ijnme4198.pdf">Adaptive Triangular-Quadrilateral Mesh Generation</a>, by Houman Borouchaky and
  * Pascal J. Frey.
  * If final position improves vertex quality, point is moved.
+ *
+ * <p>
+ * When the <code>threads</code> option is greater than 1, a Jacobi-style
+ * variant is used: new locations of all vertices are computed concurrently
+ * from locations at the beginning of the iteration, and projected
+ * concurrently onto the background mesh if
+ * {@link MeshLiaison#canProjectConcurrently} returns <code>true</code>.
+ * Vertices are then moved sequentially by beginning with worst vertex,
+ * inverted triangles and quality are checked as in the sequential mode.
+ * Results differ from the sequential mode, but do not depend on the
+ * number of threads.  If <code>refresh</code> is set, vertices are moved
+ * in the same order as in sequential mode, new locations are computed
+ * and projected concurrently for batches of non adjacent vertices, and
+ * results are the same as in sequential mode.
+ * </p>
  */
 public class SmoothNodes3DBg
 {
@@ -74,6 +92,7 @@ public class SmoothNodes3DBg
 	private Collection<Vertex> nodeset;
 	private final Set<Vertex> immutableNodes = new LinkedHashSet<Vertex>();
 	private MetricSupport metrics;
+	private int threads = 1;
 	/**
 	 * Creates a <code>SmoothNodes3DBg</code> instance.
 	 *
@@ -92,8 +111,8 @@ public class SmoothNodes3DBg
 	 * @param options  map containing key-value pairs to modify algorithm
 	 *        behaviour.  Valid keys are <code>size</code>,
 	 *        <code>iterations</code>, <code>boundaries</code>,
-	 *        <code>tolerance</code>, <code>refresh</code> and
-	 *        <code>relaxation</code>.
+	 *        <code>tolerance</code>, <code>refresh</code>,
+	 *        <code>relaxation</code> and <code>threads</code>.
 	 */
 	@Deprecated
 	public SmoothNodes3DBg(final Mesh bgMesh, final Map<String, String> options)
@@ -122,6 +141,8 @@ public class SmoothNodes3DBg
 				checkQuality = Boolean.valueOf(val).booleanValue();
 			else if (key.equals("relaxation"))
 				relaxation = Double.valueOf(val).doubleValue();
+			else if (key.equals("threads"))
+				threads = Integer.parseInt(val);
 			else if (key.equals("coplanarity"))
 			{
 				minCos = Double.parseDouble(val);
@@ -139,6 +160,7 @@ public class SmoothNodes3DBg
 			LOGGER.fine("Relaxation: "+relaxation);
 			LOGGER.fine("Tolerance: "+tolerance);
 			LOGGER.fine("Preserve boundaries: "+preserveBoundaries);
+			LOGGER.fine("Number of threads: "+threads);
 		}
 	}
 
@@ -223,10 +245,22 @@ public class SmoothNodes3DBg
 					immutableNodes.add(v);
 			}
 
-			for (int i = 0; i < nloop; i++)
+			WorkerPool workers = threads > 1 ? new WorkerPool(threads) : null;
+			try
 			{
-				processAllNodes();
-				postProcessIteration(mesh, i);
+				for (int i = 0; i < nloop; i++)
+				{
+					if (workers != null)
+						processAllNodesParallel(workers);
+					else
+						processAllNodes();
+					postProcessIteration(mesh, i);
+				}
+			}
+			finally
+			{
+				if (workers != null)
+					workers.shutdown();
 			}
 		}
 		LOGGER.info("Number of moved points: "+processed);
@@ -287,45 +321,281 @@ public class SmoothNodes3DBg
 					LOGGER.info("Vertices processed: "+processed);
 				if (!refresh)
 					continue;
-				assert ot != null;
-				// Update triangle quality
-				Vertex d = ot.destination();
-				do
+				ot = vertexEdge(v, ot);
+				refreshQuality(ot);
+			}
+			else
+				notProcessed++;
+		}
+	}
+	
+	/*
+	 * Updates quality of triangles around a vertex which has been moved,
+	 * and quality of its neighbors which are still in the tree.
+	 *
+	 * @param ot  half-edge whose origin is the moved vertex
+	 * @return lowest quality of updated neighbors
+	 */
+	private double refreshQuality(AbstractHalfEdge ot)
+	{
+		double ret = Double.MAX_VALUE;
+		// Update triangle quality
+		Vertex d = ot.destination();
+		do
+		{
+			ot = ot.nextOriginLoop();
+			if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			double qt = triangleQuality(ot);
+			qualityMap.put(ot.getTri(), qt);
+		}
+		while (ot.destination() != d);
+		// Update neighbor vertex quality
+		do
+		{
+			ot = ot.nextOriginLoop();
+			Vertex n = ot.destination();
+			if (n == mesh.outerVertex || !tree.contains(n))
+				continue;
+			if (ot.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			ot = ot.next();
+			double qv = vertexQuality(ot);
+			ot = ot.prev();
+			if (qv <= tolerance)
+			{
+				tree.update(n, qv);
+				ret = Math.min(ret, qv);
+			}
+			else
+			{
+				tree.remove(n);
+				notProcessed++;
+			}
+		}
+		while (ot.destination() != d);
+		return ret;
+	}
+
+	/*
+	 * Moves all nodes using a modified Laplacian smoothing, new locations
+	 * are computed concurrently.
+	 */
+	private void processAllNodesParallel(WorkerPool workers)
+	{
+		// Compute vertex quality
+		final Vertex [] vertices = new Vertex[nodeset.size()];
+		final double [] quality = new double[vertices.length];
+		int nrVertices = 0;
+		for (Vertex v: nodeset)
+		{
+			if (immutableNodes.contains(v))
+				notProcessed++;
+			else
+				vertices[nrVertices++] = v;
+		}
+		workers.run(nrVertices, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = begin; i < end; i++)
 				{
-					ot = ot.nextOriginLoop();
-					if (ot.hasAttributes(AbstractHalfEdge.OUTER))
-						continue;
-					double qt = triangleQuality(ot);
-					qualityMap.put(ot.getTri(), qt);
+					ot = vertexEdge(vertices[i], ot);
+					quality[i] = vertexQuality(ot);
 				}
-				while (ot.destination() != d);
-				// Update neighbor vertex quality
-				do
+			}
+		});
+		tree.clear();
+		for (int i = 0; i < nrVertices; i++)
+		{
+			if (quality[i] <= tolerance)
+				tree.insert(vertices[i], quality[i]);
+		}
+		if (refresh)
+		{
+			processTreeInBatches(workers, vertices, quality);
+			return;
+		}
+		// Vertices are moved by beginning with worst vertex
+		final int n = tree.size();
+		int k = 0;
+		for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); k++)
+		{
+			QSortedTree.Node<Vertex> q = itt.next();
+			vertices[k] = q.getData();
+			quality[k] = q.getValue();
+		}
+		tree.clear();
+
+		// Compute new locations
+		final Location [] targets = new Location[n];
+		final int [] groups = new int[n];
+		workers.run(n, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				AbstractHalfEdge ot = null;
+				for (int i = begin; i < end; i++)
 				{
-					ot = ot.nextOriginLoop();
-					Vertex n = ot.destination();
-					if (n == mesh.outerVertex || !tree.contains(n))
-						continue;
-					if (ot.hasAttributes(AbstractHalfEdge.OUTER))
-						continue;
-					ot = ot.next();
-					double qv = vertexQuality(ot);
-					ot = ot.prev();
-					if (qv <= tolerance)
-						tree.update(n, qv);
-					else
-					{
-						tree.remove(n);
-						notProcessed++;
-					}
+					ot = vertexEdge(vertices[i], ot);
+					targets[i] = new Location();
+					computeCentroid(vertices[i], ot, targets[i]);
+					groups[i] = ot.getTri().getGroupId();
 				}
-				while (ot.destination() != d);
+			}
+		});
+		Location [] projections = null;
+		boolean [] projected = null;
+		if (liaison.canProjectConcurrently())
+		{
+			projections = new Location[n];
+			for (int i = 0; i < n; i++)
+				projections[i] = new Location();
+			projected = liaison.project(targets, projections, groups, workers);
+		}
+
+		// Move vertices
+		AbstractHalfEdge ot = null;
+		for (int i = 0; i < n; i++)
+		{
+			Vertex v = vertices[i];
+			ot = vertexEdge(v, ot);
+			boolean moved;
+			if (projected == null)
+				moved = moveNode(v, ot, targets[i], groups[i], quality[i]);
+			else if (projected[i])
+				moved = moveProjectedNode(v, ot, projections[i], groups[i], quality[i]);
+			else
+			{
+				LOGGER.finer("Point not moved, projection failed");
+				moved = false;
+			}
+			if (moved)
+			{
+				processed++;
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
 			}
 			else
 				notProcessed++;
 		}
 	}
-	
+
+	/*
+	 * Moves vertices in the same order as processAllNodes().  Vertices
+	 * are processed by batches of non adjacent vertices, their new
+	 * locations do not depend on each other and are computed concurrently.
+	 * When a refreshed vertex quality becomes lower than the quality of
+	 * remaining vertices of this batch, these vertices are removed from
+	 * the batch, because the refreshed vertex has then to be processed
+	 * first.
+	 */
+	private void processTreeInBatches(WorkerPool workers, final Vertex [] vertices, double [] quality)
+	{
+		final boolean concurrentProjection = liaison.canProjectConcurrently();
+		Set<Vertex> batchVertices = new HashSet<Vertex>();
+		AbstractHalfEdge ot = null;
+		while (!tree.isEmpty())
+		{
+			// Build a batch with the smallest entries
+			int n = 0;
+			batchVertices.clear();
+			for (Iterator<QSortedTree.Node<Vertex>> itt = tree.iterator(); itt.hasNext(); )
+			{
+				QSortedTree.Node<Vertex> q = itt.next();
+				Vertex v = q.getData();
+				ot = vertexEdge(v, ot);
+				if (isAdjacent(ot, batchVertices))
+					break;
+				batchVertices.add(v);
+				vertices[n] = v;
+				quality[n] = q.getValue();
+				n++;
+			}
+			final Location [] targets = new Location[n];
+			final int [] groups = new int[n];
+			workers.run(n, new WorkerPool.RangeTask()
+			{
+				public void run(int chunk, int begin, int end)
+				{
+					AbstractHalfEdge ot = null;
+					for (int i = begin; i < end; i++)
+					{
+						ot = vertexEdge(vertices[i], ot);
+						targets[i] = new Location();
+						computeCentroid(vertices[i], ot, targets[i]);
+						groups[i] = ot.getTri().getGroupId();
+					}
+				}
+			});
+			Location [] projections = null;
+			boolean [] projected = null;
+			if (concurrentProjection)
+			{
+				projections = new Location[n];
+				for (int i = 0; i < n; i++)
+					projections[i] = new Location();
+				projected = liaison.project(targets, projections, groups, workers);
+			}
+			// Move vertices, liaison and metrics are not thread-safe
+			for (int i = 0; i < n; i++)
+			{
+				Vertex v = vertices[i];
+				tree.remove(v);
+				ot = vertexEdge(v, ot);
+				boolean moved;
+				if (projected == null)
+					moved = moveNode(v, ot, targets[i], groups[i], quality[i]);
+				else if (projected[i])
+					moved = moveProjectedNode(v, ot, projections[i], groups[i], quality[i]);
+				else
+				{
+					LOGGER.finer("Point not moved, projection failed");
+					moved = false;
+				}
+				if (!moved)
+				{
+					notProcessed++;
+					continue;
+				}
+				processed++;
+				if (processed > 0 && (processed % progressBarStatus) == 0)
+					LOGGER.info("Vertices processed: "+processed);
+				double qmin = refreshQuality(ot);
+				while (n > i + 1 && quality[n - 1] >= qmin)
+					n--;
+			}
+		}
+	}
+
+	/** Tells whether a neighbor of ot.origin() belongs to a set */
+	private boolean isAdjacent(AbstractHalfEdge ot, Set<Vertex> set)
+	{
+		Vertex d = ot.destination();
+		do
+		{
+			ot = ot.nextOriginLoop();
+			if (set.contains(ot.destination()))
+				return true;
+		}
+		while (ot.destination() != d);
+		return false;
+	}
+
+	/** Returns an half-edge whose origin is n */
+	private static AbstractHalfEdge vertexEdge(Vertex n, AbstractHalfEdge ot)
+	{
+		Triangle f = (Triangle) n.getLink();
+ 		ot = f.getAbstractHalfEdge(ot);
+		if (ot.destination() == n)
+			ot = ot.next();
+		else if (ot.apex() == n)
+			ot = ot.prev();
+		assert ot.origin() == n;
+		return ot;
+	}
+
 	private boolean smoothNode(Vertex n, AbstractHalfEdge ot, double quality)
 	{
 		Triangle f = (Triangle) n.getLink();
@@ -336,9 +606,23 @@ public class SmoothNodes3DBg
 		else if (ot.apex() == n)
 			ot = ot.prev();
 		assert ot.origin() == n;
+		Location centroid3 = new Location();
+		computeCentroid(n, ot, centroid3);
+		return moveNode(n, ot, centroid3, group, quality);
+	}
+
+	/**
+	 * Computes the new location of a vertex.  This method does not
+	 * modify mesh and can be called concurrently.
+	 *
+	 * @param n  vertex
+	 * @param ot  half-edge whose origin is n, it is left unchanged
+	 * @param centroid3  new location
+	 */
+	private void computeCentroid(Vertex n, AbstractHalfEdge ot, Location centroid3)
+	{
 		//  Compute 3D coordinates centroid
 		int nn = 0;
-		Location centroid3 = new Location();
 		assert n.isManifold();
 		Vertex d = ot.destination();
 		do
@@ -372,6 +656,10 @@ public class SmoothNodes3DBg
 			n.getX() + relaxation * (centroid3.getX() - n.getX()),
 			n.getY() + relaxation * (centroid3.getY() - n.getY()),
 			n.getZ() + relaxation * (centroid3.getZ() - n.getZ()));
+	}
+
+	private boolean moveNode(Vertex n, AbstractHalfEdge ot, Location centroid3, int group, double quality)
+	{
 		double saveX = n.getX();
 		double saveY = n.getY();
 		double saveZ = n.getZ();
@@ -406,7 +694,38 @@ public class SmoothNodes3DBg
 		}
 		liaison.backupRestore(n, false, group);
 		if (!metrics.isEmpty())
-			metrics.put(n, metrics.get(n, f));
+			metrics.put(n, metrics.get(n, group));
+		return true;
+	}
+
+	/**
+	 * Moves a vertex to a location already projected onto the background
+	 * mesh.  This is the same as {@link #moveNode}, but projection is
+	 * skipped.
+	 */
+	private boolean moveProjectedNode(Vertex n, AbstractHalfEdge ot, Location projection, int group, double quality)
+	{
+		if (!mesh.canMoveOrigin(ot, projection))
+		{
+			LOGGER.finer("Point not moved, some triangles would become inverted");
+			return false;
+		}
+		double saveX = n.getX();
+		double saveY = n.getY();
+		double saveZ = n.getZ();
+		n.moveTo(projection);
+		if (checkQuality)
+		{
+			// Check that quality has not been degraded
+			if (vertexQuality(ot) < quality)
+			{
+				n.moveTo(saveX, saveY, saveZ);
+				LOGGER.finer("Point not moved, quality decreases");
+				return false;
+			}
+		}
+		if (!metrics.isEmpty())
+			metrics.put(n, metrics.get(n, group));
 		return true;
 	}
 
@@ -415,7 +734,7 @@ public class SmoothNodes3DBg
 		Triangle f = edge.getTri();
 		assert f.getV0() != mesh.outerVertex && f.getV1() != mesh.outerVertex && f.getV2() != mesh.outerVertex : f;
 		double p = f.getV0().distance3D(f.getV1()) + f.getV1().distance3D(f.getV2()) + f.getV2().distance3D(f.getV0());
-		double area = edge.area(mesh);
+		double area = Matrix3D.computeArea3D(edge.origin(), edge.destination(), edge.apex());
 		double ret = scaleFactor * area / p / p;
 		assert ret >= 0.0 && ret <= 1.01;
 		return ret;
@@ -0,0 +1,588 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import java.util.Arrays;
+
+/**
+ * Compact storage of a triangle mesh which is not being processed.
+ * Vertices, triangles and adjacency relations are stored into primitive
+ * arrays indexed by integer identifiers, which is several times smaller
+ * than the object-based data structure used by {@link Mesh}.
+ *
+ * <p>
+ * Vertex <code>v</code> has its coordinates at indices <code>3*v</code>,
+ * <code>3*v+1</code> and <code>3*v+2</code> of the coordinate array.
+ * Triangle <code>t</code> has its vertices at indices <code>3*t</code>,
+ * <code>3*t+1</code> and <code>3*t+2</code> of the connectivity array,
+ * and its three half-edges have identifiers <code>3*t+l</code>, where
+ * <code>l</code> is the local number of this edge.  As in {@link HalfEdge},
+ * the edge with local number <code>l</code> is opposite to vertex
+ * <code>l</code>, so that
+ * </p>
+ * <pre>
+ *        origin = vertex[3*t + next3[l]]
+ *   destination = vertex[3*t + prev3[l]]
+ *          apex = vertex[3*t + l]
+ * </pre>
+ * <p>
+ * Since the three half-edges of a triangle are stored contiguously, the
+ * <code>next</code> relation does not need to be stored.  Only symmetric
+ * edges are recorded, <code>-1</code> means that there is no symmetric edge.
+ * Vertex at infinite ({@link Mesh#outerVertex}) has identifier
+ * {@link #OUTER_VERTEX}; outer triangles are kept so that boundaries and
+ * non-manifold edges are stored exactly as in {@link Mesh}.
+ * </p>
+ *
+ * <p>
+ * This storage is returned by {@link Mesh#compact} and emptied by
+ * {@link Mesh#expand}.  It is not an alternative backend for algorithms,
+ * which work on <code>Vertex</code> and <code>Triangle</code> instances;
+ * mesh has to be expanded before running them.  Read-only traversal can
+ * be performed directly on this storage with half-edge identifiers.
+ * </p>
+ */
+public class CompactMesh
+{
+	/**
+	 * Identifier of {@link Mesh#outerVertex}.
+	 */
+	public static final int OUTER_VERTEX = -1;
+
+	private static final int [] next3 = { 1, 2, 0 };
+	private static final int [] prev3 = { 2, 0, 1 };
+
+	// Flags shared by vertices and triangles
+	private static final byte NOT_READABLE = 1 << 0;
+	private static final byte NOT_WRITABLE = 1 << 1;
+	private static final byte NOT_MUTABLE  = 1 << 2;
+
+	// Vertices
+	private int nrVertices;
+	private double [] coords = new double[0];
+	private int [] vertexRef = new int[0];
+	private int [] vertexLabel = new int[0];
+	// Triangle incident to this vertex, or -1
+	private int [] vertexLink = new int[0];
+	private byte [] vertexFlags = new byte[0];
+	// For non-manifold vertices, list of triangles (one per fan)
+	private final TIntObjectHashMap<int []> nonManifoldLinks = new TIntObjectHashMap<int []>();
+
+	// Triangles
+	private int nrTriangles;
+	private int [] triVertices = new int[0];
+	private int [] triGroup = new int[0];
+	private byte [] triFlags = new byte[0];
+	// Half-edges
+	private int [] heSym = new int[0];
+	private byte [] heAttributes = new byte[0];
+
+	/**
+	 * Resizes internal arrays.
+	 *
+	 * @param vertices  desired number of vertices
+	 * @param triangles  desired number of triangles
+	 */
+	public final void ensureCapacity(int vertices, int triangles)
+	{
+		if (vertices > vertexRef.length)
+		{
+			coords = Arrays.copyOf(coords, 3 * vertices);
+			vertexRef = Arrays.copyOf(vertexRef, vertices);
+			vertexLabel = Arrays.copyOf(vertexLabel, vertices);
+			vertexLink = Arrays.copyOf(vertexLink, vertices);
+			vertexFlags = Arrays.copyOf(vertexFlags, vertices);
+		}
+		if (triangles > triGroup.length)
+		{
+			triVertices = Arrays.copyOf(triVertices, 3 * triangles);
+			triGroup = Arrays.copyOf(triGroup, triangles);
+			triFlags = Arrays.copyOf(triFlags, triangles);
+			heSym = Arrays.copyOf(heSym, 3 * triangles);
+			heAttributes = Arrays.copyOf(heAttributes, 3 * triangles);
+		}
+	}
+
+	/**
+	 * Shrinks internal arrays to their minimal size.
+	 */
+	public final void trimToSize()
+	{
+		coords = Arrays.copyOf(coords, 3 * nrVertices);
+		vertexRef = Arrays.copyOf(vertexRef, nrVertices);
+		vertexLabel = Arrays.copyOf(vertexLabel, nrVertices);
+		vertexLink = Arrays.copyOf(vertexLink, nrVertices);
+		vertexFlags = Arrays.copyOf(vertexFlags, nrVertices);
+		triVertices = Arrays.copyOf(triVertices, 3 * nrTriangles);
+		triGroup = Arrays.copyOf(triGroup, nrTriangles);
+		triFlags = Arrays.copyOf(triFlags, nrTriangles);
+		heSym = Arrays.copyOf(heSym, 3 * nrTriangles);
+		heAttributes = Arrays.copyOf(heAttributes, 3 * nrTriangles);
+	}
+
+	/**
+	 * Removes all vertices and triangles and releases memory.
+	 */
+	public final void clear()
+	{
+		nrVertices = 0;
+		nrTriangles = 0;
+		nonManifoldLinks.clear();
+		trimToSize();
+	}
+
+	/**
+	 * Returns the number of vertices.
+	 *
+	 * @return the number of vertices
+	 */
+	public final int getNumberOfVertices()
+	{
+		return nrVertices;
+	}
+
+	/**
+	 * Returns the number of triangles, including outer triangles.
+	 *
+	 * @return the number of triangles
+	 */
+	public final int getNumberOfTriangles()
+	{
+		return nrTriangles;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by this instance, in bytes.
+	 *
+	 * @return memory used by internal arrays
+	 */
+	public final long memoryUsage()
+	{
+		return 8L * coords.length + 4L * vertexRef.length + 4L * vertexLabel.length + 4L * vertexLink.length +
+			vertexFlags.length + 4L * triVertices.length + 4L * triGroup.length +
+			triFlags.length + 4L * heSym.length + heAttributes.length;
+	}
+
+	// Section: vertices
+
+	/**
+	 * Adds a vertex.
+	 *
+	 * @param x  first coordinate
+	 * @param y  second coordinate
+	 * @param z  third coordinate
+	 * @return vertex identifier
+	 */
+	public final int addVertex(double x, double y, double z)
+	{
+		if (nrVertices >= vertexRef.length)
+			ensureCapacity(Math.max(16, nrVertices + (nrVertices >> 1)), 0);
+		int ret = nrVertices;
+		coords[3*ret]   = x;
+		coords[3*ret+1] = y;
+		coords[3*ret+2] = z;
+		vertexRef[ret] = 0;
+		vertexLabel[ret] = 0;
+		vertexLink[ret] = -1;
+		vertexFlags[ret] = 0;
+		nrVertices++;
+		return ret;
+	}
+
+	public final double getX(int v)
+	{
+		return coords[3*v];
+	}
+
+	public final double getY(int v)
+	{
+		return coords[3*v+1];
+	}
+
+	public final double getZ(int v)
+	{
+		return coords[3*v+2];
+	}
+
+	/**
+	 * Copies vertex coordinates into an array.
+	 *
+	 * @param v  vertex identifier
+	 * @param xyz  double[3] array
+	 */
+	public final void getCoordinates(int v, double [] xyz)
+	{
+		System.arraycopy(coords, 3*v, xyz, 0, 3);
+	}
+
+	/**
+	 * Moves a vertex.
+	 *
+	 * @param v  vertex identifier
+	 * @param x  first coordinate
+	 * @param y  second coordinate
+	 * @param z  third coordinate
+	 */
+	public final void moveVertex(int v, double x, double y, double z)
+	{
+		coords[3*v]   = x;
+		coords[3*v+1] = y;
+		coords[3*v+2] = z;
+	}
+
+	public final int getVertexRef(int v)
+	{
+		return vertexRef[v];
+	}
+
+	public final void setVertexRef(int v, int ref)
+	{
+		vertexRef[v] = ref;
+	}
+
+	public final int getVertexLabel(int v)
+	{
+		return vertexLabel[v];
+	}
+
+	public final void setVertexLabel(int v, int label)
+	{
+		vertexLabel[v] = label;
+	}
+
+	/**
+	 * Returns a triangle incident to this vertex.
+	 *
+	 * @param v  vertex identifier
+	 * @return triangle identifier, or -1
+	 */
+	public final int getVertexLink(int v)
+	{
+		return vertexLink[v];
+	}
+
+	public final void setVertexLink(int v, int t)
+	{
+		vertexLink[v] = t;
+	}
+
+	/**
+	 * Returns triangles incident to a non-manifold vertex, one per fan.
+	 *
+	 * @param v  vertex identifier
+	 * @return array of triangle identifiers, or <code>null</code> if this
+	 *   vertex is manifold
+	 */
+	public final int [] getNonManifoldLinks(int v)
+	{
+		return nonManifoldLinks.get(v);
+	}
+
+	public final void setNonManifoldLinks(int v, int [] fans)
+	{
+		if (fans == null)
+			nonManifoldLinks.remove(v);
+		else
+			nonManifoldLinks.put(v, fans);
+	}
+
+	public final boolean isManifold(int v)
+	{
+		return !nonManifoldLinks.containsKey(v);
+	}
+
+	public final boolean isVertexReadable(int v)
+	{
+		return (vertexFlags[v] & NOT_READABLE) == 0;
+	}
+
+	public final boolean isVertexWritable(int v)
+	{
+		return (vertexFlags[v] & NOT_WRITABLE) == 0;
+	}
+
+	public final boolean isVertexMutable(int v)
+	{
+		return (vertexFlags[v] & NOT_MUTABLE) == 0;
+	}
+
+	public final void setVertexFlags(int v, boolean readable, boolean writable, boolean mutable)
+	{
+		byte f = 0;
+		if (!readable)
+			f |= NOT_READABLE;
+		if (!writable)
+			f |= NOT_WRITABLE;
+		if (!mutable)
+			f |= NOT_MUTABLE;
+		vertexFlags[v] = f;
+	}
+
+	// Section: triangles
+
+	/**
+	 * Adds a triangle.
+	 *
+	 * @param v0  first vertex identifier
+	 * @param v1  second vertex identifier
+	 * @param v2  third vertex identifier
+	 * @return triangle identifier
+	 */
+	public final int addTriangle(int v0, int v1, int v2)
+	{
+		if (nrTriangles >= triGroup.length)
+			ensureCapacity(0, Math.max(16, nrTriangles + (nrTriangles >> 1)));
+		int ret = nrTriangles;
+		triVertices[3*ret]   = v0;
+		triVertices[3*ret+1] = v1;
+		triVertices[3*ret+2] = v2;
+		triGroup[ret] = -1;
+		triFlags[ret] = 0;
+		for (int i = 3*ret; i < 3*ret+3; i++)
+		{
+			heSym[i] = -1;
+			heAttributes[i] = 0;
+		}
+		nrTriangles++;
+		return ret;
+	}
+
+	/**
+	 * Returns a vertex of a triangle.
+	 *
+	 * @param t  triangle identifier
+	 * @param i  local vertex number, between 0 and 2
+	 * @return vertex identifier
+	 */
+	public final int getTriangleVertex(int t, int i)
+	{
+		return triVertices[3*t+i];
+	}
+
+	public final void setTriangleVertex(int t, int i, int v)
+	{
+		triVertices[3*t+i] = v;
+	}
+
+	public final int getGroupId(int t)
+	{
+		return triGroup[t];
+	}
+
+	public final void setGroupId(int t, int g)
+	{
+		triGroup[t] = g;
+	}
+
+	public final boolean isTriangleReadable(int t)
+	{
+		return (triFlags[t] & NOT_READABLE) == 0;
+	}
+
+	public final boolean isTriangleWritable(int t)
+	{
+		return (triFlags[t] & NOT_WRITABLE) == 0;
+	}
+
+	public final void setTriangleFlags(int t, boolean readable, boolean writable)
+	{
+		byte f = 0;
+		if (!readable)
+			f |= NOT_READABLE;
+		if (!writable)
+			f |= NOT_WRITABLE;
+		triFlags[t] = f;
+	}
+
+	/**
+	 * Tells whether this triangle is an outer triangle.
+	 *
+	 * @param t  triangle identifier
+	 * @return <code>true</code> if one of its vertices is {@link #OUTER_VERTEX}
+	 */
+	public final boolean isOuter(int t)
+	{
+		return triVertices[3*t] == OUTER_VERTEX ||
+			triVertices[3*t+1] == OUTER_VERTEX ||
+			triVertices[3*t+2] == OUTER_VERTEX;
+	}
+
+	// Section: half-edges
+
+	/**
+	 * Returns the identifier of an half-edge.
+	 *
+	 * @param t  triangle identifier
+	 * @param l  local number
+	 * @return half-edge identifier
+	 */
+	public static int halfEdge(int t, int l)
+	{
+		return 3*t + l;
+	}
+
+	public static int next(int e)
+	{
+		return e - (e % 3) + next3[e % 3];
+	}
+
+	public static int prev(int e)
+	{
+		return e - (e % 3) + prev3[e % 3];
+	}
+
+	/**
+	 * Returns symmetric edge.
+	 *
+	 * @param e  half-edge identifier
+	 * @return identifier of symmetric half-edge, or -1
+	 */
+	public final int sym(int e)
+	{
+		return heSym[e];
+	}
+
+	/**
+	 * Returns the next edge counterclockwise with the same origin.
+	 *
+	 * @param e  half-edge identifier
+	 * @return half-edge identifier, or -1 if there is no symmetric edge
+	 */
+	public final int nextOrigin(int e)
+	{
+		return heSym[prev(e)];
+	}
+
+	/**
+	 * Returns the next edge counterclockwise with the same origin.
+	 * If a boundary is reached, loop backward until another boundary
+	 * is found and start again from there.
+	 *
+	 * @param e  half-edge identifier
+	 * @return half-edge identifier
+	 */
+	public final int nextOriginLoop(int e)
+	{
+		int ret = e;
+		if (hasAttributes(ret, AbstractHalfEdge.OUTER) &&
+			hasAttributes(ret, AbstractHalfEdge.BOUNDARY | AbstractHalfEdge.NONMANIFOLD))
+		{
+			do
+			{
+				ret = next(heSym[ret]);
+			}
+			while (!hasAttributes(ret, AbstractHalfEdge.OUTER));
+		}
+		else
+			ret = nextOrigin(ret);
+		return ret;
+	}
+
+	public final int origin(int e)
+	{
+		return triVertices[e - (e % 3) + next3[e % 3]];
+	}
+
+	public final int destination(int e)
+	{
+		return triVertices[e - (e % 3) + prev3[e % 3]];
+	}
+
+	public final int apex(int e)
+	{
+		return triVertices[e];
+	}
+
+	/**
+	 * Glues two half-edges together.
+	 *
+	 * @param e1  first half-edge identifier
+	 * @param e2  second half-edge identifier, may be -1
+	 */
+	public final void glue(int e1, int e2)
+	{
+		heSym[e1] = e2;
+		if (e2 >= 0)
+			heSym[e2] = e1;
+	}
+
+	public final int getAttributes(int e)
+	{
+		return heAttributes[e];
+	}
+
+	public final boolean hasAttributes(int e, int attr)
+	{
+		return (heAttributes[e] & attr) != 0;
+	}
+
+	public final void setAttributes(int e, int attr)
+	{
+		heAttributes[e] |= attr;
+	}
+
+	public final void clearAttributes(int e, int attr)
+	{
+		heAttributes[e] &= ~attr;
+	}
+
+	/**
+	 * Returns the same edge in the next fan of a non-manifold edge.
+	 * Fans are visited in the same order as by
+	 * {@link AbstractHalfEdge#fanIterator}.
+	 *
+	 * @param e  identifier of a non-manifold half-edge which does not
+	 *   belong to an outer triangle
+	 * @return half-edge identifier, <code>e</code> is returned after
+	 *   all fans have been visited
+	 */
+	public final int nextFan(int e)
+	{
+		// Inner half-edges of non-manifold edges are glued to outer
+		// triangles, which are linked together around this edge.
+		return heSym[next(heSym[next(heSym[e])])];
+	}
+
+	/**
+	 * Returns an half-edge starting from a given vertex.
+	 *
+	 * @param v  vertex identifier
+	 * @return half-edge identifier, or -1 if vertex is not connected
+	 */
+	public final int getIncidentHalfEdge(int v)
+	{
+		int t = vertexLink[v];
+		if (t < 0)
+			return -1;
+		for (int l = 0; l < 3; l++)
+		{
+			if (triVertices[3*t+next3[l]] == v)
+				return 3*t+l;
+		}
+		throw new IllegalStateException("Vertex "+v+" is not linked to triangle "+t);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CompactMesh: "+nrVertices+" vertices, "+nrTriangles+" triangles, "+memoryUsage()+" bytes";
+	}
+}
@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.util.IndexedDAryHeap;
 
 /**
  * Half-edge data structure.  This is a straightforward implementation of
@@ -40,7 +41,7 @@ import org.jcae.mesh.amibe.metrics.Location;
  * (between 0 and 2) and a triangle.  It has a link to the next edge in the
  * same triangle, and to its symmetric edge.
  */
-public class HalfEdge extends AbstractHalfEdge implements Serializable
+public class HalfEdge extends AbstractHalfEdge implements Serializable, IndexedDAryHeap.Element
 {
 	private static final long serialVersionUID = -2460993797089718106L;
 	private static final Logger logger=Logger.getLogger(HalfEdge.class.getName());
@@ -49,6 +50,8 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	private byte attributes;
 	private HalfEdge sym;
 	private HalfEdge next;
+	// Used by IndexedDAryHeap
+	private transient int heapId = -1;
 
 	private static final int [] next3 = { 1, 2, 0 };
 	private static final int [] prev3 = { 2, 0, 1 };
@@ -87,6 +90,16 @@ public class HalfEdge extends AbstractHalfEdge implements Serializable
 	{
 		return attributes;
 	}
+
+	public final int getHeapId()
+	{
+		return heapId;
+	}
+
+	public final void setHeapId(int id)
+	{
+		heapId = id;
+	}
 	
 	/**
 	 * Sets the edge tied to this object.
@@ -20,9 +20,6 @@
 
 package org.jcae.mesh.amibe.ds;
 
-
-import gnu.trove.map.hash.TObjectIntHashMap;
-
 /**
  * 1D edge.
  */
@@ -35,10 +32,8 @@ public class MEdge1D
 	//  Second end point
 	private final MNode1D pt2;
 	
-	private static int id = 0;
-	private static TObjectIntHashMap<MEdge1D> mapHashcodeToID;
-	//  Initialize mapHashcodeToID
-	static { assert(null != (mapHashcodeToID = new TObjectIntHashMap<MEdge1D>())); }
+	//  ID used for debugging purpose, it is set by MMesh1D.updateIDs()
+	private int id = 0;
 	
 	/**
 	 * Creates an edge bounded by two <code>MNode1D</code> instances.
@@ -50,14 +45,16 @@ public class MEdge1D
 	{
 		pt1 = begin;
 		pt2 = end;
-		assert(setID());
 	}
 	
-	private boolean setID()
+	/**
+	 * Sets the public identifer.
+	 *
+	 * @param i  identifier
+	 */
+	final void setID(int i)
 	{
-		id++;
-		mapHashcodeToID.put(this, id);
-		return true;
+		id = i;
 	}
 	
 	/**
@@ -68,7 +65,7 @@ public class MEdge1D
 	final int getID()
 	{
 		if (id > 0)
-			return mapHashcodeToID.get(this);
+			return id;
 		return hashCode();
 	}
 	
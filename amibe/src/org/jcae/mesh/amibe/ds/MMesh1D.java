@@ -246,6 +246,38 @@ public class MMesh1D extends MMesh0D
 		}
 	}
 	
+	/**
+	 * Update node and edge identifiers.  Identifiers are only used for
+	 * debugging purpose, they are numbered by following edge
+	 * discretizations so that they do not depend on the order in which
+	 * edges had been discretized.
+	 */
+	public final void updateIDs()
+	{
+		Collection<SubMesh1D> submeshes;
+		if (mapTEdgeToSubMesh1D != null)
+			submeshes = mapTEdgeToSubMesh1D.values();
+		else if (mapDiscrToSubMesh1D != null)
+			submeshes = mapDiscrToSubMesh1D.values();
+		else
+			return;
+		int nodeID = 0;
+		int edgeID = 0;
+		for (SubMesh1D submesh1d : submeshes)
+		{
+			for (MNode1D n : submesh1d.getNodes())
+			{
+				nodeID++;
+				n.setID(nodeID);
+			}
+			for (MEdge1D e : submesh1d.getEdges())
+			{
+				edgeID++;
+				e.setID(edgeID);
+			}
+		}
+	}
+	
 	/**
 	 * Duplicates edges so that boundary faces are closed.
 	 * This method must be used after all 1D algorithms have been applied,
@@ -24,7 +24,6 @@ import org.jcae.mesh.cad.CADVertex;
 import org.jcae.mesh.cad.CADShapeEnum;
 import org.jcae.mesh.bora.ds.BDiscretization;
 import org.jcae.mesh.bora.ds.BCADGraphCell;
-import gnu.trove.map.hash.TObjectIntHashMap;
 
 /**
  * 1D node.
@@ -56,11 +55,8 @@ public class MNode1D
 	//  Flag set to true if this node belongs to a degenerated edge.
 	private boolean isDegenerated;
 	
-	//  ID used for debugging purpose
-	private static int id = 0;
-	private static TObjectIntHashMap<MNode1D> mapHashcodeToID;
-	//  Initialize mapHashcodeToID
-	static { assert(null != (mapHashcodeToID = new TObjectIntHashMap<MNode1D>())); }
+	//  ID used for debugging purpose, it is set by MMesh1D.updateIDs()
+	private int id = 0;
 	
 	/**
 	 * Creates a <code>MNode1D</code> instance.
@@ -74,7 +70,6 @@ public class MNode1D
 		param = t;
 		vertex = v;
 		isDegenerated = false;
-		assert(setID());
 	}
 	
 	/**
@@ -99,14 +94,16 @@ public class MNode1D
 		    vertex = null;
 		}
 		isDegenerated = false;
-		assert(setID());
 	}
 
-	private boolean setID()
+	/**
+	 * Sets the public identifer.
+	 *
+	 * @param i  identifier
+	 */
+	final void setID(int i)
 	{
-		id++;
-		mapHashcodeToID.put(this, id);
-		return true;
+		id = i;
 	}
 	
 	/**
@@ -117,7 +114,7 @@ public class MNode1D
 	public final int getID()
 	{
 		if (id > 0)
-			return mapHashcodeToID.get(this);
+			return id;
 		return hashCode();
 	}
 	
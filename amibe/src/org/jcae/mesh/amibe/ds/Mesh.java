@@ -53,6 +53,7 @@ import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.util.HashFactory;
+import org.jcae.mesh.amibe.util.WorkerPool;
 
 /**
  * Mesh data structure.
@@ -104,6 +105,8 @@ public class Mesh implements Serializable
 {
 	private static final long serialVersionUID = 7130909528217390687L;
 	private static final Logger logger=Logger.getLogger(Mesh.class.getName());
+	// buildAdjacency uses several threads when there are more triangles
+	private static final int PARALLEL_ADJACENCY_THRESHOLD = 100000;
 	
 	/**
 	 * User-defined traits builder.
@@ -481,7 +484,197 @@ public class Mesh implements Serializable
 		KdTree kdtree = traitsBuilder.getKdTree(traits);
 		kdtree.setup(bbox);
 	}
-	
+
+	/**
+	 * Moves all vertices and triangles into compact storage.  Triangle
+	 * and node collections are emptied, so that <code>Vertex</code>,
+	 * <code>Triangle</code> and <code>HalfEdge</code> instances can be
+	 * garbage collected.  Adjacency relations, edge attributes, vertex
+	 * labels, references and groups are kept.  This is meant to hold
+	 * meshes which are not being processed, algorithms can only run
+	 * after mesh has been restored by {@link #expand}.
+	 *
+	 * @return compact storage of this mesh
+	 * @throws IllegalStateException if mesh contains beams, vertex groups
+	 * or a Kd-tree which reference vertices.
+	 */
+	public final CompactMesh compact()
+	{
+		if (!beams.isEmpty() || !vertexGroups.isEmpty() || getKdTree() != null)
+			throw new IllegalStateException("Compact storage cannot handle beams, vertex groups or Kd-tree");
+		CompactMesh storage = new CompactMesh();
+		int nrVertices = nodeList != null ? nodeList.size() : triangleList.size() / 2;
+		TObjectIntHashMap<Vertex> vertexIds = new TObjectIntHashMap<Vertex>(nrVertices, 0.5f, -2);
+		vertexIds.put(outerVertex, CompactMesh.OUTER_VERTEX);
+		TObjectIntHashMap<Triangle> triangleIds = new TObjectIntHashMap<Triangle>(triangleList.size(), 0.5f, -1);
+		storage.ensureCapacity(nrVertices, triangleList.size());
+		if (nodeList != null)
+		{
+			for (Vertex v : nodeList)
+				compactVertex(storage, vertexIds, v);
+		}
+		for (Triangle t : triangleList)
+		{
+			int t0 = compactVertex(storage, vertexIds, t.getV0());
+			int t1 = compactVertex(storage, vertexIds, t.getV1());
+			int t2 = compactVertex(storage, vertexIds, t.getV2());
+			int id = storage.addTriangle(t0, t1, t2);
+			storage.setGroupId(id, t.getGroupId());
+			storage.setTriangleFlags(id, t.isReadable(), t.isWritable());
+			triangleIds.put(t, id);
+		}
+		if (hasAdjacency())
+		{
+			AbstractHalfEdge ot = null;
+			AbstractHalfEdge sym = null;
+			for (Triangle t : triangleList)
+			{
+				int id = triangleIds.get(t);
+				ot = t.getAbstractHalfEdge(ot);
+				for (int i = 0; i < 3; i++)
+				{
+					int e = CompactMesh.halfEdge(id, ot.getLocalNumber());
+					for (int attr = 1; attr < 256; attr <<= 1)
+					{
+						if (ot.hasAttributes(attr))
+							storage.setAttributes(e, attr);
+					}
+					if (ot.hasSymmetricEdge())
+					{
+						sym = ot.sym(sym);
+						assert triangleIds.containsKey(sym.getTri()) : sym.getTri();
+						storage.glue(e, CompactMesh.halfEdge(triangleIds.get(sym.getTri()), sym.getLocalNumber()));
+					}
+					ot = ot.next();
+				}
+			}
+		}
+		// Vertex links
+		for (Object o : vertexIds.keys())
+		{
+			Vertex v = (Vertex) o;
+			if (v == outerVertex)
+				continue;
+			int id = vertexIds.get(v);
+			Object link = v.getLink();
+			if (link instanceof Triangle)
+				storage.setVertexLink(id, triangleIds.get(link));
+			else if (link instanceof Triangle[])
+			{
+				Triangle[] fans = (Triangle[]) link;
+				int[] fanIds = new int[fans.length];
+				for (int i = 0; i < fans.length; i++)
+					fanIds[i] = triangleIds.get(fans[i]);
+				storage.setVertexLink(id, fanIds[0]);
+				storage.setNonManifoldLinks(id, fanIds);
+			}
+		}
+		storage.trimToSize();
+		triangleList.clear();
+		if (nodeList != null)
+			nodeList.clear();
+		logger.fine("Mesh compacted: "+storage);
+		return storage;
+	}
+
+	private static int compactVertex(CompactMesh storage, TObjectIntHashMap<Vertex> vertexIds, Vertex v)
+	{
+		int ret = vertexIds.get(v);
+		if (ret != -2)
+			return ret;
+		ret = storage.addVertex(v.getX(), v.getY(), v.getZ());
+		storage.setVertexRef(ret, v.getRef());
+		storage.setVertexLabel(ret, v.getLabel());
+		storage.setVertexFlags(ret, v.isReadable(), v.isWritable(), v.isMutable());
+		vertexIds.put(v, ret);
+		return ret;
+	}
+
+	/**
+	 * Creates vertices and triangles from compact storage, which is then
+	 * emptied.  This method is the reverse of {@link #compact}.
+	 *
+	 * @param storage  compact storage returned by {@link #compact}
+	 * @throws IllegalStateException if triangle collection is not empty
+	 */
+	public final void expand(CompactMesh storage)
+	{
+		if (!triangleList.isEmpty())
+			throw new IllegalStateException("Mesh must be empty before being expanded");
+		int nrVertices = storage.getNumberOfVertices();
+		int nrTriangles = storage.getNumberOfTriangles();
+		ensureCapacity(nrTriangles);
+		Vertex [] vertices = new Vertex[nrVertices];
+		for (int i = 0; i < nrVertices; i++)
+		{
+			Vertex v = createVertex(storage.getX(i), storage.getY(i), storage.getZ(i));
+			v.setRef(storage.getVertexRef(i));
+			v.setLabel(storage.getVertexLabel(i));
+			v.setReadable(storage.isVertexReadable(i));
+			v.setWritable(storage.isVertexWritable(i));
+			v.setMutable(storage.isVertexMutable(i));
+			vertices[i] = v;
+			if (nodeList != null)
+				nodeList.add(v);
+		}
+		Triangle [] triangles = new Triangle[nrTriangles];
+		Vertex [] tv = new Vertex[3];
+		for (int i = 0; i < nrTriangles; i++)
+		{
+			for (int j = 0; j < 3; j++)
+			{
+				int v = storage.getTriangleVertex(i, j);
+				tv[j] = (v == CompactMesh.OUTER_VERTEX ? outerVertex : vertices[v]);
+			}
+			Triangle t = createTriangle(tv);
+			t.setGroupId(storage.getGroupId(i));
+			t.setReadable(storage.isTriangleReadable(i));
+			t.setWritable(storage.isTriangleWritable(i));
+			triangles[i] = t;
+			triangleList.add(t);
+		}
+		if (hasAdjacency())
+		{
+			AbstractHalfEdge ot = null;
+			AbstractHalfEdge sym = null;
+			for (int i = 0; i < nrTriangles; i++)
+			{
+				ot = triangles[i].getAbstractHalfEdge(ot);
+				for (int j = 0; j < 3; j++)
+				{
+					int e = CompactMesh.halfEdge(i, ot.getLocalNumber());
+					int attr = storage.getAttributes(e);
+					if (attr != 0)
+						ot.setAttributes(attr);
+					int s = storage.sym(e);
+					// Glue edges only once
+					if (s > e)
+					{
+						sym = triangles[s / 3].getAbstractHalfEdge(sym);
+						while (sym.getLocalNumber() != s % 3)
+							sym = sym.next();
+						ot.glue(sym);
+					}
+					ot = ot.next();
+				}
+			}
+		}
+		for (int i = 0; i < nrVertices; i++)
+		{
+			int [] fans = storage.getNonManifoldLinks(i);
+			if (fans != null)
+			{
+				Triangle [] links = new Triangle[fans.length];
+				for (int j = 0; j < fans.length; j++)
+					links[j] = triangles[fans[j]];
+				vertices[i].setLink(links);
+			}
+			else if (storage.getVertexLink(i) >= 0)
+				vertices[i].setLink(triangles[storage.getVertexLink(i)]);
+		}
+		storage.clear();
+	}
+
 	/**
 	 * Creates a triangle composed of three vertices.
 	 *
@@ -696,15 +889,40 @@ public class Mesh implements Serializable
 		buildAdjacency(0);
 	}
 	public final void buildAdjacency(int currentMaxLabel)
+	{
+		int threads = 1;
+		if (triangleList.size() >= PARALLEL_ADJACENCY_THRESHOLD)
+			threads = Runtime.getRuntime().availableProcessors();
+		buildAdjacency(currentMaxLabel, threads);
+	}
+
+	/**
+	 * Build adjacency relations between triangles.  Half-edges are sorted
+	 * by their end points to find symmetric half-edges, see
+	 * {@link SortedAdjacency}.
+	 *
+	 * @param currentMaxLabel  references of new boundary nodes are
+	 *   larger than this value
+	 * @param threads  number of threads used to sort half-edges
+	 */
+	public final void buildAdjacency(int currentMaxLabel, int threads)
 	{
 		//  Connect all edges together
 		logger.fine("Connect triangles");
 		ArrayList<Triangle> newTri = new ArrayList<Triangle>();
-		//  For each vertex, build the list of triangles
-		//  connected to this vertex.
-		Map<Vertex, Collection<Triangle>> tVertList = getMapVertexLinks();
+		//  Sort half-edges and vertex links
+		SortedAdjacency adjacency;
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			adjacency = new SortedAdjacency(this, getAdjacencyVertices(), triangleList, pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 		//  Connect all edges together
-		glueSymmetricHalfEdges(tVertList, newTri);
+		adjacency.glueSymmetricHalfEdges(newTri);
 
 		//  Mark boundary edges and bind them to virtual triangles.
 		logger.fine("Connect boundary triangles");
@@ -712,7 +930,7 @@ public class Mesh implements Serializable
 
 		//  Fix links for junctions
 		logger.fine("Fix vertex links");
-		rebuildVertexLinks(tVertList);
+		adjacency.rebuildVertexLinks();
 		
 		//  Find the list of vertices which are on mesh boundary
 		logger.fine("Build the list of nodes on boundaries and non-manifold edges");
@@ -745,7 +963,7 @@ public class Mesh implements Serializable
 
 		int nrJunctionPoints = 0;
 		Collection<Vertex> freeVertices = new HashSet<Vertex>();
-		for (Vertex v: tVertList.keySet())
+		for (Vertex v: adjacency.getVertices())
 		{
 			if (bndNodes.contains(v))
 				continue;
@@ -772,9 +990,6 @@ public class Mesh implements Serializable
 		}
 		if (maxLabel != currentMaxLabel)
 			logger.fine("Created "+(maxLabel - currentMaxLabel)+" more references");
-		//  Remove all references to help the garbage collector.
-		for (Collection<Triangle> list : tVertList.values())
-			list.clear();
 		// Add outer triangles
 		triangleList.addAll(newTri);
 		if (traitsBuilder.hasTrace())
@@ -785,23 +1000,23 @@ public class Mesh implements Serializable
 		}
 	}
 
-	private Map<Vertex, Collection<Triangle>> getMapVertexLinks()
+	private Collection<Vertex> getAdjacencyVertices()
 	{
-		Collection<Vertex> vertices;
-		if (nodeList == null)
-		{
-			vertices = new LinkedHashSet<Vertex>(triangleList.size()/2);
-			for (Triangle t: triangleList)
-			{
-				if (!t.isWritable())
-					continue;
-				t.addVertexTo(vertices);
-			}
-		}
-		else
+		if (nodeList != null)
+			return nodeList;
+		Collection<Vertex> vertices = new LinkedHashSet<Vertex>(triangleList.size()/2);
+		for (Triangle t: triangleList)
 		{
-			vertices = nodeList;
+			if (!t.isWritable())
+				continue;
+			t.addVertexTo(vertices);
 		}
+		return vertices;
+	}
+
+	private Map<Vertex, Collection<Triangle>> getMapVertexLinks()
+	{
+		Collection<Vertex> vertices = getAdjacencyVertices();
 		Map<Vertex, Collection<Triangle>> tVertList = new LinkedHashMap<Vertex, Collection<Triangle>>(vertices.size());
 		for (Vertex v: vertices)
 			tVertList.put(v, new ArrayList<Triangle>(10));
@@ -0,0 +1,357 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.ds;
+
+import org.jcae.mesh.amibe.util.WorkerPool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds adjacency relations of a triangle soup with primitive arrays.
+ * This class performs the same work as {@link Mesh#glueSymmetricHalfEdges}
+ * and {@link Mesh#rebuildVertexLinks(java.util.Map)}, but does not create
+ * collections for each vertex.
+ *
+ * <p>
+ * Vertices are numbered, and half-edges are identified by
+ * <code>3*t+l</code>, where <code>t</code> is the triangle index and
+ * <code>l</code> the local number of this half-edge.  Half-edges are
+ * bucketed by the smallest index of their end points, and in each bucket
+ * they are sorted as packed <code>(largest index, half-edge)</code> longs.
+ * Half-edges with the same end points are thus consecutive, which gives
+ * a linear scan to glue them.  Similarly, triangles are bucketed by vertex
+ * to find non-manifold vertices.  Computing vertex indices and sorting
+ * buckets are performed concurrently, gluing half-edges is sequential
+ * because mesh modifications are not thread-safe.
+ * </p>
+ *
+ * <p>
+ * During construction, vertex labels are temporarily replaced by vertex
+ * indices; they are restored before the constructor returns.
+ * </p>
+ */
+final class SortedAdjacency
+{
+	private static final Logger logger=Logger.getLogger(SortedAdjacency.class.getName());
+	private static final int [] next3 = { 1, 2, 0 };
+	private static final int [] prev3 = { 2, 0, 1 };
+
+	private final Mesh mesh;
+	private final Vertex [] vertices;
+	private final Triangle [] triangles;
+	// Triangles incident to vertex i are linkTriangles[linkOffsets[i]]
+	// to linkTriangles[linkOffsets[i+1]-1]
+	private final int [] linkOffsets;
+	private final int [] linkTriangles;
+	// Half-edges whose smallest vertex index is i are edges[edgeOffsets[i]]
+	// to edges[edgeOffsets[i+1]-1]
+	private final int [] edgeOffsets;
+	private final long [] edges;
+
+	/**
+	 * Sorts half-edges and vertex links.
+	 *
+	 * @param mesh  mesh
+	 * @param vertexCollection  mesh vertices
+	 * @param triangleCollection  mesh triangles; outer triangles are ignored
+	 * @param pool  worker pool
+	 */
+	SortedAdjacency(Mesh mesh, Collection<Vertex> vertexCollection,
+		Collection<Triangle> triangleCollection, WorkerPool pool)
+	{
+		this.mesh = mesh;
+		vertices = vertexCollection.toArray(new Vertex[vertexCollection.size()]);
+		ArrayList<Triangle> list = new ArrayList<Triangle>(triangleCollection.size());
+		for (Triangle t : triangleCollection)
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			list.add(t);
+			for (int i = 0; i < 3; i++)
+				t.getV(i).setLink(t);
+		}
+		triangles = list.toArray(new Triangle[list.size()]);
+		list = null;
+
+		int [] labels = new int[vertices.length];
+		for (int i = 0; i < vertices.length; i++)
+		{
+			labels[i] = vertices[i].getLabel();
+			vertices[i].setLabel(i);
+		}
+		final int [] vIndex;
+		try
+		{
+			vIndex = computeVertexIndices(pool);
+		}
+		finally
+		{
+			for (int i = 0; i < vertices.length; i++)
+				vertices[i].setLabel(labels[i]);
+		}
+		labels = null;
+
+		// Bucket triangles by vertex
+		linkOffsets = new int[vertices.length + 1];
+		for (int i : vIndex)
+		{
+			if (i >= 0)
+				linkOffsets[i + 1]++;
+		}
+		for (int i = 0; i < vertices.length; i++)
+			linkOffsets[i + 1] += linkOffsets[i];
+		linkTriangles = new int[linkOffsets[vertices.length]];
+		int [] fill = new int[vertices.length];
+		System.arraycopy(linkOffsets, 0, fill, 0, vertices.length);
+		for (int k = 0; k < vIndex.length; k++)
+		{
+			if (vIndex[k] >= 0)
+				linkTriangles[fill[vIndex[k]]++] = k / 3;
+		}
+
+		// Bucket half-edges by their smallest vertex index
+		edgeOffsets = new int[vertices.length + 1];
+		for (int k = 0; k < vIndex.length; k += 3)
+		{
+			for (int l = 0; l < 3; l++)
+			{
+				int o = vIndex[k + next3[l]];
+				int d = vIndex[k + prev3[l]];
+				if (o >= 0 && d >= 0 && o != d)
+					edgeOffsets[Math.min(o, d) + 1]++;
+			}
+		}
+		for (int i = 0; i < vertices.length; i++)
+			edgeOffsets[i + 1] += edgeOffsets[i];
+		edges = new long[edgeOffsets[vertices.length]];
+		System.arraycopy(edgeOffsets, 0, fill, 0, vertices.length);
+		for (int k = 0; k < vIndex.length; k += 3)
+		{
+			for (int l = 0; l < 3; l++)
+			{
+				int o = vIndex[k + next3[l]];
+				int d = vIndex[k + prev3[l]];
+				if (o >= 0 && d >= 0 && o != d)
+					edges[fill[Math.min(o, d)]++] = (((long) Math.max(o, d)) << 32) | (k + l);
+			}
+		}
+		fill = null;
+
+		// Sort buckets; half-edges with the same end points are then
+		// consecutive and sorted by triangle index.
+		pool.run(vertices.length, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				for (int i = begin; i < end; i++)
+				{
+					if (edgeOffsets[i + 1] - edgeOffsets[i] > 1)
+						Arrays.sort(edges, edgeOffsets[i], edgeOffsets[i + 1]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns indices of triangle vertices, or -1 for vertices which
+	 * are not readable.  Vertex labels must contain vertex indices.
+	 *
+	 * @throws IllegalStateException if a readable vertex of a triangle
+	 *   does not belong to <code>vertices</code>
+	 */
+	private int [] computeVertexIndices(WorkerPool pool)
+	{
+		final int [] ret = new int[3 * triangles.length];
+		pool.run(triangles.length, new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				for (int k = begin; k < end; k++)
+				{
+					Triangle t = triangles[k];
+					for (int i = 0; i < 3; i++)
+					{
+						Vertex v = t.getV(i);
+						if (!v.isReadable())
+						{
+							ret[3 * k + i] = -1;
+							continue;
+						}
+						// Labels of vertices which are not in the
+						// vertex collection have not been replaced
+						int label = v.getLabel();
+						if (label < 0 || label >= vertices.length || vertices[label] != v)
+							throw new IllegalStateException("Vertex "+v+" of triangle "+t+" is not in mesh vertices");
+						ret[3 * k + i] = label;
+					}
+				}
+			}
+		});
+		return ret;
+	}
+
+	/**
+	 * Returns mesh vertices.
+	 */
+	Vertex [] getVertices()
+	{
+		return vertices;
+	}
+
+	private AbstractHalfEdge getHalfEdge(int id, AbstractHalfEdge that)
+	{
+		int l = id % 3;
+		AbstractHalfEdge ret = triangles[id / 3].getAbstractHalfEdge(that);
+		while (ret.getLocalNumber() != l)
+			ret = ret.next();
+		return ret;
+	}
+
+	/**
+	 * Glues half-edges with the same end points.  When there are more than
+	 * two such half-edges, or when two half-edges have the same orientation,
+	 * this edge is non-manifold and {@link Mesh#glueNonManifoldHalfEdges} is
+	 * called.
+	 *
+	 * @param newTri  collection to store virtual triangles which have been
+	 *   created
+	 */
+	void glueSymmetricHalfEdges(Collection<Triangle> newTri)
+	{
+		if (triangles.length == 0)
+			return;
+		AbstractHalfEdge ot = null;
+		AbstractHalfEdge ot2 = null;
+		AbstractHalfEdge [] work = new AbstractHalfEdge[3];
+		// Ensure that work[0] and work[1] are non null to avoid
+		// tests in glueNonManifoldHalfEdges
+		work[0] = triangles[0].getAbstractHalfEdge(work[0]);
+		work[1] = triangles[0].getAbstractHalfEdge(work[1]);
+		for (int i = 0; i < vertices.length; i++)
+		{
+			int end = edgeOffsets[i + 1];
+			for (int first = edgeOffsets[i]; first < end; )
+			{
+				long max = edges[first] >>> 32;
+				int last = first + 1;
+				while (last < end && (edges[last] >>> 32) == max)
+					last++;
+				if (last - first > 1)
+				{
+					// Find the first half-edge which is not already glued
+					int k = first;
+					for (; k < last; k++)
+					{
+						ot = getHalfEdge((int) edges[k], ot);
+						if (!ot.hasSymmetricEdge())
+							break;
+					}
+					boolean manifold = true;
+					Vertex v = ot.origin();
+					Vertex v2 = ot.destination();
+					for (k++; k < last; k++)
+					{
+						ot2 = getHalfEdge((int) edges[k], ot2);
+						if (ot2.hasSymmetricEdge())
+							continue;
+						if (manifold && ot2.destination() == v && !ot.hasSymmetricEdge())
+						{
+							// This edge seems to be manifold.
+							// It may become non manifold later when
+							// other half-edges are processed.
+							ot.glue(ot2);
+							continue;
+						}
+						manifold = false;
+						mesh.glueNonManifoldHalfEdges(v, v2, ot, ot2, work, newTri);
+					}
+					if (logger.isLoggable(Level.FINE) && !manifold)
+					{
+						int cnt = 0;
+						for (Iterator<AbstractHalfEdge> it = ot.fanIterator(); it.hasNext(); it.next())
+							cnt++;
+						logger.fine("Non-manifold edge: "+v+" "+v2+" "+" connected to "+cnt+" fans");
+					}
+				}
+				first = last;
+			}
+		}
+	}
+
+	/**
+	 * Sets links of non-manifold vertices.  This method must be called
+	 * after boundary edges have been connected to outer triangles.
+	 */
+	void rebuildVertexLinks()
+	{
+		AbstractHalfEdge ot = null;
+		for (int i = 0; i < vertices.length; i++)
+		{
+			Vertex v = vertices[i];
+			if (null == v.getLink())
+				continue;
+			assert v.getLink() instanceof Triangle: v;
+			int cnt = 0;
+			ot = v.getIncidentAbstractHalfEdge((Triangle) v.getLink(), ot);
+			Vertex d = ot.destination();
+			do
+			{
+				if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
+					cnt++;
+				if (ot.hasAttributes(AbstractHalfEdge.NONMANIFOLD))
+				{
+					cnt = 0;
+					break;
+				}
+				ot = ot.nextOriginLoop();
+			}
+			while (ot.destination() != d);
+			if (cnt == linkOffsets[i + 1] - linkOffsets[i])
+				continue;
+			// Non-manifold vertex
+			LinkedHashSet<Triangle> neighbours = new LinkedHashSet<Triangle>();
+			for (int k = linkOffsets[i]; k < linkOffsets[i + 1]; k++)
+				neighbours.add(triangles[linkTriangles[k]]);
+			ArrayList<Triangle> fans = new ArrayList<Triangle>();
+			while (!neighbours.isEmpty())
+			{
+				ot = v.getIncidentAbstractHalfEdge(neighbours.iterator().next(), ot);
+				d = ot.destination();
+				fans.add(ot.getTri());
+				do
+				{
+					if (!ot.hasAttributes(AbstractHalfEdge.OUTER))
+						neighbours.remove(ot.getTri());
+					ot = ot.nextOriginLoop();
+				}
+				while (ot.destination() != d);
+			}
+			Triangle[] links = new Triangle[fans.size()];
+			fans.toArray(links);
+			v.setLink(links);
+			logger.fine("Non-manifold vertex has "+fans.size()+" fans");
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.util.logging.Logger;
 import org.jcae.mesh.amibe.traits.VertexTraitsBuilder;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.metrics.Location;
+import org.jcae.mesh.amibe.util.IndexedDAryHeap;
 import java.util.Iterator;
 import java.io.Serializable;
 import java.util.Collection;
@@ -51,7 +52,7 @@ import java.util.TreeSet;
  * all incident triangles through their adjacency relations.
  * </p>
  */
-public class Vertex extends Location implements Serializable
+public class Vertex extends Location implements Serializable, IndexedDAryHeap.Element
 {
 	private static final long serialVersionUID = 8049983674054731722L;
 	private static final Logger logger=Logger.getLogger(Vertex.class.getName());
@@ -76,6 +77,8 @@ public class Vertex extends Location implements Serializable
 	private int label;
 	private boolean readable = true;
 	private boolean writable = true;
+	// Used by IndexedDAryHeap
+	private transient int heapId = -1;
 	
 	/**
 	 * Constructor.
@@ -203,6 +206,16 @@ public class Vertex extends Location implements Serializable
 	{
 		label = l;
 	}
+
+	public final int getHeapId()
+	{
+		return heapId;
+	}
+
+	public final void setHeapId(int id)
+	{
+		heapId = id;
+	}
 	
 	/**
 	 * Get a finite element containing this Vertex.
@@ -185,6 +185,30 @@ public class Matrix3D implements Serializable
 		ret[2] = v1[0] * v2[1] - v1[1] * v2[0];
 	}
 
+	/**
+	 * Return the area of a triangle.  Computations are the same as in
+	 * {@link org.jcae.mesh.amibe.ds.AbstractHalfEdge#area}, but no
+	 * temporary array is used, so this method can be called concurrently.
+	 *
+	 * @param p0 first vertex
+	 * @param p1 second vertex
+	 * @param p2 third vertex
+	 * @return the area of triangle (p0, p1, p2).
+	 */
+	public static double computeArea3D(Location p0, Location p1, Location p2)
+	{
+		double ux = p1.getX() - p0.getX();
+		double uy = p1.getY() - p0.getY();
+		double uz = p1.getZ() - p0.getZ();
+		double vx = p2.getX() - p0.getX();
+		double vy = p2.getY() - p0.getY();
+		double vz = p2.getZ() - p0.getZ();
+		double nx = uy * vz - uz * vy;
+		double ny = uz * vx - ux * vz;
+		double nz = ux * vy - uy * vx;
+		return 0.5 * Math.sqrt((nx*nx)+(ny*ny)+(nz*nz));
+	}
+
 	private static void prodVect3D(double [] v1, int offset1, double [] v2, int offset2,
 		double [] ret, int offset)
 	{
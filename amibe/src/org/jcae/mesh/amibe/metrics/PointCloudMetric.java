@@ -52,7 +52,7 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
     private final Metric metric = new EuclidianMetric3D();
     private double defaultValue = 1;
     protected double scaling = 1;
-    private KdTree<Point> kdTree;
+    private StaticKdTree<Point> kdTree;
 
     /**
      * Add a point cloud from a binary file.
@@ -85,23 +85,7 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
 
     /** Lazy initializtion of the kdTree */
     private void initKdTree(Collection<Point> points) {
-        double[] bbox = new double[6];
-        for(int i = 0; i < 3; i++) {
-            bbox[i] = Double.MAX_VALUE;
-            bbox[i + 3] = Double.MIN_VALUE;
-        }
-        for(Point p: points) {
-            bbox[0] = p.getX() < bbox[0] ? p.getX() : bbox[0];
-            bbox[1] = p.getY() < bbox[1] ? p.getY() : bbox[1];
-            bbox[2] = p.getZ() < bbox[2] ? p.getZ() : bbox[2];
-            bbox[3] = p.getX() > bbox[3] ? p.getX() : bbox[3];
-            bbox[4] = p.getY() > bbox[4] ? p.getY() : bbox[4];
-            bbox[5] = p.getZ() > bbox[5] ? p.getZ() : bbox[5];
-        }
-        kdTree = new KdTree<Point>(bbox);
-        for(Point p: points) {
-            kdTree.add(p);
-        }
+        kdTree = new StaticKdTree<Point>(points);
     }
 
     /** Set the metric value to use if no support points can be found */
@@ -117,7 +101,7 @@ public class PointCloudMetric extends MetricSupport.AnalyticMetric {
     public double getTargetSize(double x, double y, double z, int groupId) {
         double r = defaultValue;
         if(kdTree != null) {
-            Point l = kdTree.getNearVertex(metric, new Point(x, y, z));
+            Point l = kdTree.getNearestVertex(metric, new Point(x, y, z));
             r = l == null ? r : l.value;
         }
         return r * scaling;
@@ -0,0 +1,632 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.metrics;
+
+import org.jcae.mesh.amibe.util.WorkerPool;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Immutable kd-tree built from a known set of points.  Unlike
+ * {@link KdTree}, points cannot be added or removed once this tree has
+ * been built, but construction and queries are much faster:
+ * <ul>
+ *   <li>Points are sorted once by median partitioning, this is faster
+ *       than inserting them one by one.</li>
+ *   <li>The tree is implicit: the median of a range of points is the
+ *       split point of this range, and its children are the ranges on its
+ *       left and right.  There are no cell objects; coordinates are copied
+ *       into a flat array in tree order, so that queries read contiguous
+ *       memory.  Ranges with at most {@link #BUCKET_SIZE} points are not
+ *       split.</li>
+ *   <li>Queries do not need a bounding box, nor integer coordinates.</li>
+ * </ul>
+ *
+ * <p>
+ * {@link #getNearestVertex(Metric, Location)} has the same semantics as
+ * {@link KdTree#getNearestVertex}: distances are computed by
+ * {@link Metric#distance2}, and {@link Metric#getUnitBallBBox} gives the
+ * region which has to be searched.  Euclidian k-nearest neighbours and radius
+ * queries are also available, either for a single point or for an array of
+ * points; the latter are processed concurrently when a {@link WorkerPool}
+ * is given.  Queries can be performed concurrently by several threads.
+ * </p>
+ */
+public final class StaticKdTree<T extends Location>
+{
+	/**
+	 * Maximal number of points in a leaf.  Its value is 8.
+	 */
+	public static final int BUCKET_SIZE = 8;
+	// Ranges larger than this size are built by several threads
+	private static final int PARALLEL_BUILD_SIZE = 1 << 15;
+
+	private final Object [] items;
+	// Coordinates, in the same order as items
+	private final double [] coords;
+	// Split dimension of the range whose median is i
+	private final byte [] splitDims;
+
+	/**
+	 * Builds a tree.
+	 *
+	 * @param points  points stored in this tree
+	 */
+	public StaticKdTree(Collection<? extends T> points)
+	{
+		this(points, null);
+	}
+
+	/**
+	 * Builds a tree concurrently.
+	 *
+	 * @param points  points stored in this tree
+	 * @param pool  worker pool, may be <code>null</code>
+	 */
+	public StaticKdTree(Collection<? extends T> points, WorkerPool pool)
+	{
+		int n = points.size();
+		items = points.toArray(new Object[n]);
+		coords = new double[3 * n];
+		splitDims = new byte[n];
+		for (int i = 0; i < n; i++)
+		{
+			Location l = (Location) items[i];
+			coords[3 * i] = l.getX();
+			coords[3 * i + 1] = l.getY();
+			coords[3 * i + 2] = l.getZ();
+		}
+		if (pool == null || pool.getThreads() < 2 || n < 2 * PARALLEL_BUILD_SIZE)
+		{
+			build(0, n);
+			return;
+		}
+		// Split the largest ranges sequentially, then build
+		// remaining ranges concurrently
+		List<int[]> ranges = new ArrayList<int[]>();
+		ranges.add(new int[]{0, n});
+		while (ranges.size() < 4 * pool.getThreads())
+		{
+			List<int[]> next = new ArrayList<int[]>(2 * ranges.size());
+			for (int[] r : ranges)
+			{
+				if (r[1] - r[0] <= PARALLEL_BUILD_SIZE)
+				{
+					next.add(r);
+					continue;
+				}
+				int mid = split(r[0], r[1]);
+				next.add(new int[]{r[0], mid});
+				next.add(new int[]{mid + 1, r[1]});
+			}
+			if (next.size() == ranges.size())
+				break;
+			ranges = next;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(ranges.size());
+		for (final int[] r : ranges)
+		{
+			tasks.add(new Callable<Object>()
+			{
+				public Object call()
+				{
+					build(r[0], r[1]);
+					return null;
+				}
+			});
+		}
+		pool.invokeAll(tasks);
+	}
+
+	/**
+	 * Returns the number of points.
+	 *
+	 * @return the number of points
+	 */
+	public int size()
+	{
+		return items.length;
+	}
+
+	/**
+	 * Returns a point by its index.  Points are not stored in the same
+	 * order as in the collection given to the constructor, indices are
+	 * those returned by batched queries.
+	 *
+	 * @param index  point index
+	 * @return the point
+	 */
+	@SuppressWarnings("unchecked")
+	public T getVertex(int index)
+	{
+		return (T) items[index];
+	}
+
+	private void build(int lo, int hi)
+	{
+		while (hi - lo > BUCKET_SIZE)
+		{
+			int mid = split(lo, hi);
+			// Recurse on the smallest range to limit stack depth
+			if (mid - lo < hi - mid - 1)
+			{
+				build(lo, mid);
+				lo = mid + 1;
+			}
+			else
+			{
+				build(mid + 1, hi);
+				hi = mid;
+			}
+		}
+	}
+
+	/**
+	 * Moves the median point of this range along its largest extent into
+	 * the middle of the range, lower points before and larger points after.
+	 *
+	 * @return index of the median point
+	 */
+	private int split(int lo, int hi)
+	{
+		double [] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+		double [] max = { - Double.MAX_VALUE, - Double.MAX_VALUE, - Double.MAX_VALUE };
+		for (int i = lo; i < hi; i++)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				double c = coords[3 * i + k];
+				if (c < min[k])
+					min[k] = c;
+				if (c > max[k])
+					max[k] = c;
+			}
+		}
+		int dim = 0;
+		for (int k = 1; k < 3; k++)
+		{
+			if (max[k] - min[k] > max[dim] - min[dim])
+				dim = k;
+		}
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, dim);
+		splitDims[mid] = (byte) dim;
+		return mid;
+	}
+
+	// Quickselect: after this call, point k is the one which would be
+	// at this position if range [left, right] was sorted along dim.
+	private void select(int left, int right, int k, int dim)
+	{
+		while (right > left)
+		{
+			// Median of three
+			int m = (left + right) >>> 1;
+			if (coord(m, dim) < coord(left, dim))
+				swap(m, left);
+			if (coord(right, dim) < coord(left, dim))
+				swap(right, left);
+			if (coord(right, dim) < coord(m, dim))
+				swap(right, m);
+			double pivot = coord(m, dim);
+			int i = left;
+			int j = right;
+			while (i <= j)
+			{
+				while (coord(i, dim) < pivot)
+					i++;
+				while (coord(j, dim) > pivot)
+					j--;
+				if (i <= j)
+				{
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if (k <= j)
+				right = j;
+			else if (k >= i)
+				left = i;
+			else
+				return;
+		}
+	}
+
+	private double coord(int i, int dim)
+	{
+		return coords[3 * i + dim];
+	}
+
+	private void swap(int i, int j)
+	{
+		Object o = items[i];
+		items[i] = items[j];
+		items[j] = o;
+		for (int k = 0; k < 3; k++)
+		{
+			double c = coords[3 * i + k];
+			coords[3 * i + k] = coords[3 * j + k];
+			coords[3 * j + k] = c;
+		}
+	}
+
+	private double distance2(int i, double x, double y, double z)
+	{
+		double dx = coords[3 * i] - x;
+		double dy = coords[3 * i + 1] - y;
+		double dz = coords[3 * i + 2] - z;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+	/**
+	 * Returns the nearest point, as computed by a metric.
+	 *
+	 * @param metric  metric used to compute distances
+	 * @param uv  coordinates
+	 * @return the nearest point, or <code>null</code> if this tree is empty
+	 */
+	public T getNearestVertex(Metric metric, Location uv)
+	{
+		if (items.length == 0)
+			return null;
+		NearestMetricQuery q = new NearestMetricQuery(metric, uv);
+		q.search(0, items.length);
+		return getVertex(q.index);
+	}
+
+	// Search state of getNearestVertex
+	private final class NearestMetricQuery
+	{
+		private final Metric metric;
+		private final Location from;
+		private final double [] xyz = new double[3];
+		private final double [] r = new double[3];
+		private int index = -1;
+		private double dist = Double.MAX_VALUE;
+
+		private NearestMetricQuery(Metric metric, Location from)
+		{
+			this.metric = metric;
+			this.from = from;
+			from.get(xyz);
+			double [] unitBall = metric.getUnitBallBBox();
+			// Add a small margin as in KdTree
+			for (int k = 0; k < 3; k++)
+				r[k] = 1.005 * unitBall[k];
+		}
+
+		private void test(int i)
+		{
+			double d = metric.distance2(from, (Location) items[i]);
+			if (d < dist)
+			{
+				dist = d;
+				index = i;
+			}
+		}
+
+		private void search(int lo, int hi)
+		{
+			if (hi - lo <= BUCKET_SIZE)
+			{
+				for (int i = lo; i < hi; i++)
+					test(i);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			int dim = splitDims[mid];
+			double delta = xyz[dim] - coords[3 * mid + dim];
+			if (delta < 0.0)
+				search(lo, mid);
+			else
+				search(mid + 1, hi);
+			test(mid);
+			double bound = r[dim] * Math.sqrt(dist);
+			if (Math.abs(delta) <= bound)
+			{
+				if (delta < 0.0)
+					search(mid + 1, hi);
+				else
+					search(lo, mid);
+			}
+		}
+	}
+
+	/**
+	 * Finds the <code>k</code> nearest points of a given location, by
+	 * using Euclidian distance.
+	 *
+	 * @param uv  coordinates
+	 * @param k  number of points
+	 * @param result  list to which points are appended, in increasing
+	 *   order of distance
+	 * @return the number of points found, which is lower than
+	 *   <code>k</code> only if this tree contains less than
+	 *   <code>k</code> points
+	 */
+	public int getNearestVertices(Location uv, int k, Collection<? super T> result)
+	{
+		int [] indices = new int[k];
+		int found = new KNearestQuery(k).find(uv.getX(), uv.getY(), uv.getZ(), indices, 0);
+		for (int i = 0; i < found; i++)
+			result.add(getVertex(indices[i]));
+		return found;
+	}
+
+	/**
+	 * Finds the <code>k</code> nearest points of several locations, by
+	 * using Euclidian distance.
+	 *
+	 * @param queries  coordinates
+	 * @param k  number of points for each query
+	 * @param pool  worker pool, may be <code>null</code>
+	 * @return an array of size <code>k*queries.length</code>; indices of
+	 *   points near <code>queries[i]</code>, see {@link #getVertex}, are
+	 *   stored from <code>k*i</code> to <code>k*i+k-1</code> in increasing
+	 *   order of distance, and missing points are set to -1.
+	 */
+	public int [] getNearestVertices(final Location [] queries, final int k, WorkerPool pool)
+	{
+		final int [] ret = new int[k * queries.length];
+		Arrays.fill(ret, -1);
+		WorkerPool.RangeTask task = new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				KNearestQuery q = new KNearestQuery(k);
+				for (int i = begin; i < end; i++)
+				{
+					Location uv = queries[i];
+					q.find(uv.getX(), uv.getY(), uv.getZ(), ret, k * i);
+				}
+			}
+		};
+		if (pool == null)
+			task.run(0, 0, queries.length);
+		else
+			pool.run(queries.length, task);
+		return ret;
+	}
+
+	// Search state of k-nearest queries; candidates are kept in a
+	// max-heap so that the farthest one is replaced first.
+	private final class KNearestQuery
+	{
+		private final int k;
+		private final int [] heap;
+		private final double [] heapDist;
+		private int size;
+		private double x, y, z;
+
+		private KNearestQuery(int k)
+		{
+			this.k = k;
+			heap = new int[k];
+			heapDist = new double[k];
+		}
+
+		private int find(double qx, double qy, double qz, int [] out, int offset)
+		{
+			x = qx;
+			y = qy;
+			z = qz;
+			size = 0;
+			if (k > 0)
+				search(0, items.length);
+			int ret = size;
+			// Pop candidates from the farthest one
+			while (size > 0)
+			{
+				out[offset + size - 1] = heap[0];
+				size--;
+				heap[0] = heap[size];
+				heapDist[0] = heapDist[size];
+				siftDown();
+			}
+			return ret;
+		}
+
+		private double worst()
+		{
+			return size < k ? Double.MAX_VALUE : heapDist[0];
+		}
+
+		private void test(int i)
+		{
+			double d = distance2(i, x, y, z);
+			if (size < k)
+			{
+				int pos = size;
+				size++;
+				while (pos > 0)
+				{
+					int parent = (pos - 1) >> 1;
+					if (heapDist[parent] >= d)
+						break;
+					heap[pos] = heap[parent];
+					heapDist[pos] = heapDist[parent];
+					pos = parent;
+				}
+				heap[pos] = i;
+				heapDist[pos] = d;
+			}
+			else if (d < heapDist[0])
+			{
+				heap[0] = i;
+				heapDist[0] = d;
+				siftDown();
+			}
+		}
+
+		private void siftDown()
+		{
+			int pos = 0;
+			int item = heap[0];
+			double d = heapDist[0];
+			while (true)
+			{
+				int child = 2 * pos + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && heapDist[child + 1] > heapDist[child])
+					child++;
+				if (heapDist[child] <= d)
+					break;
+				heap[pos] = heap[child];
+				heapDist[pos] = heapDist[child];
+				pos = child;
+			}
+			heap[pos] = item;
+			heapDist[pos] = d;
+		}
+
+		private void search(int lo, int hi)
+		{
+			if (hi - lo <= BUCKET_SIZE)
+			{
+				for (int i = lo; i < hi; i++)
+					test(i);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			int dim = splitDims[mid];
+			double delta = (dim == 0 ? x : (dim == 1 ? y : z)) - coords[3 * mid + dim];
+			if (delta < 0.0)
+				search(lo, mid);
+			else
+				search(mid + 1, hi);
+			test(mid);
+			if (delta * delta <= worst())
+			{
+				if (delta < 0.0)
+					search(mid + 1, hi);
+				else
+					search(lo, mid);
+			}
+		}
+	}
+
+	/**
+	 * Finds points whose Euclidian distance to a given location is not
+	 * larger than a radius.
+	 *
+	 * @param uv  coordinates
+	 * @param radius  search radius
+	 * @param result  collection to which points are appended, in no
+	 *   particular order
+	 * @return the number of points found
+	 */
+	public int getVerticesInRadius(Location uv, double radius, Collection<? super T> result)
+	{
+		RadiusQuery q = new RadiusQuery(radius);
+		q.find(uv.getX(), uv.getY(), uv.getZ());
+		for (int i = 0; i < q.nrFound; i++)
+			result.add(getVertex(q.found[i]));
+		return q.nrFound;
+	}
+
+	/**
+	 * Finds points whose Euclidian distance to several locations is not
+	 * larger than a radius.
+	 *
+	 * @param queries  coordinates
+	 * @param radius  search radius
+	 * @param pool  worker pool, may be <code>null</code>
+	 * @return for each query, indices of points found, see {@link #getVertex},
+	 *   in no particular order
+	 */
+	public int [][] getVerticesInRadius(final Location [] queries, final double radius, WorkerPool pool)
+	{
+		final int [][] ret = new int[queries.length][];
+		WorkerPool.RangeTask task = new WorkerPool.RangeTask()
+		{
+			public void run(int chunk, int begin, int end)
+			{
+				RadiusQuery q = new RadiusQuery(radius);
+				for (int i = begin; i < end; i++)
+				{
+					Location uv = queries[i];
+					q.find(uv.getX(), uv.getY(), uv.getZ());
+					ret[i] = Arrays.copyOf(q.found, q.nrFound);
+				}
+			}
+		};
+		if (pool == null)
+			task.run(0, 0, queries.length);
+		else
+			pool.run(queries.length, task);
+		return ret;
+	}
+
+	// Search state of radius queries
+	private final class RadiusQuery
+	{
+		private final double radius2;
+		private int [] found = new int[16];
+		private int nrFound;
+		private double x, y, z;
+
+		private RadiusQuery(double radius)
+		{
+			radius2 = radius * radius;
+		}
+
+		private void find(double qx, double qy, double qz)
+		{
+			x = qx;
+			y = qy;
+			z = qz;
+			nrFound = 0;
+			search(0, items.length);
+		}
+
+		private void test(int i)
+		{
+			if (distance2(i, x, y, z) <= radius2)
+			{
+				if (nrFound == found.length)
+					found = Arrays.copyOf(found, 2 * nrFound);
+				found[nrFound++] = i;
+			}
+		}
+
+		private void search(int lo, int hi)
+		{
+			if (hi - lo <= BUCKET_SIZE)
+			{
+				for (int i = lo; i < hi; i++)
+					test(i);
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			int dim = splitDims[mid];
+			double delta = (dim == 0 ? x : (dim == 1 ? y : z)) - coords[3 * mid + dim];
+			test(mid);
+			if (delta <= 0.0 || delta * delta <= radius2)
+				search(lo, mid);
+			if (delta >= 0.0 || delta * delta <= radius2)
+				search(mid + 1, hi);
+		}
+	}
+}
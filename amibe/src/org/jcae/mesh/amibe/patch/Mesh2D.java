@@ -65,6 +65,10 @@ public class Mesh2D extends Mesh
 	// 2D euclidian metric
 	private transient final EuclidianMetric2D euclidian_metric2d = new EuclidianMetric2D();
 
+	// Metrics computed on surface, they are kept when metrics stored in
+	// vertices are cleared
+	private transient final MetricCache metricCache = new MetricCache(metricCacheSize);
+
 	// Few methods in Vertex2D and VirtualHalfEdge2D require a pseudo-random generator.
 	// Define it in Mesh2D so that this generator gives the same value when
 	// performing several meshes in the same run.
@@ -74,6 +78,7 @@ public class Mesh2D extends Mesh
 	private static final int level_max = 10;
 	private static final Integer [] intArray = new Integer[level_max+1];
 	private static final boolean accurateDistance;
+	private static final int metricCacheSize;
 
 	static {
 		String accurateDistanceProp = System.getProperty("org.jcae.mesh.amibe.patch.Mesh2D.accurateDistance");
@@ -83,6 +88,13 @@ public class Mesh2D extends Mesh
 			System.setProperty("org.jcae.mesh.amibe.patch.Mesh2D.accurateDistance", accurateDistanceProp);
 		}
 		accurateDistance = accurateDistanceProp.equals("true");
+		String metricCacheSizeProp = System.getProperty("org.jcae.mesh.amibe.patch.Mesh2D.metricCacheSize");
+		if (metricCacheSizeProp == null)
+		{
+			metricCacheSizeProp = "100000";
+			System.setProperty("org.jcae.mesh.amibe.patch.Mesh2D.metricCacheSize", metricCacheSizeProp);
+		}
+		metricCacheSize = Integer.parseInt(metricCacheSizeProp);
 		for (int i = 0; i <= level_max; i++)
 			intArray[i] = Integer.valueOf(i);
 	}
@@ -436,15 +448,31 @@ public class Mesh2D extends Mesh
 				m2 = euclidian_metric2d;
 			else
 			{
-				surface.setParameter(pt.getX(), pt.getY());
-				MetricBuilder mb = new MetricBuilder(surface, meshParameters, temp);
-				m2 = mb.computeMetricOnSurface();
+				MetricOnSurface ms = metricCache.get(pt.getX(), pt.getY());
+				if (ms == null)
+				{
+					surface.setParameter(pt.getX(), pt.getY());
+					MetricBuilder mb = new MetricBuilder(surface, meshParameters, temp);
+					ms = mb.computeMetricOnSurface();
+					metricCache.put(pt.getX(), pt.getY(), ms);
+				}
+				m2 = ms;
 			}
 			v2.metric = m2;
 		}
 		return m2;
 	}
 
+	/**
+	 * Returns the cache of metrics computed on surface.
+	 *
+	 * @return the cache of metrics computed on surface
+	 */
+	public final MetricCache getMetricCache()
+	{
+		return metricCache;
+	}
+
 	public final void moveVertex(Vertex2D vertex, double u, double v)
 	{
 		vertex.metric = null;
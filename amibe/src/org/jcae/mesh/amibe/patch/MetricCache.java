@@ -0,0 +1,189 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.amibe.patch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of metrics computed on a parameterized surface.  Computing a
+ * {@link MetricOnSurface} instance requires evaluating surface derivatives
+ * and curvatures, which is very expensive with OpenCascade surfaces.
+ * {@link Mesh2D} drops metrics stored in vertices when switching between
+ * 2D and 3D computations, and metrics are then looked up into this cache
+ * before evaluating the surface again.  Metrics are indexed by their exact
+ * parametric location, cached values are thus identical to recomputed ones.
+ * The cache contains at most <code>capacity</code> entries, least recently
+ * used entries are removed first.
+ */
+public final class MetricCache
+{
+	private final int capacity;
+	private final LinkedHashMap<Key, MetricOnSurface> map;
+	private long hits;
+	private long misses;
+
+	private static final class Key
+	{
+		private final long u;
+		private final long v;
+		private final int hash;
+		private Key(double u, double v)
+		{
+			// Use bits instead of values to distinguish -0.0 from 0.0
+			this.u = Double.doubleToLongBits(u);
+			this.v = Double.doubleToLongBits(v);
+			long h = this.u * 31L + this.v;
+			hash = (int) (h ^ (h >>> 32));
+		}
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Key))
+				return false;
+			Key that = (Key) o;
+			return u == that.u && v == that.v;
+		}
+	}
+
+	/**
+	 * Creates an empty cache.
+	 *
+	 * @param capacity  maximal number of entries; if it is not positive,
+	 *   nothing is cached
+	 */
+	public MetricCache(int capacity)
+	{
+		this.capacity = capacity;
+		if (capacity <= 0)
+		{
+			map = null;
+			return;
+		}
+		final int max = capacity;
+		map = new LinkedHashMap<Key, MetricOnSurface>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 2387615623904872375L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, MetricOnSurface> eldest)
+			{
+				return size() > max;
+			}
+		};
+	}
+
+	/**
+	 * Returns the metric computed at a given location.
+	 *
+	 * @param u  first parameter
+	 * @param v  second parameter
+	 * @return the cached metric, or <code>null</code> if it has not been
+	 *   computed yet
+	 */
+	MetricOnSurface get(double u, double v)
+	{
+		if (map == null)
+		{
+			misses++;
+			return null;
+		}
+		MetricOnSurface ret = map.get(new Key(u, v));
+		if (ret == null)
+			misses++;
+		else
+			hits++;
+		return ret;
+	}
+
+	/**
+	 * Stores the metric computed at a given location.
+	 *
+	 * @param u  first parameter
+	 * @param v  second parameter
+	 * @param metric  metric computed at <code>(u,v)</code>
+	 */
+	void put(double u, double v, MetricOnSurface metric)
+	{
+		if (map != null)
+			map.put(new Key(u, v), metric);
+	}
+
+	/**
+	 * Removes all entries.  Counters are not reset.
+	 */
+	public void clear()
+	{
+		if (map != null)
+			map.clear();
+	}
+
+	/**
+	 * Returns the maximal number of entries.
+	 *
+	 * @return the maximal number of entries
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 *
+	 * @return the number of entries
+	 */
+	public int size()
+	{
+		return map == null ? 0 : map.size();
+	}
+
+	/**
+	 * Returns the number of metrics found in this cache, which is also the
+	 * number of surface evaluations which have been saved.
+	 *
+	 * @return the number of cache hits
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of metrics which had to be computed.
+	 *
+	 * @return the number of cache misses
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "MetricCache: size="+size()+"/"+capacity+" hits="+hits+" misses="+misses;
+	}
+}
@@ -29,6 +29,7 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.metrics.Matrix3D;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.WorkerPool;
 
 /**
  *
@@ -60,6 +61,26 @@ public class KdTreeLiaison extends MeshLiaison{
 		return t != null;
 	}
 
+	@Override
+	public boolean canProjectConcurrently() {
+		return true;
+	}
+
+	@Override
+	public boolean[] project(final Location[] targets,
+		final Location[] projections, final int[] groups, WorkerPool pool) {
+		final boolean[] toReturn = new boolean[targets.length];
+		pool.run(targets.length, new WorkerPool.RangeTask() {
+			public void run(int chunk, int begin, int end) {
+				TriangleKdTree.QueryContext qc = kdTree.createQueryContext();
+				for (int i = begin; i < end; i++)
+					toReturn[i] = qc.getClosestTriangle(targets[i],
+						projections[i], groups[i]) != null;
+			}
+		});
+		return toReturn;
+	}
+
 	private Triangle getBackgroundTriangle(Vertex v) {
 		Triangle toReturn = kdTree.getClosestTriangle(v, null, -1);
 		if(toReturn == null)
@@ -41,6 +41,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.util.HashFactory;
+import org.jcae.mesh.amibe.util.WorkerPool;
 
 public abstract class MeshLiaison
 {
@@ -229,6 +230,42 @@ public abstract class MeshLiaison
 
 	protected abstract boolean move(Vertex v, Location target, boolean backup,  int group, boolean doCheck);
 
+	/**
+	 * Tells whether {@link #project(Location[], Location[], int[], WorkerPool)}
+	 * can be called.  When this method returns <code>true</code>,
+	 * moving a vertex with {@link #backupAndMove} is the same as moving it
+	 * to the projection of target location, and {@link #backupRestore}
+	 * does nothing.
+	 *
+	 * @return <code>false</code>, subclasses must override this method
+	 * to enable batch projections
+	 */
+	public boolean canProjectConcurrently()
+	{
+		return false;
+	}
+
+	/**
+	 * Projects several locations onto the background mesh.  Locations
+	 * are processed concurrently, no vertex is moved.
+	 *
+	 * @param targets  locations to project
+	 * @param projections  array of the same size as <code>targets</code>,
+	 *   projections are stored into its elements, which must not be null
+	 * @param groups  group of each location, or -1 to project onto any
+	 *   triangle
+	 * @param pool  worker pool
+	 * @return an array of the same size as <code>targets</code> telling
+	 *   whether projection succeeded
+	 * @throws UnsupportedOperationException if
+	 *   {@link #canProjectConcurrently} returns <code>false</code>
+	 */
+	public boolean[] project(Location[] targets, Location[] projections,
+		int[] groups, WorkerPool pool)
+	{
+		throw new UnsupportedOperationException();
+	}
+
 	public final boolean project(Vertex v, Location target, Vertex start)
 	{
 		throw new RuntimeException("Not implemented yet");
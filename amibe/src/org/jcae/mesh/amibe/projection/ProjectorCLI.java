@@ -34,6 +34,7 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.GPure2Amibe;
 import org.jcae.mesh.xmldata.MeshReader;
 import org.xml.sax.SAXException;
@@ -43,6 +44,8 @@ import org.xml.sax.SAXException;
  * @author Jerome Robert
  */
 public class ProjectorCLI {
+	/** Number of points projected at once */
+	private static final int BUFFER_SIZE = 65536;
 
 	/** Create an input file for debugging */
 	private static void createInputFile(Mesh mesh, String pointSetFile) throws IOException
@@ -79,33 +82,56 @@ public class ProjectorCLI {
 		TriangleKdTree kdTree = new TriangleKdTree(mesh);
 		FileChannel inChannel = new FileInputStream(pointSetFile).getChannel();
 		FileChannel outChannel = new FileOutputStream(outputFile).getChannel();
-		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * 1000);
+		ByteBuffer bb = ByteBuffer.allocate(8 * 3 * BUFFER_SIZE);
 		bb.order(ByteOrder.nativeOrder());
-		long nbPoints = inChannel.size() / 3 / 8;
-		Location location = new Location();
-		Location projection = new Location();
-		for(long i = 0; i < nbPoints;)
+		Location[] locations = new Location[BUFFER_SIZE];
+		Location[] projections = new Location[BUFFER_SIZE];
+		for(int j = 0; j < BUFFER_SIZE; j++)
 		{
-			int read = inChannel.read(bb);
-			int readPoints = read / 3 / 8;
-			bb.rewind();
-			for(int j = 0; j < readPoints; j++)
+			locations[j] = new Location();
+			projections[j] = new Location();
+		}
+		WorkerPool pool = new WorkerPool();
+		try
+		{
+			while(true)
 			{
-				location.moveTo(bb.getDouble(), bb.getDouble(), bb.getDouble());
-				kdTree.getClosestTriangle(location, projection, -1);
-				bb.position(bb.position() - 3 * 8);
-				bb.putDouble(projection.getX());
-				bb.putDouble(projection.getY());
-				bb.putDouble(projection.getZ());
+				while(bb.hasRemaining() && inChannel.read(bb) >= 0);
+				int readPoints = bb.position() / 3 / 8;
+				if(readPoints == 0)
+					break;
+				bb.flip();
+				for(int j = 0; j < readPoints; j++)
+					locations[j].moveTo(bb.getDouble(), bb.getDouble(), bb.getDouble());
+				Location[] in = locations;
+				Location[] out = projections;
+				if(readPoints < BUFFER_SIZE)
+				{
+					in = new Location[readPoints];
+					out = new Location[readPoints];
+					System.arraycopy(locations, 0, in, 0, readPoints);
+					System.arraycopy(projections, 0, out, 0, readPoints);
+				}
+				kdTree.getClosestTriangles(in, out, -1, pool);
+				bb.clear();
+				for(int j = 0; j < readPoints; j++)
+				{
+					bb.putDouble(projections[j].getX());
+					bb.putDouble(projections[j].getY());
+					bb.putDouble(projections[j].getZ());
+				}
+				bb.flip();
+				while(bb.hasRemaining())
+					outChannel.write(bb);
+				bb.clear();
 			}
-			i += readPoints;
-			bb.rewind();
-			bb.limit(read);
-			outChannel.write(bb);
-			bb.clear();
 		}
-		inChannel.close();
-		outChannel.close();
+		finally
+		{
+			pool.shutdown();
+			inChannel.close();
+			outChannel.close();
+		}
 	}
 
 	public static void main(final String[] args) {
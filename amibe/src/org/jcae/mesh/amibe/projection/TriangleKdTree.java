@@ -39,6 +39,7 @@ import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.metrics.Location;
 import org.jcae.mesh.amibe.projection.MeshLiaison.TriangleDistance;
 import org.jcae.mesh.amibe.util.HashFactory;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.xmldata.MeshReader;
 
 /**
@@ -120,16 +121,8 @@ public class TriangleKdTree {
 	private final int bucketSize;
 	private final TriangleInterAABB triangleInterAABB1 = new TriangleInterAABB();
 	private final TriangleInterAABB triangleInterAABB2 = new TriangleInterAABB();
-	private transient List<Node> nodeStack;
-	private transient BoundaryPool boundaryPool;
-	private final transient double[] workBoundary1 = new double[6];
-	private final static TriangleDistance TRIANGLE_DISTANCE = new TriangleDistance(){
-		@Override
-		protected double handleDegenerated(double det, Triangle tri) {
-			LOGGER.info(tri+" is degenerated");
-			return Double.POSITIVE_INFINITY;
-		}
-	};
+	/** Query context used by methods of this class */
+	private final QueryContext context = new QueryContext(false);
 	public TriangleKdTree(Mesh mesh)
 	{
 		this(mesh, 10, 4096.0);
@@ -158,8 +151,7 @@ public class TriangleKdTree {
 		for(Triangle t:triangles)
 			if(!t.hasAttributes(AbstractHalfEdge.OUTER))
 				addTriangle(t);
-		nodeStack = null;
-		boundaryPool = null;
+		context.trim();
 	}
 
 	public TriangleKdTree(Iterable<Triangle> triangles, int bucketSize, double minNodeRatio)
@@ -193,20 +185,17 @@ public class TriangleKdTree {
 		return Arrays.toString(boxCenter)+" "+Arrays.toString(halfSize);
 	}
 
-	private final transient Set<Triangle> seen = HashFactory.createSet();
-	private final transient List<Node> closeNodes = new ArrayList<Node>();
-	private final transient BoundaryPool closeBoundaries = new BoundaryPool();
-	private final int[] closeIndex = new int[2];
+	private final BoundaryPool closeBoundaries = new BoundaryPool();
 
 	public boolean remove(Triangle toReplace)
 	{
 		boolean found = false;
 		bounds(toReplace, triangleBounds);
-		getNodes(triangleBounds, closeBoundaries, false);
-		for(int i = 0; i < closeNodes.size(); i++)
+		context.getNodes(triangleBounds, closeBoundaries, false);
+		for(int i = 0; i < context.closeNodes.size(); i++)
 		{
 			double[] b = closeBoundaries.get(i);
-			Node n = closeNodes.get(i);
+			Node n = context.closeNodes.get(i);
 			if(n.triangles != null)
 			{
 				int oldSize = n.triangles.length;
@@ -232,129 +221,386 @@ public class TriangleKdTree {
 			}
 		}
 
-		for(int i = 0; i < closeNodes.size(); i++)
+		for(int i = 0; i < context.closeNodes.size(); i++)
 		{
-			Node n = closeNodes.get(i);
+			Node n = context.closeNodes.get(i);
 			if(n.triangles != null && n.triangles.length > bucketSize)
 				split(n, closeBoundaries.get(i));
 		}
 		closeBoundaries.clear();
-		closeNodes.clear();
+		context.closeNodes.clear();
 		return found;
 	}
+
+	/**
+	 * Creates a query context.  Contexts have their own work arrays, so
+	 * that queries can be performed concurrently by several threads, each
+	 * thread having its own context.  The tree must not be modified while
+	 * contexts are used.
+	 */
+	public QueryContext createQueryContext()
+	{
+		return new QueryContext(true);
+	}
+
+	/** @see QueryContext#getNearTriangles(double[], Collection, int) */
 	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group)
 	{
-		getNearTriangles(aabb, result, group, false);
+		context.getNearTriangles(aabb, result, group, false);
 	}
+
+	/** @see QueryContext#getNearTriangles(double[], Collection, int, boolean) */
 	public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group, boolean notInGroup)
 	{
-		getNodes(aabb, null, false);
-		for(Node nn: closeNodes)
+		context.getNearTriangles(aabb, result, group, notInGroup);
+	}
+
+	/** @see QueryContext#getClosestTriangle */
+	public Triangle getClosestTriangle(Location coords, Location projection, int group)
+	{
+		return context.getClosestTriangle(coords, projection, group);
+	}
+
+	/**
+	 * Get the closest triangles of several points.  Points are processed
+	 * concurrently, each thread using its own {@link QueryContext}.
+	 * @param coords points to project
+	 * @param projections if not null, projections of points are stored in
+	 * this array, which must have the same size as <code>coords</code>.
+	 * Its elements must not be null.
+	 * @param group Only look for triangles in the given groups. If negative
+	 * look for all triangles.
+	 * @param pool worker pool, may be null
+	 * @return closest triangles, in the same order as <code>coords</code>
+	 */
+	public Triangle[] getClosestTriangles(final Location[] coords,
+		final Location[] projections, final int group, WorkerPool pool)
+	{
+		final Triangle[] toReturn = new Triangle[coords.length];
+		WorkerPool.RangeTask task = new WorkerPool.RangeTask()
 		{
-			if(nn.triangles != null)
+			public void run(int chunk, int begin, int end)
 			{
-				for(Triangle t:nn.triangles)
+				QueryContext qc = createQueryContext();
+				for(int i = begin; i < end; i++)
 				{
-					if(group >= 0 && ((t.getGroupId() != group && !notInGroup) ||
-						(notInGroup && t.getGroupId() == group)))
-						continue;
-					result.add(t);
+					toReturn[i] = qc.getClosestTriangle(coords[i],
+						projections == null ? null : projections[i], group);
 				}
 			}
-		}
-		closeNodes.clear();
+		};
+		if(pool == null)
+			task.run(0, 0, coords.length);
+		else
+			pool.run(coords.length, task);
+		return toReturn;
 	}
 
 	/**
-	 * Get the closest triangle for coords
-	 * @param coords
-	 * @param projection The projection of coords on the triangle. If null the
-	 * projection is not computed. It must be different of coords else strange
-	 * things will happen.
-	 * @param group Only look for triangles in the given groups. If negative
-	 * look for all triangles.
-	 * @return
+	 * Work arrays of queries.  Queries of a context must not be performed
+	 * concurrently, but several contexts can be used concurrently as long
+	 * as the tree is not modified.
 	 */
-	public Triangle getClosestTriangle(Location coords, Location projection, int group)
+	public final class QueryContext
 	{
-		Node n = getNode(coords, workBoundary1);
-		assert n != null;
-		Triangle toReturn = null;
-		double aabbDistance = Double.POSITIVE_INFINITY;
-		double triangleDistance;
-		seen.clear();
-		if(n.triangles == null || n.triangles.length == 0)
+		// If false, empty leaves are removed while walking the tree
+		private final boolean readOnly;
+		private List<Node> nodeStack = new ArrayList<Node>();
+		private BoundaryPool boundaryPool = new BoundaryPool();
+		private final List<Node> closeNodes = new ArrayList<Node>();
+		private final Set<Triangle> seen = HashFactory.createSet();
+		private final int[] closeIndex = new int[2];
+		private final double[] workBoundary = new double[6];
+		private final TriangleDistance distance = new TriangleDistance(){
+			@Override
+			protected double handleDegenerated(double det, Triangle tri) {
+				LOGGER.info(tri+" is degenerated");
+				return Double.POSITIVE_INFINITY;
+			}
+		};
+
+		private QueryContext(boolean readOnly)
 		{
-			aabbDistance = distanceAABB(coords, workBoundary1);
-			triangleDistance = Double.POSITIVE_INFINITY;
+			this.readOnly = readOnly;
 		}
-		else
+
+		/** Release work arrays */
+		private void trim()
+		{
+			nodeStack = new ArrayList<Node>();
+			boundaryPool = new BoundaryPool();
+		}
+
+		/** Get triangles intersecting an AABB */
+		public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group)
 		{
-			for(Triangle t:n.triangles)
+			getNearTriangles(aabb, result, group, false);
+		}
+
+		/**
+		 * Get triangles intersecting an AABB
+		 * @param notInGroup if true, only triangles which are not in
+		 * <code>group</code> are returned
+		 */
+		public void getNearTriangles(double[] aabb, Collection<Triangle> result, int group, boolean notInGroup)
+		{
+			getNodes(aabb, null, false);
+			for(Node nn: closeNodes)
 			{
-				if(group >= 0 && t.getGroupId() != group)
-					continue;
-				double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
-				if(d < aabbDistance)
+				if(nn.triangles != null)
 				{
-					aabbDistance = d;
-					toReturn = t;
-					if(projection != null)
-						TRIANGLE_DISTANCE.getProjection(projection);
+					for(Triangle t:nn.triangles)
+					{
+						if(group >= 0 && ((t.getGroupId() != group && !notInGroup) ||
+							(notInGroup && t.getGroupId() == group)))
+							continue;
+						result.add(t);
+					}
 				}
-				seen.add(t);
-				//It seems to happen often so let's optimize
-				if(aabbDistance == 0)
-					break;
 			}
-			if(seen.isEmpty())
+			closeNodes.clear();
+		}
+
+		/**
+		 * Get the closest triangle for coords
+		 * @param coords
+		 * @param projection The projection of coords on the triangle. If null the
+		 * projection is not computed. It must be different of coords else strange
+		 * things will happen.
+		 * @param group Only look for triangles in the given groups. If negative
+		 * look for all triangles.
+		 * @return
+		 */
+		public Triangle getClosestTriangle(Location coords, Location projection, int group)
+		{
+			Node n = getNode(coords, workBoundary);
+			assert n != null;
+			Triangle toReturn = null;
+			double aabbDistance = Double.POSITIVE_INFINITY;
+			double triangleDistance;
+			seen.clear();
+			if(n.triangles == null || n.triangles.length == 0)
 			{
-				//all triangles are from an other group
-				aabbDistance = distanceAABB(coords, workBoundary1);
+				aabbDistance = distanceAABB(coords, workBoundary);
 				triangleDistance = Double.POSITIVE_INFINITY;
 			}
 			else
 			{
-				triangleDistance = aabbDistance;
-				aabbDistance = Math.sqrt(aabbDistance);
+				for(Triangle t:n.triangles)
+				{
+					if(group >= 0 && t.getGroupId() != group)
+						continue;
+					double d = distance.compute(coords, t, closeIndex);
+					if(d < aabbDistance)
+					{
+						aabbDistance = d;
+						toReturn = t;
+						if(projection != null)
+							distance.getProjection(projection);
+					}
+					seen.add(t);
+					//It seems to happen often so let's optimize
+					if(aabbDistance == 0)
+						break;
+				}
+				if(seen.isEmpty())
+				{
+					//all triangles are from an other group
+					aabbDistance = distanceAABB(coords, workBoundary);
+					triangleDistance = Double.POSITIVE_INFINITY;
+				}
+				else
+				{
+					triangleDistance = aabbDistance;
+					aabbDistance = Math.sqrt(aabbDistance);
+				}
 			}
-		}
-		while(true)
-		{
-			getNodes(createCenteredAABB(coords, 1.01*aabbDistance), null, false);
-			for(Node nn: closeNodes)
+			while(true)
 			{
-				if(nn != n && nn.triangles != null)
+				getNodes(createCenteredAABB(coords, 1.01*aabbDistance), null, false);
+				for(Node nn: closeNodes)
 				{
-					for(Triangle t:nn.triangles)
+					if(nn != n && nn.triangles != null)
 					{
-						if(group >= 0 && t.getGroupId() != group)
-							continue;
-						if(!seen.contains(t))
+						for(Triangle t:nn.triangles)
 						{
-							double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
-							if(d < triangleDistance)
+							if(group >= 0 && t.getGroupId() != group)
+								continue;
+							if(!seen.contains(t))
 							{
-								triangleDistance = d;
-								toReturn = t;
-								if(projection != null)
-									TRIANGLE_DISTANCE.getProjection(projection);
+								double d = distance.compute(coords, t, closeIndex);
+								if(d < triangleDistance)
+								{
+									triangleDistance = d;
+									toReturn = t;
+									if(projection != null)
+										distance.getProjection(projection);
+								}
 							}
 						}
 					}
 				}
+				closeNodes.clear();
+				if(toReturn != null)
+					return toReturn;
+				else
+				{
+					LOGGER.warning(coords+" from group "+group+
+						" cannot be projected at "+aabbDistance+". Trying "+
+						(aabbDistance * 1.4)+".");
+					aabbDistance = aabbDistance * 1.4;
+					if(aabbDistance > globalRadius)
+						return null;
+				}
 			}
-			closeNodes.clear();
-			if(toReturn != null)
-				return toReturn;
-			else
+		}
+
+		/**
+		 * Return the nodes intersecting the given AABB
+		 * @param aabb
+		 * @param resultBounds
+		 * @param emptyNodes if true empty nodes (not existing) node are returned.
+		 * Set true when filling the KdTree, and to false when consulting it.
+		 */
+		private void getNodes(double[] aabb, BoundaryPool resultBounds, boolean emptyNodes)
+		{
+			nodeStack.clear();
+			boundaryPool.clear();
+
+			nodeStack.add(root);
+			boundaryPool.push(globalBounds);
+			assert closeNodes.isEmpty();
+			assert resultBounds == null || resultBounds.isEmpty();
+			if(resultBounds != null)
+				resultBounds.clear();
+			assert intersect(aabb, globalBounds): Arrays.toString(aabb)+" doesn't intersect "+Arrays.toString(globalBounds);
+			while(!nodeStack.isEmpty())
 			{
-				LOGGER.warning(coords+" from group "+group+
-					" cannot be projected at "+aabbDistance+". Trying "+
-					(aabbDistance * 1.4)+".");
-				aabbDistance = aabbDistance * 1.4;
-				if(aabbDistance > globalRadius)
-					return null;
+				int n = nodeStack.size() - 1;
+				Node current = nodeStack.remove(n);
+				double[] cBounds = boundaryPool.last();
+				if(current.left == null && current.right == null)
+				{
+					//this is a leaf node
+					boundaryPool.removeLast();
+					closeNodes.add(current);
+					if(resultBounds != null)
+						resultBounds.push(cBounds);
+				}
+				else
+				{
+					double newB = (cBounds[current.direction] + cBounds[3+current.direction]) / 2.0;
+					boolean inLeft = aabb[current.direction] < newB;
+					boolean inRight = aabb[current.direction+3] >= newB;
+					if(emptyNodes)
+					{
+						if(inLeft && current.left == null)
+							current.left = new Node();
+						if(inRight && current.right == null)
+							current.right = new Node();
+					}
+					boolean leafLeft = current.left == null;
+					boolean leafRight = current.right == null;
+					if(inLeft && !inRight)
+					{
+						if(leafLeft)
+							boundaryPool.removeLast();
+						else
+						{
+							cBounds[3 + current.direction] = newB;
+							nodeStack.add(current.left);
+						}
+					}
+					else if(!inLeft && inRight)
+					{
+						if(leafRight)
+							boundaryPool.removeLast();
+						else
+						{
+							cBounds[current.direction] = newB;
+							nodeStack.add(current.right);
+						}
+					}
+					else if(inLeft && inRight)
+					{
+						double[] rightBounds = null;
+						if(leafLeft)
+						{
+							if(leafRight)
+								//leaf node so we though the boundary array away
+								boundaryPool.removeLast();
+							else
+								//reuse left bounds as right bounds
+								rightBounds = cBounds;
+						}
+						else
+						{
+							//copy left boundaries to right boundaries before
+							//changing it
+							if(current.right != null)
+							rightBounds = boundaryPool.push(cBounds);
+							cBounds[3 + current.direction] = newB;
+							nodeStack.add(current.left);
+						}
+
+						if(!leafRight)
+						{
+							rightBounds[current.direction] = newB;
+							nodeStack.add(current.right);
+						}
+					}
+					else
+					{
+						boundaryPool.removeLast();
+					}
+				}
+			}
+		}
+
+		private Node getNode(Location coords, double[] tmpBounds)
+		{
+			System.arraycopy(globalBounds, 0, tmpBounds, 0, tmpBounds.length);
+			Node current = root;
+			while(true)
+			{
+				byte d = current.direction;
+				double cut = (tmpBounds[d] + tmpBounds[d+3]) / 2.0;
+				if(coords.get(d) < cut)
+				{
+					if(current.left == null)
+					{
+						return current;
+					}
+					else if(current.left.isEmptyLeaf())
+					{
+						if(!readOnly)
+							current.left = null;
+						return current;
+					}
+					else
+					{
+						current = current.left;
+						tmpBounds[3+d] = cut;
+					}
+				}
+				else
+				{
+					if(current.right == null)
+					{
+						return current;
+					}
+					else if(current.right.isEmptyLeaf())
+					{
+						if(!readOnly)
+							current.right = null;
+						return current;
+					}
+					else
+					{
+						current = current.right;
+						tmpBounds[d] = cut;
+					}
+				}
 			}
 		}
 	}
@@ -367,12 +613,12 @@ public class TriangleKdTree {
 		{
 			if(t.getGroupId() == group || group < 0)
 			{
-				double d = TRIANGLE_DISTANCE.compute(coords, t, closeIndex);
+				double d = context.distance.compute(coords, t, context.closeIndex);
 				if(d < minDist2)
 				{
 					minDist2 = d;
 					toReturn = t;
-					TRIANGLE_DISTANCE.getProjection(projection);
+					context.distance.getProjection(projection);
 				}
 			}
 		}
@@ -408,19 +654,19 @@ public class TriangleKdTree {
 	 */
 	public void heavyCheck()
 	{
-		List<Node> backup = new ArrayList<Node>(closeNodes);
-		closeNodes.clear();
+		List<Node> backup = new ArrayList<Node>(context.closeNodes);
+		context.closeNodes.clear();
 		for(Triangle t: getTriangles())
 		{
 			bounds(t, triangleBounds);
-			getNodes(triangleBounds, null, false);
+			context.getNodes(triangleBounds, null, false);
 			Collection<Node> ns = getNodes(t);
-			if(!closeNodes.containsAll(ns))
+			if(!context.closeNodes.containsAll(ns))
 			{
 				System.err.println(t);
 				System.err.println("triangle bounds:" + bounds2String(triangleBounds));
 				System.err.println("triangle bounds:" + Arrays.toString(triangleBounds));
-				ns.removeAll(closeNodes);
+				ns.removeAll(context.closeNodes);
 				Map<Node, double[]> nb = getNodeBounds();
 				for(Node n:ns)
 				{
@@ -433,9 +679,9 @@ public class TriangleKdTree {
 				}
 				throw new IllegalStateException();
 			}
-			closeNodes.clear();
+			context.closeNodes.clear();
 		}
-		closeNodes.addAll(backup);
+		context.closeNodes.addAll(backup);
 	}
 
 	/**
@@ -455,15 +701,15 @@ public class TriangleKdTree {
 	private Map<Node, double[]> getNodeBounds()
 	{
 		Map<Node, double[]> toReturn = HashFactory.createMap();
-		List<Node> backup = new ArrayList<Node>(closeNodes);
-		closeNodes.clear();
+		List<Node> backup = new ArrayList<Node>(context.closeNodes);
+		context.closeNodes.clear();
 		BoundaryPool bp = new BoundaryPool();
-		getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), bp, false);
-		for(int i = 0; i < closeNodes.size(); i++)
-			toReturn.put(closeNodes.get(i), bp.get(i));
+		context.getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), bp, false);
+		for(int i = 0; i < context.closeNodes.size(); i++)
+			toReturn.put(context.closeNodes.get(i), bp.get(i));
 
-		closeNodes.clear();
-		closeNodes.addAll(backup);
+		context.closeNodes.clear();
+		context.closeNodes.addAll(backup);
 		return toReturn;
 	}
 
@@ -488,11 +734,7 @@ public class TriangleKdTree {
 	private Collection<Node> getNodes(Triangle triangle)
 	{
 		ArrayList<Node> result = new ArrayList<Node>();
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
-		else
-			nodeStack.clear();
-
+		ArrayList<Node> nodeStack = new ArrayList<Node>();
 		nodeStack.add(root);
 		while(!nodeStack.isEmpty())
 		{
@@ -525,11 +767,7 @@ public class TriangleKdTree {
 	public Set<Triangle> getTriangles()
 	{
 		HashSet<Triangle> result = new HashSet<Triangle>();
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
-		else
-			nodeStack.clear();
-
+		ArrayList<Node> nodeStack = new ArrayList<Node>();
 		nodeStack.add(root);
 		while(!nodeStack.isEmpty())
 		{
@@ -624,115 +862,6 @@ public class TriangleKdTree {
 		return bounds;
 	}
 
-	/**
-	 * Return the nodes intersecting the given AABB
-	 * @param aabb
-	 * @param resultBounds
-	 * @param emptyNodes if true empty nodes (not existing) node are returned.
-	 * Set true when filling the KdTree, and to false when consulting it.
-	 */
-	private void getNodes(double[] aabb, BoundaryPool resultBounds, boolean emptyNodes)
-	{
-		if(nodeStack == null)
-			nodeStack = new ArrayList<Node>();
-		else
-			nodeStack.clear();
-
-		if(boundaryPool == null)
-			boundaryPool = new BoundaryPool();
-		else
-			boundaryPool.clear();
-
-		nodeStack.add(root);
-		boundaryPool.push(globalBounds);
-		assert closeNodes.isEmpty();
-		assert resultBounds == null || resultBounds.isEmpty();
-		if(resultBounds != null)
-			resultBounds.clear();
-		assert intersect(aabb, globalBounds): Arrays.toString(aabb)+" doesn't intersect "+Arrays.toString(globalBounds);
-		while(!nodeStack.isEmpty())
-		{
-			int n = nodeStack.size() - 1;
-			Node current = nodeStack.remove(n);
-			double[] cBounds = boundaryPool.last();
-			if(current.left == null && current.right == null)
-			{
-				//this is a leaf node
-				boundaryPool.removeLast();
-				closeNodes.add(current);
-				if(resultBounds != null)
-					resultBounds.push(cBounds);
-			}
-			else
-			{
-				double newB = (cBounds[current.direction] + cBounds[3+current.direction]) / 2.0;
-				boolean inLeft = aabb[current.direction] < newB;
-				boolean inRight = aabb[current.direction+3] >= newB;
-				if(emptyNodes)
-				{
-					if(inLeft && current.left == null)
-						current.left = new Node();
-					if(inRight && current.right == null)
-						current.right = new Node();
-				}
-				boolean leafLeft = current.left == null;
-				boolean leafRight = current.right == null;
-				if(inLeft && !inRight)
-				{
-					if(leafLeft)
-						boundaryPool.removeLast();
-					else
-					{
-						cBounds[3 + current.direction] = newB;
-						nodeStack.add(current.left);
-					}
-				}
-				else if(!inLeft && inRight)
-				{
-					if(leafRight)
-						boundaryPool.removeLast();
-					else
-					{
-						cBounds[current.direction] = newB;
-						nodeStack.add(current.right);
-					}
-				}
-				else if(inLeft && inRight)
-				{
-					double[] rightBounds = null;
-					if(leafLeft)
-					{
-						if(leafRight)
-							//leaf node so we though the boundary array away
-							boundaryPool.removeLast();
-						else
-							//reuse left bounds as right bounds
-							rightBounds = cBounds;
-					}
-					else
-					{
-						//copy left boundaries to right boundaries before
-						//changing it
-						if(current.right != null)
-						rightBounds = boundaryPool.push(cBounds);
-						cBounds[3 + current.direction] = newB;
-						nodeStack.add(current.left);
-					}
-
-					if(!leafRight)
-					{
-						rightBounds[current.direction] = newB;
-						nodeStack.add(current.right);
-					}
-				}
-				else
-				{
-					boundaryPool.removeLast();
-				}
-			}
-		}
-	}
-
 	private boolean intersect(double[] aabb1, double[] aabb2)
 	{
 		return aabb1[0] <= aabb2[3] && aabb1[3] >= aabb2[0] &&
@@ -740,51 +869,6 @@ public class TriangleKdTree {
 		aabb1[2] <= aabb2[5] && aabb1[5] >= aabb2[2];
 	}
 
-	private Node getNode(Location coords, double[] tmpBounds)
-	{
-		System.arraycopy(globalBounds, 0, tmpBounds, 0, tmpBounds.length);
-		Node current = root;
-		while(true)
-		{
-			byte d = current.direction;
-			double cut = (tmpBounds[d] + tmpBounds[d+3]) / 2.0;
-			if(coords.get(d) < cut)
-			{
-				if(current.left == null)
-				{
-					return current;
-				}
-				else if(current.left.isEmptyLeaf())
-				{
-					current.left = null;
-					return current;
-				}
-				else
-				{
-					current = current.left;
-					tmpBounds[3+d] = cut;
-				}
-			}
-			else
-			{
-				if(current.right == null)
-				{
-					return current;
-				}
-				else if(current.right.isEmptyLeaf())
-				{
-					current.right = null;
-					return current;
-				}
-				else
-				{
-					current = current.right;
-					tmpBounds[d] = cut;
-				}
-			}
-		}
-	}
-
 	private void bounds(Triangle triangle, double[] bounds)
 	{
 		for(int i = 0; i < 3; i++)
@@ -818,16 +902,16 @@ public class TriangleKdTree {
 	public void addTriangle(Triangle triangle, boolean testExist)
 	{
 		bounds(triangle, triangleBounds);
-		getNodes(triangleBounds, closeBoundaries, true);
+		context.getNodes(triangleBounds, closeBoundaries, true);
 		triangleInterAABB1.setTriangle(triangle);
-		for(int i = 0; i < closeNodes.size(); i++)
+		for(int i = 0; i < context.closeNodes.size(); i++)
 		{
 			double[] b = closeBoundaries.get(i);
 
 			if(triangleInterAABB1.triBoxOverlap(b, true))
-				addTriange(triangle, closeNodes.get(i), b, testExist);
+				addTriange(triangle, context.closeNodes.get(i), b, testExist);
 		}
-		closeNodes.clear();
+		context.closeNodes.clear();
 		closeBoundaries.clear();
 	}
 
@@ -1085,12 +1169,12 @@ public class TriangleKdTree {
 
 	public Object[] getPolyData()
 	{
-		getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), closeBoundaries, false);
+		context.getNodes(createCenteredAABB(new Location(), Double.POSITIVE_INFINITY), closeBoundaries, false);
 
 		int vertexCounter = 0;
 		ArrayList<int[]> quads = new ArrayList<int[]>();
 		ArrayList<double[]> coords = new ArrayList<double[]>();
-		int n = closeNodes.size();
+		int n = context.closeNodes.size();
 		double[] maxBounds = null;
 		Node maxNode = null;
 		int maxTriangles = 0;
@@ -1099,7 +1183,7 @@ public class TriangleKdTree {
 		double[] smallBounds = null;
 		for(int i = 0; i < n; i++)
 		{
-			Node node = closeNodes.get(i);
+			Node node = context.closeNodes.get(i);
 			double[] nBounds = closeBoundaries.get(i);
 			if(node.triangles != null && node.triangles.length > 0)
 			{
@@ -1134,7 +1218,7 @@ public class TriangleKdTree {
 				}
 			}
 		}
-		closeNodes.clear();
+		context.closeNodes.clear();
 		closeBoundaries.clear();
 		int[] quadArray = new int[quads.size() * 24];
 		int k = 0;
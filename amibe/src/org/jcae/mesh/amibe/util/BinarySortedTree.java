@@ -0,0 +1,304 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2006, by EADS CRC
+    Copyright (C) 2007,2008,2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.map.hash.THashMap;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary trees to store quality factors.  Nodes are linked to their
+ * children and parent, and a map between objects and tree nodes is
+ * maintained in order to find nodes when objects are updated or removed.
+ * Subclasses implement balancing strategies.
+ */
+public abstract class BinarySortedTree<E> extends QSortedTree<E>
+{
+	private static final long serialVersionUID = 3906381270138525447L;
+	private static final Logger logger=Logger.getLogger(BinarySortedTree.class.getName());
+	final Node<E> root = newNode(null, Double.MAX_VALUE);
+	// Mapping between objects and tree nodes
+	private transient Map<E, Node<E>> map = new THashMap<E, Node<E>>();
+	private int nrNodes = 0;
+	
+	/**
+	 * Constructor to cast new nodes into subclass type.
+	 */
+	abstract Node<E> newNode(E o, double v);
+
+	/**
+	 * Insert a new note into the binary tree.  This method always returns
+	 * <code>true</code>.
+	 */
+	abstract boolean insertNode(Node<E> node);
+
+	/**
+	 * Remove a note from the binary tree.  Some algorithms may remove
+	 * another node (for instance PRedBlackSortedTree), this method
+	 * returns the node which has been removed.
+	 */
+	abstract Node<E> removeNode(Node<E> p);
+
+	protected void readObject(java.io.ObjectInputStream s)
+		throws java.io.IOException, ClassNotFoundException
+	{
+		s.defaultReadObject();
+		map = new THashMap<E, Node<E>>(nrNodes);
+		if (nrNodes == 0)
+			return;
+		for (Iterator<Node<E>> it = iterator(); it.hasNext(); )
+		{
+			Node<E> current = it.next();
+			map.put(current.getData(), current);
+		}
+	}
+
+	@Override
+	public final boolean isEmpty()
+	{
+		return root.child[0] == null;
+	}
+	
+	@Override
+	public final void insert(E o, double value)
+	{
+		assert map.get(o) == null : "Object already in tree: "+o;
+		Node<E> node = newNode(o, value);
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Insert "+node+" "+" value: "+value+" "+o);
+		map.put(o, node);
+		nrNodes++;
+		insertNode(node);
+	}
+
+	@Override
+	public final boolean remove(E o)
+	{
+		Node<E> p = map.get(o);
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Remove "+p+" "+o);
+		if (p == null)
+			return false;
+		nrNodes--;
+		map.remove(o);
+		Node<E> r = removeNode(p);
+		// PRedBlackSortedTree implementation may swap p
+		// and r nodes and remove r, we then need to
+		// update map.
+		if (r != p)
+		{
+			map.remove(r.getData());
+			map.put(p.getData(), p);
+		}
+		return true;
+	}
+
+	@Override
+	public final boolean update(E o, double value)
+	{
+		Node<E> p = map.get(o);
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Update "+p+" content to "+value);
+		if (p == null)
+			return false;
+		Node<E> r = removeNode(p);
+		// PRedBlackSortedTree implementation may swap p
+		// and r nodes and remove r, we then need to
+		// update map.
+		if (r != p)
+		{
+			map.put(r.getData(), r);
+			map.put(p.getData(), p);
+		}
+		r.reset(value);
+		insertNode(r);
+		return true;
+	}
+	
+	@Override
+	public final void clear()
+	{
+		// Unlink all nodes to help garbage collector
+		for (Node<E> p: map.values())
+		{
+			p.data = null;
+			p.child[0] = p.child[1] = null;
+			p.parent = null;
+		}
+		map.clear();
+		root.child[0] = root.child[1] = null;
+		nrNodes = 0;
+	}
+	
+	/**
+	 * Pretty-print this tree.
+	 */
+	@SuppressWarnings("unused")
+	private void show()
+	{
+		if (isEmpty())
+		{
+			System.out.println("Empty tree");
+			return;
+		}
+		System.out.println("Tree:");
+		showNode(root.child[0]);
+	}
+	
+	private static <E> void showNode(Node<E> node)
+	{
+		System.out.print(node.toString());
+		if (node.child[0] != null)
+			System.out.print(" Left -> "+node.child[0].getValue());
+		if (node.child[1] != null)
+			System.out.print(" Right -> "+node.child[1].getValue());
+		if (node.parent != null)
+			System.out.print(" Parent -> "+node.parent.getValue());
+		System.out.println("");
+		if (node.child[0] != null)
+		{
+			assert node.child[0].parent == node : "Invalid parent pointer: "+node.child[0].parent+" != "+node;
+			showNode(node.child[0]);
+		}
+		if (node.child[1] != null)
+		{
+			assert node.child[1].parent == node : "Invalid parent pointer: "+node.child[1].parent+" != "+node;
+			showNode(node.child[1]);
+		}
+	}
+	
+	/**
+	 * Pretty-print this tree.
+	 */
+	@SuppressWarnings("unused")
+	private void showValues()
+	{
+		if (isEmpty())
+		{
+			System.out.println("Empty tree");
+			return;
+		}
+		System.out.println("Tree:");
+		showNodeValues(root.child[0]);
+	}
+	
+	private static <E> void showNodeValues(Node<E> node)
+	{
+		if (node.child[0] != null)
+		{
+			assert node.child[0].parent == node;
+			showNodeValues(node.child[0]);
+		}
+		System.out.println("Key: "+node.getValue()+ "Obj: "+node.getData());
+		if (node.child[1] != null)
+		{
+			assert node.child[1].parent == node;
+			showNodeValues(node.child[1]);
+		}
+	}
+	
+	@Override
+	public final boolean contains(E o)
+	{
+		return map.containsKey(o);
+	}
+	
+	@Override
+	public final int size()
+	{
+		assert nrNodes == map.size() : "size error: "+nrNodes+" != "+map.size();
+		return nrNodes;
+	}
+	
+	@Override
+	public final double getRootValue()
+	{
+		return root.child[0].getValue();
+	}
+	
+	private final Iterator<Node<E>> nullIterator = new Iterator<Node<E>>()
+	{
+		public boolean hasNext() { return false; }
+		public Node<E> next() { throw new NoSuchElementException(); }
+		public void remove() { throw new RuntimeException(); }
+	};
+
+	@Override
+	public final Iterator<Node<E>> iterator()
+	{
+		if (nrNodes == 0)
+			return nullIterator;
+		return new Iterator<Node<E>>()
+		{
+			private Node<E> current = root;
+			private Node<E> next = root.child[0].firstNode();
+			public boolean hasNext()
+			{
+				return next != null;
+			}
+			public Node<E> next()
+			{
+				current = next;
+				if (current == null)
+					throw new NoSuchElementException();
+				next = next.nextNode();
+				return current;
+			}
+			public void remove()
+			{
+				// Not supported yet!
+				throw new RuntimeException();
+			}
+		};
+	}
+	
+	@Override
+	public final Iterator<Node<E>> backwardIterator()
+	{
+		if (nrNodes == 0)
+			return nullIterator;
+		return new Iterator<Node<E>>()
+		{
+			private Node<E> current = root;
+			private Node<E> next = root.child[0].lastNode();
+			public boolean hasNext()
+			{
+				return next != null;
+			}
+			public Node<E> next()
+			{
+				current = next;
+				if (current == null)
+					throw new NoSuchElementException();
+				next = next.previousNode();
+				return current;
+			}
+			public void remove()
+			{
+				// Not supported yet!
+				throw new RuntimeException();
+			}
+		};
+	}
+}
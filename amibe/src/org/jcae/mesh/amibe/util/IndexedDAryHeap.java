@@ -0,0 +1,653 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary heap to store quality factors.  Unlike binary trees, this
+ * class does not allocate an object for each entry.  Each object is given
+ * an integer identifier when inserted, and data are stored into arrays:
+ * <ul>
+ *   <li>quality factors and insertion stamps are stored in heap order,</li>
+ *   <li>positions in heap and objects are stored by identifier.</li>
+ * </ul>
+ * Objects implementing {@link Element} store their own identifier, so
+ * positions are found by a lookup into an array indexed by identifier;
+ * other objects are mapped to their identifier by a
+ * <code>TObjectIntHashMap</code>.  Freed identifiers are reused.
+ *
+ * <p>
+ * Objects with the same quality factor are sorted by their insertion
+ * stamps, which are updated by {@link #update}, so objects are processed
+ * in the same order as with {@link PAVLSortedTree}.  Updating a quality
+ * factor costs <code>O(log n)</code> operations, and is cheaper when
+ * quality factor is decreased because only upward moves are performed.
+ * </p>
+ *
+ * <p>
+ * Method {@link #iterator} traverses heap lazily, visiting the
+ * <code>k</code> smallest entries costs <code>O(k log k)</code> operations.
+ * When heap is modified between two calls to <code>next()</code>, traversal
+ * restarts from heap root and skips objects which have already been returned.
+ * Method {@link #backwardIterator} sorts a copy of the heap.
+ * </p>
+ *
+ * <p>
+ * If many objects are inserted at once, they can be inserted between
+ * {@link #beginBulkLoad} and {@link #endBulkLoad} calls; heap order is then
+ * built in linear time by {@link #endBulkLoad}.
+ * </p>
+ */
+public class IndexedDAryHeap<E> extends QSortedTree<E>
+{
+	/**
+	 * Objects which store their identifier into this heap.  Identifier
+	 * is set when object is inserted, and reset to -1 when it is removed.
+	 * An object must not be stored into several heaps at the same time.
+	 */
+	public interface Element
+	{
+		/**
+		 * Returns the identifier set by {@link #setHeapId}.
+		 *
+		 * @return the identifier set by {@link #setHeapId}
+		 */
+		int getHeapId();
+
+		/**
+		 * Sets heap identifier.
+		 *
+		 * @param id  heap identifier, or -1
+		 */
+		void setHeapId(int id);
+	}
+
+	private static final long serialVersionUID = 2617307637567924614L;
+	private static final int DEFAULT_ARITY = 4;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final int arity;
+	// Heap arrays, indexed by position
+	private int [] heap;
+	private double [] keys;
+	private int [] stamps;
+	// Indexed by identifier
+	private int [] positions;
+	private Object [] data;
+	// Identifiers of objects which do not implement Element
+	private TObjectIntHashMap<E> ids;
+	private int [] freeIds;
+	private int nrFreeIds = 0;
+	private int nextId = 0;
+	private int size = 0;
+	private int stamp = 0;
+	private boolean bulkLoad = false;
+	// Incremented each time heap is modified, used by iterators
+	private transient int modCount = 0;
+
+	/**
+	 * Creates an empty heap with default arity (4).
+	 */
+	public IndexedDAryHeap()
+	{
+		this(DEFAULT_ARITY, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty heap.
+	 *
+	 * @param arity  number of children of heap nodes, must be at least 2
+	 * @param capacity  initial capacity
+	 */
+	public IndexedDAryHeap(int arity, int capacity)
+	{
+		if (arity < 2)
+			throw new IllegalArgumentException("Invalid arity: "+arity);
+		this.arity = arity;
+		capacity = Math.max(capacity, 1);
+		heap = new int[capacity];
+		keys = new double[capacity];
+		stamps = new int[capacity];
+		positions = new int[capacity];
+		data = new Object[capacity];
+		freeIds = new int[capacity];
+	}
+
+	@Override
+	public final boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	@Override
+	public final int size()
+	{
+		return size;
+	}
+
+	@Override
+	public final boolean contains(E o)
+	{
+		return getId(o) >= 0;
+	}
+
+	@Override
+	public final void insert(E o, double value)
+	{
+		assert getId(o) < 0 : "Object already in tree: "+o;
+		int id = newId();
+		if (o instanceof Element)
+			((Element) o).setHeapId(id);
+		else
+		{
+			if (ids == null)
+				ids = new TObjectIntHashMap<E>(positions.length, 0.5f, -1);
+			ids.put(o, id);
+		}
+		data[id] = o;
+		ensureHeapCapacity(size + 1);
+		int pos = size;
+		size++;
+		heap[pos] = id;
+		keys[pos] = value;
+		stamps[pos] = nextStamp();
+		positions[id] = pos;
+		if (!bulkLoad)
+			siftUp(pos);
+		modCount++;
+	}
+
+	@Override
+	public final boolean remove(E o)
+	{
+		int id = getId(o);
+		if (id < 0)
+			return false;
+		if (o instanceof Element)
+			((Element) o).setHeapId(-1);
+		else
+			ids.remove(o);
+		int pos = positions[id];
+		data[id] = null;
+		releaseId(id);
+		size--;
+		if (pos != size)
+		{
+			moveTo(size, pos);
+			if (!bulkLoad && !siftUp(pos))
+				siftDown(pos);
+		}
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public final boolean update(E o, double value)
+	{
+		int id = getId(o);
+		if (id < 0)
+			return false;
+		int pos = positions[id];
+		double old = keys[pos];
+		keys[pos] = value;
+		stamps[pos] = nextStamp();
+		if (!bulkLoad)
+		{
+			// Stamp has been increased, so entry cannot move upward
+			// if value is not lower than its previous value.
+			if (value < old)
+				siftUp(pos);
+			else
+				siftDown(pos);
+		}
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Decreases the quality factor of an object.  This method is
+	 * similar to {@link #update}, but only performs upward moves.
+	 *
+	 * @param o      object being updated
+	 * @param value  new quality factor, must not be larger than the
+	 *               current one
+	 * @return <code>true</code> if object was present in tree,
+	 *         <code>false</code> otherwise.
+	 */
+	public final boolean decreaseKey(E o, double value)
+	{
+		int id = getId(o);
+		if (id < 0)
+			return false;
+		int pos = positions[id];
+		if (value > keys[pos])
+			throw new IllegalArgumentException("New value "+value+" is larger than "+keys[pos]);
+		keys[pos] = value;
+		stamps[pos] = nextStamp();
+		if (!bulkLoad)
+			siftUp(pos);
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Returns the object with the lowest quality factor.
+	 *
+	 * @return the object with the lowest quality factor, or
+	 *   <code>null</code> if heap is empty
+	 */
+	public final E peek()
+	{
+		assert !bulkLoad;
+		if (size == 0)
+			return null;
+		return getData(heap[0]);
+	}
+
+	/**
+	 * Removes the object with the lowest quality factor.
+	 *
+	 * @return the object with the lowest quality factor, or
+	 *   <code>null</code> if heap is empty
+	 */
+	public final E poll()
+	{
+		E ret = peek();
+		if (ret != null)
+			remove(ret);
+		return ret;
+	}
+
+	/**
+	 * Returns the quality factor of an object.
+	 *
+	 * @param o  object
+	 * @return the quality factor of this object, or <code>NaN</code> if
+	 *   it is not present in this heap
+	 */
+	public final double getValue(E o)
+	{
+		int id = getId(o);
+		if (id < 0)
+			return Double.NaN;
+		return keys[positions[id]];
+	}
+
+	@Override
+	public final double getRootValue()
+	{
+		assert !bulkLoad;
+		return keys[0];
+	}
+
+	@Override
+	public final void clear()
+	{
+		for (int id = 0; id < nextId; id++)
+		{
+			if (data[id] instanceof Element && ((Element) data[id]).getHeapId() == id)
+				((Element) data[id]).setHeapId(-1);
+		}
+		Arrays.fill(data, 0, nextId, null);
+		if (ids != null)
+			ids.clear();
+		size = 0;
+		nextId = 0;
+		nrFreeIds = 0;
+		stamp = 0;
+		modCount++;
+	}
+
+	@Override
+	public final void beginBulkLoad()
+	{
+		bulkLoad = true;
+	}
+
+	/**
+	 * Builds heap order in linear time.
+	 */
+	@Override
+	public final void endBulkLoad()
+	{
+		bulkLoad = false;
+		if (size < 2)
+			return;
+		for (int pos = parent(size - 1); pos >= 0; pos--)
+			siftDown(pos);
+		modCount++;
+	}
+
+	/**
+	 * Returns the identifier of an object, or -1 if it is not in this heap.
+	 * Identifier stored by an {@link Element} may be stale, it is valid
+	 * only if this object is found at this identifier.
+	 */
+	private int getId(E o)
+	{
+		if (o instanceof Element)
+		{
+			int id = ((Element) o).getHeapId();
+			if (id >= 0 && id < nextId && data[id] == o)
+				return id;
+			return -1;
+		}
+		if (ids == null)
+			return -1;
+		return ids.get(o);
+	}
+
+	@SuppressWarnings("unchecked")
+	private E getData(int id)
+	{
+		return (E) data[id];
+	}
+
+	private int parent(int pos)
+	{
+		return (pos - 1) / arity;
+	}
+
+	private boolean less(int i, int j)
+	{
+		return keys[i] < keys[j] || (keys[i] == keys[j] && stamps[i] < stamps[j]);
+	}
+
+	// Copy entry at position src into position dst
+	private void moveTo(int src, int dst)
+	{
+		heap[dst] = heap[src];
+		keys[dst] = keys[src];
+		stamps[dst] = stamps[src];
+		positions[heap[dst]] = dst;
+	}
+
+	private void swap(int i, int j)
+	{
+		int id = heap[i];
+		heap[i] = heap[j];
+		heap[j] = id;
+		double k = keys[i];
+		keys[i] = keys[j];
+		keys[j] = k;
+		int s = stamps[i];
+		stamps[i] = stamps[j];
+		stamps[j] = s;
+		positions[heap[i]] = i;
+		positions[heap[j]] = j;
+	}
+
+	/**
+	 * Moves an entry upward.
+	 * @return <code>true</code> if entry has been moved
+	 */
+	private boolean siftUp(int pos)
+	{
+		int start = pos;
+		while (pos > 0)
+		{
+			int p = parent(pos);
+			if (!less(pos, p))
+				break;
+			swap(pos, p);
+			pos = p;
+		}
+		return pos != start;
+	}
+
+	private void siftDown(int pos)
+	{
+		while (true)
+		{
+			int first = arity * pos + 1;
+			if (first >= size)
+				return;
+			int last = Math.min(first + arity, size);
+			int best = first;
+			for (int c = first + 1; c < last; c++)
+			{
+				if (less(c, best))
+					best = c;
+			}
+			if (!less(best, pos))
+				return;
+			swap(pos, best);
+			pos = best;
+		}
+	}
+
+	private int nextStamp()
+	{
+		if (stamp == Integer.MAX_VALUE)
+			renumberStamps();
+		return stamp++;
+	}
+
+	// Stamps are only compared between entries with the same key, they
+	// can be renumbered as long as their order is preserved.
+	private void renumberStamps()
+	{
+		Integer [] order = new Integer[size];
+		for (int i = 0; i < size; i++)
+			order[i] = Integer.valueOf(i);
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer i, Integer j)
+			{
+				return stamps[i.intValue()] < stamps[j.intValue()] ? -1 : (stamps[i.intValue()] == stamps[j.intValue()] ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < size; i++)
+			stamps[order[i].intValue()] = i;
+		stamp = size;
+	}
+
+	private int newId()
+	{
+		if (nrFreeIds > 0)
+		{
+			nrFreeIds--;
+			return freeIds[nrFreeIds];
+		}
+		if (nextId >= positions.length)
+		{
+			int newCapacity = Math.max(nextId + 1, positions.length + (positions.length >> 1));
+			positions = Arrays.copyOf(positions, newCapacity);
+			data = Arrays.copyOf(data, newCapacity);
+		}
+		return nextId++;
+	}
+
+	private void releaseId(int id)
+	{
+		if (nrFreeIds >= freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, Math.max(nrFreeIds + 1, freeIds.length + (freeIds.length >> 1)));
+		freeIds[nrFreeIds] = id;
+		nrFreeIds++;
+	}
+
+	private void ensureHeapCapacity(int n)
+	{
+		if (n <= heap.length)
+			return;
+		int newCapacity = Math.max(n, heap.length + (heap.length >> 1));
+		heap = Arrays.copyOf(heap, newCapacity);
+		keys = Arrays.copyOf(keys, newCapacity);
+		stamps = Arrays.copyOf(stamps, newCapacity);
+	}
+
+	@Override
+	public final Iterator<Node<E>> iterator()
+	{
+		assert !bulkLoad;
+		return new Iterator<Node<E>>()
+		{
+			// Candidates are heap positions sorted by a small binary heap
+			private int [] candidates = new int[16];
+			private int nrCandidates = 0;
+			// Entries already returned.  They are stored into a hash map
+			// only when traversal has to be restarted.
+			private final ArrayList<E> returnedData = new ArrayList<E>();
+			private final TIntArrayList returnedStamps = new TIntArrayList();
+			private TObjectIntHashMap<E> returned;
+			private int expectedModCount = modCount;
+			// Heap position of the next entry, or -1 if not found yet
+			private int next = -1;
+			{
+				if (size > 0)
+					pushCandidate(0);
+			}
+
+			public boolean hasNext()
+			{
+				if (next < 0 || expectedModCount != modCount)
+					next = findNext();
+				return next >= 0;
+			}
+
+			public Node<E> next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				E o = getData(heap[next]);
+				returnedData.add(o);
+				returnedStamps.add(stamps[next]);
+				Node<E> ret = new Node<E>(o, keys[next]);
+				next = -1;
+				return ret;
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			private int findNext()
+			{
+				if (expectedModCount != modCount)
+					restart();
+				while (nrCandidates > 0)
+				{
+					int pos = popCandidate();
+					int first = arity * pos + 1;
+					int last = Math.min(first + arity, size);
+					for (int c = first; c < last; c++)
+						pushCandidate(c);
+					E o = getData(heap[pos]);
+					// An entry is skipped if it has already been
+					// returned and has not been updated since.
+					if (returned != null && returned.get(o) == stamps[pos])
+						continue;
+					return pos;
+				}
+				return -1;
+			}
+
+			private void restart()
+			{
+				if (returned == null)
+					returned = new TObjectIntHashMap<E>(returnedData.size(), 0.5f, -1);
+				for (int i = 0, n = returnedData.size(); i < n; i++)
+					returned.put(returnedData.get(i), returnedStamps.get(i));
+				returnedData.clear();
+				returnedStamps.resetQuick();
+				nrCandidates = 0;
+				if (size > 0)
+					pushCandidate(0);
+				expectedModCount = modCount;
+			}
+
+			private void pushCandidate(int pos)
+			{
+				if (nrCandidates >= candidates.length)
+					candidates = Arrays.copyOf(candidates, 2 * candidates.length);
+				int i = nrCandidates;
+				nrCandidates++;
+				candidates[i] = pos;
+				while (i > 0)
+				{
+					int p = (i - 1) / 2;
+					if (!less(candidates[i], candidates[p]))
+						break;
+					int t = candidates[i];
+					candidates[i] = candidates[p];
+					candidates[p] = t;
+					i = p;
+				}
+			}
+
+			private int popCandidate()
+			{
+				int ret = candidates[0];
+				nrCandidates--;
+				candidates[0] = candidates[nrCandidates];
+				int i = 0;
+				while (true)
+				{
+					int c = 2 * i + 1;
+					if (c >= nrCandidates)
+						break;
+					if (c + 1 < nrCandidates && less(candidates[c + 1], candidates[c]))
+						c++;
+					if (!less(candidates[c], candidates[i]))
+						break;
+					int t = candidates[i];
+					candidates[i] = candidates[c];
+					candidates[c] = t;
+					i = c;
+				}
+				return ret;
+			}
+		};
+	}
+
+	@Override
+	public final Iterator<Node<E>> backwardIterator()
+	{
+		assert !bulkLoad;
+		List<Integer> order = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++)
+			order.add(Integer.valueOf(i));
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer i, Integer j)
+			{
+				if (less(i.intValue(), j.intValue()))
+					return 1;
+				if (less(j.intValue(), i.intValue()))
+					return -1;
+				return 0;
+			}
+		});
+		List<Node<E>> nodes = new ArrayList<Node<E>>(size);
+		for (Integer i : order)
+			nodes.add(new Node<E>(getData(heap[i.intValue()]), keys[i.intValue()]));
+		return Collections.unmodifiableList(nodes).iterator();
+	}
+}
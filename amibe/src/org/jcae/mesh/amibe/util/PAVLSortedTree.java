@@ -31,7 +31,7 @@ import java.util.logging.Logger;
  * order after they have been sorted.  See examples in algorithms from
  * {@link org.jcae.mesh.amibe.algos3d}.
  */
-public class PAVLSortedTree<E> extends QSortedTree<E>
+public class PAVLSortedTree<E> extends BinarySortedTree<E>
 {
 	private static final long serialVersionUID = -8379296110137732906L;
 	private static final Logger logger=Logger.getLogger(PAVLSortedTree.class.getName());
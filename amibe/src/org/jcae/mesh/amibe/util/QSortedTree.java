@@ -20,13 +20,8 @@
 
 package org.jcae.mesh.amibe.util;
 
-import gnu.trove.map.hash.THashMap;
-import java.util.Map;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
 import java.io.Serializable;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * Binary trees to store quality factors.
@@ -35,38 +30,22 @@ import java.util.logging.Logger;
  * order after they have been sorted.  They differ from casual binary trees in
  * that duplicate quality factors are allowed.  See examples in algorithms from
  * {@link org.jcae.mesh.amibe.algos3d}.
+ *
+ * <p>
+ * Objects with the same quality factor are returned by iterators in their
+ * insertion order; {@link #update} moves an object after objects with the same
+ * quality factor.  Binary trees are implemented by {@link BinarySortedTree}
+ * subclasses, and {@link IndexedDAryHeap} is an array-based alternative.
+ * </p>
  */
 public abstract class QSortedTree<E> implements Serializable
 {
 	private static final long serialVersionUID = -2194224744257185278L;
-	private static final Logger logger=Logger.getLogger(QSortedTree.class.getName());	
-	final Node<E> root = newNode(null, Double.MAX_VALUE);
-	// Mapping between objects and tree nodes
-	private transient Map<E, Node<E>> map = new THashMap<E, Node<E>>();
-	private int nrNodes = 0;
-	
-	/**
-	 * Constructor to cast new nodes into subclass type.
-	 */
-	abstract Node<E> newNode(E o, double v);
-
-	/**
-	 * Insert a new note into the binary tree.  This method always returns
-	 * <code>true</code>.
-	 */
-	abstract boolean insertNode(Node<E> node);
-
-	/**
-	 * Remove a note from the binary tree.  Some algorithms may remove
-	 * another node (for instance PRedBlackSortedTree), this method
-	 * returns the node which has been removed.
-	 */
-	abstract Node<E> removeNode(Node<E> p);
 
 	@SuppressWarnings("serial")
 	public static class Node<E> implements Comparable<Node<E>>, Serializable
 	{
-		private E data;
+		E data;
 		private double value;
 		final Node<E> [] child = newChilds();
 		Node<E> parent = null;
@@ -231,7 +210,7 @@ public abstract class QSortedTree<E> implements Serializable
 	
 		// The following 4 methods are useful for tree traversal.
 		// A NullPointerException is raised if they are used on an empty tree!
-		private Node<E> firstNode()
+		final Node<E> firstNode()
 		{
 			Node<E> current = this;
 			while (current.child[0] != null)
@@ -239,7 +218,7 @@ public abstract class QSortedTree<E> implements Serializable
 			return current;
 		}
 	
-		private Node<E> lastNode()
+		final Node<E> lastNode()
 		{
 			Node<E> current = this;
 			while (current.child[1] != null)
@@ -281,44 +260,18 @@ public abstract class QSortedTree<E> implements Serializable
 		}
 	}
 
-	protected void readObject(java.io.ObjectInputStream s)
-		throws java.io.IOException, ClassNotFoundException
-	{
-		s.defaultReadObject();
-		map = new THashMap<E, Node<E>>(nrNodes);
-		if (nrNodes == 0)
-			return;
-		for (Iterator<Node<E>> it = iterator(); it.hasNext(); )
-		{
-			Node<E> current = it.next();
-			map.put(current.getData(), current);
-		}
-	}
-
 	/**
 	 * Tell whether this tree is empty.
 	 */
-	public final boolean isEmpty()
-	{
-		return root.child[0] == null;
-	}
-	
+	public abstract boolean isEmpty();
+
 	/**
 	 * Insert a node to the tree.  Tree is sorted according to
 	 * <code>value</code>, and duplicates are not checked.
 	 * @param o      object
 	 * @param value  quality factor
 	 */
-	public final void insert(E o, double value)
-	{
-		assert map.get(o) == null : "Object already in tree: "+o;
-		Node<E> node = newNode(o, value);
-		if (logger.isLoggable(Level.FINE))
-			logger.fine("Insert "+node+" "+" value: "+value+" "+o);
-		map.put(o, node);
-		nrNodes++;
-		insertNode(node);
-	}
+	public abstract void insert(E o, double value);
 
 	/**
 	 * Remove the node associated to an object from the tree.
@@ -326,26 +279,7 @@ public abstract class QSortedTree<E> implements Serializable
 	 * @return  <code>true</code> if node was present in tree,
 	 * </code>false</code> otherwise.
 	 */
-	public final boolean remove(E o)
-	{
-		Node<E> p = map.get(o);
-		if (logger.isLoggable(Level.FINE))
-			logger.fine("Remove "+p+" "+o);
-		if (p == null)
-			return false;
-		nrNodes--;
-		map.remove(o);
-		Node<E> r = removeNode(p);
-		// PRedBlackSortedTree implementation may swap p
-		// and r nodes and remove r, we then need to
-		// update map.
-		if (r != p)
-		{
-			map.remove(r.getData());
-			map.put(p.getData(), p);
-		}
-		return true;
-	}
+	public abstract boolean remove(E o);
 
 	/**
 	 * Update the quality factor of an object, if it was already
@@ -356,203 +290,62 @@ public abstract class QSortedTree<E> implements Serializable
 	 * @return <code>true</code> if object was present in tree,
 	 *         <code>false</code> otherwise.
 	 */
-	public final boolean update(E o, double value)
-	{
-		Node<E> p = map.get(o);
-		if (logger.isLoggable(Level.FINE))
-			logger.fine("Update "+p+" content to "+value);
-		if (p == null)
-			return false;
-		Node<E> r = removeNode(p);
-		// PRedBlackSortedTree implementation may swap p
-		// and r nodes and remove r, we then need to
-		// update map.
-		if (r != p)
-		{
-			map.put(r.getData(), r);
-			map.put(p.getData(), p);
-		}
-		r.reset(value);
-		insertNode(r);
-		return true;
-	}
-	
+	public abstract boolean update(E o, double value);
+
 	/**
 	 * Clear this tree.
 	 */
-	public final void clear()
-	{
-		// Unlink all nodes to help garbage collector
-		for (Node<E> p: map.values())
-		{
-			p.data = null;
-			p.child[0] = p.child[1] = null;
-			p.parent = null;
-		}
-		map.clear();
-		root.child[0] = root.child[1] = null;
-		nrNodes = 0;
-	}
-	
-	/**
-	 * Pretty-print this tree.
-	 */
-	@SuppressWarnings("unused")
-	private void show()
-	{
-		if (isEmpty())
-		{
-			System.out.println("Empty tree");
-			return;
-		}
-		System.out.println("Tree:");
-		showNode(root.child[0]);
-	}
-	
-	private static <E> void showNode(Node<E> node)
-	{
-		System.out.print(node.toString());
-		if (node.child[0] != null)
-			System.out.print(" Left -> "+node.child[0].getValue());
-		if (node.child[1] != null)
-			System.out.print(" Right -> "+node.child[1].getValue());
-		if (node.parent != null)
-			System.out.print(" Parent -> "+node.parent.getValue());
-		System.out.println("");
-		if (node.child[0] != null)
-		{
-			assert node.child[0].parent == node : "Invalid parent pointer: "+node.child[0].parent+" != "+node;
-			showNode(node.child[0]);
-		}
-		if (node.child[1] != null)
-		{
-			assert node.child[1].parent == node : "Invalid parent pointer: "+node.child[1].parent+" != "+node;
-			showNode(node.child[1]);
-		}
-	}
-	
-	/**
-	 * Pretty-print this tree.
-	 */
-	@SuppressWarnings("unused")
-	private void showValues()
-	{
-		if (isEmpty())
-		{
-			System.out.println("Empty tree");
-			return;
-		}
-		System.out.println("Tree:");
-		showNodeValues(root.child[0]);
-	}
-	
-	private static <E> void showNodeValues(Node<E> node)
-	{
-		if (node.child[0] != null)
-		{
-			assert node.child[0].parent == node;
-			showNodeValues(node.child[0]);
-		}
-		System.out.println("Key: "+node.getValue()+ "Obj: "+node.getData());
-		if (node.child[1] != null)
-		{
-			assert node.child[1].parent == node;
-			showNodeValues(node.child[1]);
-		}
-	}
-	
+	public abstract void clear();
+
 	/**
 	 * Checks whether an object exist is the tree.
 	 * @param o      object being checked
 	 * @return <code>true</code> if this tree contains this object,
 	 *   <code>false</code> otherwise.
 	 */
-	public final boolean contains(E o)
-	{
-		return map.containsKey(o);
-	}
-	
+	public abstract boolean contains(E o);
+
 	/**
-	 * Return the object with the lowest quality factor.
-	 * @return the object with the lowest quality factor.
+	 * Return the number of objects stored in this tree.
+	 * @return the number of objects stored in this tree.
 	 */
-	public final int size()
-	{
-		assert nrNodes == map.size() : "size error: "+nrNodes+" != "+map.size();
-		return nrNodes;
-	}
-	
+	public abstract int size();
+
 	/**
-	 * Return the value found at root binary tree.  As trees are balanced, this is a
-	 * good approximation of tree median value.
-	 * @return the value found at root binary tree.
+	 * Return the value found at tree root.  For balanced binary trees,
+	 * this is a good approximation of tree median value, and for heaps
+	 * this is the lowest value.
+	 * @return the value found at tree root.
 	 */
-	public final double getRootValue()
-	{
-		return root.child[0].getValue();
-	}
-	
-	private final Iterator<Node<E>> nullIterator = new Iterator<Node<E>>()
-	{
-		public boolean hasNext() { return false; }
-		public Node<E> next() { throw new NoSuchElementException(); }
-		public void remove() { throw new RuntimeException(); }
-	};
+	public abstract double getRootValue();
+
+	/**
+	 * Return an iterator over nodes in increasing order.  Tree must not be
+	 * modified while iterating, except for removing objects which have
+	 * already been returned by this iterator.
+	 */
+	public abstract Iterator<Node<E>> iterator();
 
-	public final Iterator<Node<E>> iterator()
+	/**
+	 * Return an iterator over nodes in decreasing order.  Tree must not be
+	 * modified while iterating.
+	 */
+	public abstract Iterator<Node<E>> backwardIterator();
+
+	/**
+	 * Notify that many objects are going to be inserted.  Some
+	 * implementations can then insert objects faster, but iterators
+	 * must not be used until {@link #endBulkLoad} is called.
+	 */
+	public void beginBulkLoad()
 	{
-		if (nrNodes == 0)
-			return nullIterator;
-		return new Iterator<Node<E>>()
-		{
-			private Node<E> current = root;
-			private Node<E> next = root.child[0].firstNode();
-			public boolean hasNext()
-			{
-				return next != null;
-			}
-			public Node<E> next()
-			{
-				current = next;
-				if (current == null)
-					throw new NoSuchElementException();
-				next = next.nextNode();
-				return current;
-			}
-			public void remove()
-			{
-				// Not supported yet!
-				throw new RuntimeException();
-			}
-		};
 	}
-	
-	public final Iterator<Node<E>> backwardIterator()
+
+	/**
+	 * Notify that bulk insertion started by {@link #beginBulkLoad}
+	 * is finished.
+	 */
+	public void endBulkLoad()
 	{
-		if (nrNodes == 0)
-			return nullIterator;
-		return new Iterator<Node<E>>()
-		{
-			private Node<E> current = root;
-			private Node<E> next = root.child[0].lastNode();
-			public boolean hasNext()
-			{
-				return next != null;
-			}
-			public Node<E> next()
-			{
-				current = next;
-				if (current == null)
-					throw new NoSuchElementException();
-				next = next.previousNode();
-				return current;
-			}
-			public void remove()
-			{
-				// Not supported yet!
-				throw new RuntimeException();
-			}
-		};
 	}
-	
 }
@@ -0,0 +1,174 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import gnu.trove.list.array.TIntArrayList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+/**
+ * Tasks with dependencies.  A task is run by a {@link WorkerPool} as soon
+ * as all the tasks it depends on are done.  Dependencies must have been
+ * added before, so that the graph has no cycle and the order of insertion
+ * is a valid sequential order; this is the order used when the pool has a
+ * single thread.  When several tasks are ready, the first inserted one is
+ * submitted first.
+ *
+ * <p>
+ * Here is an example:
+ * </p>
+ * <pre>
+ *   TaskGraph graph = new TaskGraph();
+ *   int a = graph.add(taskA);
+ *   int b = graph.add(taskB);
+ *   graph.add(taskC, a, b);
+ *   graph.run(pool);
+ * </pre>
+ */
+public class TaskGraph
+{
+	private final List<Runnable> tasks = new ArrayList<Runnable>();
+	// Number of dependencies of each task
+	private final TIntArrayList nrDependencies = new TIntArrayList();
+	// Tasks which depend on each task
+	private final List<TIntArrayList> dependents = new ArrayList<TIntArrayList>();
+
+	/**
+	 * Adds a task.
+	 *
+	 * @param task  task to run
+	 * @param dependencies  indices of tasks which must be done before this one
+	 * @return index of this task
+	 * @throws IllegalArgumentException if a dependency has not been added
+	 */
+	public final int add(Runnable task, int... dependencies)
+	{
+		int index = tasks.size();
+		for (int d : dependencies)
+		{
+			if (d < 0 || d >= index)
+				throw new IllegalArgumentException("Unknown dependency: "+d);
+		}
+		tasks.add(task);
+		nrDependencies.add(dependencies.length);
+		dependents.add(new TIntArrayList(0));
+		for (int d : dependencies)
+			dependents.get(d).add(index);
+		return index;
+	}
+
+	/**
+	 * Returns the number of tasks.
+	 *
+	 * @return the number of tasks
+	 */
+	public final int size()
+	{
+		return tasks.size();
+	}
+
+	/**
+	 * Runs all tasks and waits for their completion.  If a task throws an
+	 * exception, no new task is started, running tasks are awaited and
+	 * this exception is thrown.
+	 *
+	 * @param pool  worker pool
+	 * @throws RuntimeException if a task throws an exception
+	 */
+	public final void run(WorkerPool pool)
+	{
+		int n = tasks.size();
+		if (pool.getExecutor() == null)
+		{
+			for (Runnable r : tasks)
+				r.run();
+			return;
+		}
+		CompletionService<Integer> service = new ExecutorCompletionService<Integer>(pool.getExecutor());
+		int [] remaining = nrDependencies.toArray();
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+		for (int i = 0; i < n; i++)
+		{
+			if (remaining[i] == 0)
+				ready.add(i);
+		}
+		int running = 0;
+		int done = 0;
+		Throwable error = null;
+		while (done < n)
+		{
+			while (error == null && !ready.isEmpty())
+			{
+				final int i = ready.poll();
+				final Runnable r = tasks.get(i);
+				service.submit(new Callable<Integer>()
+				{
+					public Integer call()
+					{
+						r.run();
+						return i;
+					}
+				});
+				running++;
+			}
+			if (running == 0)
+				break;
+			int i;
+			try
+			{
+				Future<Integer> f = service.take();
+				running--;
+				i = f.get().intValue();
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(ex);
+			}
+			catch (ExecutionException ex)
+			{
+				if (error == null)
+					error = ex.getCause();
+				continue;
+			}
+			done++;
+			TIntArrayList next = dependents.get(i);
+			for (int k = 0; k < next.size(); k++)
+			{
+				int j = next.getQuick(k);
+				remaining[j]--;
+				if (remaining[j] == 0)
+					ready.add(j);
+			}
+		}
+		if (error instanceof RuntimeException)
+			throw (RuntimeException) error;
+		if (error instanceof Error)
+			throw (Error) error;
+		if (error != null)
+			throw new RuntimeException(error);
+	}
+}
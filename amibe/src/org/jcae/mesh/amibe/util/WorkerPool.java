@@ -0,0 +1,283 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size pool of worker threads.  Amibe data structures are not
+ * thread-safe, this class is only used to run independent read-only
+ * computations, for instance computing costs of many edges.  Work is split
+ * into contiguous ranges which are processed by {@link RangeTask} instances,
+ * and calls are blocking.  Worker threads are daemon threads.
+ *
+ * <p>
+ * Here is an example:
+ * </p>
+ * <pre>
+ *   WorkerPool pool = new WorkerPool(4);
+ *   try
+ *   {
+ *     pool.run(values.length, new WorkerPool.RangeTask() {
+ *       public void run(int chunk, int begin, int end) {
+ *         for (int i = begin; i &lt; end; i++)
+ *           values[i] = compute(i);
+ *       }
+ *     });
+ *   }
+ *   finally
+ *   {
+ *     pool.shutdown();
+ *   }
+ * </pre>
+ */
+public class WorkerPool
+{
+	private static final AtomicInteger poolNumber = new AtomicInteger();
+	// Chunks are not smaller than this size, otherwise synchronization
+	// costs are higher than work done in tasks.
+	private static final int MIN_CHUNK_SIZE = 64;
+	private final int threads;
+	private final ExecutorService executor;
+	// Cumulated time spent in tasks, used to report speed-up
+	private long taskTime;
+	private long wallTime;
+
+	/**
+	 * Task processing a range of indices.
+	 */
+	public interface RangeTask
+	{
+		/**
+		 * Process indices <code>begin</code> (inclusive) to <code>end</code>
+		 * (exclusive).
+		 *
+		 * @param chunk  chunk number, between 0 and the number of chunks;
+		 *   tasks can use it to select per-chunk work arrays
+		 * @param begin  first index
+		 * @param end    last index plus one
+		 */
+		void run(int chunk, int begin, int end);
+	}
+
+	/**
+	 * Creates a pool with as many threads as available processors.
+	 */
+	public WorkerPool()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a pool.
+	 *
+	 * @param nrThreads  number of threads; if this number is lower than 2,
+	 *   tasks are run by the calling thread.
+	 */
+	public WorkerPool(int nrThreads)
+	{
+		threads = Math.max(1, nrThreads);
+		if (threads == 1)
+		{
+			executor = null;
+			return;
+		}
+		final String prefix = "amibe-worker-"+poolNumber.incrementAndGet()+"-";
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, prefix+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Returns the number of threads.
+	 *
+	 * @return the number of threads
+	 */
+	public final int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Returns the executor running worker threads, or <code>null</code> if
+	 * tasks are run by the calling thread.
+	 */
+	final ExecutorService getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Returns the number of chunks used by {@link #run} for a given
+	 * number of items.
+	 *
+	 * @param n  number of items
+	 * @return number of chunks
+	 */
+	public final int getChunks(int n)
+	{
+		if (executor == null)
+			return 1;
+		// Use more chunks than threads for load balancing
+		return Math.max(1, Math.min(n / MIN_CHUNK_SIZE, 4 * threads));
+	}
+
+	/**
+	 * Splits <code>[0, n)</code> into chunks and processes them
+	 * concurrently.  This method returns when all chunks have been
+	 * processed.
+	 *
+	 * @param n  number of items
+	 * @param task  task to run on each chunk
+	 * @throws RuntimeException if a task throws an exception
+	 */
+	public final void run(final int n, final RangeTask task)
+	{
+		final int chunks = getChunks(n);
+		long start = System.nanoTime();
+		if (chunks == 1)
+		{
+			task.run(0, 0, n);
+			long delta = System.nanoTime() - start;
+			taskTime += delta;
+			wallTime += delta;
+			return;
+		}
+		List<Callable<Long>> callables = new ArrayList<Callable<Long>>(chunks);
+		for (int c = 0; c < chunks; c++)
+		{
+			final int chunk = c;
+			final int begin = (int) ((long) n * c / chunks);
+			final int end = (int) ((long) n * (c + 1) / chunks);
+			callables.add(new Callable<Long>()
+			{
+				public Long call()
+				{
+					long t0 = System.nanoTime();
+					task.run(chunk, begin, end);
+					return Long.valueOf(System.nanoTime() - t0);
+				}
+			});
+		}
+		invoke(callables);
+		wallTime += System.nanoTime() - start;
+	}
+
+	/**
+	 * Runs several tasks concurrently and waits for their completion.
+	 *
+	 * @param tasks  tasks to run
+	 * @return task results, in the same order as <code>tasks</code>
+	 * @throws RuntimeException if a task throws an exception
+	 */
+	public final <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+	{
+		List<T> ret = new ArrayList<T>(tasks.size());
+		if (executor == null)
+		{
+			for (Callable<T> c : tasks)
+			{
+				try
+				{
+					ret.add(c.call());
+				}
+				catch (RuntimeException ex)
+				{
+					throw ex;
+				}
+				catch (Exception ex)
+				{
+					throw new RuntimeException(ex);
+				}
+			}
+			return ret;
+		}
+		try
+		{
+			for (Future<T> f : executor.invokeAll(tasks))
+				ret.add(f.get());
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ex.getCause();
+			if (ex.getCause() instanceof Error)
+				throw (Error) ex.getCause();
+			throw new RuntimeException(ex.getCause());
+		}
+		return ret;
+	}
+
+	private void invoke(List<Callable<Long>> callables)
+	{
+		for (Long t : invokeAll(callables))
+			taskTime += t.longValue();
+	}
+
+	/**
+	 * Returns the ratio between the time spent in tasks and the elapsed
+	 * time of {@link #run} calls.
+	 *
+	 * @return speed-up of {@link #run} calls
+	 */
+	public final double getSpeedUp()
+	{
+		return wallTime == 0L ? 1.0 : (double) taskTime / (double) wallTime;
+	}
+
+	/**
+	 * Returns the elapsed time spent in {@link #run} calls, in milliseconds.
+	 *
+	 * @return elapsed time in milliseconds
+	 */
+	public final double getWallTime()
+	{
+		return wallTime / 1.e6;
+	}
+
+	/**
+	 * Stops worker threads.  This pool must not be used afterwards.
+	 */
+	public final void shutdown()
+	{
+		if (executor != null)
+			executor.shutdown();
+	}
+}
@@ -58,4 +58,12 @@ public class EdgeLength1D extends QualityProcedure
 	{
 		edge = e;
 	}
+
+	@Override
+	public QualityProcedure newInstance()
+	{
+		EdgeLength1D ret = new EdgeLength1D();
+		ret.edge = edge;
+		return ret;
+	}
 }
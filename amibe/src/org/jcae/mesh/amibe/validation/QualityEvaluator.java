@@ -0,0 +1,212 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Compute several quality criteria in a single pass.
+ *
+ * Elements are split into ranges which are processed concurrently, each
+ * range having its own instances of quality procedures (see
+ * {@link QualityProcedure#newInstance}) and its own
+ * {@link QualityStatistics}.  These statistics are merged in range order,
+ * thus results do not depend on the number of threads, except for
+ * rounding errors in mean value and standard deviation.  If a procedure
+ * cannot be instantiated, elements are processed by a single thread.
+ *
+ * Example:
+ * <pre>
+ *    QualityEvaluator eval = new QualityEvaluator(new MinAngleFace(), new DihedralAngle());
+ *    eval.setTarget(0, (float) Math.PI/3.0f);
+ *    eval.split(0, 0.0f, 1.0f, 10);
+ *    QualityStatistics [] stats = eval.compute(mesh.getTriangles());
+ *    stats[0].printLayers();
+ *    System.out.println("Median: "+stats[1].getValueByPercent(0.5));
+ * </pre>
+ */
+public class QualityEvaluator
+{
+	private static final Logger LOGGER = Logger.getLogger(QualityEvaluator.class.getName());
+	private final QualityProcedure [] procedures;
+	private final QualityStatistics [] templates;
+	private final float [] scaleFactors;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Creates an evaluator.
+	 *
+	 * @param procedures  quality procedures, they must all compute values
+	 *   on the same kind of elements
+	 */
+	public QualityEvaluator(QualityProcedure... procedures)
+	{
+		this.procedures = procedures.clone();
+		templates = new QualityStatistics[procedures.length];
+		scaleFactors = new float[procedures.length];
+		for (int i = 0; i < procedures.length; i++)
+		{
+			if (procedures[i].getType() != procedures[0].getType())
+				throw new IllegalArgumentException("Procedures must have the same type");
+			templates[i] = new QualityStatistics();
+			scaleFactors[i] = procedures[i].getScaleFactor();
+		}
+	}
+
+	/**
+	 * Sets the number of threads.  All available processors are used by
+	 * default.
+	 *
+	 * @param n  number of threads
+	 */
+	public final void setThreads(int n)
+	{
+		threads = n;
+	}
+
+	public final int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Normalize quality target of a procedure.  Values are divided by
+	 * the given factor, see {@link QualityFloat#setTarget}.
+	 *
+	 * @param i  procedure index
+	 * @param factor   the scale factor.
+	 */
+	public final void setTarget(int i, float factor)
+	{
+		scaleFactors[i] = 1.0f / factor;
+	}
+
+	/**
+	 * Compute an histogram of values of a procedure, see
+	 * {@link QualityStatistics#QualityStatistics(float, float, int)}.
+	 *
+	 * @param i  procedure index
+	 * @param v1  minimal value to consider.
+	 * @param v2  maximal value to consider.
+	 * @param nr  the desired number of subsegments.
+	 */
+	public final void split(int i, float v1, float v2, int nr)
+	{
+		templates[i] = new QualityStatistics(v1, v2, nr);
+	}
+
+	/**
+	 * Computes quality of elements.  Elements are not modified, quality
+	 * procedures must not modify them either.
+	 *
+	 * @param elements  elements on which quality is computed, their
+	 *   indices in iteration order are reported by
+	 *   {@link QualityStatistics#getMinIndex} and
+	 *   {@link QualityStatistics#getMaxIndex}
+	 * @return statistics, in the same order as procedures
+	 */
+	public QualityStatistics [] compute(Collection<?> elements)
+	{
+		final List<?> list;
+		if (elements instanceof List && elements instanceof RandomAccess)
+			list = (List<?>) elements;
+		else
+			list = new ArrayList<Object>(elements);
+		final int n = list.size();
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			QualityProcedure [][] instances;
+			try
+			{
+				instances = newProcedures(pool.getChunks(n));
+			}
+			catch (UnsupportedOperationException ex)
+			{
+				LOGGER.log(Level.FINE, "Quality procedures cannot be instantiated, use a single thread", ex);
+				pool.shutdown();
+				pool = new WorkerPool(1);
+				instances = newProcedures(1);
+			}
+			final QualityProcedure [][] procs = instances;
+			int chunks = procs.length;
+			final QualityStatistics [][] stats = new QualityStatistics[chunks][];
+			for (int c = 0; c < chunks; c++)
+			{
+				stats[c] = new QualityStatistics[procedures.length];
+				for (int k = 0; k < procedures.length; k++)
+					stats[c][k] = templates[k].newEmpty();
+			}
+			pool.run(n, new WorkerPool.RangeTask()
+			{
+				public void run(int chunk, int begin, int end)
+				{
+					QualityProcedure [] p = procs[chunk];
+					QualityStatistics [] s = stats[chunk];
+					for (int i = begin; i < end; i++)
+					{
+						Object o = list.get(i);
+						for (int k = 0; k < p.length; k++)
+							s[k].add(p[k].quality(o) * scaleFactors[k], i);
+					}
+				}
+			});
+			QualityStatistics [] ret = stats[0];
+			for (int c = 1; c < chunks; c++)
+			{
+				for (int k = 0; k < procedures.length; k++)
+					ret[k].merge(stats[c][k]);
+			}
+			for (int c = 0; c < chunks; c++)
+			{
+				for (QualityProcedure p : procs[c])
+					p.finish();
+			}
+			LOGGER.fine("Quality of "+n+" elements computed by "+pool.getThreads()+" threads");
+			return ret;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns instances of quality procedures for each chunk, procedures
+	 * given to the constructor are used by the first chunk.
+	 */
+	private QualityProcedure [][] newProcedures(int chunks)
+	{
+		QualityProcedure [][] ret = new QualityProcedure[chunks][];
+		for (int c = 0; c < chunks; c++)
+		{
+			ret[c] = new QualityProcedure[procedures.length];
+			for (int k = 0; k < procedures.length; k++)
+				ret[c][k] = (c == 0 ? procedures[k] : procedures[k].newInstance());
+		}
+		return ret;
+	}
+}
@@ -53,6 +53,9 @@ import java.util.logging.Logger;
  *    //  ... and display them on screen.
  *    data.printLayers();
  * </pre>
+ *
+ * {@link QualityEvaluator} computes several criteria concurrently
+ * without storing values, which is better suited to large meshes.
  */
 public class QualityFloat
 {
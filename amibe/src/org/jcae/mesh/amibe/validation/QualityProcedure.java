@@ -126,6 +126,41 @@ public abstract class QualityProcedure
 		return 1.0f;
 	}
 	
+	/**
+	 * Returns a new instance of this procedure.  Quality procedures may
+	 * have work arrays and caches, {@link QualityEvaluator} calls this
+	 * method to get an instance per thread.  By default the public
+	 * constructor without argument is called, subclasses without such
+	 * a constructor have to override this method.
+	 *
+	 * @return a new instance of this procedure
+	 * @throws UnsupportedOperationException if this procedure cannot
+	 *   be instantiated
+	 */
+	public QualityProcedure newInstance()
+	{
+		try
+		{
+			return getClass().getConstructor().newInstance();
+		}
+		catch (NoSuchMethodException ex)
+		{
+			throw new UnsupportedOperationException(getClass().getName()+" cannot be instantiated", ex);
+		}
+		catch (IllegalAccessException ex)
+		{
+			throw new UnsupportedOperationException(getClass().getName()+" cannot be instantiated", ex);
+		}
+		catch (InstantiationException ex)
+		{
+			throw new UnsupportedOperationException(getClass().getName()+" cannot be instantiated", ex);
+		}
+		catch (InvocationTargetException ex)
+		{
+			throw new UnsupportedOperationException(getClass().getName()+" cannot be instantiated", ex);
+		}
+	}
+
 	/**
 	 * Returns <code>MeshTraitsBuilder</code> instance needed by this class.
 	 */
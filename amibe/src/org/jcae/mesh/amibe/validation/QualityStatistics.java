@@ -0,0 +1,355 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.amibe.validation;
+
+/**
+ * Streaming statistics about quality values.
+ *
+ * Unlike {@link QualityFloat}, values are not stored.  This class keeps
+ * minimal and maximal values, mean value, standard deviation, an optional
+ * histogram with the same layers as {@link QualityFloat#split(float, float, int)},
+ * and a sketch to compute quantiles.  Instances computed on distinct
+ * sets of elements can be merged, this is how {@link QualityEvaluator}
+ * gathers results computed by several threads.
+ *
+ * The sketch counts values by buckets.  Values are mapped to integers
+ * which preserve float order, and buckets are defined by the 24 most
+ * significant bits of these integers, which contain sign, exponent and
+ * 15 mantissa bits.  Quantiles are thus returned with a relative error
+ * lower than <code>2^-15</code>.  Memory is allocated only for pages of
+ * buckets which are used, so that sketches are small when values have
+ * few distinct exponents.
+ */
+public class QualityStatistics
+{
+	private static final int DISCARDED_BITS = 8;
+	private static final int PAGE_BITS = 12;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+	private final int [][] pages = new int[1 << (32 - DISCARDED_BITS - PAGE_BITS)][];
+	private int count;
+	private float qmin = Float.POSITIVE_INFINITY;
+	private float qmax = Float.NEGATIVE_INFINITY;
+	private int imin = -1, imax = -1;
+	// See comment in QualityFloat
+	private double qsum, qsum2;
+	// Histogram
+	private final float vmin, vmax;
+	private final int layers;
+	private final int [] sorted;
+	private final float [] bounds;
+
+	/**
+	 * Creates statistics without histogram.
+	 */
+	public QualityStatistics()
+	{
+		this(0.0f, 0.0f, -1);
+	}
+
+	/**
+	 * Creates statistics with an histogram.  The range between
+	 * <code>v1</code> and <code>v2</code> is divided into <code>nr</code>
+	 * subsegments of equal length, and the number of quality values for
+	 * each subsegment is computed.
+	 *
+	 * @param v1  minimal value to consider.
+	 * @param v2  maximal value to consider.
+	 * @param nr  the desired number of subsegments, histogram is disabled
+	 *   if it is not positive.
+	 */
+	public QualityStatistics(float v1, float v2, int nr)
+	{
+		vmin = v1;
+		vmax = v2;
+		layers = nr;
+		if (layers > 0)
+		{
+			float delta = (vmax - vmin) / layers;
+			sorted = new int[layers+2];
+			bounds = new float[layers+1];
+			for (int i = 0; i < bounds.length; i++)
+				bounds[i] = vmin + i * delta;
+		}
+		else
+		{
+			sorted = null;
+			bounds = null;
+		}
+	}
+
+	/**
+	 * Returns empty statistics with the same histogram layers.
+	 *
+	 * @return empty statistics
+	 */
+	public final QualityStatistics newEmpty()
+	{
+		return new QualityStatistics(vmin, vmax, layers);
+	}
+
+	private static int toKey(float val)
+	{
+		int bits = Float.floatToIntBits(val);
+		return bits ^ ((bits >> 31) | 0x80000000);
+	}
+
+	private static float fromKey(int key)
+	{
+		int bits = (key < 0 ? key ^ 0x80000000 : ~key);
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param val  quality value
+	 * @param index  index of the element, returned by {@link #getMinIndex}
+	 *   and {@link #getMaxIndex}
+	 */
+	public final void add(float val, int index)
+	{
+		count++;
+		double dval = val;
+		qsum += dval;
+		qsum2 += dval * dval;
+		if (val < qmin || imin < 0)
+		{
+			qmin = val;
+			imin = index;
+		}
+		if (val > qmax || imax < 0)
+		{
+			qmax = val;
+			imax = index;
+		}
+		int bucket = toKey(val) >>> DISCARDED_BITS;
+		int [] page = pages[bucket >>> PAGE_BITS];
+		if (page == null)
+		{
+			page = new int[PAGE_SIZE];
+			pages[bucket >>> PAGE_BITS] = page;
+		}
+		page[bucket & PAGE_MASK]++;
+		if (layers > 0)
+		{
+			// Same as QualityFloat.split(float, float, int)
+			float delta = (vmax - vmin) / layers;
+			int cell = (int) ((val - vmin) / delta + 1.001f);
+			if (cell < 0)
+				cell = 0;
+			else if (cell >= layers + 1)
+			{
+				if (val > vmax)
+					cell = layers + 1;
+				else
+					cell = layers;
+			}
+			sorted[cell]++;
+		}
+	}
+
+	/**
+	 * Adds values of another instance.  When minimal or maximal values
+	 * are equal, the smallest index is kept.
+	 *
+	 * @param that  statistics computed with the same histogram layers
+	 */
+	public final void merge(QualityStatistics that)
+	{
+		if (that.layers != layers || that.vmin != vmin || that.vmax != vmax)
+			throw new IllegalArgumentException("Histograms do not match");
+		if (that.count == 0)
+			return;
+		count += that.count;
+		qsum += that.qsum;
+		qsum2 += that.qsum2;
+		if (imin < 0 || that.qmin < qmin || (that.qmin == qmin && that.imin < imin))
+		{
+			qmin = that.qmin;
+			imin = that.imin;
+		}
+		if (imax < 0 || that.qmax > qmax || (that.qmax == qmax && that.imax < imax))
+		{
+			qmax = that.qmax;
+			imax = that.imax;
+		}
+		for (int p = 0; p < pages.length; p++)
+		{
+			int [] src = that.pages[p];
+			if (src == null)
+				continue;
+			if (pages[p] == null)
+				pages[p] = src.clone();
+			else
+			{
+				int [] dst = pages[p];
+				for (int i = 0; i < PAGE_SIZE; i++)
+					dst[i] += src[i];
+			}
+		}
+		if (layers > 0)
+		{
+			for (int i = 0; i < sorted.length; i++)
+				sorted[i] += that.sorted[i];
+		}
+	}
+
+	/**
+	 * Return the number of quality values.
+	 *
+	 * @return the number of quality values.
+	 */
+	public final int size()
+	{
+		return count;
+	}
+
+	public final float getMinValue()
+	{
+		return qmin;
+	}
+
+	public final float getMaxValue()
+	{
+		return qmax;
+	}
+
+	/**
+	 * Returns the index of the first element with minimal value,
+	 * or -1 if there is no value.
+	 */
+	public final int getMinIndex()
+	{
+		return imin;
+	}
+
+	/**
+	 * Returns the index of the first element with maximal value,
+	 * or -1 if there is no value.
+	 */
+	public final int getMaxIndex()
+	{
+		return imax;
+	}
+
+	/**
+	 * Return mean value
+	 */
+	public final float getMeanValue()
+	{
+		return (float) (qsum / count);
+	}
+
+	/**
+	 * Return standard deviation
+	 */
+	public final float getStandardDeviation()
+	{
+		double qavg = qsum / count;
+		return (float) Math.sqrt(qsum2 / count - qavg * qavg);
+	}
+
+	/**
+	 * Return value by its distribution index.  Returned value is
+	 * such that there are about <code>p*N</code> values below it, where
+	 * <code>N</code> is the total number of values.  For instance,
+	 * <code>getValueByPercent(0.0)</code> (resp. 1 and 0.5) returns
+	 * minimum value (resp. maximum value and median value).
+	 *
+	 * @param p  number between 0 and 1
+	 * @return  value associated to this distribution index, with a
+	 *   relative error lower than <code>2^-15</code>
+	 */
+	public final float getValueByPercent(double p)
+	{
+		if (p <= 0.0 || count == 0)
+			return qmin;
+		if (p >= 1.0)
+			return qmax;
+		long target = (long) (p * count);
+		long cumul = 0L;
+		for (int p1 = 0; p1 < pages.length; p1++)
+		{
+			int [] page = pages[p1];
+			if (page == null)
+				continue;
+			for (int i = 0; i < PAGE_SIZE; i++)
+			{
+				cumul += page[i];
+				if (cumul > target)
+				{
+					int key = ((p1 << PAGE_BITS) | i) << DISCARDED_BITS;
+					float ret = fromKey(key);
+					if (ret < qmin)
+						return qmin;
+					if (ret > qmax)
+						return qmax;
+					return ret;
+				}
+			}
+		}
+		return qmax;
+	}
+
+	/**
+	 * Returns the number of values in each histogram layer.  First and
+	 * last cells contain the number of values below and above the range.
+	 *
+	 * @return histogram, or <code>null</code> if it is disabled
+	 */
+	public final int [] getHistogram()
+	{
+		return sorted == null ? null : sorted.clone();
+	}
+
+	/**
+	 * Display histogram about quality values.
+	 */
+	public final void printLayers()
+	{
+		if (layers > 0)
+		{
+			int nrTotal = count;
+			if (sorted[0] > 0)
+				System.out.printf(" < %g %d (%.4g%%)%n", bounds[0], sorted[0], (((float) 100.0 * sorted[0])/nrTotal));
+			for (int i = 0; i < layers; i++)
+			{
+				System.out.printf(" %g ; %g %d (%.4g%%)%n", bounds[i], bounds[i+1], sorted[i+1], (((float) 100.0 * sorted[i+1])/nrTotal));
+			}
+			if (sorted[layers+1] > 0)
+				System.out.printf(" > %g %d (%.4g%%)%n", bounds[layers], sorted[layers+1], (((float) 100.0 * sorted[layers+1])/nrTotal));
+		}
+		printStatistics();
+	}
+
+	/**
+	 * Display statistics about quality values.
+	 */
+	public final void printStatistics()
+	{
+		System.out.println("total: "+count);
+		System.out.printf("qmin: %.6g (index=%d starting from 0)%n", qmin, imin);
+		System.out.printf("qmax: %.6g (index=%d starting from 0)%n", qmax, imax);
+		System.out.printf("qavg: %.6g%n", getMeanValue());
+		System.out.printf("qdev: %.6g%n", getStandardDeviation());
+	}
+}
@@ -103,6 +103,7 @@ public class AlgoMesh1d
 		LOGGER.fine("TopoEdges discretisees "+nbTEdges);
 		LOGGER.fine("Edges   "+nbEdges);
 		LOGGER.fine("Nodes   "+nbNodes);
+		mesh1d.updateIDs();
 		assert(mesh1d.isValid());
 	}
 
@@ -95,7 +95,8 @@ public class TetGen implements AlgoInterface
 		mtb.addNodeList();
 		Mesh m = new Mesh(mtb);
 		Storage.readAllFaces(m, d.getGraphCell(), s);
-		String outDir = "tetgen.tmp"+File.separator+"s"+s.getId();
+		// Solids may be meshed concurrently, use a directory per discretization
+		String outDir = "tetgen.tmp"+File.separator+"s"+s.getId()+"-"+d.getId();
 		try
 		{
 			MeshWriter.writeObject3D(m, outDir, d.getGraphCell().getGraph().getModel().getCADFile());
@@ -21,6 +21,9 @@
 package org.jcae.mesh.bora.ds;
 
 import org.jcae.mesh.bora.algo.AlgoInterface;
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Iterator;
@@ -39,6 +42,8 @@ public class BDiscretization
 	private AlgoInterface algo;
 	private boolean computed = false;
 	private Object mesh;
+	// Cache key, computed on demand
+	private String cacheKey;
 
 	// Unique identitier
 	private int id = -1;
@@ -215,12 +220,40 @@ public class BDiscretization
 		mesh = m;
 	}
 
+	/**
+	 * Finds the algorithm used to compute this discretization.  Algorithm
+	 * constructors are not thread-safe, so this method is called before
+	 * discretizations are computed concurrently.
+	 */
+	final void findAlgorithm()
+	{
+		if (algo == null)
+			algo = constraint.getHypothesis().findAlgorithm(graphCell.getType());
+	}
+
+	/**
+	 * Tells whether this discretization has already been computed or
+	 * read from cache.
+	 */
+	final boolean isComputed()
+	{
+		return computed;
+	}
+
+	/**
+	 * Marks this discretization as computed, when its mesh has been read
+	 * from cache.
+	 */
+	final void setComputed()
+	{
+		computed = true;
+	}
+
 	final void discretize()
 	{
 		if (computed)
 			return;
-		if (algo == null)
-			algo = constraint.getHypothesis().findAlgorithm(graphCell.getType());
+		findAlgorithm();
 		if (algo == null || !algo.isAvailable())
 			return;
 		if (!algo.compute(this))
@@ -228,6 +261,66 @@ public class BDiscretization
 		computed = true;
 	}
 
+	/**
+	 * Returns the key used to store this discretization in the cache of
+	 * its model.  It is computed from the CAD file, the shape of this
+	 * discretization, the values of its hypothesis and the keys of the
+	 * discretizations of its sub-shapes, so that it changes when any
+	 * of them changes.  Keys of sub-shapes are computed recursively,
+	 * this method is called before discretizations are computed
+	 * concurrently.
+	 *
+	 * @return cache key
+	 */
+	final String getCacheKey()
+	{
+		if (cacheKey != null)
+			return cacheKey;
+		StringBuilder sb = new StringBuilder();
+		File cadFile = new File(graphCell.getGraph().getModel().getCADFile());
+		sb.append(cadFile.getPath()).append(' ').append(cadFile.length());
+		sb.append(' ').append(cadFile.lastModified()).append('\n');
+		sb.append(graphCell.getType()).append(' ').append(graphCell.getId()).append('\n');
+		sb.append(constraint.getHypothesis().getSignature()).append('\n');
+		Collection<BDiscretization> children = new LinkedHashSet<BDiscretization>();
+		for (CADShapeEnum cse : CADShapeEnum.iterable(CADShapeEnum.VERTEX, graphCell.getType()))
+		{
+			if (cse == graphCell.getType())
+				break;
+			for (Iterator<BCADGraphCell> it = graphCell.shapesExplorer(cse); it.hasNext(); )
+			{
+				for (BDiscretization child : it.next().getDiscretizations())
+				{
+					if (contained(child))
+						children.add(child);
+				}
+			}
+		}
+		for (BDiscretization child : children)
+			sb.append(child.getCacheKey()).append('\n');
+
+		try
+		{
+			byte [] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+			StringBuilder hex = new StringBuilder(2 * digest.length);
+			for (byte b : digest)
+			{
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+				hex.append(Character.forDigit(b & 0xf, 16));
+			}
+			cacheKey = hex.toString();
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+		catch (java.io.UnsupportedEncodingException ex)
+		{
+			throw new RuntimeException(ex);
+		}
+		return cacheKey;
+	}
+
 	@Override
 	public final String toString()
 	{
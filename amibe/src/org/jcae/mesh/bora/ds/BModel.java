@@ -23,6 +23,8 @@ package org.jcae.mesh.bora.ds;
 
 import org.jcae.mesh.bora.xmldata.BModelWriter;
 import org.jcae.mesh.bora.xmldata.Storage;
+import org.jcae.mesh.amibe.util.TaskGraph;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import org.jcae.mesh.cad.CADShapeFactory;
 import org.jcae.mesh.cad.CADShape;
 import org.jcae.mesh.cad.CADShapeEnum;
@@ -34,7 +36,9 @@ import java.util.Iterator;
 import java.io.File;
 import java.util.Collections;
 import java.util.HashMap;
+import gnu.trove.set.hash.TIntHashSet;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -71,6 +75,12 @@ public class BModel
 		TESSELLATION_3
 	}
 	private State state = State.INPUT;
+	//   Number of threads used by compute()
+	private int threads = 1;
+	//   Discretizations are stored into and read from a cache
+	private boolean cache = false;
+	//   Number of discretizations read from cache by compute()
+	private final AtomicInteger cacheHits = new AtomicInteger();
 
 	/**
 	 * Bind a CAD representation to a disk directory.
@@ -99,6 +109,58 @@ public class BModel
 		xmlDir = newDir;
 	}
 
+	/**
+	 * Sets the number of threads used by {@link #compute}.  When it is
+	 * greater than 1, each discretization is computed as soon as the
+	 * discretizations of its sub-shapes are done, and independent shapes
+	 * are meshed concurrently.  Output files are the same as with a single
+	 * thread.  Default is 1.
+	 *
+	 * @param n  number of threads
+	 */
+	public void setThreads(int n)
+	{
+		threads = n;
+	}
+
+	public int getThreads()
+	{
+		return threads;
+	}
+
+	/**
+	 * Enables the cache of discretizations.  When enabled, {@link #compute}
+	 * stores the files of each edge, face and solid discretization into
+	 * the <code>cache</code> subdirectory of the output directory, under a
+	 * key computed from the CAD shape, the hypothesis values and the keys of
+	 * sub-shape discretizations.  Discretizations whose key is found in the
+	 * cache are copied instead of being computed again, so that after
+	 * {@link #resetConstraints} and a hypothesis change, only invalidated
+	 * shapes are meshed.  Default is <code>false</code>.
+	 *
+	 * @param b  <code>true</code> to enable the cache
+	 */
+	public void setCache(boolean b)
+	{
+		cache = b;
+	}
+
+	public boolean hasCache()
+	{
+		return cache;
+	}
+
+	/**
+	 * Returns the number of discretizations which have been read from
+	 * the cache by the last call to {@link #compute}.
+	 *
+	 * @return the number of discretizations read from the cache
+	 */
+	public int getCacheHits()
+	{
+		return cacheHits.get();
+	}
+
 	public static void reset()
 	{
 		freeIndex = 1;
@@ -174,6 +236,17 @@ public class BModel
 		return ret+"d"+d.getId();
 	}
 
+	/**
+	 * Returns the directory of a cache entry.
+	 *
+	 * @param key  cache key
+	 * @return the directory of this cache entry
+	 */
+	public final String getCacheDir(String key)
+	{
+		return xmlDir+File.separator+"cache"+File.separator+key;
+	}
+
 	public final String getOutputFile()
 	{
 		return xmlFile;
@@ -308,7 +381,13 @@ public class BModel
 	public final void compute()
 	{
 		LOGGER.info("Computing the model");
-		discretizeSolids();
+		cacheHits.set(0);
+		if (threads > 1)
+			discretizeAll();
+		else
+			discretizeSolids();
+		if (cache)
+			LOGGER.info(cacheHits.get()+" discretizations read from cache");
 		LOGGER.info("Done");
 	}
 
@@ -324,7 +403,7 @@ public class BModel
 		{
 			BCADGraphCell cell = its.next();
 			for (BDiscretization d : cell.getDiscretizations())
-				d.discretize();
+				discretize(d, CADShapeEnum.VERTEX);
 		}
 		state = State.TESSELLATION_0;
 	}
@@ -349,10 +428,7 @@ public class BModel
 			cnt++;
 			LOGGER.config("  edge "+cnt+"/"+nrEdges);
 			for (BDiscretization d : cell.getDiscretizations())
-			{
-				d.discretize();
-				Storage.writeEdge(d);
-			}
+				discretize(d, CADShapeEnum.EDGE);
 		}
 		state = State.TESSELLATION_1;
 	}
@@ -377,11 +453,7 @@ public class BModel
 			cnt++;
 			LOGGER.info("  face "+cnt+"/"+nrFaces);
 			for (BDiscretization d : cell.getDiscretizations())
-			{
-				d.discretize();
-				Storage.writeFace(d);
-				d.setMesh(null);
-			}
+				discretize(d, CADShapeEnum.FACE);
 		}
 		state = State.TESSELLATION_2;
 	}
@@ -406,14 +478,139 @@ public class BModel
 			cnt++;
 			LOGGER.info("  solid "+cnt+"/"+nrSolids);
 			for (BDiscretization d : cell.getDiscretizations())
+				discretize(d, CADShapeEnum.SOLID);
+		}
+		state = State.TESSELLATION_3;
+	}
+
+	/**
+	 * Computes all discretizations which have not been computed yet.
+	 * A task is created for each discretization, it depends on the
+	 * discretizations of the sub-shapes of its cell.  Tasks are added
+	 * in the same order as in discretizeSolids, and algorithms and
+	 * cache keys are computed before tasks are run.
+	 */
+	private void discretizeAll()
+	{
+		if (state.compareTo(State.TESSELLATION_3) >= 0)
+			return;
+		if (state == State.INPUT)
+			computeConstraints();
+
+		BCADGraphCell root = cad.getRootCell();
+		CADShapeEnum [] types = new CADShapeEnum[] {
+			CADShapeEnum.VERTEX, CADShapeEnum.EDGE, CADShapeEnum.FACE, CADShapeEnum.SOLID };
+		State [] done = new State[] {
+			State.TESSELLATION_0, State.TESSELLATION_1, State.TESSELLATION_2, State.TESSELLATION_3 };
+		TaskGraph graph = new TaskGraph();
+		Map<BDiscretization, Integer> taskIndex = new HashMap<BDiscretization, Integer>();
+		TIntHashSet dependencies = new TIntHashSet();
+		for (int dim = 0; dim < types.length; dim++)
+		{
+			if (state.compareTo(done[dim]) >= 0)
+				continue;
+			for (Iterator<BCADGraphCell> its = root.shapesExplorer(types[dim]); its.hasNext(); )
 			{
-				d.discretize();
-				Storage.writeSolid(d);
+				BCADGraphCell cell = its.next();
+				dependencies.clear();
+				for (int sub = 0; sub < dim; sub++)
+				{
+					for (Iterator<BCADGraphCell> itc = cell.shapesExplorer(types[sub]); itc.hasNext(); )
+					{
+						for (BDiscretization cd : itc.next().getDiscretizations())
+						{
+							Integer index = taskIndex.get(cd);
+							if (index != null)
+								dependencies.add(index.intValue());
+						}
+					}
+				}
+				int [] deps = dependencies.toArray();
+				for (BDiscretization d : cell.getDiscretizations())
+				{
+					if (taskIndex.containsKey(d))
+						continue;
+					d.findAlgorithm();
+					if (cache)
+						d.getCacheKey();
+					taskIndex.put(d, graph.add(new DiscretizeTask(d, types[dim]), deps));
+				}
 			}
 		}
+		LOGGER.info("Discretize "+graph.size()+" shapes with "+threads+" threads");
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			graph.run(pool);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
 		state = State.TESSELLATION_3;
 	}
 
+	/**
+	 * Computes a discretization and writes it.  Face meshes are then
+	 * released, they are read from disk when needed.  If the cache is
+	 * enabled, edge, face and solid discretizations are read from cache
+	 * when their key is found, otherwise they are stored into the cache
+	 * once written.  Both orientations of a shape share the same
+	 * discretizations, which are thus skipped when already handled.
+	 */
+	private void discretize(BDiscretization d, CADShapeEnum type)
+	{
+		if (d.isComputed())
+			return;
+		String key = null;
+		if (cache && type != CADShapeEnum.VERTEX)
+		{
+			key = d.getCacheKey();
+			if (Storage.restoreFromCache(d, key))
+			{
+				if (LOGGER.isLoggable(Level.FINE))
+					LOGGER.log(Level.FINE, "Read from cache: "+d);
+				d.setComputed();
+				cacheHits.incrementAndGet();
+				return;
+			}
+		}
+		d.discretize();
+		boolean written = false;
+		if (type == CADShapeEnum.EDGE)
+			written = Storage.writeEdge(d);
+		else if (type == CADShapeEnum.FACE)
+		{
+			written = Storage.writeFace(d);
+			d.setMesh(null);
+		}
+		else if (type == CADShapeEnum.SOLID)
+			written = Storage.writeSolid(d);
+		if (written && key != null)
+			Storage.storeInCache(d, key);
+	}
+
+	/**
+	 * Runs {@link #discretize(BDiscretization, CADShapeEnum)} as a
+	 * task of discretizeAll.
+	 */
+	private class DiscretizeTask implements Runnable
+	{
+		private final BDiscretization d;
+		private final CADShapeEnum type;
+
+		DiscretizeTask(BDiscretization d, CADShapeEnum type)
+		{
+			this.d = d;
+			this.type = type;
+		}
+
+		public void run()
+		{
+			discretize(d, type);
+		}
+	}
+
 	/**
 	 * Prints all hypothesis applied to any submesh.
 	 */
@@ -279,7 +279,18 @@ public class Hypothesis
 	@Override
 	public final String toString()
 	{
-		String ret = "Hyp. "+id+" elementType: "+hyp.getType();
+		return "Hyp. "+id+" "+getSignature();
+	}
+
+	/**
+	 * Returns hypothesis values without its identifier.  Two hypothesis
+	 * with the same signature give the same discretization.
+	 *
+	 * @return hypothesis values
+	 */
+	final String getSignature()
+	{
+		String ret = "elementType: "+hyp.getType();
 		if (length >= 0.0)
 			ret += " length: "+length;
 		if (lengthMin >= 0.0)
@@ -47,6 +47,7 @@ import org.jcae.mesh.xmldata.IntFileReader;
 import org.jcae.mesh.xmldata.PrimitiveFileReaderFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
@@ -88,15 +89,21 @@ public class Storage
 		}
 	}
 
-	public static void writeEdge(BDiscretization d)
+	/**
+	 * Writes the discretization of an edge into its output directory.
+	 * @param d  edge discretization
+	 * @return <code>true</code> if files have been written, <code>false</code>
+	 * if edge is degenerated or has not been discretized.
+	 */
+	public static boolean writeEdge(BDiscretization d)
 	{
 		BCADGraphCell edge = d.getGraphCell();
 		CADEdge E = (CADEdge) edge.getShape();
 		if (E.isDegenerated())
-			return;
+			return false;
 		SubMesh1D submesh = (SubMesh1D) d.getMesh();
 		if (null == submesh)
-			return;
+			return false;
 
 		try
 		{
@@ -115,14 +122,21 @@ public class Storage
 			ex.printStackTrace();
 			throw new RuntimeException();
 		}
+		return true;
 	}
 
-	public static void writeFace(BDiscretization d)
+	/**
+	 * Writes the discretization of a face into its output directory.
+	 * @param d  face discretization
+	 * @return <code>true</code> if files have been written, <code>false</code>
+	 * if face has not been discretized.
+	 */
+	public static boolean writeFace(BDiscretization d)
 	{
 		BCADGraphCell face = d.getGraphCell();
 		Mesh2D submesh = (Mesh2D) d.getMesh();
 		if (null == submesh)
-			return;
+			return false;
 
 		try
 		{
@@ -140,14 +154,21 @@ public class Storage
 			ex.printStackTrace();
 			throw new RuntimeException();
 		}
+		return true;
 	}
 
-	public static void writeSolid(BDiscretization d)
+	/**
+	 * Writes the discretization of a solid into its output directory.
+	 * @param d  solid discretization
+	 * @return <code>true</code> if files have been written, <code>false</code>
+	 * if solid has not been discretized.
+	 */
+	public static boolean writeSolid(BDiscretization d)
 	{
 		BCADGraphCell solid = d.getGraphCell();
 		Mesh submesh = (Mesh) d.getMesh();
 		if (null == submesh)
-			return;
+			return false;
 
 		try
 		{
@@ -163,6 +184,132 @@ public class Storage
 			ex.printStackTrace();
 			throw new RuntimeException();
 		}
+		return true;
+	}
+
+	/**
+	 * Copies the files of a discretization into the cache directory of
+	 * its model.  Files are first copied into a temporary directory which
+	 * is then renamed, so that a partially written entry is never read.
+	 * @param d    discretization, its files must have been written
+	 * @param key  cache key
+	 */
+	public static void storeInCache(BDiscretization d, String key)
+	{
+		BModel model = d.getGraphCell().getGraph().getModel();
+		File entry = new File(model.getCacheDir(key));
+		if (entry.exists())
+			return;
+		File tmp = new File(entry.getPath()+".tmp"+d.getId());
+		try
+		{
+			copyFiles(new File(model.getOutputDir(d)), tmp);
+			if (!tmp.renameTo(entry))
+				deleteFiles(tmp);
+		}
+		catch(IOException ex)
+		{
+			LOGGER.log(Level.WARNING, "Cannot write cache entry "+entry, ex);
+			deleteFiles(tmp);
+		}
+	}
+
+	/**
+	 * Copies the files of a discretization from the cache directory of
+	 * its model into its output directory.  Edge discretizations are
+	 * read back into a <code>SubMesh1D</code> instance, which is needed
+	 * to mesh faces.
+	 * @param d    discretization
+	 * @param key  cache key
+	 * @return <code>true</code> if this discretization has been found in
+	 * cache, <code>false</code> otherwise.
+	 */
+	public static boolean restoreFromCache(BDiscretization d, String key)
+	{
+		BModel model = d.getGraphCell().getGraph().getModel();
+		File entry = new File(model.getCacheDir(key));
+		if (!entry.isDirectory())
+			return false;
+		try
+		{
+			copyFiles(entry, new File(model.getOutputDir(d)));
+			if (CADShapeEnum.EDGE.equals(d.getGraphCell().getType()))
+				d.setMesh(readSubMesh1D(d));
+		}
+		catch(IOException ex)
+		{
+			LOGGER.log(Level.WARNING, "Cannot read cache entry "+entry, ex);
+			return false;
+		}
+		return true;
+	}
+
+	private static SubMesh1D readSubMesh1D(BDiscretization d)
+		throws IOException
+	{
+		BCADGraphCell edge = d.getGraphCell();
+		File parasFile = new File(edge.getGraph().getModel().getOutputDir(d), "p");
+		DoubleFileReader dfrP = new PrimitiveFileReaderFactory().getDoubleReader(parasFile);
+		double [] paras = new double[(int) parasFile.length() / 8];
+		dfrP.get(paras);
+		dfrP.close();
+		CADVertex [] vertices = new CADVertex[paras.length];
+		int [] refs = readNodeReferences(d);
+		for (int i = 0; i < refs.length; i += 2)
+			vertices[refs[i]] = (CADVertex) edge.getGraph().getById(refs[i+1]).getShape();
+
+		SubMesh1D submesh = new SubMesh1D((CADEdge) edge.getShape());
+		ArrayList<MNode1D> nodelist = submesh.getNodes();
+		for (int i = 0; i < paras.length; i++)
+			nodelist.add(new MNode1D(paras[i], vertices[i]));
+		int [] beams = readConnectivity(d);
+		for (int i = 0; i < beams.length; i += 2)
+			submesh.getEdges().add(new MEdge1D(nodelist.get(beams[i] - 1), nodelist.get(beams[i+1] - 1)));
+		return submesh;
+	}
+
+	private static void copyFiles(File src, File dest)
+		throws IOException
+	{
+		dest.mkdirs();
+		if (!dest.isDirectory())
+			throw new IOException("Cannot create directory "+dest);
+		byte [] buffer = new byte[65536];
+		for (File f : src.listFiles())
+		{
+			if (!f.isFile())
+				continue;
+			FileInputStream in = new FileInputStream(f);
+			try
+			{
+				FileOutputStream out = new FileOutputStream(new File(dest, f.getName()));
+				try
+				{
+					int n;
+					while ((n = in.read(buffer)) > 0)
+						out.write(buffer, 0, n);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+	}
+
+	private static void deleteFiles(File dir)
+	{
+		File [] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File f : files)
+				f.delete();
+		}
+		dir.delete();
 	}
 
 	/**
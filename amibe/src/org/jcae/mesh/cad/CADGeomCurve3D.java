@@ -31,6 +31,16 @@ public interface CADGeomCurve3D
 	 */
 	public double [] value(double p);
 	
+	/**
+	 * Return several points on this curve in a single call.  This gives
+	 * the same results as calling {@link #value} for each parameter, but
+	 * implementations can avoid per-point overhead.
+	 * @param n  number of points
+	 * @param p  an array of size n which contains parameters
+	 * @param xyz  an array of size 3*n which receives {x0, y0, z0, x1, ...}
+	 */
+	public void arrayValues(int n, double [] p, double [] xyz);
+	
 	/**
 	 * Return the range of the parametrization of this edge
 	 * @return an array {pMin, pMax}
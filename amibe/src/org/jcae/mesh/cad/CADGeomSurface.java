@@ -64,6 +64,30 @@ public interface CADGeomSurface
 	 * @return A array {x, y, z}
 	 */    
 	public double [] value(double u, double v);
+
+	/**
+	 * Evaluate the surface at several locations in a single call.  This
+	 * gives the same results as calling {@link #value}, and
+	 * {@link #setParameter} followed by {@link #d1U}, {@link #d1V} and
+	 * {@link #normal} for each location, but implementations can avoid
+	 * per-point overhead.  {@link #dinit} must have been called with a
+	 * degree of at least 1 if derivatives or normals are requested.
+	 * The location set by {@link #setParameter} is undefined after this
+	 * call.
+	 * @param n  number of locations
+	 * @param uv  an array {u0, v0, u1, v1, ...} of size 2*n
+	 * @param xyz  if not null, an array of size 3*n which receives 3D
+	 *   coordinates
+	 * @param d1U  if not null, an array of size 3*n which receives u first
+	 *   derivatives
+	 * @param d1V  if not null, an array of size 3*n which receives v first
+	 *   derivatives
+	 * @param normal  if not null, an array of size 3*n which receives
+	 *   normals; undefined normals are set to zero
+	 */
+	public void arrayValues(int n, double [] uv, double [] xyz,
+		double [] d1U, double [] d1V, double [] normal);
+
 	/**
 	 * Return the minimum curvature at the current point
 	 * @return the minimum curvature at the current point
@@ -0,0 +1,441 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.oemm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of octant leaves read from disk.  {@link MeshReader} reads all
+ * vertices, triangles and adjacency relations of requested leaves each
+ * time a mesh is built.  When several meshes are built from overlapping
+ * sets of leaves, for instance by out-of-core decimation or by viewers,
+ * the same files are read again and again.  This cache keeps deserialized
+ * leaves in memory until a memory budget is reached, least recently used
+ * leaves are then evicted.
+ *
+ * <p>
+ * Leaves can also be prefetched by a background thread, so that disk
+ * accesses overlap with computations done on current leaves.  When files
+ * of a leaf are modified, for instance by {@link Storage#saveNodes},
+ * {@link #invalidate} must be called.
+ * </p>
+ *
+ * <p>
+ * Here is an example:
+ * </p>
+ * <pre>
+ *   MeshReader reader = new MeshReader(oemm);
+ *   LeafCache cache = new LeafCache(oemm, 256L &lt;&lt; 20);
+ *   reader.setCache(cache);
+ *   ...
+ *   cache.shutdown();
+ * </pre>
+ */
+public class LeafCache
+{
+	private static final Logger logger=Logger.getLogger(LeafCache.class.getName());
+
+	private final OEMM oemm;
+	private final long maxMemory;
+	private long memory = 0L;
+	// Access-ordered map, eldest entry is the least recently used leaf
+	private final LinkedHashMap<Integer, Leaf> entries = new LinkedHashMap<Integer, Leaf>(16, 0.75f, true);
+	// Leaves being read
+	private final TIntHashSet loading = new TIntHashSet();
+	// Incremented each time a leaf is invalidated, leaves read
+	// concurrently are then discarded.
+	private final TIntIntHashMap versions = new TIntIntHashMap();
+	private final List<Future<?>> pending = new ArrayList<Future<?>>();
+	private ExecutorService prefetcher;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * Deserialized content of a leaf.
+	 */
+	static final class Leaf
+	{
+		/** Vertex coordinates. */
+		final double [] coords;
+		/**
+		 * Leaves adjacent to vertices: adjacent leaves of vertex
+		 * <code>i</code> are <code>adjLeaves[adjStart[i]]</code> to
+		 * <code>adjLeaves[adjStart[i+1]-1]</code>.
+		 */
+		final int [] adjStart;
+		final int [] adjLeaves;
+		/**
+		 * Triangles; for each triangle, leaf numbers of its vertices,
+		 * local indices of its vertices and group number.
+		 */
+		final int [] triangles;
+
+		private Leaf(double [] c, int [] s, int [] a, int [] t)
+		{
+			coords = c;
+			adjStart = s;
+			adjLeaves = a;
+			triangles = t;
+		}
+
+		int getNumberOfVertices()
+		{
+			return coords.length / 3;
+		}
+
+		int getNumberOfTriangles()
+		{
+			return triangles.length / 7;
+		}
+
+		/**
+		 * Returns an estimate of memory used by this instance, in bytes.
+		 */
+		long getMemory()
+		{
+			return 64L + 8L * coords.length + 4L * (adjStart.length + adjLeaves.length + triangles.length);
+		}
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param o  OEMM instance
+	 * @param maxBytes  memory budget, in bytes
+	 */
+	public LeafCache(OEMM o, long maxBytes)
+	{
+		oemm = o;
+		maxMemory = maxBytes;
+	}
+
+	/**
+	 * Returns a leaf, it is read from disk if it is not already in cache.
+	 *
+	 * @param leafIndex  leaf index
+	 * @return leaf content
+	 */
+	final Leaf get(int leafIndex)
+	{
+		int version;
+		synchronized (this)
+		{
+			while (true)
+			{
+				Leaf ret = entries.get(Integer.valueOf(leafIndex));
+				if (ret != null)
+				{
+					hits++;
+					return ret;
+				}
+				if (!loading.contains(leafIndex))
+					break;
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(ex);
+				}
+			}
+			misses++;
+			loading.add(leafIndex);
+			version = versions.get(leafIndex);
+		}
+		Leaf ret = null;
+		try
+		{
+			ret = read(oemm, oemm.leaves[leafIndex]);
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				loading.remove(leafIndex);
+				if (ret != null && version == versions.get(leafIndex))
+					put(leafIndex, ret);
+				notifyAll();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns a leaf if it is in cache.
+	 *
+	 * @param leafIndex  leaf index
+	 * @return leaf content, or <code>null</code> if it is not in cache
+	 */
+	final synchronized Leaf peek(int leafIndex)
+	{
+		return entries.get(Integer.valueOf(leafIndex));
+	}
+
+	private void put(int leafIndex, Leaf leaf)
+	{
+		memory += leaf.getMemory();
+		entries.put(Integer.valueOf(leafIndex), leaf);
+		// Keep at least the last leaf, even if it does not fit
+		for (Iterator<Leaf> it = entries.values().iterator(); memory > maxMemory && entries.size() > 1; )
+		{
+			memory -= it.next().getMemory();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Reads leaves in a background thread, with their adjacent leaves.
+	 * Leaves which had been scheduled by previous calls and have not been
+	 * read yet are discarded, they are supposed to be no more needed.
+	 *
+	 * @param leaves  leaf indices
+	 */
+	public final synchronized void prefetch(TIntHashSet leaves)
+	{
+		for (Future<?> f : pending)
+			f.cancel(false);
+		pending.clear();
+		if (prefetcher == null)
+		{
+			prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "oemm-prefetch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		TIntHashSet all = new TIntHashSet(leaves);
+		for (TIntIterator it = leaves.iterator(); it.hasNext(); )
+			all.addAll(oemm.leaves[it.next()].adjLeaves);
+		for (TIntIterator it = all.iterator(); it.hasNext(); )
+		{
+			final int leafIndex = it.next();
+			if (entries.containsKey(Integer.valueOf(leafIndex)))
+				continue;
+			pending.add(prefetcher.submit(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						get(leafIndex);
+					}
+					catch (RuntimeException ex)
+					{
+						// Leaf will be read again when needed
+						logger.log(Level.WARNING, "Cannot prefetch leaf "+leafIndex, ex);
+					}
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Removes leaves from cache.  This method must be called when files
+	 * of these leaves are modified.  Adjacent leaves are also removed,
+	 * because {@link Storage#saveNodes} may update their triangles.
+	 *
+	 * @param leaves  leaf indices
+	 */
+	public final synchronized void invalidate(TIntHashSet leaves)
+	{
+		TIntHashSet all = new TIntHashSet(leaves);
+		for (TIntIterator it = leaves.iterator(); it.hasNext(); )
+		{
+			int leafIndex = it.next();
+			if (leafIndex < oemm.leaves.length && oemm.leaves[leafIndex].adjLeaves != null)
+				all.addAll(oemm.leaves[leafIndex].adjLeaves);
+		}
+		for (TIntIterator it = all.iterator(); it.hasNext(); )
+		{
+			int leafIndex = it.next();
+			versions.adjustOrPutValue(leafIndex, 1, 1);
+			Leaf leaf = entries.remove(Integer.valueOf(leafIndex));
+			if (leaf != null)
+				memory -= leaf.getMemory();
+		}
+	}
+
+	/**
+	 * Removes all leaves from cache.
+	 */
+	public final synchronized void clear()
+	{
+		for (Map.Entry<Integer, Leaf> e : entries.entrySet())
+			versions.adjustOrPutValue(e.getKey().intValue(), 1, 1);
+		for (TIntIterator it = loading.iterator(); it.hasNext(); )
+			versions.adjustOrPutValue(it.next(), 1, 1);
+		entries.clear();
+		memory = 0L;
+	}
+
+	/**
+	 * Stops prefetching thread.  Cache can still be used afterwards,
+	 * a new thread is started if needed.
+	 */
+	public final synchronized void shutdown()
+	{
+		for (Future<?> f : pending)
+			f.cancel(false);
+		pending.clear();
+		if (prefetcher != null)
+			prefetcher.shutdown();
+		prefetcher = null;
+	}
+
+	/**
+	 * Returns the number of leaves found in cache.
+	 *
+	 * @return the number of leaves found in cache
+	 */
+	public final synchronized int getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of leaves read from disk.
+	 *
+	 * @return the number of leaves read from disk
+	 */
+	public final synchronized int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns an estimate of memory used by cached leaves, in bytes.
+	 *
+	 * @return memory used by cached leaves
+	 */
+	public final synchronized long getMemory()
+	{
+		return memory;
+	}
+
+	/**
+	 * Reads a leaf from disk.
+	 *
+	 * @param oemm  OEMM instance
+	 * @param current  leaf
+	 * @return leaf content
+	 */
+	static Leaf read(OEMM oemm, OEMM.Node current)
+	{
+		File file = Storage.getVerticesFile(oemm, current);
+		try
+		{
+			ByteBuffer bb = readFile(file, Storage.VERTEX_SIZE * current.vn);
+			double [] coords = new double[3 * current.vn];
+			bb.asDoubleBuffer().get(coords);
+
+			file = Storage.getTrianglesFile(oemm, current);
+			bb = readFile(file, Storage.TRIANGLE_SIZE * current.tn);
+			int [] triangles = new int[7 * current.tn];
+			bb.asIntBuffer().get(triangles);
+
+			int [] adjStart = new int[current.vn + 1];
+			int [] adjLeaves;
+			file = Storage.getAdjacencyFile(oemm, current);
+			if (file.exists())
+			{
+				bb = readFile(file, (int) file.length());
+				adjLeaves = new int[bb.limit()];
+				int n = 0;
+				for (int i = 0; i < current.vn; i++)
+				{
+					adjStart[i] = n;
+					if (!bb.hasRemaining())
+						continue;
+					int count = bb.get();
+					for (int j = 0; j < count; j++)
+						adjLeaves[n++] = current.adjLeaves.get(bb.get());
+				}
+				adjStart[current.vn] = n;
+				int [] temp = new int[n];
+				System.arraycopy(adjLeaves, 0, temp, 0, n);
+				adjLeaves = temp;
+			}
+			else
+			{
+				// This may be a new leaf
+				logger.fine("Adjacency file "+file+" not found");
+				adjLeaves = new int[0];
+			}
+			return new Leaf(coords, adjStart, adjLeaves, triangles);
+		}
+		catch (FileNotFoundException ex)
+		{
+			logger.severe("File "+file+" not found");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading file "+file);
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+	}
+
+	static ByteBuffer readFile(File file, int size) throws IOException
+	{
+		ByteBuffer ret = ByteBuffer.allocate(size);
+		FileChannel fc = new FileInputStream(file).getChannel();
+		try
+		{
+			while (ret.hasRemaining() && fc.read(ret) >= 0)
+			{
+				// Read until buffer is full
+			}
+		}
+		finally
+		{
+			fc.close();
+		}
+		ret.flip();
+		return ret;
+	}
+}
@@ -0,0 +1,435 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.oemm;
+
+import org.jcae.mesh.amibe.algos3d.AbstractAlgoHalfEdge;
+import org.jcae.mesh.amibe.algos3d.QEMDecimateHalfEdge;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.traits.TriangleTraitsBuilder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import gnu.trove.list.array.TFloatArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import java.util.logging.Logger;
+
+/**
+ * Coarser representations of OEMM leaves.  Viewers cannot load all
+ * triangles of large meshes, but far octants can be displayed with much
+ * fewer triangles without visible difference.  {@link #build} decimates
+ * each leaf several times with {@link QEMDecimateHalfEdge}, level
+ * <code>k</code> having approximately <code>ratio<sup>k</sup></code>
+ * times fewer triangles than the original leaf, which is level 0.
+ *
+ * <p>
+ * Leaves are decimated independently.  When a single leaf is loaded,
+ * vertices shared with other leaves are not writable, and thus they are
+ * neither moved nor removed.  Triangles crossing leaf boundaries are
+ * kept too, so levels of adjacent leaves can be displayed together
+ * without cracks.
+ * </p>
+ *
+ * <p>
+ * A file named "lod" in OEMM top directory contains, for each leaf, the
+ * number of its levels and for each level, its number of vertices,
+ * number of triangles and error.  Error of a level is the mean edge
+ * length of its decimated triangles, and it is 0 for level 0.  Vertices
+ * and triangles of a level are stored into a leaf file with an "l" suffix
+ * followed by level number.  It contains the number of vertices and
+ * the number of triangles as int values, vertex coordinates as float
+ * values and for each triangle, the local indices of its vertices.
+ * </p>
+ */
+public class LevelOfDetail
+{
+	private static final Logger logger=Logger.getLogger(LevelOfDetail.class.getName());
+
+	private static final String INDEX_FILE = "lod";
+
+	private final OEMM oemm;
+	// Number of vertices, number of triangles and error of each level,
+	// indexed by leaf index then by level.
+	private final int [][] vertices;
+	private final int [][] triangles;
+	private final float [][] errors;
+
+	/**
+	 * Vertices and triangles of a level.
+	 */
+	public static final class Level
+	{
+		/** Vertex coordinates. */
+		public final float [] coords;
+		/** Local indices of triangle vertices. */
+		public final int [] triangles;
+
+		private Level(float [] c, int [] t)
+		{
+			coords = c;
+			triangles = t;
+		}
+	}
+
+	/**
+	 * Reads levels of detail computed by {@link #build}.
+	 *
+	 * @param o  OEMM instance
+	 */
+	public LevelOfDetail(OEMM o)
+	{
+		oemm = o;
+		int n = oemm.getNumberOfLeaves();
+		vertices = new int[n][];
+		triangles = new int[n][];
+		errors = new float[n][];
+		File file = getIndexFile(oemm);
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				if (in.readInt() != n)
+					throw new RuntimeException("File "+file+" does not match OEMM in "+oemm.getDirectory());
+				for (int i = 0; i < n; i++)
+				{
+					int nrLevels = in.readInt();
+					vertices[i] = new int[nrLevels];
+					triangles[i] = new int[nrLevels];
+					errors[i] = new float[nrLevels];
+					for (int l = 0; l < nrLevels; l++)
+					{
+						vertices[i][l] = in.readInt();
+						triangles[i][l] = in.readInt();
+						errors[i][l] = in.readFloat();
+					}
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading file "+file);
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Tells whether levels of detail have been computed.
+	 *
+	 * @param o  OEMM instance
+	 * @return <code>true</code> if {@link #build} has been called on this OEMM
+	 */
+	public static boolean exists(OEMM o)
+	{
+		return getIndexFile(o).exists();
+	}
+
+	private static File getIndexFile(OEMM oemm)
+	{
+		return new File(oemm.getDirectory(), INDEX_FILE);
+	}
+
+	private static File getLevelFile(OEMM oemm, OEMM.Node node, int level)
+	{
+		return new File(oemm.getDirectory(), node.file+"l"+level);
+	}
+
+	/**
+	 * Returns the number of levels of a leaf.  Leaves which cannot be
+	 * decimated have fewer levels than requested.
+	 *
+	 * @param leaf  leaf index
+	 * @return number of levels, level 0 included
+	 */
+	public final int getNumberOfLevels(int leaf)
+	{
+		return errors[leaf].length;
+	}
+
+	public final int getNumberOfVertices(int leaf, int level)
+	{
+		return vertices[leaf][level];
+	}
+
+	public final int getNumberOfTriangles(int leaf, int level)
+	{
+		return triangles[leaf][level];
+	}
+
+	/**
+	 * Returns the error of a level, in model units.  It increases with
+	 * level number.
+	 *
+	 * @param leaf  leaf index
+	 * @param level  level number
+	 * @return mean edge length of decimated triangles
+	 */
+	public final double getError(int leaf, int level)
+	{
+		return errors[leaf][level];
+	}
+
+	/**
+	 * Returns an estimate of memory needed to store a level, in bytes.
+	 *
+	 * @param leaf  leaf index
+	 * @param level  level number
+	 * @return memory used by vertex coordinates and triangles
+	 */
+	public final long getMemory(int leaf, int level)
+	{
+		return 12L * vertices[leaf][level] + 12L * triangles[leaf][level];
+	}
+
+	/**
+	 * Reads a level from disk.  This method can be called concurrently.
+	 *
+	 * @param leaf  leaf index
+	 * @param level  level number
+	 * @return vertices and triangles of this level
+	 */
+	public final Level read(int leaf, int level)
+	{
+		File file = getLevelFile(oemm, oemm.leaves[leaf], level);
+		try
+		{
+			ByteBuffer bb = LeafCache.readFile(file, 8 + (int) getMemory(leaf, level));
+			int nv = bb.getInt();
+			int nt = bb.getInt();
+			assert nv == vertices[leaf][level] && nt == triangles[leaf][level] : file;
+			float [] coords = new float[3 * nv];
+			bb.asFloatBuffer().get(coords);
+			bb.position(bb.position() + 4 * coords.length);
+			int [] trianglesIndices = new int[3 * nt];
+			bb.asIntBuffer().get(trianglesIndices);
+			return new Level(coords, trianglesIndices);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading file "+file);
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Computes levels of detail of all leaves and writes them on disk.
+	 * Decimation of a leaf stops when the requested number of levels is
+	 * reached, or when triangles cannot be removed anymore.
+	 *
+	 * @param oemm  OEMM instance
+	 * @param nrLevels  maximal number of levels, level 0 excluded
+	 * @param ratio  ratio between number of triangles of consecutive levels
+	 */
+	public static void build(OEMM oemm, int nrLevels, int ratio)
+	{
+		if (ratio < 2)
+			throw new IllegalArgumentException("Ratio must be greater than 1: "+ratio);
+		LeafReader reader = new LeafReader(oemm);
+		MeshTraitsBuilder mtb = new MeshTraitsBuilder();
+		TriangleTraitsBuilder ttb = new TriangleTraitsBuilder();
+		ttb.addHalfEdge();
+		mtb.add(ttb);
+		mtb.addTriangleSet();
+		mtb.addNodeSet();
+		Map<String, String> options = new HashMap<String, String>();
+		int n = oemm.getNumberOfLeaves();
+		File file = getIndexFile(oemm);
+		// Index file is written last, so that an interrupted computation
+		// is not used by readers.
+		file.delete();
+		TIntArrayList [] nv = new TIntArrayList[n];
+		TIntArrayList [] nt = new TIntArrayList[n];
+		TFloatArrayList [] err = new TFloatArrayList[n];
+		for (int i = 0; i < n; i++)
+		{
+			OEMM.Node node = oemm.leaves[i];
+			nv[i] = new TIntArrayList();
+			nt[i] = new TIntArrayList();
+			err[i] = new TFloatArrayList();
+			Mesh mesh = reader.buildLeaf(mtb, i);
+			writeLevel(oemm, node, 0, mesh, nv[i], nt[i]);
+			err[i].add(0.0f);
+			int nrT = AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+			int target = nrT;
+			for (int level = 1; level <= nrLevels; level++)
+			{
+				target /= ratio;
+				if (target <= 0)
+					break;
+				options.clear();
+				options.put("maxtriangles", Integer.toString(target));
+				// Disable edge swaps, they do not check that
+				// triangles are writable.
+				options.put("coplanarity", "-2.0");
+				new QEMDecimateHalfEdge(mesh, options).compute();
+				int cnt = AbstractAlgoHalfEdge.countInnerTriangles(mesh);
+				if (cnt >= nrT)
+					break;
+				nrT = cnt;
+				writeLevel(oemm, node, level, mesh, nv[i], nt[i]);
+				err[i].add(Math.max(meanEdgeLength(mesh), err[i].get(level - 1)));
+			}
+			if (logger.isLoggable(java.util.logging.Level.FINE))
+				logger.fine("Leaf "+i+": "+nt[i]+" triangles, errors: "+err[i]);
+		}
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try
+			{
+				out.writeInt(n);
+				for (int i = 0; i < n; i++)
+				{
+					out.writeInt(err[i].size());
+					for (int l = 0; l < err[i].size(); l++)
+					{
+						out.writeInt(nv[i].get(l));
+						out.writeInt(nt[i].get(l));
+						out.writeFloat(err[i].get(l));
+					}
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when writing file "+file);
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static void writeLevel(OEMM oemm, OEMM.Node node, int level, Mesh mesh, TIntArrayList nv, TIntArrayList nt)
+	{
+		TObjectIntHashMap<Vertex> indices = new TObjectIntHashMap<Vertex>();
+		TFloatArrayList coords = new TFloatArrayList();
+		TIntArrayList trianglesIndices = new TIntArrayList();
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			for (int j = 0; j < 3; j++)
+			{
+				Vertex v = t.getV(j);
+				if (!indices.containsKey(v))
+				{
+					indices.put(v, indices.size());
+					coords.add((float) v.getX());
+					coords.add((float) v.getY());
+					coords.add((float) v.getZ());
+				}
+				trianglesIndices.add(indices.get(v));
+			}
+		}
+		nv.add(coords.size() / 3);
+		nt.add(trianglesIndices.size() / 3);
+		ByteBuffer bb = ByteBuffer.allocate(8 + 4 * (coords.size() + trianglesIndices.size()));
+		bb.putInt(coords.size() / 3);
+		bb.putInt(trianglesIndices.size() / 3);
+		bb.asFloatBuffer().put(coords.toArray());
+		bb.position(bb.position() + 4 * coords.size());
+		bb.asIntBuffer().put(trianglesIndices.toArray());
+		bb.rewind();
+		File file = getLevelFile(oemm, node, level);
+		try
+		{
+			FileChannel fc = new FileOutputStream(file).getChannel();
+			try
+			{
+				while (bb.hasRemaining())
+					fc.write(bb);
+			}
+			finally
+			{
+				fc.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when writing file "+file);
+			throw new RuntimeException(ex);
+		}
+	}
+
+	// Returns mean edge length of writable triangles, or of all triangles
+	// if none is writable.
+	private static float meanEdgeLength(Mesh mesh)
+	{
+		double [] sum = new double[2];
+		int [] cnt = new int[2];
+		for (Triangle t : mesh.getTriangles())
+		{
+			if (t.hasAttributes(AbstractHalfEdge.OUTER))
+				continue;
+			int k = t.isWritable() ? 0 : 1;
+			for (int j = 0; j < 3; j++)
+				sum[k] += t.getV(j).distance3D(t.getV((j+1)%3));
+			cnt[k] += 3;
+		}
+		if (cnt[0] > 0)
+			return (float) (sum[0] / cnt[0]);
+		if (cnt[1] > 0)
+			return (float) (sum[1] / cnt[1]);
+		return 0.0f;
+	}
+
+	/**
+	 * Reads a single leaf, with coordinates of vertices which belong to
+	 * other leaves.
+	 */
+	private static class LeafReader extends MeshReader
+	{
+		private final TIntHashSet leaves = new TIntHashSet();
+		LeafReader(OEMM o)
+		{
+			super(o);
+			mapNodeToNonReadVertexList = new TIntObjectHashMap<List<FakeNonReadVertex>>();
+		}
+
+		Mesh buildLeaf(MeshTraitsBuilder mtb, int leaf)
+		{
+			leaves.clear();
+			leaves.add(leaf);
+			return buildMesh(mtb, leaves);
+		}
+	}
+}
@@ -24,7 +24,6 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
-import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -54,6 +53,8 @@ public class MeshReader extends Storage
 	protected TIntObjectHashMap<Mesh> mapNodeToMesh = null;
 	// Map between octant index and a list of vertices from adjacent triangles so that all triangles are readable
 	protected TIntObjectHashMap<List<FakeNonReadVertex>> mapNodeToNonReadVertexList = null;
+	// Leaves read from disk, may be null
+	private LeafCache cache = null;
 
 	/**
 	 * Buffer size.  Vertices and triangles are read through buffers to improve
@@ -95,6 +96,28 @@ public class MeshReader extends Storage
 			mapNodeToNonReadVertexList = null;
 	}
 
+	/**
+	 * Sets the cache of leaves.  By default there is no cache, and files
+	 * are read from disk each time a mesh is built.  A cache can be shared
+	 * by several readers of the same OEMM.
+	 *
+	 * @param c  cache, or <code>null</code> to disable caching
+	 */
+	public void setCache(LeafCache c)
+	{
+		cache = c;
+	}
+
+	/**
+	 * Returns the cache of leaves.
+	 *
+	 * @return the cache of leaves, or <code>null</code> if there is no cache
+	 */
+	public LeafCache getCache()
+	{
+		return cache;
+	}
+
 	/**
 	 * Builds meshes for all octants.  This method maintains a map in memory of meshes
 	 * from all octants; each mesh can be retrieved by {@link #getMesh}.
@@ -228,48 +251,23 @@ public class MeshReader extends Storage
 	 */
 	private void readVertices(TIntHashSet leaves, Mesh mesh, TIntObjectHashMap<Vertex> vertMap, OEMM.Node current)
 	{
-		try
+		logger.fine("Reading "+current.vn+" vertices from "+getVerticesFile(oemm, current));
+		LeafCache.Leaf data = getLeaf(current);
+		int vn = data.getNumberOfVertices();
+		mesh.ensureCapacity(2*vn);
+		double [] coords = data.coords;
+		for (int index = 0; index < vn; index++)
 		{
-			logger.fine("Reading "+current.vn+" vertices from "+getVerticesFile(oemm, current));
-			mesh.ensureCapacity(2*current.vn);
-			Vertex [] vert = new Vertex[current.vn];
-			double [] xyz = new double[3];
-			List<TIntArrayList> listAdjacentLeaves = readAdjacencyFile(oemm, current, leaves);
-			FileChannel fc = new FileInputStream(getVerticesFile(oemm, current)).getChannel();
-			buffer.clear();
-			DoubleBuffer bbD = buffer.asDoubleBuffer();
-			int remaining = current.vn;
-			int index = 0;
-			for (int nblock = (remaining * VERTEX_SIZE) / BUFFER_SIZE; nblock >= 0; --nblock)
-			{
-				buffer.rewind();
-				fc.read(buffer);
-				bbD.rewind();
-				int nf = BUFFER_SIZE / VERTEX_SIZE;
-				if (remaining < nf)
-					nf = remaining;
-				remaining -= nf;
-				for(int nr = 0; nr < nf; nr ++)
-				{
-					bbD.get(xyz);
-					vert[index] = mesh.createVertex(xyz[0], xyz[1], xyz[2]);
-					vert[index].setLabel(current.minIndex + index);
-					vert[index].setReadable(true);
-					boolean writable = listAdjacentLeaves.get(index).isEmpty();
-					vert[index].setWritable(writable);
-					vertMap.put(current.minIndex + index, vert[index]);
-					mesh.add(vert[index]);
-					index++;
-					
-				}
-			}
-			fc.close();
-		}
-		catch (IOException ex)
-		{
-			logger.severe("I/O error when reading file "+getVerticesFile(oemm, current));
-			ex.printStackTrace();
-			throw new RuntimeException(ex);
+			Vertex vert = mesh.createVertex(coords[3*index], coords[3*index+1], coords[3*index+2]);
+			vert.setLabel(current.minIndex + index);
+			vert.setReadable(true);
+			// Vertex is writable if all its adjacent leaves are loaded
+			boolean writable = true;
+			for (int i = data.adjStart[index]; writable && i < data.adjStart[index+1]; i++)
+				writable = leaves.contains(data.adjLeaves[i]);
+			vert.setWritable(writable);
+			vertMap.put(current.minIndex + index, vert);
+			mesh.add(vert);
 		}
 	}
 	
@@ -278,93 +276,80 @@ public class MeshReader extends Storage
 	 */
 	private void readTriangles(TIntHashSet leaves, Mesh mesh, TIntObjectHashMap<Vertex> vertMap, OEMM.Node current)
 	{
-		try
+		logger.fine("Reading "+current.tn+" triangles from "+getTrianglesFile(oemm, current));
+		LeafCache.Leaf data = getLeaf(current);
+		int [] triangles = data.triangles;
+		Vertex [] vert = new Vertex[3];
+		TIntHashSet processedNode = new TIntHashSet();
+		int tn = data.getNumberOfTriangles();
+		mesh.ensureCapacity(tn);
+		for(int nr = 0; nr < tn; nr ++)
 		{
-			logger.fine("Reading "+current.tn+" triangles from "+getTrianglesFile(oemm, current));
-			FileChannel fc = new FileInputStream(getTrianglesFile(oemm, current)).getChannel();
-			Vertex [] vert = new Vertex[3];
-			TIntHashSet processedNode = new TIntHashSet();
-			int [] leaf = new int[3];
-			int [] pointIndex = new int[3];
-			mesh.ensureCapacity(current.tn);
-			int remaining = current.tn;
-			buffer.clear();
-			IntBuffer bbI = buffer.asIntBuffer();
-			for (int nblock = (remaining * TRIANGLE_SIZE) / BUFFER_SIZE; nblock >= 0; --nblock)
+			boolean readable = true;
+			boolean writable = true;
+			for (int j = 0; j < 3; j++)
 			{
-				buffer.rewind();
-				fc.read(buffer);
-				bbI.rewind();
-				int nf = BUFFER_SIZE / TRIANGLE_SIZE;
-				if (remaining < nf)
-					nf = remaining;
-				remaining -= nf;
-				for(int nr = 0; nr < nf; nr ++)
+				int leaf = triangles[7*nr+j];
+				int pointIndex = triangles[7*nr+3+j];
+				int globalIndex = oemm.leaves[leaf].minIndex + pointIndex;
+				if (leaves.contains(leaf))
 				{
-					boolean readable = true;
-					boolean writable = true;
-					bbI.get(leaf);
-					bbI.get(pointIndex);
-					for (int j = 0; j < 3; j++)
-					{
-						int globalIndex = oemm.leaves[leaf[j]].minIndex + pointIndex[j];
-						if (leaves.contains(leaf[j]))
-						{
-							vert[j] = vertMap.get(globalIndex);
-							assert vert[j] != null;
-						}
-						else
+					vert[j] = vertMap.get(globalIndex);
+					assert vert[j] != null;
+				}
+				else
+				{
+					writable = false;
+					vert[j] = vertMap.get(globalIndex);
+					if (vert[j] == null) {
+						vert[j] = new FakeNonReadVertex(oemm, leaf, pointIndex);
+						vertMap.put(globalIndex, vert[j]);
+						if (mapNodeToNonReadVertexList != null)
 						{
-							writable = false;
-							vert[j] = vertMap.get(globalIndex);
-							if (vert[j] == null) {
-								vert[j] = new FakeNonReadVertex(oemm, leaf[j], pointIndex[j]);
-								vertMap.put(globalIndex, vert[j]);
-								if (mapNodeToNonReadVertexList != null)
-								{
-									FakeNonReadVertex vertex = (FakeNonReadVertex) vert[j];
-									List<FakeNonReadVertex> vertices = mapNodeToNonReadVertexList.get(leaf[j]);
-									if (vertices == null) {
-										vertices = new ArrayList<FakeNonReadVertex>();
-										mapNodeToNonReadVertexList.put(leaf[j], vertices);
-									}
-									vertices.add(vertex);
-								}
+							FakeNonReadVertex vertex = (FakeNonReadVertex) vert[j];
+							List<FakeNonReadVertex> vertices = mapNodeToNonReadVertexList.get(leaf);
+							if (vertices == null) {
+								vertices = new ArrayList<FakeNonReadVertex>();
+								mapNodeToNonReadVertexList.put(leaf, vertices);
 							}
+							vertices.add(vertex);
 						}
 					}
-					// group number
-					int groupId = bbI.get();
-					createTriangle(groupId, vert, readable, writable, mesh);
-					// When called from buildMeshes(), cross boundary triangles are put into
-					// all crossed octants.
-					if (mapNodeToMesh != null && mapNodeToNonReadVertexList != null)
-					{
-						processedNode.clear();
-						for (int j = 0; j < 3; j++) {
-							if (vert[j] instanceof FakeNonReadVertex) {
-								FakeNonReadVertex fnrVertex = (FakeNonReadVertex) vert[j];
-								int leafIndex = fnrVertex.getOEMMIndex();
-								if (!processedNode.contains(leafIndex)) {
-									Mesh altMesh = mapNodeToMesh.get(leafIndex);
-									createTriangle(-leafIndex, vert, false, false, altMesh);
-									processedNode.add(leafIndex);
-								}
-							}
+				}
+			}
+			// group number
+			int groupId = triangles[7*nr+6];
+			createTriangle(groupId, vert, readable, writable, mesh);
+			// When called from buildMeshes(), cross boundary triangles are put into
+			// all crossed octants.
+			if (mapNodeToMesh != null && mapNodeToNonReadVertexList != null)
+			{
+				processedNode.clear();
+				for (int j = 0; j < 3; j++) {
+					if (vert[j] instanceof FakeNonReadVertex) {
+						FakeNonReadVertex fnrVertex = (FakeNonReadVertex) vert[j];
+						int leafIndex = fnrVertex.getOEMMIndex();
+						if (!processedNode.contains(leafIndex)) {
+							Mesh altMesh = mapNodeToMesh.get(leafIndex);
+							createTriangle(-leafIndex, vert, false, false, altMesh);
+							processedNode.add(leafIndex);
 						}
 					}
 				}
 			}
-			fc.close();
-		}
-		catch (IOException ex)
-		{
-			logger.severe("I/O error when reading indexed file "+getTrianglesFile(oemm, current));
-			ex.printStackTrace();
-			throw new RuntimeException(ex);
 		}
 	}
 
+	/**
+	 * Returns leaf content, from cache if there is one.
+	 */
+	private LeafCache.Leaf getLeaf(OEMM.Node current)
+	{
+		if (cache != null)
+			return cache.get(current.leafIndex);
+		return LeafCache.read(oemm, current);
+	}
+
 	private static void createTriangle(int groupId, Vertex[] vert, boolean readable, boolean writable, Mesh mesh)
 	{
 		Triangle t = mesh.createTriangle(vert[0], vert[1], vert[2]);
@@ -396,6 +381,16 @@ public class MeshReader extends Storage
 				it.advance();
 				OEMM.Node node = oemm.leaves[it.key()];
 				List<FakeNonReadVertex> list = it.value();
+				LeafCache.Leaf data = cache == null ? null : cache.peek(node.leafIndex);
+				if (data != null)
+				{
+					for (FakeNonReadVertex vertex: list) {
+						int i = vertex.getLocalNumber();
+						vertex.moveTo(data.coords[3*i], data.coords[3*i+1], data.coords[3*i+2]);
+						vertex.setReadable(true);
+					}
+					continue;
+				}
 				sortFakeNonReadVertexList(list);
 				FileChannel fch = null;
 				try {
@@ -34,15 +34,22 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.DoubleBuffer;
 import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.ref.SoftReference;
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TLongIntIterator;
+import gnu.trove.map.hash.TLongIntHashMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
+import org.jcae.mesh.amibe.util.WorkerPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -76,7 +83,13 @@ public class RawStorage
 	private static final int bufferSize = (TRIANGLE_SIZE_RAW * VERTEX_SIZE_INDEXED * TRIANGLE_SIZE_INDEXED);
 	private static final ByteBuffer bb = ByteBuffer.allocate(bufferSize);
 	private static final ByteBuffer bbt = ByteBuffer.allocate(bufferSize);
-	private static final ByteBuffer bbpos = ByteBuffer.allocate(8);
+	// Number of triangles mapped into memory at once by parallel readers.
+	// Mapped buffers cannot be unmapped explicitly, they are released by
+	// the garbage collector, so this value must not be too large.
+	private static final int MAPPED_TRIANGLES = 1 << 20;
+	// Buffer size used to dispatch triangles into a leaf.  It must be a
+	// multiple of TRIANGLE_SIZE_DISPATCHED.
+	private static final int DISPATCH_BUFFER_SIZE = 4000;
 
 	public static interface SoupReaderInterface
 	{
@@ -140,6 +153,61 @@ public class RawStorage
 		}
 	}
 
+	/**
+	 * Reads triangles <code>first</code> to <code>last</code> (exclusive) of
+	 * a triangle soup and executes a procedure on them.  File is mapped
+	 * into memory by windows of {@link #MAPPED_TRIANGLES} triangles, so
+	 * that several threads can read distinct parts of the same file
+	 * without sharing buffers.
+	 *
+	 * @param  fc  triangle soup channel
+	 * @param  first  index of first triangle
+	 * @param  last  index of last triangle plus one
+	 * @param  proc  a {@link SoupReaderInterface} instance
+	 */
+	private static void readSoup(FileChannel fc, long first, long last, SoupReaderInterface proc)
+		throws IOException
+	{
+		double [] xyz = new double[3];
+		for (long t = first; t < last; )
+		{
+			int nr = (int) Math.min(last - t, MAPPED_TRIANGLES);
+			MappedByteBuffer buf = fc.map(FileChannel.MapMode.READ_ONLY, t * TRIANGLE_SIZE_RAW, (long) nr * TRIANGLE_SIZE_RAW);
+			for (int n = 0; n < nr; n++)
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					xyz[0] = buf.getDouble();
+					xyz[1] = buf.getDouble();
+					xyz[2] = buf.getDouble();
+					proc.processVertex(i, xyz);
+				}
+				int attribute = buf.getInt();
+				buf.getInt();
+				proc.processTriangle(attribute);
+			}
+			t += nr;
+		}
+	}
+
+	/**
+	 * Splits a triangle soup into contiguous ranges of triangles.
+	 *
+	 * @return an array of size <code>nrChunks+1</code> containing
+	 *   indices of the first triangle of each chunk, followed by
+	 *   the number of triangles.
+	 */
+	private static long [] splitSoup(FileChannel fc, WorkerPool pool)
+		throws IOException
+	{
+		long nrTriangles = fc.size() / TRIANGLE_SIZE_RAW;
+		int chunks = pool.getChunks((int) Math.min(nrTriangles, Integer.MAX_VALUE));
+		long [] ret = new long[chunks + 1];
+		for (int c = 0; c <= chunks; c++)
+			ret[c] = nrTriangles * c / chunks;
+		return ret;
+	}
+
 	/**
 	 * Builds an OEMM and counts the number of triangles which have to be
 	 * assigned to each leaf.
@@ -258,6 +326,204 @@ public class RawStorage
 		}
 	}
 
+	/**
+	 * Counts the number of triangles which have to be assigned to each leaf.
+	 * This method does the same as {@link #countTriangles(OEMM, String, boolean)},
+	 * but triangle soup is split into chunks which are read concurrently.
+	 * Each chunk counts triangles into its own table, and tables are then
+	 * merged, so the resulting OEMM does not depend on the number of threads.
+	 * 
+	 * @param  tree  an OEMM
+	 * @param  soupFile  triangle soup file name
+	 * @param  build  if <code>true</code>, OEMM instance is built.  Otherwise,
+	 *         it is supposed to have already been built.
+	 * @param  pool  worker threads; if <code>null</code>, triangle soup is
+	 *         read by the calling thread
+	 * @return <code>false</code> if a vertex was found outside of octree
+	 *         bounds, <code>true</code> otherwise.
+	 */
+	public static boolean countTriangles(final OEMM tree, String soupFile, final boolean build, WorkerPool pool)
+	{
+		// Cell coordinates are packed into a long, 21 bits are
+		// available for each coordinate.
+		if (pool == null || tree == null || (build && Integer.numberOfTrailingZeros(tree.minCellSize()) + 21 < OEMM.MAXLEVEL))
+			return countTriangles(tree, soupFile, build);
+		logger.info("Count triangles");
+		logger.fine("Reading "+soupFile+" and count triangles with "+pool.getThreads()+" threads");
+		List<CountCells> results;
+		try
+		{
+			FileInputStream in = new FileInputStream(soupFile);
+			final FileChannel fc = in.getChannel();
+			final long [] bounds = splitSoup(fc, pool);
+			List<Callable<CountCells>> tasks = new ArrayList<Callable<CountCells>>(bounds.length - 1);
+			for (int c = 0; c < bounds.length - 1; c++)
+			{
+				final int chunk = c;
+				tasks.add(new Callable<CountCells>()
+				{
+					public CountCells call() throws IOException
+					{
+						CountCells ret = new CountCells(tree, build);
+						readSoup(fc, bounds[chunk], bounds[chunk+1], ret);
+						return ret;
+					}
+				});
+			}
+			results = pool.invokeAll(tasks);
+			in.close();
+		}
+		catch (FileNotFoundException ex)
+		{
+			logger.severe("File "+soupFile+" not found");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading "+soupFile);
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+		// Merge results
+		CountCells total = results.get(0);
+		for (int c = 1; c < results.size(); c++)
+			total.merge(results.get(c));
+		logger.info("Number of triangles: "+total.nrTriangles);
+		if (!tree.checkBoundingBox(total.bbox))
+		{
+			if (!build)
+				throw new RuntimeException("Some vertices of this soup file do not fit octree");
+			tree.setBoundingBox(total.bbox);
+			return false;
+		}
+		if (build)
+		{
+			total.buildCells();
+			tree.printInfos();
+		}
+		else
+		{
+			for (int i = 0; i < tree.getNumberOfLeaves(); i++)
+				tree.leaves[i].tn = total.counts[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Counts triangles of a chunk of triangle soup.  When OEMM is built,
+	 * triangles are counted in deepest cells, which are identified by
+	 * their packed integer coordinates, because OEMM cannot be modified
+	 * concurrently.  Otherwise triangles are counted in existing leaves.
+	 * A triangle is counted once in each distinct cell of its vertices.
+	 */
+	private static final class CountCells implements SoupReaderInterface
+	{
+		private static final long MASK = (1L << 21) - 1L;
+		private final OEMM oemm;
+		private final int shift;
+		private final TLongIntHashMap cells;
+		private final int [] counts;
+		private final long [] keys = new long[3];
+		private final int [] ijk = new int[3];
+		private final double [] bbox = new double[6];
+		private long nrTriangles = 0;
+		CountCells(OEMM o, boolean build)
+		{
+			oemm = o;
+			shift = Integer.numberOfTrailingZeros(oemm.minCellSize());
+			if (build)
+			{
+				cells = new TLongIntHashMap();
+				counts = null;
+			}
+			else
+			{
+				cells = null;
+				counts = new int[oemm.getNumberOfLeaves()];
+			}
+			for (int k = 0; k < 3; k++)
+			{
+				bbox[k] = Double.MAX_VALUE;
+				bbox[k+3] = Double.MIN_VALUE;
+			}
+		}
+		public void processVertex(int i, double [] xyz)
+		{
+			for (int k = 0; k < 3; k++)
+			{
+				if (xyz[k] < bbox[k])
+					bbox[k] = xyz[k];
+				if (xyz[k] > bbox[k+3])
+					bbox[k+3] = xyz[k];
+			}
+			oemm.double2int(xyz, ijk);
+			if (cells != null)
+			{
+				// OEMM.build() ignores bits above MAXLEVEL
+				int mask = (1 << OEMM.MAXLEVEL) - 1;
+				keys[i] = ((((long) (ijk[0] & mask)) >> shift) << 42) |
+				          ((((long) (ijk[1] & mask)) >> shift) << 21) |
+				          (((long) (ijk[2] & mask)) >> shift);
+			}
+			else
+				keys[i] = oemm.search(ijk).leafIndex;
+		}
+		public void processTriangle(int group)
+		{
+			nrTriangles++;
+			add(keys[0]);
+			if (keys[1] != keys[0])
+				add(keys[1]);
+			if (keys[2] != keys[0] && keys[2] != keys[1])
+				add(keys[2]);
+		}
+		private void add(long key)
+		{
+			if (cells != null)
+				cells.adjustOrPutValue(key, 1, 1);
+			else
+				counts[(int) key]++;
+		}
+		private void merge(CountCells that)
+		{
+			nrTriangles += that.nrTriangles;
+			for (int k = 0; k < 3; k++)
+			{
+				if (that.bbox[k] < bbox[k])
+					bbox[k] = that.bbox[k];
+				if (that.bbox[k+3] > bbox[k+3])
+					bbox[k+3] = that.bbox[k+3];
+			}
+			if (cells != null)
+			{
+				for (TLongIntIterator it = that.cells.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					cells.adjustOrPutValue(it.key(), it.value(), it.value());
+				}
+			}
+			else
+			{
+				for (int i = 0; i < counts.length; i++)
+					counts[i] += that.counts[i];
+			}
+		}
+		/** Creates deepest cells and sets their triangle counter. */
+		private void buildCells()
+		{
+			for (TLongIntIterator it = cells.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				long key = it.key();
+				ijk[0] = ((int) ((key >> 42) & MASK)) << shift;
+				ijk[1] = ((int) ((key >> 21) & MASK)) << shift;
+				ijk[2] = ((int) (key & MASK)) << shift;
+				oemm.build(ijk).tn += it.value();
+			}
+		}
+	}
+
 	/**
 	 * Reads a triangle soup and dispatches triangles into an intermediate
 	 * OEMM data structure.
@@ -332,6 +598,229 @@ public class RawStorage
 		}
 	}
 	
+	/**
+	 * Reads a triangle soup and dispatches triangles into an intermediate
+	 * OEMM data structure.  This method does the same as
+	 * {@link #dispatch(OEMM, String, String, String)} and writes the same
+	 * files, but triangle soup is split into chunks which are processed
+	 * concurrently.  Triangles of each chunk are first counted to know where
+	 * they have to be written in each leaf, they are then dispatched into
+	 * per-thread buffers which are flushed with positional writes.
+	 * 
+	 * @param  tree  an OEMM
+	 * @param  soupFile  triangle soup file name
+	 * @param  structFile  output file containing dispatched data structure
+	 * @param  dataFile  dispatched data file
+	 * @param  pool  worker threads; if <code>null</code>, triangle soup is
+	 *         read by the calling thread
+	 */
+	public static void dispatch(final OEMM tree, String soupFile, String structFile, String dataFile, WorkerPool pool)
+	{
+		if (pool == null || tree == null)
+		{
+			dispatch(tree, soupFile, structFile, dataFile);
+			return;
+		}
+		logger.info("Put triangles into a linearized octree");
+		logger.fine("Raw OEMM: compute global offset for raw file");
+		ComputeOffsetProcedure co_proc = new ComputeOffsetProcedure();
+		tree.walk(co_proc);
+		long outputFileSize = co_proc.getOffset();
+		logger.fine("Raw OEMM: compute min/max indices");
+		ComputeMinMaxIndicesProcedure cmmi_proc = new ComputeMinMaxIndicesProcedure();
+		tree.walk(cmmi_proc);
+		
+		logger.fine("Raw OEMM: dispatch triangles into raw OEMM with "+pool.getThreads()+" threads");
+		try
+		{
+			FileInputStream in = new FileInputStream(soupFile);
+			final FileChannel fcIn = in.getChannel();
+			final long [] bounds = splitSoup(fcIn, pool);
+			final int nrChunks = bounds.length - 1;
+			final int nrLeaves = tree.getNumberOfLeaves();
+			//  OEMM.leaves is not set when OEMM has just been built
+			final OEMM.Node [] leaves = new OEMM.Node[nrLeaves];
+			tree.walk(new TraversalProcedure()
+			{
+				@Override
+				public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
+				{
+					if (visit == LEAF)
+						leaves[current.leafIndex] = current;
+					return OK;
+				}
+			});
+
+			//  Count triangles of each chunk in each leaf
+			List<Callable<CountCells>> countTasks = new ArrayList<Callable<CountCells>>(nrChunks);
+			for (int c = 0; c < nrChunks; c++)
+			{
+				final int chunk = c;
+				countTasks.add(new Callable<CountCells>()
+				{
+					public CountCells call() throws IOException
+					{
+						CountCells ret = new CountCells(tree, false);
+						readSoup(fcIn, bounds[chunk], bounds[chunk+1], ret);
+						return ret;
+					}
+				});
+			}
+			List<CountCells> counts = pool.invokeAll(countTasks);
+
+			//  Compute where each chunk starts writing into each leaf
+			final long [][] positions = new long[nrChunks][nrLeaves];
+			for (int i = 0; i < nrLeaves; i++)
+			{
+				OEMM.Node current = leaves[i];
+				long offset = current.counter + 8L;
+				for (int c = 0; c < nrChunks; c++)
+				{
+					positions[c][i] = offset;
+					offset += TRIANGLE_SIZE_DISPATCHED * (long) counts.get(c).counts[i];
+					current.tn += counts.get(c).counts[i];
+				}
+			}
+			counts = null;
+
+			RandomAccessFile raf = new RandomAccessFile(dataFile, "rw");
+			final FileChannel fc = raf.getChannel();
+			raf.setLength(outputFileSize);
+			//  Write leaf headers
+			ByteBuffer header = ByteBuffer.allocate(8);
+			for (int i = 0; i < nrLeaves; i++)
+			{
+				OEMM.Node current = leaves[i];
+				header.clear();
+				header.putLong(current.counter);
+				header.flip();
+				fc.write(header, current.counter);
+			}
+
+			List<Callable<Object>> dispatchTasks = new ArrayList<Callable<Object>>(nrChunks);
+			for (int c = 0; c < nrChunks; c++)
+			{
+				final int chunk = c;
+				dispatchTasks.add(new Callable<Object>()
+				{
+					public Object call() throws IOException
+					{
+						DispatchChunk dt = new DispatchChunk(tree, fc, positions[chunk]);
+						readSoup(fcIn, bounds[chunk], bounds[chunk+1], dt);
+						dt.flush();
+						return null;
+					}
+				});
+			}
+			pool.invokeAll(dispatchTasks);
+			in.close();
+			raf.close();
+
+			//  WriteStructureProcedure expects counters to have
+			//  been shifted when writing triangles
+			for (int i = 0; i < nrLeaves; i++)
+			{
+				OEMM.Node current = leaves[i];
+				current.counter += 8L + TRIANGLE_SIZE_DISPATCHED * (long) current.tn;
+			}
+			
+			//  Write octree data structure onto disk
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(structFile)));
+			WriteStructureProcedure wh_proc = new WriteStructureProcedure(out, dataFile, nrLeaves, tree.x0);
+			tree.walk(wh_proc);
+			out.close();
+		}
+		catch (FileNotFoundException ex)
+		{
+			logger.severe("File "+soupFile+" not found");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading file  "+soupFile);
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Dispatches triangles of a chunk of triangle soup.  Each chunk writes
+	 * into its own part of leaf blocks.
+	 */
+	private static final class DispatchChunk implements SoupReaderInterface
+	{
+		private final int [] leaf = new int[3];
+		private final int [] ijk9 = new int[9];
+		private final OEMM oemm;
+		private final FileChannel fc;
+		private final long [] positions;
+		private final ByteBuffer [] buffers;
+		DispatchChunk(OEMM o, FileChannel f, long [] p)
+		{
+			oemm = o;
+			fc = f;
+			positions = p;
+			buffers = new ByteBuffer[p.length];
+		}
+		public void processVertex(int i, double [] xyz)
+		{
+			oemm.double2int(xyz, ijk9);
+			leaf[i] = oemm.search(ijk9).leafIndex;
+			if (i < 2)
+			{
+				System.arraycopy(ijk9, 0, ijk9, 3 * i + 3, 3);
+			}
+		}
+		public void processTriangle(int group)
+		{
+			try
+			{
+				add(leaf[0], group);
+				if (leaf[1] != leaf[0])
+					add(leaf[1], group);
+				if (leaf[2] != leaf[0] && leaf[2] != leaf[1])
+					add(leaf[2], group);
+			}
+			catch (IOException ex)
+			{
+				logger.severe("I/O error when writing dispatched file");
+				ex.printStackTrace();
+				throw new RuntimeException(ex);
+			}
+		}
+		private void add(int index, int attribute) throws IOException
+		{
+			ByteBuffer list = buffers[index];
+			if (list == null)
+			{
+				list = ByteBuffer.allocate(DISPATCH_BUFFER_SIZE);
+				buffers[index] = list;
+			}
+			else if (!list.hasRemaining())
+				write(index);
+			for (int i = 0; i < ijk9.length; i++)
+				list.putInt(ijk9[i]);
+			list.putInt(attribute);
+		}
+		private void write(int index) throws IOException
+		{
+			ByteBuffer list = buffers[index];
+			list.flip();
+			while (list.hasRemaining())
+				positions[index] += fc.write(list, positions[index]);
+			list.clear();
+		}
+		private void flush() throws IOException
+		{
+			for (int i = 0; i < buffers.length; i++)
+			{
+				if (buffers[i] != null && buffers[i].position() > 0)
+					write(i);
+			}
+		}
+	}
+
 	private static final class DispatchTriangles implements SoupReaderInterface
 	{
 		private final OEMM.Node [] cells = new OEMM.Node[3];
@@ -667,26 +1156,163 @@ public class RawStorage
 		}
 	}
 	
-	private static class IndexInternalVerticesProcedure extends TraversalProcedure
+	/**
+	 * Transforms dispatched file into an OEMM.  This method does the same
+	 * as {@link #indexOEMM(String, String)} and writes the same files, but
+	 * leaves are indexed concurrently.  Only OEMM structure is written
+	 * sequentially, because global indices depend on previous leaves.
+	 *
+	 * @param structFile  dispatched file.
+	 * @param outDir  directory in which OEMM structure will be stored.
+	 * @param pool  worker threads; if <code>null</code>, leaves are indexed
+	 *        by the calling thread
+	 */
+	public static void indexOEMM(String structFile, final String outDir, WorkerPool pool)
 	{
-		private final FileChannel fc;
-		private final ObjectOutputStream oos;
-		private final String outDir;
-		private int globalIndex = 0;
-		private final ArrayList<String> path = new ArrayList<String>();
-		private final int [] ijk = new int[3];
-		private int room = 0;
-		IndexInternalVerticesProcedure(FileInputStream in, ObjectOutputStream headerOut, String dir)
+		if (pool == null)
 		{
-			fc = in.getChannel();
-			outDir = dir;
-			oos = headerOut;
+			indexOEMM(structFile, outDir);
+			return;
 		}
-		@Override
-		public void init(OEMM oemm)
+		try
 		{
-			super.init(oemm);
-			room = (Integer.MAX_VALUE - 3*oemm.root.tn) / oemm.getNumberOfLeaves();
+			OEMM ret = readDispatchedStructure(structFile);
+			if (logger.isLoggable(Level.FINE))
+				ret.printInfos();
+			logger.info("Write octree cells onto disk");
+			OEMM fake = new OEMM(outDir);
+			logger.fine("Store data header on disk");
+			new File(outDir).mkdirs();
+			ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(new File(fake.getFileName())));
+			oos.writeObject(ret);
+			oos.writeObject(Integer.valueOf(ret.getNumberOfLeaves()));
+			
+			//  Create leaf directories
+			ret.walk(new LeafPathProcedure(outDir)
+			{
+				@Override
+				int processLeaf(OEMM oemm, OEMM.Node current)
+				{
+					return OK;
+				}
+			});
+
+			//  Index internal vertices
+			logger.fine("Index internal vertices with "+pool.getThreads()+" threads");
+			FileInputStream fis = new FileInputStream(ret.getDirectory());
+			final FileChannel fc = fis.getChannel();
+			final int [] tCount = new int[ret.getNumberOfLeaves()];
+			AtomicInteger next = new AtomicInteger();
+			List<LeafTask> tasks = new ArrayList<LeafTask>(pool.getThreads());
+			for (int t = 0; t < pool.getThreads(); t++)
+			{
+				tasks.add(new LeafTask(ret, next)
+				{
+					@Override
+					void process(OEMM oemm, OEMM.Node current)
+					{
+						tCount[current.leafIndex] = indexInternalVertices(oemm, current, fc, outDir, buffer, bufferT);
+					}
+				});
+			}
+			pool.invokeAll(tasks);
+			int globalIndex = 0;
+			int room = indexRoom(ret);
+			for (int i = 0; i < ret.getNumberOfLeaves(); i++)
+				globalIndex = writeIndexedNode(oos, ret.leaves[i], tCount[i], globalIndex, room);
+			oos.close();
+			
+			//  Index external vertices
+			logger.fine("Index external vertices with "+pool.getThreads()+" threads");
+			ret.setDirectory(outDir);
+			next.set(0);
+			tasks.clear();
+			for (int t = 0; t < pool.getThreads(); t++)
+			{
+				tasks.add(new LeafTask(ret, next)
+				{
+					private final VertexTreeCache cache = new VertexTreeCache(oemm);
+					@Override
+					void process(OEMM oemm, OEMM.Node current)
+					{
+						if (logger.isLoggable(Level.FINE))
+							logger.fine("Indexing external vertices of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
+						cache.load(current, buffer);
+						indexExternalVertices(oemm, current, fc, cache.vertices, buffer, bufferT);
+						cache.release(current);
+					}
+				});
+			}
+			pool.invokeAll(tasks);
+			fis.close();
+			
+			//  Transform vertex coordinates into doubles
+			logger.fine("Transform vertex coordinates into doubles");
+			next.set(0);
+			tasks.clear();
+			for (int t = 0; t < pool.getThreads(); t++)
+			{
+				tasks.add(new LeafTask(ret, next)
+				{
+					@Override
+					void process(OEMM oemm, OEMM.Node current)
+					{
+						convertVertexCoordinates(oemm, current, buffer, bufferT);
+					}
+				});
+			}
+			pool.invokeAll(tasks);
+		}
+		catch (FileNotFoundException ex)
+		{
+			logger.severe("File "+structFile+" not found");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading file  "+structFile);
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Processes leaves of an OEMM.  Several tasks share the same leaf
+	 * counter, so that each leaf is processed by a single task.  Each task
+	 * has its own buffers.
+	 */
+	private abstract static class LeafTask implements Callable<Object>
+	{
+		final OEMM oemm;
+		final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+		final ByteBuffer bufferT = ByteBuffer.allocate(bufferSize);
+		private final AtomicInteger next;
+		LeafTask(OEMM o, AtomicInteger counter)
+		{
+			oemm = o;
+			next = counter;
+		}
+		public final Object call()
+		{
+			for (int i = next.getAndIncrement(); i < oemm.getNumberOfLeaves(); i = next.getAndIncrement())
+				process(oemm, oemm.leaves[i]);
+			return null;
+		}
+		abstract void process(OEMM oemm, OEMM.Node current);
+	}
+	
+	/**
+	 * Creates directories of leaves.  Leaf directories are named after the
+	 * local number of their ancestors.
+	 */
+	private abstract static class LeafPathProcedure extends TraversalProcedure
+	{
+		final String outDir;
+		private final ArrayList<String> path = new ArrayList<String>();
+		LeafPathProcedure(String dir)
+		{
+			outDir = dir;
 		}
 		@Override
 		public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
@@ -704,11 +1330,6 @@ public class RawStorage
 				return OK;
 			}
 			
-			if (logger.isLoggable(Level.FINE))
-				logger.fine("Indexing internal vertices of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
-			ijk[0] = current.i0;
-			ijk[1] = current.j0;
-			ijk[2] = current.k0;
 			if (path.size() > 0)
 			{
 				StringBuilder sbdir = new StringBuilder(path.get(0));
@@ -724,184 +1345,262 @@ public class RawStorage
 				new File(outDir).mkdirs();
 				current.setPathComponents(null, octant);
 			}
-			PAVLTreeIntArrayDup inner = new PAVLTreeIntArrayDup();
-			PAVLTreeIntArrayDup outer = new PAVLTreeIntArrayDup();
-			int nrExternal = 0;
-			int nrDuplicates = 0;
-			int index = 0;
-			int fakeIndex = 0;
-			TIntHashSet [] localAdjSet = new TIntHashSet[3*current.tn];
-			//  Leaves have less than 256 neighbors
-			TIntHashSet set = new TIntHashSet(256);
-			current.adjLeaves = new TIntArrayList(20);
+			return processLeaf(oemm, current);
+		}
+		abstract int processLeaf(OEMM oemm, OEMM.Node current);
+	}
+
+	private static class IndexInternalVerticesProcedure extends LeafPathProcedure
+	{
+		private final FileChannel fc;
+		private final ObjectOutputStream oos;
+		private int globalIndex = 0;
+		private int room = 0;
+		IndexInternalVerticesProcedure(FileInputStream in, ObjectOutputStream headerOut, String dir)
+		{
+			super(dir);
+			fc = in.getChannel();
+			oos = headerOut;
+		}
+		@Override
+		public void init(OEMM oemm)
+		{
+			super.init(oemm);
+			room = indexRoom(oemm);
+		}
+		@Override
+		final int processLeaf(OEMM oemm, OEMM.Node current)
+		{
+			int tCount = indexInternalVertices(oemm, current, fc, outDir, bb, bbt);
 			try
 			{
-				int [] leaf = new int[3];
-				int [] pointIndex = new int[3];
-				fc.position(current.counter);
-				bbpos.rewind();
-				fc.read(bbpos);
-				bbpos.flip();
-				long pos = bbpos.getLong();
-				assert pos == current.counter : ""+pos+" != "+current.counter;
-				bb.clear();
-				IntBuffer bbI = bb.asIntBuffer();
-				int tCount = 0;
-				int remaining = current.tn;
-				// In this first loop, vertices are read from
-				// intermediate OEMM file.  Internal vertices
-				// are written into fcv via bbt buffer.
-				// As bbt and bb have the same size, bbtI
-				// does not overflow.
-				// TODO: write directly into final "v" file.
-				FileChannel fcv = new FileOutputStream(new File(outDir, current.file+"i")).getChannel();
-				bbt.clear();
-				IntBuffer bbtI = bbt.asIntBuffer();
-				for (int nblock = (remaining * TRIANGLE_SIZE_DISPATCHED) / bufferSize; nblock >= 0; --nblock)
+				globalIndex = writeIndexedNode(oos, current, tCount, globalIndex, room);
+			}
+			catch (IOException ex)
+			{
+				logger.severe("I/O error when writing OEMM structure");
+				ex.printStackTrace();
+				throw new RuntimeException(ex);
+			}
+			return OK;
+		}
+	}
+
+	/**
+	 * Returns the number of indices reserved for vertices which will be
+	 * added into each leaf.
+	 */
+	private static int indexRoom(OEMM oemm)
+	{
+		return (Integer.MAX_VALUE - 3*oemm.root.tn) / oemm.getNumberOfLeaves();
+	}
+
+	/**
+	 * Sets global indices of a leaf and writes it into OEMM structure.
+	 *
+	 * @return first global index of next leaf
+	 */
+	private static int writeIndexedNode(ObjectOutputStream oos, OEMM.Node current, int tCount, int globalIndex, int room)
+		throws IOException
+	{
+		//  Adjust data information
+		current.minIndex = globalIndex;
+		current.maxIndex = globalIndex + current.vn + room - 1;
+		// tCount will be the number of triangles
+		// written onto disk, but we still need the
+		// old value.
+		int tn = current.tn;
+		current.tn = tCount;
+		oos.writeObject(current);
+		current.tn = tn;
+		return globalIndex + current.vn + room;
+	}
+
+	/**
+	 * Indexes internal vertices of a leaf.  Internal vertices are written
+	 * into a file with an "i" suffix, and leaves adjacent to these
+	 * vertices into a file with an "a" suffix.  Leaves can be processed
+	 * concurrently if each thread has its own buffers.
+	 *
+	 * @return number of triangles which will be stored in this leaf
+	 */
+	private static int indexInternalVertices(OEMM oemm, OEMM.Node current, FileChannel fc, String outDir, ByteBuffer bb, ByteBuffer bbt)
+	{
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Indexing internal vertices of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
+		int [] ijk = new int[3];
+		PAVLTreeIntArrayDup inner = new PAVLTreeIntArrayDup();
+		PAVLTreeIntArrayDup outer = new PAVLTreeIntArrayDup();
+		int nrExternal = 0;
+		int nrDuplicates = 0;
+		int index = 0;
+		int fakeIndex = 0;
+		int tCount = 0;
+		TIntHashSet [] localAdjSet = new TIntHashSet[3*current.tn];
+		//  Leaves have less than 256 neighbors
+		TIntHashSet set = new TIntHashSet(256);
+		current.adjLeaves = new TIntArrayList(20);
+		try
+		{
+			int [] leaf = new int[3];
+			int [] pointIndex = new int[3];
+			long position = readLeafHeader(fc, current);
+			bb.clear();
+			IntBuffer bbI = bb.asIntBuffer();
+			int remaining = current.tn;
+			// In this first loop, vertices are read from
+			// intermediate OEMM file.  Internal vertices
+			// are written into fcv via bbt buffer.
+			// As bbt and bb have the same size, bbtI
+			// does not overflow.
+			// TODO: write directly into final "v" file.
+			FileChannel fcv = new FileOutputStream(new File(outDir, current.file+"i")).getChannel();
+			bbt.clear();
+			IntBuffer bbtI = bbt.asIntBuffer();
+			for (int nblock = (remaining * TRIANGLE_SIZE_DISPATCHED) / bufferSize; nblock >= 0; --nblock)
+			{
+				bb.rewind();
+				position += Math.max(0, fc.read(bb, position));
+				bbI.rewind();
+				bbtI.rewind();
+				int nf = bufferSize / TRIANGLE_SIZE_DISPATCHED;
+				if (remaining < nf)
+					nf = remaining;
+				remaining -= nf;
+				for(int nr = 0; nr < nf; nr ++)
 				{
-					bb.rewind();
-					fc.read(bb);
-					bbI.rewind();
-					bbtI.rewind();
-					int nf = bufferSize / TRIANGLE_SIZE_DISPATCHED;
-					if (remaining < nf)
-						nf = remaining;
-					remaining -= nf;
-					for(int nr = 0; nr < nf; nr ++)
+					for (int i = 0; i < 3; i++)
 					{
-						for (int i = 0; i < 3; i++)
+						bbI.get(ijk);
+						if (ijk[0] < current.i0 || ijk[0] >= current.i0 + current.size ||
+						    ijk[1] < current.j0 || ijk[1] >= current.j0 + current.size ||
+						    ijk[2] < current.k0 || ijk[2] >= current.k0 + current.size)
 						{
-							bbI.get(ijk);
-							if (ijk[0] < current.i0 || ijk[0] >= current.i0 + current.size ||
-							    ijk[1] < current.j0 || ijk[1] >= current.j0 + current.size ||
-							    ijk[2] < current.k0 || ijk[2] >= current.k0 + current.size)
+							// Find its bounding node to update
+							// adjacency relations.
+							OEMM.Node node = oemm.search(ijk);
+							leaf[i] = node.leafIndex;
+							fakeIndex--;
+							pointIndex[i] = outer.insert(ijk, fakeIndex);
+							if (pointIndex[i] == fakeIndex)
+								nrExternal++;
+							else
+								nrDuplicates++;
+						}
+						else
+						{
+							leaf[i] = current.leafIndex;
+							pointIndex[i] = inner.insert(ijk, index);
+							if (pointIndex[i] == index)
 							{
-								// Find its bounding node to update
-								// adjacency relations.
-								OEMM.Node node = oemm.search(ijk);
-								leaf[i] = node.leafIndex;
-								fakeIndex--;
-								pointIndex[i] = outer.insert(ijk, fakeIndex);
-								if (pointIndex[i] == fakeIndex)
-									nrExternal++;
-								else
-									nrDuplicates++;
+								bbtI.put(ijk);
+								localAdjSet[index] = new TIntHashSet();
+								index++;
 							}
 							else
 							{
-								leaf[i] = current.leafIndex;
-								pointIndex[i] = inner.insert(ijk, index);
-								if (pointIndex[i] == index)
-								{
-									bbtI.put(ijk);
-									localAdjSet[index] = new TIntHashSet();
-									index++;
-								}
-								else
-								{
-									nrDuplicates++;
-								}
+								nrDuplicates++;
 							}
-							assert (leaf[i] == current.leafIndex && pointIndex[i] >= 0) || (leaf[i] != current.leafIndex && pointIndex[i] < 0);
 						}
-						//  Group number
-						bbI.get();
-						for (int i = 0; i < 3; i++)
+						assert (leaf[i] == current.leafIndex && pointIndex[i] >= 0) || (leaf[i] != current.leafIndex && pointIndex[i] < 0);
+					}
+					//  Group number
+					bbI.get();
+					for (int i = 0; i < 3; i++)
+					{
+						if (leaf[i] != current.leafIndex)
+							continue;
+						for (int j = 0; j < 3; j++)
 						{
-							if (leaf[i] != current.leafIndex)
+							if (i == j || leaf[j] == current.leafIndex)
 								continue;
-							for (int j = 0; j < 3; j++)
+							if (!set.contains(leaf[j]))
 							{
-								if (i == j || leaf[j] == current.leafIndex)
-									continue;
-								if (!set.contains(leaf[j]))
-								{
-									set.add(leaf[j]);
-									current.adjLeaves.add(leaf[j]);
-								}
-								localAdjSet[pointIndex[i]].add(leaf[j]);
+								set.add(leaf[j]);
+								current.adjLeaves.add(leaf[j]);
 							}
+							localAdjSet[pointIndex[i]].add(leaf[j]);
 						}
-						//  Triangles are stored in the node with lowest leafIndex
-						if (leaf[0] >= current.leafIndex && leaf[1] >= current.leafIndex && leaf[2] >= current.leafIndex )
-							tCount++;
 					}
-					bbt.position(4*bbtI.position());
-					bbt.flip();
-					fcv.write(bbt);
-					bbt.clear();
+					//  Triangles are stored in the node with lowest leafIndex
+					if (leaf[0] >= current.leafIndex && leaf[1] >= current.leafIndex && leaf[2] >= current.leafIndex )
+						tCount++;
 				}
-				fcv.close();
+				bbt.position(4*bbtI.position());
+				bbt.flip();
+				fcv.write(bbt);
+				bbt.clear();
+			}
+			fcv.close();
 
-				//  Adjust data information
-				current.vn = index;
-				current.minIndex = globalIndex;
-				current.maxIndex = globalIndex + current.vn + room - 1;
-				globalIndex += index + room;
-				
-				current.adjLeaves = new TIntArrayList(set.size());
-				TIntIntHashMap invMap = new TIntIntHashMap(set.size());
-				int cnt = 0;
-				for (TIntIterator it = set.iterator(); it.hasNext();)
-				{
-					int ind = it.next();
-					current.adjLeaves.add(ind);
-					invMap.put(ind, cnt);
-					cnt++;
-				}
-				// tCount will be the number of triangles
-				// written onto disk, but we still need the
-				// old value.
-				int tn = current.tn;
-				current.tn = tCount;
-				oos.writeObject(current);
-				current.tn = tn;
-				
-				FileChannel fca = new FileOutputStream(new File(outDir, current.file+"a")).getChannel();
-				bb.clear();
-				//  Inner vertices of this node
-				int freeSpace = bb.capacity();
-				for (int i = 0; i < index; i++)
-				{
-					int n = localAdjSet[i].size();
-					if (freeSpace < 1 + n)
-					{
-						bb.flip();
-						fca.write(bb);
-						bb.clear();
-						freeSpace = bb.capacity();
-					}
-					//     Adjacent leaves
-					bb.put((byte) n);
-					for (TIntIterator it = localAdjSet[i].iterator(); it.hasNext();)
-						bb.put((byte) invMap.get(it.next()));
-					freeSpace -= 1 + n;
-				}
-				bb.flip();
-				fca.write(bb);
-				//  Triangles will be written during 2nd pass
-				fca.close();
+			current.vn = index;
+			current.adjLeaves = new TIntArrayList(set.size());
+			TIntIntHashMap invMap = new TIntIntHashMap(set.size());
+			int cnt = 0;
+			for (TIntIterator it = set.iterator(); it.hasNext();)
+			{
+				int ind = it.next();
+				current.adjLeaves.add(ind);
+				invMap.put(ind, cnt);
+				cnt++;
 			}
-			catch (IOException ex)
+			
+			FileChannel fca = new FileOutputStream(new File(outDir, current.file+"a")).getChannel();
+			bb.clear();
+			//  Inner vertices of this node
+			int freeSpace = bb.capacity();
+			for (int i = 0; i < index; i++)
 			{
-				logger.severe("I/O error when reading intermediate file");
-				ex.printStackTrace();
-				throw new RuntimeException(ex);
+				int n = localAdjSet[i].size();
+				if (freeSpace < 1 + n)
+				{
+					bb.flip();
+					fca.write(bb);
+					bb.clear();
+					freeSpace = bb.capacity();
+				}
+				//     Adjacent leaves
+				bb.put((byte) n);
+				for (TIntIterator it = localAdjSet[i].iterator(); it.hasNext();)
+					bb.put((byte) invMap.get(it.next()));
+				freeSpace -= 1 + n;
 			}
-			logger.fine("number of internal vertices: "+index);
-			logger.fine("number of external vertices: "+nrExternal);
-			logger.fine("number of duplicated vertices: "+nrDuplicates);
-			return OK;
+			bb.flip();
+			fca.write(bb);
+			//  Triangles will be written during 2nd pass
+			fca.close();
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when reading intermediate file");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
 		}
+		logger.fine("number of internal vertices: "+index);
+		logger.fine("number of external vertices: "+nrExternal);
+		logger.fine("number of duplicated vertices: "+nrDuplicates);
+		return tCount;
+	}
+
+	/**
+	 * Reads the header of a leaf in dispatched file.
+	 *
+	 * @return position of first triangle of this leaf
+	 */
+	private static long readLeafHeader(FileChannel fc, OEMM.Node current) throws IOException
+	{
+		ByteBuffer bbpos = ByteBuffer.allocate(8);
+		fc.read(bbpos, current.counter);
+		bbpos.flip();
+		long pos = bbpos.getLong();
+		assert pos == current.counter : ""+pos+" != "+current.counter;
+		return current.counter + 8L;
 	}
 	
 	private static class IndexExternalVerticesProcedure extends TraversalProcedure
 	{
 		private final FileChannel fc;
-		private final int [] ijk = new int[3];
-		private PAVLTreeIntArrayDup [] vertices;
-		private SoftReference<PAVLTreeIntArrayDup> [] sr;
-		private int nr_ld_leaves = 0;
+		private VertexTreeCache cache;
 		IndexExternalVerticesProcedure(FileInputStream in)
 		{
 			fc = in.getChannel();
@@ -909,8 +1608,7 @@ public class RawStorage
 		@Override
 		public void init(OEMM oemm)
 		{
-			vertices = new PAVLTreeIntArrayDup[oemm.getNumberOfLeaves()];
-			sr = new SoftReference[vertices.length];
+			cache = new VertexTreeCache(oemm);
 		}
 		@Override
 		public final int action(OEMM oemm, OEMM.Node current, int octant, int visit)
@@ -919,110 +1617,143 @@ public class RawStorage
 				return OK;
 			if (logger.isLoggable(Level.FINE))
 				logger.fine("Indexing external vertices of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
-			return processIndexExternalVerticesProcedure(oemm, current);
+			cache.load(current, bb);
+			indexExternalVertices(oemm, current, fc, cache.vertices, bb, bbt);
+			cache.release(current);
+			return OK;
+		}
+		@Override
+		public void finish(OEMM oemm)
+		{
+			logger.fine("Total number of leaves loaded: "+cache.nrLoadedLeaves);
+		}
+	}
+
+	/**
+	 * Internal vertices of leaves, loaded from files with an "i" suffix.
+	 * Trees are kept in memory as long as possible, because they are
+	 * also needed when adjacent leaves are processed.  Trees are not
+	 * thread-safe, each thread must have its own cache.
+	 */
+	private static final class VertexTreeCache
+	{
+		private final OEMM oemm;
+		private final PAVLTreeIntArrayDup [] vertices;
+		private final SoftReference<PAVLTreeIntArrayDup> [] sr;
+		private int nrLoadedLeaves = 0;
+		@SuppressWarnings("unchecked")
+		VertexTreeCache(OEMM o)
+		{
+			oemm = o;
+			vertices = new PAVLTreeIntArrayDup[oemm.getNumberOfLeaves()];
+			sr = new SoftReference[vertices.length];
+		}
+
+		/** Loads trees of a leaf and its adjacent leaves */
+		private void load(OEMM.Node current, ByteBuffer buffer)
+		{
+			load(current.leafIndex, buffer);
+			for (int i = 0; i < current.adjLeaves.size(); i++)
+				load(current.adjLeaves.get(i), buffer);
 		}
 
-		private void loadVerticesFromCache(OEMM oemm, int i)
+		private void load(int i, ByteBuffer buffer)
 		{
 			assert vertices[i] == null;
 			if (sr[i] != null)
 				vertices[i] = sr[i].get();
 			if (vertices[i] == null)
 			{
-				vertices[i] = loadVerticesInAVLTreeDup(oemm.getDirectory(), oemm.leaves[i]);
+				vertices[i] = loadVerticesInAVLTreeDup(oemm.getDirectory(), oemm.leaves[i], buffer);
 				sr[i] = new SoftReference<PAVLTreeIntArrayDup>(vertices[i]); 
-				nr_ld_leaves++;
+				nrLoadedLeaves++;
 			}
 		}
 
-		private int processIndexExternalVerticesProcedure(OEMM oemm, OEMM.Node current)
+		/** Clears strong references */
+		private void release(OEMM.Node current)
 		{
-			loadVerticesFromCache(oemm, current.leafIndex);
+			vertices[current.leafIndex] = null;
 			for (int i = 0; i < current.adjLeaves.size(); i++)
-				loadVerticesFromCache(oemm, current.adjLeaves.get(i));
-			
-			try
+				vertices[current.adjLeaves.get(i)] = null;
+		}
+	}
+
+	/**
+	 * Writes triangles of a leaf into a file with a "t" suffix.  Leaves
+	 * can be processed concurrently if each thread has its own buffers
+	 * and trees.
+	 *
+	 * @param vertices  internal vertices of all leaves, only trees of
+	 *    <code>current</code> and its adjacent leaves are used
+	 */
+	private static void indexExternalVertices(OEMM oemm, OEMM.Node current, FileChannel fc, PAVLTreeIntArrayDup [] vertices, ByteBuffer bb, ByteBuffer bbt)
+	{
+		int [] ijk = new int[3];
+		try
+		{
+			int [] leaf = new int[3];
+			int [] pointIndex = new int[3];
+			long position = readLeafHeader(fc, current);
+			FileChannel fct = new FileOutputStream(new File(oemm.getDirectory(), current.file+"t")).getChannel();
+			bb.clear();
+			IntBuffer bbI = bb.asIntBuffer();
+			bbt.clear();
+			IntBuffer bbtI = bbt.asIntBuffer();
+			int remaining = current.tn;
+			// If TRIANGLE_SIZE_INDEXED > TRIANGLE_SIZE_DISPATCHED
+			// the following loop must be fixed to use the larger
+			// value.
+			for (int nblock = (remaining * TRIANGLE_SIZE_DISPATCHED) / bufferSize; nblock >= 0; --nblock)
 			{
-				int [] leaf = new int[3];
-				int [] pointIndex = new int[3];
-				fc.position(current.counter);
-				bbpos.rewind();
-				fc.read(bbpos);
-				bbpos.flip();
-				long pos = bbpos.getLong();
-				assert pos == current.counter : ""+pos+" != "+current.counter;
-				FileChannel fct = new FileOutputStream(new File(oemm.getDirectory(), current.file+"t")).getChannel();
-				bb.clear();
-				IntBuffer bbI = bb.asIntBuffer();
-				bbt.clear();
-				IntBuffer bbtI = bbt.asIntBuffer();
-				int remaining = current.tn;
-				// If TRIANGLE_SIZE_INDEXED > TRIANGLE_SIZE_DISPATCHED
-				// the following loop must be fixed to use the larger
-				// value.
-				for (int nblock = (remaining * TRIANGLE_SIZE_DISPATCHED) / bufferSize; nblock >= 0; --nblock)
+				bb.rewind();
+				position += Math.max(0, fc.read(bb, position));
+				bbI.rewind();
+				int nf = bufferSize / TRIANGLE_SIZE_DISPATCHED;
+				if (remaining < nf)
+					nf = remaining;
+				remaining -= nf;
+				for(int nr = 0; nr < nf; nr ++)
 				{
-					bb.rewind();
-					fc.read(bb);
-					bbI.rewind();
-					int nf = bufferSize / TRIANGLE_SIZE_DISPATCHED;
-					if (remaining < nf)
-						nf = remaining;
-					remaining -= nf;
-					for(int nr = 0; nr < nf; nr ++)
+					for (int i = 0; i < 3; i++)
 					{
-						for (int i = 0; i < 3; i++)
+						bbI.get(ijk);
+						leaf[i] = oemm.search(ijk).leafIndex;
+						pointIndex[i] = vertices[leaf[i]].get(ijk);
+					}
+					int groupNumber = bbI.get();
+					if (leaf[0] >= current.leafIndex && leaf[1] >= current.leafIndex && leaf[2] >= current.leafIndex)
+					{
+						bbtI.put(leaf);
+						bbtI.put(pointIndex);
+						bbtI.put(groupNumber);
+						if (!bbtI.hasRemaining())
 						{
-							bbI.get(ijk);
-							leaf[i] = oemm.search(ijk).leafIndex;
-							pointIndex[i] = vertices[leaf[i]].get(ijk);
-						}
-						int groupNumber = bbI.get();
-						if (leaf[0] >= current.leafIndex && leaf[1] >= current.leafIndex && leaf[2] >= current.leafIndex)
-						{
-							bbtI.put(leaf);
-							bbtI.put(pointIndex);
-							bbtI.put(groupNumber);
-							if (!bbtI.hasRemaining())
-							{
-								bbt.clear();
-								fct.write(bbt);
-								bbtI.rewind();
-							}
+							bbt.clear();
+							fct.write(bbt);
+							bbtI.rewind();
 						}
 					}
 				}
-				if (bbtI.position() > 0)
-				{
-					bbt.position(4*bbtI.position());
-					bbt.flip();
-					fct.write(bbt);
-				}
-				fct.close();
 			}
-			catch (IOException ex)
+			if (bbtI.position() > 0)
 			{
-				logger.severe("I/O error when reading intermediate file");
-				ex.printStackTrace();
-				throw new RuntimeException(ex);
+				bbt.position(4*bbtI.position());
+				bbt.flip();
+				fct.write(bbt);
 			}
-			// Clear strong references
-			vertices[current.leafIndex] = null;
-			for (int i = 0; i < current.adjLeaves.size(); i++)
-				vertices[current.adjLeaves.get(i)] = null;
-			return OK;
+			fct.close();
 		}
-		@Override
-		public void finish(OEMM oemm)
+		catch (IOException ex)
 		{
-			logger.fine("Total number of leaves loaded: "+nr_ld_leaves);
+			logger.severe("I/O error when reading intermediate file");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
 		}
 	}
 	
 	private static class ConvertVertexCoordinatesProcedure extends TraversalProcedure
 	{
-		private final int [] ijk = new int[3];
-		private final double [] xyz = new double[3];
 		ConvertVertexCoordinatesProcedure()
 		{
 		}
@@ -1031,55 +1762,67 @@ public class RawStorage
 		{
 			if (visit != LEAF)
 				return OK;
-			if (logger.isLoggable(Level.FINE))
-				logger.fine("Converting coordinates of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
-			
-			try
+			convertVertexCoordinates(oemm, current, bb, bbt);
+			return OK;
+		}
+	}
+
+	/**
+	 * Converts integer coordinates of file with an "i" suffix into
+	 * double coordinates, which are written into a file with a "v" suffix.
+	 * Leaves can be processed concurrently if each thread has its own
+	 * buffers.
+	 */
+	private static void convertVertexCoordinates(OEMM oemm, OEMM.Node current, ByteBuffer bb, ByteBuffer bbt)
+	{
+		if (logger.isLoggable(Level.FINE))
+			logger.fine("Converting coordinates of node "+(current.leafIndex+1)+"/"+oemm.getNumberOfLeaves());
+		int [] ijk = new int[3];
+		double [] xyz = new double[3];
+		try
+		{
+			FileChannel fci = new FileInputStream(new File(oemm.getDirectory(), current.file+"i")).getChannel();
+			FileChannel fco = new FileOutputStream(new File(oemm.getDirectory(), current.file+"v")).getChannel();
+			bb.clear();
+			IntBuffer bbI = bb.asIntBuffer();
+			bbt.clear();
+			DoubleBuffer bbtD = bbt.asDoubleBuffer();
+			bb.limit(bb.capacity() / 2);
+			int remaining = current.vn;
+			for (int nblock = (remaining * 2 * VERTEX_SIZE_INDEXED) / bufferSize; nblock >= 0; --nblock)
 			{
-				FileChannel fci = new FileInputStream(new File(oemm.getDirectory(), current.file+"i")).getChannel();
-				FileChannel fco = new FileOutputStream(new File(oemm.getDirectory(), current.file+"v")).getChannel();
-				bb.clear();
-				IntBuffer bbI = bb.asIntBuffer();
-				bbt.clear();
-				DoubleBuffer bbtD = bbt.asDoubleBuffer();
-				bb.limit(bb.capacity() / 2);
-				int remaining = current.vn;
-				for (int nblock = (remaining * 2 * VERTEX_SIZE_INDEXED) / bufferSize; nblock >= 0; --nblock)
+				bb.rewind();
+				fci.read(bb);
+				bbI.rewind();
+				bbtD.rewind();
+				int nf = bufferSize / VERTEX_SIZE_INDEXED / 2;
+				if (remaining < nf)
+					nf = remaining;
+				remaining -= nf;
+				for(int nr = 0; nr < nf; nr ++)
 				{
-					bb.rewind();
-					fci.read(bb);
-					bbI.rewind();
-					bbtD.rewind();
-					int nf = bufferSize / VERTEX_SIZE_INDEXED / 2;
-					if (remaining < nf)
-						nf = remaining;
-					remaining -= nf;
-					for(int nr = 0; nr < nf; nr ++)
-					{
-						bbI.get(ijk);
-						oemm.int2double(ijk, xyz);
-						bbtD.put(xyz);
-					}
-					bbt.position(8*bbtD.position());
-					bbt.flip();
-					fco.write(bbt);
-					
+					bbI.get(ijk);
+					oemm.int2double(ijk, xyz);
+					bbtD.put(xyz);
 				}
-				fci.close();
-				fco.close();
-				new File(oemm.getDirectory(), current.file+"i").delete();
-			}
-			catch (IOException ex)
-			{
-				logger.severe("I/O error when converting coordinates file");
-				ex.printStackTrace();
-				throw new RuntimeException(ex);
+				bbt.position(8*bbtD.position());
+				bbt.flip();
+				fco.write(bbt);
+				
 			}
-			return OK;
+			fci.close();
+			fco.close();
+			new File(oemm.getDirectory(), current.file+"i").delete();
+		}
+		catch (IOException ex)
+		{
+			logger.severe("I/O error when converting coordinates file");
+			ex.printStackTrace();
+			throw new RuntimeException(ex);
 		}
 	}
 	
-	private static PAVLTreeIntArrayDup loadVerticesInAVLTreeDup(String outDir, OEMM.Node current)
+	private static PAVLTreeIntArrayDup loadVerticesInAVLTreeDup(String outDir, OEMM.Node current, ByteBuffer bb)
 	{
 		PAVLTreeIntArrayDup ret = new PAVLTreeIntArrayDup();
 		int [] ijk = new int[3];
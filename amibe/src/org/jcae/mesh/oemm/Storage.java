@@ -804,7 +804,7 @@ public class Storage
 		}
 	}
 
-	private static File getAdjacencyFile(OEMM oemm, Node node)
+	protected static File getAdjacencyFile(OEMM oemm, Node node)
 	{
 		return new File(oemm.getDirectory(), node.file+"a");
 	}
@@ -0,0 +1,427 @@
+/*
+ * Project Info:  http://jcae.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either version 2.1 of the License, or (at your option)
+ * any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307, USA.
+ *
+ * (C) Copyright 2011, by EADS France
+ */
+package org.jcae.mesh.stitch;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.algos3d.Fuse;
+import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
+import org.jcae.mesh.amibe.ds.Mesh;
+import org.jcae.mesh.amibe.ds.Triangle;
+import org.jcae.mesh.amibe.ds.Vertex;
+import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Stitch all groups of a large assembly.
+ * As with the previous implementation of {@link NonManifoldStitch#stitch(Mesh,
+ * double, double)}, only groups from 1 to {@link Mesh#getNumberOfGroups()}
+ * are stitched, triangles of other groups are left unchanged.
+ * Groups are extracted once from the mesh, and an axis aligned bounding box
+ * inflated by <code>max(maxDistance, tolerance)</code> is computed for each
+ * of them. These boxes are inserted into a uniform grid, so that only pairs
+ * of groups whose boxes overlap are stitched, instead of all pairs. Pairs
+ * are then scheduled into rounds: a pair is put into the round following
+ * the last round of its two groups, so that the pairs of a given group are
+ * stitched in the same order as by {@link NonManifoldStitch#stitch(Mesh,
+ * double, double)}. Pairs of a round do not share any group, each of them
+ * is stitched in its own working mesh, and they are processed concurrently.
+ * Triangles inserted by stitching are added to the kd-tree of the working
+ * mesh by {@link EdgeProjector}, which is never rebuilt.
+ * The result does not depend on the number of threads.
+ */
+public class AssemblyStitch {
+	private final static Logger LOGGER = Logger.getLogger(
+		AssemblyStitch.class.getName());
+	/**
+	 * Groups covering more grid cells than this value are not inserted into
+	 * the grid but compared with all other groups.
+	 */
+	private final static int MAX_CELLS = 512;
+	private final Mesh mesh;
+	private double maxDistance = 10.0, tolerance = 1;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/** Group ids, in increasing order */
+	private int[] groups;
+	/** Coordinates and triangles of groups, as in Mesh.popGroup */
+	private double[][] coordinates;
+	private int[][] triangles;
+	/** Inflated bounding boxes, 6 values per group */
+	private double[] boxes;
+	private int nbPairs, nbRounds;
+	private long partitionTime, pairingTime, stitchTime, fuseTime;
+
+	public AssemblyStitch(Mesh mesh) {
+		this.mesh = mesh;
+	}
+
+	public double getMaxDistance() {
+		return maxDistance;
+	}
+
+	public void setMaxDistance(double maxDistance) {
+		this.maxDistance = maxDistance;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/** Set the tolerance used by stitching and by the final Fuse */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Set the number of threads. All available processors are used by
+	 * default.
+	 */
+	public void setThreads(int n) {
+		threads = n;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/** Return the number of pairs of groups which have been stitched */
+	public int getNumberOfPairs() {
+		return nbPairs;
+	}
+
+	/** Return the number of rounds of concurrent stitching */
+	public int getNumberOfRounds() {
+		return nbRounds;
+	}
+
+	/**
+	 * Return the time spent to extract groups and compute their bounding
+	 * boxes, in milliseconds.
+	 */
+	public double getPartitionTime() {
+		return partitionTime / 1.e6;
+	}
+
+	/**
+	 * Return the time spent to find overlapping groups and to schedule
+	 * pairs, in milliseconds.
+	 */
+	public double getPairingTime() {
+		return pairingTime / 1.e6;
+	}
+
+	/** Return the time spent to stitch pairs, in milliseconds. */
+	public double getStitchTime() {
+		return stitchTime / 1.e6;
+	}
+
+	/**
+	 * Return the time spent to put groups back into the mesh and to fuse
+	 * vertices, in milliseconds.
+	 */
+	public double getFuseTime() {
+		return fuseTime / 1.e6;
+	}
+
+	public void compute() {
+		long t0 = System.nanoTime();
+		partition();
+		long t1 = System.nanoTime();
+		List<TLongArrayList> rounds = schedule(findPairs());
+		long t2 = System.nanoTime();
+		WorkerPool pool = new WorkerPool(threads);
+		try {
+			for(TLongArrayList round: rounds)
+				stitch(pool, round);
+		} finally {
+			pool.shutdown();
+		}
+		long t3 = System.nanoTime();
+		for(int i = 0; i < groups.length; i++)
+		{
+			mesh.pushGroup(coordinates[i], triangles[i], null, groups[i]);
+			coordinates[i] = null;
+			triangles[i] = null;
+		}
+		new Fuse(mesh, tolerance).compute();
+		long t4 = System.nanoTime();
+		partitionTime = t1 - t0;
+		pairingTime = t2 - t1;
+		stitchTime = t3 - t2;
+		fuseTime = t4 - t3;
+		LOGGER.log(Level.INFO, "Stitched {0} pairs of {1} groups in {2} rounds"+
+			" (partition: {3} ms, pairing: {4} ms, stitch: {5} ms, fuse: {6} ms)",
+			new Object[]{nbPairs, groups.length, nbRounds, getPartitionTime(),
+			getPairingTime(), getStitchTime(), getFuseTime()});
+	}
+
+	/**
+	 * Remove triangles of groups 1 to getNumberOfGroups() from the mesh and
+	 * store them by group, in a single pass. Vertices are numbered in the
+	 * same order as Mesh.popGroup.
+	 */
+	private void partition() {
+		TIntObjectHashMap<List<Triangle>> map = new TIntObjectHashMap<List<Triangle>>();
+		Collection<Triangle> meshTriangles = mesh.getTriangles();
+		List<Triangle> kept = new ArrayList<Triangle>();
+		int nbGroups = mesh.getNumberOfGroups();
+		for(Triangle t: meshTriangles)
+		{
+			if(t.hasAttributes(AbstractHalfEdge.OUTER) ||
+				t.getGroupId() < 1 || t.getGroupId() > nbGroups)
+			{
+				kept.add(t);
+				continue;
+			}
+			List<Triangle> l = map.get(t.getGroupId());
+			if(l == null)
+			{
+				l = new ArrayList<Triangle>();
+				map.put(t.getGroupId(), l);
+			}
+			l.add(t);
+		}
+		meshTriangles.clear();
+		meshTriangles.addAll(kept);
+
+		groups = map.keys();
+		Arrays.sort(groups);
+		coordinates = new double[groups.length][];
+		triangles = new int[groups.length][];
+		boxes = new double[6 * groups.length];
+		double margin = Math.max(maxDistance, tolerance);
+		TObjectIntHashMap<Vertex> ids = new TObjectIntHashMap<Vertex>(
+			100, 0.5f, Integer.MIN_VALUE);
+		for(int i = 0; i < groups.length; i++)
+		{
+			List<Triangle> l = map.get(groups[i]);
+			TDoubleArrayList coords = new TDoubleArrayList();
+			int[] trias = new int[3 * l.size()];
+			double[] box = new double[]{
+				Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE,
+				-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+			int k = 0;
+			ids.clear();
+			for(Triangle t: l)
+			{
+				for(int j = 0; j < 3; j++)
+				{
+					Vertex v = t.getV(j);
+					int vid = ids.putIfAbsent(v, ids.size());
+					if(vid == ids.getNoEntryValue())
+					{
+						vid = ids.size() - 1;
+						for(int c = 0; c < 3; c++)
+						{
+							double x = v.get(c);
+							coords.add(x);
+							box[c] = Math.min(box[c], x);
+							box[c + 3] = Math.max(box[c + 3], x);
+						}
+					}
+					trias[k++] = vid;
+				}
+			}
+			coordinates[i] = coords.toArray();
+			triangles[i] = trias;
+			for(int c = 0; c < 3; c++)
+			{
+				boxes[6 * i + c] = box[c] - margin;
+				boxes[6 * i + c + 3] = box[c + 3] + margin;
+			}
+		}
+	}
+
+	private boolean overlap(int i, int j) {
+		for(int c = 0; c < 3; c++)
+		{
+			if(boxes[6 * i + c] > boxes[6 * j + c + 3] ||
+				boxes[6 * j + c] > boxes[6 * i + c + 3])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return pairs of groups whose boxes overlap, sorted by first then
+	 * second group. A pair (i, j) with i &lt; j is encoded as
+	 * <code>i * n + j</code>, where i and j are indices in the groups array.
+	 */
+	private long[] findPairs() {
+		int n = groups.length;
+		if(n < 2)
+			return new long[0];
+		// Cell size is the mean size of boxes, so that most groups cover
+		// a few cells
+		double cellSize = 0;
+		double[] origin = new double[]{
+			Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+		for(int i = 0; i < n; i++)
+		{
+			for(int c = 0; c < 3; c++)
+			{
+				cellSize += boxes[6 * i + c + 3] - boxes[6 * i + c];
+				origin[c] = Math.min(origin[c], boxes[6 * i + c]);
+			}
+		}
+		cellSize /= 3 * n;
+		if(cellSize <= 0)
+			cellSize = 1;
+		// Cell coordinates may overflow 21 bits, this only creates collisions
+		// and overlap is always checked.
+		TLongObjectHashMap<TIntArrayList> grid = new TLongObjectHashMap<TIntArrayList>();
+		TIntArrayList large = new TIntArrayList();
+		int[] range = new int[6];
+		for(int i = 0; i < n; i++)
+		{
+			long nbCells = 1;
+			for(int c = 0; c < 3; c++)
+			{
+				range[c] = (int) ((boxes[6 * i + c] - origin[c]) / cellSize);
+				range[c + 3] = (int) ((boxes[6 * i + c + 3] - origin[c]) / cellSize);
+				nbCells *= range[c + 3] - range[c] + 1;
+			}
+			if(nbCells > MAX_CELLS)
+			{
+				large.add(i);
+				continue;
+			}
+			for(int x = range[0]; x <= range[3]; x++)
+				for(int y = range[1]; y <= range[4]; y++)
+					for(int z = range[2]; z <= range[5]; z++)
+					{
+						long key = ((long) x << 42) | ((long) y << 21) | z;
+						TIntArrayList cell = grid.get(key);
+						if(cell == null)
+						{
+							cell = new TIntArrayList(4);
+							grid.put(key, cell);
+						}
+						cell.add(i);
+					}
+		}
+		TLongHashSet pairs = new TLongHashSet();
+		for(TIntArrayList cell: grid.valueCollection())
+		{
+			for(int k1 = 0; k1 < cell.size(); k1++)
+			{
+				for(int k2 = k1 + 1; k2 < cell.size(); k2++)
+				{
+					int i = cell.getQuick(k1);
+					int j = cell.getQuick(k2);
+					if(overlap(i, j))
+						pairs.add((long) Math.min(i, j) * n + Math.max(i, j));
+				}
+			}
+		}
+		for(int k = 0; k < large.size(); k++)
+		{
+			int i = large.getQuick(k);
+			for(int j = 0; j < n; j++)
+			{
+				if(i != j && overlap(i, j))
+					pairs.add((long) Math.min(i, j) * n + Math.max(i, j));
+			}
+		}
+		long[] toReturn = pairs.toArray();
+		Arrays.sort(toReturn);
+		return toReturn;
+	}
+
+	/**
+	 * Split sorted pairs into rounds, each round containing pairs which do
+	 * not share any group.
+	 */
+	private List<TLongArrayList> schedule(long[] pairs) {
+		int n = groups.length;
+		int[] lastRound = new int[n];
+		Arrays.fill(lastRound, -1);
+		List<TLongArrayList> rounds = new ArrayList<TLongArrayList>();
+		for(long p: pairs)
+		{
+			int i = (int) (p / n);
+			int j = (int) (p % n);
+			int r = Math.max(lastRound[i], lastRound[j]) + 1;
+			if(r == rounds.size())
+				rounds.add(new TLongArrayList());
+			rounds.get(r).add(p);
+			lastRound[i] = r;
+			lastRound[j] = r;
+		}
+		nbPairs = pairs.length;
+		nbRounds = rounds.size();
+		return rounds;
+	}
+
+	private void stitch(WorkerPool pool, TLongArrayList round) {
+		final int n = groups.length;
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(round.size());
+		for(int k = 0; k < round.size(); k++)
+		{
+			final int i = (int) (round.getQuick(k) / n);
+			final int j = (int) (round.getQuick(k) % n);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					stitch(i, j);
+					return null;
+				}
+			});
+		}
+		pool.invokeAll(tasks);
+	}
+
+	/**
+	 * Stitch 2 groups in a new working mesh and store them back. This method
+	 * only modifies entries of these 2 groups, so it can be called
+	 * concurrently on disjoint pairs.
+	 */
+	private void stitch(int i, int j) {
+		Mesh workingMesh = new Mesh(MeshTraitsBuilder.getDefault3D());
+		workingMesh.pushGroup(coordinates[i], triangles[i], null, groups[i]);
+		workingMesh.pushGroup(coordinates[j], triangles[j], null, groups[j]);
+		workingMesh.buildAdjacency();
+		NonManifoldStitch nms = new NonManifoldStitch(workingMesh);
+		nms.setMaxDistance(maxDistance);
+		nms.setTolerance(tolerance);
+		nms.stitchBoth(groups[i], groups[j], 0);
+		TDoubleArrayList tmpCoords = new TDoubleArrayList();
+		TIntArrayList tmpTria = new TIntArrayList();
+		for(int g: new int[]{i, j})
+		{
+			tmpCoords.clear();
+			tmpTria.clear();
+			workingMesh.popGroup(tmpCoords, tmpTria, null, groups[g]);
+			coordinates[g] = tmpCoords.toArray();
+			triangles[g] = tmpTria.toArray();
+		}
+	}
+}
@@ -666,6 +666,9 @@ public class EdgeProjector {
 		}
 		if ((origin && destination) || notProjected) {
 			compteEdgeAABB(edge, aabb);
+			// Triangles are inserted into and removed from kdTree between
+			// queries, so the tree context is used instead of a read-only
+			// TriangleKdTree.QueryContext and queries are not concurrent.
 			kdTree.getNearTriangles(aabb, triangles, group, ignoreGroup);
 		} else {
 			Vertex vv = origin ? edge.destination() : edge.origin();
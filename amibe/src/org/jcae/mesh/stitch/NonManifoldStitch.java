@@ -19,8 +19,6 @@
  */
 package org.jcae.mesh.stitch;
 
-import gnu.trove.list.array.TDoubleArrayList;
-import gnu.trove.list.array.TIntArrayList;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,7 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.jcae.mesh.amibe.algos3d.Fuse;
 import org.jcae.mesh.amibe.algos3d.Skeleton;
 import org.jcae.mesh.amibe.ds.AbstractHalfEdge;
 import org.jcae.mesh.amibe.ds.Mesh;
@@ -188,49 +185,17 @@ public class NonManifoldStitch {
 	}
 
 	/**
-	 * Stitch all borders of groups in the given mesh.
-	 * This implementation is very slow because it recreate a new KdTree for
-	 * each pair of groups. A faster implementation would require that
-	 * EdgeProjector support non-manifold edges which is not yet available.
+	 * Stitch all borders of groups 1 to {@link Mesh#getNumberOfGroups()} in
+	 * the given mesh.
+	 * Only groups whose bounding boxes are closer than maxDist are stitched,
+	 * see {@link AssemblyStitch}.
 	 */
 	public static void stitch(Mesh mesh, double maxDist, double cleanTol)
 	{
-		int nbGroup = mesh.getNumberOfGroups();
-		TDoubleArrayList tmpCoords = new TDoubleArrayList();
-		TIntArrayList tmpTria = new TIntArrayList();
-		for(int gid1 = 1; gid1 < nbGroup; gid1++)
-		{
-			Mesh workingMesh = new Mesh(MeshTraitsBuilder.getDefault3D());
-			tmpTria.clear();
-			tmpCoords.clear();
-			mesh.popGroup(tmpCoords, tmpTria, null, gid1);
-			workingMesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid1);
-			for(int gid2 = gid1+1; gid2 <= nbGroup; gid2++)
-			{
-				tmpTria.clear();
-				tmpCoords.clear();
-				mesh.popGroup(tmpCoords, tmpTria, null, gid2);
-				workingMesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid2);
-
-				workingMesh.clearAdjacency();
-				workingMesh.buildAdjacency();
-				NonManifoldStitch nms = new NonManifoldStitch(workingMesh);
-				nms.setMaxDistance(maxDist);
-				nms.setTolerance(cleanTol);
-				EdgeProjector.saveAsVTK(workingMesh);
-				nms.stitchBoth(gid1, gid2, 0);
-
-				tmpTria.clear();
-				tmpCoords.clear();
-				workingMesh.popGroup(tmpCoords, tmpTria, null, gid2);
-				mesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid2);
-			}
-			tmpTria.clear();
-			tmpCoords.clear();
-			workingMesh.popGroup(tmpCoords, tmpTria, null, gid1);
-			mesh.pushGroup(tmpCoords.toArray(), tmpTria.toArray(), null, gid1);
-		}
-		new Fuse(mesh, cleanTol).compute();
+		AssemblyStitch as = new AssemblyStitch(mesh);
+		as.setMaxDistance(maxDist);
+		as.setTolerance(cleanTol);
+		as.compute();
 	}
 
 	public void stitch(int group1, final int group2, double weight, boolean boundaryOnly) {
@@ -241,7 +206,7 @@ public class NonManifoldStitch {
 		edgeProjector.project();
 	}
 
-	private void stitchBoth(int group1, int group2, double weight)
+	void stitchBoth(int group1, int group2, double weight)
 	{
 		stitch(group1, group2, weight, false);
 		stitch(group2, group1, 1 - weight, false);
@@ -50,31 +50,39 @@ public class Amibe2OFF {
 	public void write(PrintStream out, String groupName) throws SAXException, IOException
 	{
 		SubMesh sm = amibeReader.getSubmeshes().get(0);
-		Group group = sm.getGroup(groupName);
+		MappedMesh mesh = sm.getMappedMesh();
+		MappedMesh group = mesh.getGroup(sm.getGroup(groupName));
 		out.println("OFF");
-		int[] trias = group.readTria3();
-		int[] nodesIds = new TIntHashSet(trias).toArray();
+		int nbt = group.getNumberOfTriangles();
+		TIntHashSet nodeSet = new TIntHashSet(nbt);
+		for(int i = 0; i < nbt; i++)
+			for(int j = 0; j < 3; j++)
+				nodeSet.add(group.getTriangleVertex(i, j));
+		int[] nodesIds = nodeSet.toArray();
+		nodeSet = null;
 		Arrays.sort(nodesIds);
-		out.println(nodesIds.length+" "+group.getNumberOfTrias());
+		out.println(nodesIds.length+" "+nbt);
 		TIntIntHashMap nodeMap = new TIntIntHashMap(nodesIds.length);
-		DoubleFileReader nodes = sm.getNodes();
 		double[] coords = new double[3];
 		int k = 0;
 		for(int id:nodesIds)
 		{
-			nodes.get(3*id, coords);
+			mesh.getNode(id, coords);
 			out.println(coords[0]+" "+coords[1]+" "+coords[2]);
 			nodeMap.put(id, k++);
 		}
 		nodesIds = null;
-		nodes.close();
-		for(int i = 0; i < trias.length / 3; i++)
+		int[] tria = new int[3];
+		for(int i = 0; i < nbt; i++)
 		{
+			group.getTriangle(i, tria);
 			out.println("3 " +
-				nodeMap.get(trias[3 * i]) + " " +
-				nodeMap.get(trias[3 * i + 1]) + " " +
-				nodeMap.get(trias[3 * i + 2]));
+				nodeMap.get(tria[0]) + " " +
+				nodeMap.get(tria[1]) + " " +
+				nodeMap.get(tria[2]));
 		}
+		group.close();
+		mesh.close();
 	}
 
 	public void writeAllGroups(String directory) throws IOException, SAXException
@@ -94,27 +102,26 @@ public class Amibe2OFF {
 	public void write(PrintStream out) throws SAXException, IOException
 	{
 		SubMesh sm = amibeReader.getSubmeshes().get(0);
-		IntFileReader trias = sm.getTriangles();
+		MappedMesh mesh = sm.getMappedMesh();
 		int[] buffer = new int[3];
 		int realTriaNb = 0;
 		for(int i = 0; i < sm.getNumberOfTrias(); i++)
 		{
-			trias.get(buffer);
+			mesh.getTriangle(i, buffer);
 			if(buffer[0] >= 0 && buffer[1] >=0 && buffer[2] >= 0)
 				realTriaNb ++;
 		}
 		out.println("OFF");
 		out.println(sm.getNumberOfNodes()+" "+realTriaNb);
-		DoubleFileReader nodes = sm.getNodes();
 		for(int i = 0; i< sm.getNumberOfNodes() ; i++)
-			out.println(nodes.get()+" "+nodes.get()+" "+nodes.get());
-		nodes.close();
+			out.println(mesh.getCoordinate(i, 0)+" "+mesh.getCoordinate(i, 1)+" "+mesh.getCoordinate(i, 2));
 		for(int i = 0; i < sm.getNumberOfTrias(); i++)
 		{
-			trias.get(buffer);
+			mesh.getTriangle(i, buffer);
 			if(buffer[0] >= 0 && buffer[1] >=0 && buffer[2] >= 0)
 				out.println("3 "+buffer[0]+" "+buffer[1]+" "+buffer[2]);
 		}
+		mesh.close();
 	}
 
 	public void write(String fileName) throws IOException, SAXException
@@ -29,7 +29,6 @@ import java.io.PrintStream;
 import java.io.FileOutputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -50,7 +49,7 @@ import org.xml.sax.SAXException;
 public class Amibe2UNV
 {
 	private final static String CR=System.getProperty("line.separator");			
-	private final static NumberFormat FORMAT_I10=new MeshExporter.FormatI10();	
+	private final static int BUFFER_SIZE=1 << 20;
 	private static final Logger logger=Logger.getLogger(Amibe2UNV.class.getName());
 
 	/**
@@ -137,9 +136,19 @@ public class Amibe2UNV
 		this.scale = scale;
 	}
 
+	/**
+	 * Sets the number of threads used to format nodes and elements.
+	 * @see MeshExporter#setThreads
+	 */
+	public void setThreads(int threads)
+	{
+		unvWriter.setThreads(threads);
+	}
+
 	public void write(String fileName) throws IOException, SAXException
 	{
-		PrintStream out = new PrintStream(fileName);
+		PrintStream out = new PrintStream(new BufferedOutputStream(
+			new FileOutputStream(fileName), BUFFER_SIZE));
 		write(out);
 		out.close();
 	}
@@ -207,25 +216,25 @@ public class Amibe2UNV
 			throws SAXException, IOException
 	{
 		out.println("    -1"+CR+"  2435");
+		AsciiBuffer b = new AsciiBuffer(BUFFER_SIZE);
 		int i = 0;
 		for(Entry<String, Collection<Group>> e:indexUNVGroups(subMesh.getGroups()).entrySet())
 		{				
-			out.println(FORMAT_I10.format(i+1)+
-				"         0         0         0         0         0         0"+
-				FORMAT_I10.format(getNumberOfItems(e.getValue())));
+			b.appendI10(i+1).
+				append("         0         0         0         0         0         0").
+				appendI10(getNumberOfItems(e.getValue())).newLine();
 			
-			out.println(e.getKey());
+			b.append(e.getKey()).newLine();
 			int countg=0;
 			for(Group g:e.getValue())
 			{
 				for(int id:g.readTria3Ids())
 				{
-					out.print("         8"
-						+FORMAT_I10.format(id+1)
-						+"         0         0");
+					b.append("         8").appendI10(id+1).append("         0         0");
 					countg++;
 					if ((countg % 2) == 0)
-						out.println();
+						b.newLine();
+					MeshExporter.flush(out, b, false);
 				}
 			}
 
@@ -233,12 +242,11 @@ public class Amibe2UNV
 			{
 				for(int id:g.readBeamsIds())
 				{
-					out.print("         8"
-						+FORMAT_I10.format(id+count)
-						+"         0         0");
+					b.append("         8").appendI10(id+count).append("         0         0");
 					countg++;
 					if ((countg % 2) == 0)
-						out.println();
+						b.newLine();
+					MeshExporter.flush(out, b, false);
 				}
 			}
 
@@ -246,18 +254,18 @@ public class Amibe2UNV
 			{
 				for(int id:g.readNodesIds())
 				{
-					out.print("         7"
-						+FORMAT_I10.format(id+1)
-						+"         0         0");
+					b.append("         7").appendI10(id+1).append("         0         0");
 					countg++;
 					if ((countg % 2) == 0)
-						out.println();
+						b.newLine();
+					MeshExporter.flush(out, b, false);
 				}
 			}
 			if ((countg % 2) !=0 )
-				out.println();
+				b.newLine();
 			i++;
 		}
+		MeshExporter.flush(out, b, true);
 		out.println("    -1");
 	}	
 	
@@ -270,24 +278,15 @@ public class Amibe2UNV
 		}
 		int count = 1;
 		out.println("    -1"+CR+"  2411");
-		double[] buffer = new double[3];
 		int nbNodes = (int) (f.size() / 3);
-		for(int i = 0; i < nbNodes; i++)
-		{
-			f.get(buffer);
-			MeshExporter.UNV.writeSingleNode(out, count,
-				buffer[0]*scale, buffer[1]*scale, buffer[2]*scale);
-			count ++;
-		}
+		new NodeWriter(f, 1).write(out, nbNodes);
+		count += nbNodes;
 		quadraticVerticesOffset = nbNodes;
 		if(quadratic) {
 			DoubleFileReader vReader =  quadraticTriaConverter.getVertices();
-			for(int i = 0; i < quadraticTriaConverter.getNumberOfVertices(); i++) {
-				vReader.get(buffer);
-				MeshExporter.UNV.writeSingleNode(out, count,
-					buffer[0]*scale, buffer[1]*scale, buffer[2]*scale);
-				count ++;
-			}
+			int nbVertices = quadraticTriaConverter.getNumberOfVertices();
+			new NodeWriter(vReader, count).write(out, nbVertices);
+			count += nbVertices;
 		}
 
 		out.println("    -1");
@@ -296,6 +295,44 @@ public class Amibe2UNV
 		logger.info("Total number of nodes: "+count);
 	}
 
+	/**
+	 * Writes nodes read sequentially from a file.
+	 */
+	private class NodeWriter extends ChunkedTextWriter
+	{
+		private final DoubleFileReader reader;
+		private final int firstLabel;
+		private double[] coords = new double[0];
+		private int offset;
+
+		NodeWriter(DoubleFileReader reader, int firstLabel)
+		{
+			super(unvWriter.getThreads());
+			this.reader = reader;
+			this.firstLabel = firstLabel;
+		}
+
+		@Override
+		void load(int start, int end) throws IOException
+		{
+			if (coords.length < 3 * (end - start))
+				coords = new double[3 * (end - start)];
+			offset = start;
+			reader.get(coords, 0, 3 * (end - start));
+		}
+
+		@Override
+		void format(int start, int end, AsciiBuffer out)
+		{
+			for (int i = start; i < end; i++)
+			{
+				int k = 3 * (i - offset);
+				MeshExporter.UNV.appendSingleNode(out, firstLabel + i,
+					coords[k]*scale, coords[k+1]*scale, coords[k+2]*scale);
+			}
+		}
+	}
+
 	private int[] createTrianglePhysicalMapping(AmibeReader.SubMesh subMesh)
 		throws IOException {
 		int[] result = new int[(int)subMesh.getTriangles().size()];
@@ -320,38 +357,61 @@ public class Amibe2UNV
 		int count = 1;
 		if(subMesh.getNumberOfTrias() > 0)
 		{
-			IntFileReader quadTrias = null;
-			int[] quadVertices = new int[6];
-			IntFileReader trias = subMesh.getTriangles();
-			long nb = trias.size() / 3;
-			int[] physicalMapping = null;
-			if(quadratic) {
-				quadTrias = quadraticTriaConverter.getTriangles();
-			}
-			if(physicalGroup)
-				physicalMapping = createTrianglePhysicalMapping(subMesh);
-			for(int i = 0; i<nb; i++)
+			final IntFileReader quadTrias = quadratic ?
+				quadraticTriaConverter.getTriangles() : null;
+			final IntFileReader trias = subMesh.getTriangles();
+			int nb = (int) (trias.size() / 3);
+			final int[] physicalMapping = physicalGroup ?
+				createTrianglePhysicalMapping(subMesh) : null;
+			new ChunkedTextWriter(unvWriter.getThreads())
 			{
-				int n1 = trias.get();
-				int n2 = trias.get();
-				int n3 = trias.get();
-				if(n1 >= 0) {
-					int trianglePhysical = physicalGroup ? physicalMapping[i] : physical;
-					if(quadratic) {
-						for(int j = 0; j < 3; j++)
-							quadVertices[j * 2 + 1] = quadTrias.get() + quadraticVerticesOffset + 1;
-						quadVertices[0] = n1 + 1;
-						quadVertices[2] = n2 + 1;
-						quadVertices[4] = n3 + 1;
-						MeshExporter.UNV.writeHOTria(out, count, quadVertices, trianglePhysical);
-					} else {
-						MeshExporter.UNV.writeSingleTriangle(out, count,
-							n1+1, n2+1, n3+1, trianglePhysical);
+				// 6 vertices by triangle, mid-edge vertices are unused
+				// by linear triangles
+				private int[] vertices = new int[0];
+				private int offset;
+
+				@Override
+				void load(int start, int end) throws IOException
+				{
+					if (vertices.length < 6 * (end - start))
+						vertices = new int[6 * (end - start)];
+					offset = start;
+					for (int i = start; i < end; i++)
+					{
+						int k = 6 * (i - start);
+						vertices[k] = trias.get() + 1;
+						vertices[k+2] = trias.get() + 1;
+						vertices[k+4] = trias.get() + 1;
+						if (quadratic && vertices[k] > 0)
+						{
+							for (int j = 0; j < 3; j++)
+								vertices[k + j * 2 + 1] = quadTrias.get() + quadraticVerticesOffset + 1;
+						}
 					}
 				}
-				// FIXME: why to we increment when n1 < 0 ?
-				count ++;
-			}
+
+				@Override
+				void format(int start, int end, AsciiBuffer b)
+				{
+					int[] quadVertices = new int[6];
+					for (int i = start; i < end; i++)
+					{
+						int k = 6 * (i - offset);
+						// FIXME: why to we increment count when n1 < 0 ?
+						if (vertices[k] <= 0)
+							continue;
+						int trianglePhysical = physicalGroup ? physicalMapping[i] : physical;
+						if(quadratic) {
+							System.arraycopy(vertices, k, quadVertices, 0, 6);
+							MeshExporter.UNV.appendHOTria(b, i + 1, quadVertices, trianglePhysical);
+						} else {
+							MeshExporter.UNV.appendSingleTriangle(b, i + 1,
+								vertices[k], vertices[k+2], vertices[k+4], trianglePhysical);
+						}
+					}
+				}
+			}.write(out, nb);
+			count += nb;
 		}
 		if(quadraticTriaConverter != null) {
 			quadraticTriaConverter.delete();
@@ -367,14 +427,17 @@ public class Amibe2UNV
 		{
 			IntFileReader beams = subMesh.getBeams();
 			long nb = beams.size() / 2;
+			AsciiBuffer b = new AsciiBuffer(BUFFER_SIZE);
 			for(int i = 0; i < nb; i++)
 			{
-				out.println(FORMAT_I10.format(count) +
-					"        21         2         1         5         2");
-				out.println("         0         1         1");
-				out.println(FORMAT_I10.format(beams.get()+1) + FORMAT_I10.format(beams.get()+1));
+				b.appendI10(count).
+					append("        21         2         1         5         2").newLine();
+				b.append("         0         1         1").newLine();
+				b.appendI10(beams.get()+1).appendI10(beams.get()+1).newLine();
 				count ++;
+				MeshExporter.flush(out, b, false);
 			}
+			MeshExporter.flush(out, b, true);
 		}
 	}
 }
@@ -81,18 +81,14 @@ public class Amibe2VTK
 		this.directory=directory;
 	}
 
-	private long computeNumberOfTriangle(IntFileReader triaFile) throws IOException
+	private long computeNumberOfTriangle(MappedMesh mesh)
 	{
-		long nbt = triaFile.size()/3;
 		long toReturn = 0;
-		for(int i=0; i<nbt; i++)
+		for(int i=0; i<mesh.getNumberOfTriangles(); i++)
 		{
-			if(triaFile.get()>=0)
+			if(mesh.getTriangleVertex(i, 0)>=0)
 				toReturn++;
-			triaFile.get();
-			triaFile.get();
 		}
-		triaFile.close();
 		return toReturn;
 	}
 
@@ -116,13 +112,15 @@ public class Amibe2VTK
 		AmibeReader.Dim3 amibeReader = new AmibeReader.Dim3(directory.getPath());
 		SubMesh sm = amibeReader.getSubmeshes().get(0);
 		PrintStream os=new PrintStream(out);
+		MappedMesh mesh = sm.getMappedMesh();
 		long nbp=sm.getNumberOfNodes();
-		long nbt=computeNumberOfTriangle(sm.getTriangles());
+		long nbt=computeNumberOfTriangle(mesh);
 		writeHeader(os, nbp, nbt, sm.getNumberOfBeams());
 		os.flush();
 		DataOutputStream dos=new DataOutputStream(new BufferedOutputStream(out));
-		writeNode(dos, sm.getNodes(), nbp);
-		writeTriangles(dos, sm.getTriangles(), nbt);
+		writeNode(dos, mesh, nbp);
+		writeTriangles(dos, mesh, nbt);
+		mesh.close();
 		writeBeams(dos, sm.getBeams(), sm.getNumberOfBeams());
 		writeData(dos, nbt+sm.getNumberOfBeams());
 		dos.flush();
@@ -133,22 +131,25 @@ public class Amibe2VTK
 	/**
 	 * write the triangle connectivity
 	 * @param dos the stream to write on
-	 * @param triaFile the amibe triangle file
+	 * @param mesh the mapped amibe mesh
 	 * @param nbt the number of triangles
 	 * @throws IOException
 	 */
-	private void writeTriangles(DataOutputStream dos, IntFileReader triaFile, long nbt)
+	private void writeTriangles(DataOutputStream dos, MappedMesh mesh, long nbt)
 		throws IOException
 	{
 		//Write the size of the array in octets
 		dos.writeInt((int) nbt*4*3);
 		
 		//Write the connectivity array
-		for(int i=0; i<nbt*3; i++)
+		for(int i=0; i<mesh.getNumberOfTriangles(); i++)
 		{
-			int v = triaFile.get();
-			if(v>=0)
-				dos.writeInt(v);
+			for(int j=0; j<3; j++)
+			{
+				int v = mesh.getTriangleVertex(i, j);
+				if(v>=0)
+					dos.writeInt(v);
+			}
 		}
 		
 		//Write the size of the array in octets
@@ -158,8 +159,6 @@ public class Amibe2VTK
 		//connectivity array
 		for(int i=1; i<=nbt; i++)
 			dos.writeInt(3*i);
-
-		triaFile.close();
 	}
 
 	/**
@@ -193,18 +192,21 @@ public class Amibe2VTK
 	/**
 	 * Write the nodes of the mesh
 	 * @param dos the stream to write on
-	 * @param nodeFile the amibe node file
+	 * @param mesh the mapped amibe mesh
 	 * @param nbp the number of nodes
 	 * @throws IOException
-	 */	private void writeNode(DataOutputStream dos, DoubleFileReader nodeFile, long nbp)
+	 */
+	private void writeNode(DataOutputStream dos, MappedMesh mesh, long nbp)
 		throws IOException
 	{
 		//Write the size of the array in octets
 		dos.writeInt((int) nbp*8*3);
-		for(int i=0; i<nbp*3; i++)
-			dos.writeDouble(nodeFile.get());
-
-		nodeFile.close();
+		for(int i=0; i<nbp; i++)
+		{
+			dos.writeDouble(mesh.getCoordinate(i, 0));
+			dos.writeDouble(mesh.getCoordinate(i, 1));
+			dos.writeDouble(mesh.getCoordinate(i, 2));
+		}
 	}
 	 
 	/**
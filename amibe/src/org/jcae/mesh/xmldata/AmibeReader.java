@@ -102,6 +102,12 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 			return triasOffset;
 		}
 
+		/** Returns the file containing triangle ids of all groups */
+		File getTriaIdsFile()
+		{
+			return getBinFile(groupsFilename);
+		}
+
 		public int[] readTria3Ids() throws IOException
 		{
 			if (numberOfTrias == 0)
@@ -264,6 +270,16 @@ public abstract class AmibeReader extends XMLReader implements JCAEXMLData {
 				getBinFile("triangles"+dim()+"d.bin"));
 		}
 		
+		/**
+		 * Returns a read-only view of nodes and triangles backed by
+		 * memory mapped files.  Caller must close it.
+		 */
+		public MappedMesh getMappedMesh() throws IOException
+		{
+			return new MappedMesh(getBinFile("nodes"+dim()+"d.bin"),
+				getBinFile("triangles"+dim()+"d.bin"), dim());
+		}
+
 		public float[] readNodes(int[] nodesID) throws IOException
 		{
 			DoubleFileReader dfr = getNodes();
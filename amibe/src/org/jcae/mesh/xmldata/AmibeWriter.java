@@ -22,7 +22,6 @@ package org.jcae.mesh.xmldata;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -99,12 +98,21 @@ public abstract class AmibeWriter {
 
 	public static class Dim3 extends AmibeWriter {
 		public Dim3(String name, boolean normal, boolean hasRef) throws IOException {
-			init(name, hasRef);
+			this(name, normal, hasRef, false);
+		}
+
+		/**
+		 * @param compressed if true, binary files are written in compressed
+		 * format, see {@link CompressedChunks}
+		 */
+		public Dim3(String name, boolean normal, boolean hasRef, boolean compressed)
+			throws IOException {
+			init(name, hasRef, compressed);
 			if(normal)
 			{
 				File dir3d = new File(name, binDirectory());
 				File f = new File(dir3d, JCAEXMLData.normals3dFilename);
-				normalChan = createDOS(f);
+				normalChan = createDOS(f, 8, 3);
 			}
 		}
 
@@ -184,11 +192,21 @@ public abstract class AmibeWriter {
 		}
 	}
 
-	private static DataOutputStream createDOS(File f) throws FileNotFoundException
+	/**
+	 * Create a stream to write a binary file.
+	 * @param elementSize 4 for ints, 8 for doubles
+	 * @param stride number of values in a record
+	 */
+	protected final DataOutputStream createDOS(File f, int elementSize, int stride)
+		throws IOException
 	{
-		FileOutputStream fos = new FileOutputStream(f);
-		return new DataOutputStream(new BufferedOutputStream(
-			new NIOutputStream(fos.getChannel()), 1024*64));
+		OutputStream os;
+		if(compressed)
+			os = new CompressedOutputStream(new File(f.getPath() +
+				CompressedChunks.SUFFIX), elementSize, stride);
+		else
+			os = new NIOutputStream(new FileOutputStream(f).getChannel());
+		return new DataOutputStream(new BufferedOutputStream(os, 1024*64));
 	}
 	
 	protected DataOutputStream nodeChan, triaChan, groupChan, refChan,
@@ -341,6 +359,8 @@ public abstract class AmibeWriter {
 			bGroupChan.close();
 			if(refChan != null)
 				refChan.close();
+			if(normalChan != null)
+				normalChan.close();
 		} catch (SAXException ex) {
 			LOGGER.log(Level.SEVERE, null, ex);
 		} catch (XMLStreamException ex) {
@@ -352,8 +372,16 @@ public abstract class AmibeWriter {
 	private int nodesOffset, beamsOffset, triaOffset;
 	private DoubleFileReader nodesReader;
 	private File fnode;
+	private boolean compressed;
 	protected final void init(String path, boolean writeReferences) throws IOException
 	{
+		init(path, writeReferences, false);
+	}
+
+	protected final void init(String path, boolean writeReferences,
+		boolean compressed) throws IOException
+	{
+		this.compressed = compressed;
 		try {
 			new File(path).mkdirs();
 			nodeFName = "nodes" + dim() + "d.bin";
@@ -370,14 +398,14 @@ public abstract class AmibeWriter {
 			{
 				refFName = "nodes1dref.bin";
 				File ref = new File(dir3d, refFName);
-				refChan = createDOS(ref);
+				refChan = createDOS(ref, 4, 1);
 			}
-			nodeChan = createDOS(fnode);
-			triaChan = createDOS(ftria);
-			groupChan = createDOS(fgrp);
-			bGroupChan = createDOS(bgroups);
-			nodeGroupChan = createDOS(new File(dir3d, "nodeGroups.bin"));
-			beamChan = createDOS(fbeams);
+			nodeChan = createDOS(fnode, 8, dim());
+			triaChan = createDOS(ftria, 4, 1);
+			groupChan = createDOS(fgrp, 4, 1);
+			bGroupChan = createDOS(bgroups, 4, 1);
+			nodeGroupChan = createDOS(new File(dir3d, "nodeGroups.bin"), 4, 1);
+			beamChan = createDOS(fbeams, 4, 1);
 			xmlWriter = new XMLWriter(new File(path, xmlFile()).getPath(),
 				getClass().getResource("jcae.xsd"));
 			xmlWriter.out.writeStartElement("jcae");
@@ -399,6 +427,8 @@ public abstract class AmibeWriter {
 	}
 	
 	public void getNode(int i, double[] nc) throws IOException {
+		if(compressed)
+			throw new IllegalStateException("Nodes of a compressed file cannot be read while writing");
 		if(nodesReader == null)
 		{
 			nodesReader = new DoubleFileReaderByDirectBuffer(fnode);
@@ -419,7 +449,8 @@ public abstract class AmibeWriter {
 		XMLStreamWriter o = xmlWriter.out;
 		o.writeStartElement("file");
 		o.writeAttribute("format", format);
-		o.writeAttribute("location", location);
+		o.writeAttribute("location", compressed && !"brep".equals(format) ?
+			location + CompressedChunks.SUFFIX : location);
 		if(offset != 0)
 			o.writeAttribute("offset", Long.toString(offset));
 		o.writeEndElement();
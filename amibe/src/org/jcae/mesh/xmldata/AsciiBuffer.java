@@ -0,0 +1,308 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Growable byte buffer used to format text files.  Numbers are written
+ * with the same characters as {@link MeshExporter.FormatD25_16},
+ * {@link MeshExporter.FormatI10} or string concatenation, but without
+ * <code>DecimalFormat</code>, <code>StringBuffer</code> inserts and
+ * charset encoders, so that large meshes can be exported quickly.
+ * Instances are not thread-safe, but several instances can be filled
+ * concurrently.
+ */
+final class AsciiBuffer
+{
+	private static final byte [] CR = System.getProperty("line.separator").getBytes();
+	private static final NumberFormat FORMAT_D25_16 = new MeshExporter.FormatD25_16();
+	// Characters written by FormatD25_16 depend on locale, the fast
+	// path is used only if they are the expected ones.
+	private static final boolean FAST_D25_16;
+	static
+	{
+		DecimalFormatSymbols dfs = ((MeshExporter.FormatD25_16) FORMAT_D25_16).getDecimalFormatSymbols();
+		FAST_D25_16 = dfs.getMinusSign() == '-' && dfs.getZeroDigit() == '0' &&
+			"E".equals(dfs.getExponentSeparator());
+	}
+	private byte [] buf;
+	private int count;
+	// Significant digits of the last formatted double
+	private final char [] digits = new char[24];
+
+	/**
+	 * Creates an empty buffer.
+	 *
+	 * @param capacity  initial capacity
+	 */
+	AsciiBuffer(int capacity)
+	{
+		buf = new byte[Math.max(capacity, 32)];
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if (count + n > buf.length)
+		{
+			byte [] newBuf = new byte[Math.max(2 * buf.length, count + n)];
+			System.arraycopy(buf, 0, newBuf, 0, count);
+			buf = newBuf;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes in this buffer.
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Removes all bytes from this buffer.
+	 */
+	void clear()
+	{
+		count = 0;
+	}
+
+	/**
+	 * Writes buffer content into an output stream.
+	 */
+	void writeTo(OutputStream out) throws IOException
+	{
+		out.write(buf, 0, count);
+	}
+
+	/**
+	 * Writes buffer content into a print stream.
+	 */
+	void writeTo(PrintStream out)
+	{
+		out.write(buf, 0, count);
+	}
+
+	/**
+	 * Appends a string.  Non-ASCII strings are encoded with the default
+	 * charset, as does <code>PrintStream</code>.
+	 */
+	AsciiBuffer append(String s)
+	{
+		int n = s.length();
+		ensureCapacity(n);
+		for (int i = 0; i < n; i++)
+		{
+			char c = s.charAt(i);
+			if (c >= 0x80)
+			{
+				byte [] b = s.getBytes();
+				ensureCapacity(b.length);
+				System.arraycopy(b, 0, buf, count, b.length);
+				count += b.length;
+				return this;
+			}
+			buf[count + i] = (byte) c;
+		}
+		count += n;
+		return this;
+	}
+
+	/**
+	 * Appends an ASCII character.
+	 */
+	AsciiBuffer append(char c)
+	{
+		ensureCapacity(1);
+		buf[count++] = (byte) c;
+		return this;
+	}
+
+	/**
+	 * Appends an integer, like <code>String.valueOf(long)</code>.
+	 */
+	AsciiBuffer append(long v)
+	{
+		ensureCapacity(20);
+		if (v < 0)
+		{
+			if (v == Long.MIN_VALUE)
+				return append(Long.toString(v));
+			buf[count++] = '-';
+			v = -v;
+		}
+		int len = 1;
+		for (long t = v / 10; t != 0; t /= 10)
+			len++;
+		for (int i = count + len - 1; i >= count; i--)
+		{
+			buf[i] = (byte) ('0' + (v % 10));
+			v /= 10;
+		}
+		count += len;
+		return this;
+	}
+
+	/**
+	 * Appends a double, like <code>String.valueOf(double)</code>.
+	 */
+	AsciiBuffer append(double v)
+	{
+		return append(Double.toString(v));
+	}
+
+	/**
+	 * Appends the line separator.
+	 */
+	AsciiBuffer newLine()
+	{
+		ensureCapacity(CR.length);
+		for (byte b : CR)
+			buf[count++] = b;
+		return this;
+	}
+
+	/**
+	 * Appends an integer right-aligned on 10 columns, like
+	 * {@link MeshExporter.FormatI10}.  As with this class, nothing is
+	 * written if the integer does not fit.
+	 */
+	AsciiBuffer appendI10(long v)
+	{
+		int start = count;
+		append(v);
+		int len = count - start;
+		if (len >= 10)
+		{
+			count = start;
+			return this;
+		}
+		int pad = 10 - len;
+		System.arraycopy(buf, start, buf, start + pad, len);
+		for (int i = 0; i < pad; i++)
+			buf[start + i] = ' ';
+		count = start + 10;
+		return this;
+	}
+
+	/**
+	 * Appends a double in Fortran D25.16 format, like
+	 * {@link MeshExporter.FormatD25_16}.
+	 * <code>DecimalFormat</code> writes the shortest decimal
+	 * representation of doubles, which has at most 17 significant
+	 * digits, so its digits are the ones of
+	 * <code>Double.toString</code> padded with zeros.
+	 */
+	AsciiBuffer appendD25_16(double v)
+	{
+		if (!FAST_D25_16 || Double.isNaN(v) || Double.isInfinite(v))
+			return appendD25_16Slow(v);
+		boolean negative = v < 0.0 || (v == 0.0 && 1.0 / v < 0.0);
+		String s = Double.toString(Math.abs(v));
+		int n = s.length();
+		int nDigits = 0;
+		int pointPos = -1;
+		int exp10 = 0;
+		// Number of digits before the decimal point, leading zeros
+		// excluded
+		int intDigits = 0;
+		int i = 0;
+		for (; i < n; i++)
+		{
+			char c = s.charAt(i);
+			if (c == '.')
+				pointPos = i;
+			else if (c == 'E')
+				break;
+			else if (nDigits > 0 || c != '0')
+			{
+				if (nDigits >= digits.length)
+					return appendD25_16Slow(v);
+				digits[nDigits++] = c;
+				if (pointPos < 0)
+					intDigits++;
+			}
+			else if (pointPos >= 0)
+			{
+				// Leading zero after decimal point
+				intDigits--;
+			}
+		}
+		if (i < n)
+			exp10 = Integer.parseInt(s.substring(i + 1));
+		while (nDigits > 0 && digits[nDigits - 1] == '0')
+			nDigits--;
+		if (nDigits == 0)
+		{
+			digits[nDigits++] = '0';
+			exp10 = 0;
+		}
+		else
+			exp10 += intDigits - 1;
+		if (nDigits > 17)
+			return appendD25_16Slow(v);
+		int absExp = Math.abs(exp10);
+		// Mantissa has 18 characters, exponent has 4 or 5
+		int len = 18 + (absExp < 100 ? 4 : (exp10 < 0 ? 5 : 4));
+		if (negative)
+			len++;
+		ensureCapacity(25 + len);
+		for (int k = len; k < 25; k++)
+			buf[count++] = ' ';
+		if (negative)
+			buf[count++] = '-';
+		buf[count++] = (byte) digits[0];
+		buf[count++] = '.';
+		for (int k = 1; k < 17; k++)
+			buf[count++] = (byte) (k < nDigits ? digits[k] : '0');
+		if (absExp < 100)
+		{
+			buf[count++] = 'D';
+			buf[count++] = (byte) (exp10 < 0 ? '-' : '+');
+			buf[count++] = (byte) ('0' + absExp / 10);
+			buf[count++] = (byte) ('0' + absExp % 10);
+		}
+		else
+		{
+			buf[count++] = 'E';
+			if (exp10 < 0)
+				buf[count++] = '-';
+			buf[count++] = (byte) ('0' + absExp / 100);
+			buf[count++] = (byte) ('0' + (absExp / 10) % 10);
+			buf[count++] = (byte) ('0' + absExp % 10);
+		}
+		return this;
+	}
+
+	private AsciiBuffer appendD25_16Slow(double v)
+	{
+		String s;
+		synchronized (FORMAT_D25_16)
+		{
+			s = FORMAT_D25_16.format(v);
+		}
+		return append(s);
+	}
+}
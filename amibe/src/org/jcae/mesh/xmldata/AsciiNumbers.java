@@ -0,0 +1,288 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses numbers written in ASCII files without creating
+ * <code>String</code> objects.  Results are exactly those of
+ * <code>Integer.parseInt</code> and <code>Double.parseDouble</code>;
+ * unusual inputs are handled by these methods, so that they throw the
+ * same exceptions.  Exponents of floating point numbers may be written
+ * with the Fortran <code>D</code> character, as in UNV files.
+ * <p>
+ * Doubles are converted with the Clinger fast path when possible, then
+ * with the Eisel-Lemire algorithm, which needs 128-bit approximations of
+ * powers of ten.  The few numbers which cannot be rounded by this
+ * algorithm are given to <code>Double.parseDouble</code>.
+ * </p>
+ */
+final class AsciiNumbers
+{
+	private static final int MIN_EXP10 = -348;
+	private static final int MAX_EXP10 = 347;
+	// 128-bit approximations of powers of ten, rounded down
+	private static final long [] POW10_HI = new long[MAX_EXP10 - MIN_EXP10 + 1];
+	private static final long [] POW10_LO = new long[MAX_EXP10 - MIN_EXP10 + 1];
+	// Powers of ten which are exact doubles
+	private static final double [] SMALL_POW10 = new double[23];
+	static
+	{
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		for (int e = MIN_EXP10; e <= MAX_EXP10; e++)
+		{
+			BigInteger m;
+			if (e >= 0)
+			{
+				m = BigInteger.TEN.pow(e);
+				int shift = m.bitLength() - 128;
+				m = shift > 0 ? m.shiftRight(shift) : m.shiftLeft(-shift);
+			}
+			else
+			{
+				BigInteger d = BigInteger.TEN.pow(-e);
+				m = BigInteger.ONE.shiftLeft(127 + d.bitLength()).divide(d);
+			}
+			POW10_HI[e - MIN_EXP10] = m.shiftRight(64).longValue();
+			POW10_LO[e - MIN_EXP10] = m.and(mask).longValue();
+		}
+		SMALL_POW10[0] = 1.0;
+		for (int i = 1; i < SMALL_POW10.length; i++)
+			SMALL_POW10[i] = 10.0 * SMALL_POW10[i - 1];
+	}
+
+	private AsciiNumbers()
+	{
+	}
+
+	/**
+	 * Parses an integer.
+	 *
+	 * @param b  buffer
+	 * @param start  index of the first character
+	 * @param end  index after the last character
+	 * @return  integer value
+	 * @throws NumberFormatException  if characters do not represent an
+	 *   integer
+	 */
+	static int parseInt(ByteBuffer b, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (i < end && (b.get(i) == '-' || b.get(i) == '+'))
+		{
+			negative = b.get(i) == '-';
+			i++;
+		}
+		// 9 digits cannot overflow
+		if (i == end || end - i > 9)
+			return Integer.parseInt(toString(b, start, end));
+		int ret = 0;
+		for (; i < end; i++)
+		{
+			int c = b.get(i) - '0';
+			if (c < 0 || c > 9)
+				return Integer.parseInt(toString(b, start, end));
+			ret = 10 * ret + c;
+		}
+		return negative ? -ret : ret;
+	}
+
+	/**
+	 * Parses a double.  Exponent may be introduced by <code>E</code>,
+	 * <code>e</code> or <code>D</code>.
+	 *
+	 * @param b  buffer
+	 * @param start  index of the first character
+	 * @param end  index after the last character
+	 * @return  double value
+	 * @throws NumberFormatException  if characters do not represent a
+	 *   number
+	 */
+	static double parseDouble(ByteBuffer b, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		if (i < end && (b.get(i) == '-' || b.get(i) == '+'))
+		{
+			negative = b.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0L;
+		int nDigits = 0;
+		int exp10 = 0;
+		boolean point = false;
+		boolean digit = false;
+		for (; i < end; i++)
+		{
+			int c = b.get(i);
+			if (c >= '0' && c <= '9')
+			{
+				digit = true;
+				if (nDigits > 0 || c != '0')
+				{
+					// 18 digits always fit into a long
+					if (nDigits == 18)
+						return parseDoubleSlow(b, start, end);
+					mantissa = 10L * mantissa + (c - '0');
+					nDigits++;
+				}
+				if (point)
+					exp10--;
+			}
+			else if (c == '.' && !point)
+				point = true;
+			else
+				break;
+		}
+		if (!digit)
+			return parseDoubleSlow(b, start, end);
+		if (i < end)
+		{
+			int c = b.get(i);
+			if (c != 'E' && c != 'e' && c != 'D')
+				return parseDoubleSlow(b, start, end);
+			i++;
+			boolean negativeExp = false;
+			if (i < end && (b.get(i) == '-' || b.get(i) == '+'))
+			{
+				negativeExp = b.get(i) == '-';
+				i++;
+			}
+			if (i == end || end - i > 4)
+				return parseDoubleSlow(b, start, end);
+			int e = 0;
+			for (; i < end; i++)
+			{
+				c = b.get(i) - '0';
+				if (c < 0 || c > 9)
+					return parseDoubleSlow(b, start, end);
+				e = 10 * e + c;
+			}
+			exp10 += negativeExp ? -e : e;
+		}
+		if (mantissa == 0L)
+			return negative ? -0.0 : 0.0;
+		// Clinger fast path: both operands are exact doubles, and
+		// IEEE arithmetic rounds the result correctly.
+		if (mantissa < (1L << 53) && exp10 >= -22 && exp10 <= 22)
+		{
+			double d = (double) mantissa;
+			d = exp10 < 0 ? d / SMALL_POW10[-exp10] : d * SMALL_POW10[exp10];
+			return negative ? -d : d;
+		}
+		long bits = eiselLemire(mantissa, exp10);
+		if (bits < 0L)
+			return parseDoubleSlow(b, start, end);
+		double d = Double.longBitsToDouble(bits);
+		return negative ? -d : d;
+	}
+
+	/**
+	 * Eisel-Lemire algorithm.
+	 *
+	 * @param mantissa  decimal significand, positive
+	 * @param exp10  decimal exponent
+	 * @return  bits of the positive double, or -1 if it cannot be
+	 *   computed exactly
+	 */
+	private static long eiselLemire(long mantissa, int exp10)
+	{
+		if (exp10 < MIN_EXP10 || exp10 > MAX_EXP10)
+			return -1L;
+		int clz = Long.numberOfLeadingZeros(mantissa);
+		long man = mantissa << clz;
+		long retExp2 = ((217706L * exp10) >> 16) + 64 + 1023 - clz;
+
+		long pHi = POW10_HI[exp10 - MIN_EXP10];
+		long xHi = multiplyHigh(man, pHi);
+		long xLo = man * pHi;
+		if ((xHi & 0x1FFL) == 0x1FFL && lessThanUnsigned(xLo + man, man))
+		{
+			// Wider approximation
+			long pLo = POW10_LO[exp10 - MIN_EXP10];
+			long yHi = multiplyHigh(man, pLo);
+			long yLo = man * pLo;
+			long mergedHi = xHi;
+			long mergedLo = xLo + yHi;
+			if (lessThanUnsigned(mergedLo, xLo))
+				mergedHi++;
+			if ((mergedHi & 0x1FFL) == 0x1FFL && mergedLo + 1L == 0L &&
+				lessThanUnsigned(yLo + man, man))
+				return -1L;
+			xHi = mergedHi;
+			xLo = mergedLo;
+		}
+		long msb = xHi >>> 63;
+		long retMantissa = xHi >>> (msb + 9);
+		retExp2 -= 1L ^ msb;
+		// Half-way ambiguity
+		if (xLo == 0L && (xHi & 0x1FFL) == 0L && (retMantissa & 3L) == 1L)
+			return -1L;
+		retMantissa += retMantissa & 1L;
+		retMantissa >>>= 1;
+		if ((retMantissa >>> 53) > 0L)
+		{
+			retMantissa >>>= 1;
+			retExp2++;
+		}
+		// Subnormal numbers, infinities and overflows
+		if (retExp2 <= 0L || retExp2 >= 0x7FFL)
+			return -1L;
+		return (retExp2 << 52) | (retMantissa & 0x000FFFFFFFFFFFFFL);
+	}
+
+	private static boolean lessThanUnsigned(long a, long b)
+	{
+		return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+	}
+
+	/**
+	 * Returns the upper 64 bits of the unsigned 128-bit product of two
+	 * unsigned longs.
+	 */
+	private static long multiplyHigh(long a, long b)
+	{
+		long a0 = a & 0xFFFFFFFFL;
+		long a1 = a >>> 32;
+		long b0 = b & 0xFFFFFFFFL;
+		long b1 = b >>> 32;
+		long p01 = a0 * b1;
+		long p10 = a1 * b0;
+		long mid = ((a0 * b0) >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+		return a1 * b1 + (p01 >>> 32) + (p10 >>> 32) + (mid >>> 32);
+	}
+
+	private static double parseDoubleSlow(ByteBuffer b, int start, int end)
+	{
+		return Double.parseDouble(toString(b, start, end).replace('D', 'E'));
+	}
+
+	static String toString(ByteBuffer b, int start, int end)
+	{
+		byte [] bytes = new byte[end - start];
+		for (int i = start; i < end; i++)
+			bytes[i - start] = b.get(i);
+		return new String(bytes);
+	}
+}
@@ -0,0 +1,112 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Writes a section of a text file, for instance the node list of a UNV
+ * file, by formatting chunks of items concurrently.  Items are processed
+ * by waves: data needed by a wave is first read by the calling thread
+ * with {@link #load}, then chunks are formatted by {@link #format} into
+ * distinct buffers, which are finally written in order.  Output does not
+ * depend on the number of threads.
+ */
+abstract class ChunkedTextWriter
+{
+	// Number of items formatted by a single task
+	private static final int CHUNK_SIZE = 16384;
+	private final int threads;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads  number of threads; all chunks are formatted by the
+	 *   calling thread if it is lower than 2
+	 */
+	ChunkedTextWriter(int threads)
+	{
+		this.threads = threads;
+	}
+
+	/**
+	 * Reads data needed to format items in the range
+	 * <code>[start, end)</code>.  This method is called by the calling
+	 * thread before formatting these items.
+	 */
+	void load(int start, int end) throws IOException
+	{
+	}
+
+	/**
+	 * Formats items in the range <code>[start, end)</code>.  This method
+	 * may be called concurrently on distinct ranges of the last
+	 * loaded wave, it must not modify shared data.
+	 */
+	abstract void format(int start, int end, AsciiBuffer out);
+
+	/**
+	 * Formats <code>n</code> items and writes them into a stream.
+	 */
+	final void write(OutputStream out, int n) throws IOException
+	{
+		int nrChunks = Math.max(1, threads);
+		AsciiBuffer [] buffers = new AsciiBuffer[nrChunks];
+		for (int i = 0; i < nrChunks; i++)
+			buffers[i] = new AsciiBuffer(1 << 16);
+		WorkerPool pool = new WorkerPool(threads);
+		try
+		{
+			for (int start = 0; start < n; start += nrChunks * CHUNK_SIZE)
+			{
+				int end = (int) Math.min(n, (long) start + nrChunks * CHUNK_SIZE);
+				load(start, end);
+				List<Callable<AsciiBuffer>> tasks = new ArrayList<Callable<AsciiBuffer>>(nrChunks);
+				for (int i = 0; i < nrChunks && start + i * CHUNK_SIZE < end; i++)
+				{
+					final AsciiBuffer buffer = buffers[i];
+					final int s = start + i * CHUNK_SIZE;
+					final int e = Math.min(end, s + CHUNK_SIZE);
+					tasks.add(new Callable<AsciiBuffer>()
+					{
+						public AsciiBuffer call()
+						{
+							buffer.clear();
+							format(s, e, buffer);
+							return buffer;
+						}
+					});
+				}
+				for (AsciiBuffer b : pool.invokeAll(tasks))
+					b.writeTo(out);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed format of Amibe binary files.
+ *
+ * <p>
+ * A raw binary file contains big-endian ints or doubles.  Its compressed
+ * counterpart has the same name followed by {@link #SUFFIX}, and contains
+ * the same values split into chunks of {@link #CHUNK_RECORDS} records.
+ * Chunks are compressed independently, so that they can be encoded and
+ * decoded concurrently, and a value can be read without decoding the whole
+ * file.  Compression is lossless, file readers return the very same values.
+ * </p>
+ *
+ * <p>
+ * File layout, all numbers are big-endian:
+ * </p>
+ * <pre>
+ *   int     MAGIC
+ *   int     VERSION
+ *   int     element size, 4 for ints and 8 for doubles
+ *   int     stride, number of values in a record
+ *   byte[]  compressed chunks
+ *   long[]  offsets of chunks, followed by the offset of the end of last chunk
+ *   long    number of values
+ *   int     number of chunks
+ *   int     MAGIC
+ * </pre>
+ *
+ * <p>
+ * Before being compressed by <code>Deflater</code>, each value is
+ * replaced by its difference with the value <code>stride</code> positions
+ * before in the same chunk.  Ints are then written as zigzag varints,
+ * which are short since node indices of neighbour triangles and sorted
+ * group ids are close.  For doubles, raw bits are XOR'ed instead, which
+ * clears sign, exponent and leading mantissa bits shared by neighbour
+ * nodes, and bytes of the same significance are stored contiguously.
+ * </p>
+ */
+final class CompressedChunks
+{
+	/** Suffix of compressed files. */
+	static final String SUFFIX = ".z";
+	static final int MAGIC = 0x414d425a;
+	static final int VERSION = 1;
+	/** Number of records in a chunk. */
+	static final int CHUNK_RECORDS = 1 << 16;
+	static final int HEADER_SIZE = 16;
+	static final int TRAILER_SIZE = 16;
+
+	private CompressedChunks()
+	{
+	}
+
+	/**
+	 * Returns the compressed file to read instead of a raw binary file.
+	 *
+	 * @param file  raw or compressed file
+	 * @return the compressed file, or <code>null</code> if
+	 *   <code>file</code> has to be read as a raw file
+	 */
+	static File find(File file)
+	{
+		if (file.getName().endsWith(SUFFIX))
+			return file;
+		if (file.exists())
+			return null;
+		File ret = new File(file.getPath() + SUFFIX);
+		return ret.exists() ? ret : null;
+	}
+
+	/**
+	 * Encodes values and compresses them.
+	 *
+	 * @param raw  big-endian values
+	 * @param len  number of bytes in <code>raw</code>
+	 * @param elementSize  4 for ints, 8 for doubles
+	 * @param stride  distance between values which are compared
+	 * @return compressed chunk
+	 */
+	static byte[] encode(byte[] raw, int len, int elementSize, int stride)
+	{
+		byte[] tmp;
+		int size;
+		if (elementSize == 4)
+		{
+			int n = len / 4;
+			tmp = new byte[5 * n];
+			size = 0;
+			for (int i = 0; i < n; i++)
+			{
+				int v = getInt(raw, 4 * i);
+				if (i >= stride)
+					v -= getInt(raw, 4 * (i - stride));
+				// zigzag
+				int z = (v << 1) ^ (v >> 31);
+				while ((z & ~0x7f) != 0)
+				{
+					tmp[size++] = (byte) ((z & 0x7f) | 0x80);
+					z >>>= 7;
+				}
+				tmp[size++] = (byte) z;
+			}
+		}
+		else
+		{
+			int n = len / 8;
+			tmp = new byte[len];
+			size = len;
+			for (int i = 0; i < n; i++)
+			{
+				long v = getLong(raw, 8 * i);
+				if (i >= stride)
+					v ^= getLong(raw, 8 * (i - stride));
+				for (int b = 0; b < 8; b++)
+					tmp[b * n + i] = (byte) (v >>> (56 - 8 * b));
+			}
+		}
+		Deflater deflater = new Deflater();
+		deflater.setInput(tmp, 0, size);
+		deflater.finish();
+		byte[] out = new byte[size + size / 1000 + 64];
+		int nr = 0;
+		while (!deflater.finished())
+		{
+			if (nr == out.length)
+			{
+				byte[] grow = new byte[2 * out.length];
+				System.arraycopy(out, 0, grow, 0, nr);
+				out = grow;
+			}
+			nr += deflater.deflate(out, nr, out.length - nr);
+		}
+		deflater.end();
+		byte[] ret = new byte[nr];
+		System.arraycopy(out, 0, ret, 0, nr);
+		return ret;
+	}
+
+	/**
+	 * Decompresses a chunk and decodes its values.
+	 *
+	 * @param in  compressed chunk
+	 * @param n  number of values in this chunk
+	 * @param elementSize  4 for ints, 8 for doubles
+	 * @param stride  distance between values which are compared
+	 * @return big-endian values
+	 * @throws IOException if chunk is corrupted
+	 */
+	static byte[] decode(byte[] in, int n, int elementSize, int stride)
+		throws IOException
+	{
+		byte[] ret = new byte[n * elementSize];
+		Inflater inflater = new Inflater();
+		inflater.setInput(in);
+		try
+		{
+			if (elementSize == 4)
+			{
+				byte[] tmp = new byte[5 * n];
+				int size = inflate(inflater, tmp);
+				int pos = 0;
+				for (int i = 0; i < n; i++)
+				{
+					int z = 0;
+					int shift = 0;
+					byte b;
+					do
+					{
+						if (pos >= size)
+							throw new IOException("Corrupted chunk");
+						b = tmp[pos++];
+						z |= (b & 0x7f) << shift;
+						shift += 7;
+					} while (b < 0);
+					int v = (z >>> 1) ^ -(z & 1);
+					if (i >= stride)
+						v += getInt(ret, 4 * (i - stride));
+					putInt(ret, 4 * i, v);
+				}
+			}
+			else
+			{
+				byte[] tmp = new byte[8 * n];
+				if (inflate(inflater, tmp) != tmp.length)
+					throw new IOException("Corrupted chunk");
+				for (int i = 0; i < n; i++)
+				{
+					long v = 0L;
+					for (int b = 0; b < 8; b++)
+						v = (v << 8) | (tmp[b * n + i] & 0xffL);
+					if (i >= stride)
+						v ^= getLong(ret, 8 * (i - stride));
+					putLong(ret, 8 * i, v);
+				}
+			}
+		}
+		catch (DataFormatException ex)
+		{
+			IOException e = new IOException("Corrupted chunk");
+			e.initCause(ex);
+			throw e;
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return ret;
+	}
+
+	private static int inflate(Inflater inflater, byte[] out)
+		throws DataFormatException
+	{
+		int nr = 0;
+		while (!inflater.finished() && nr < out.length)
+		{
+			int k = inflater.inflate(out, nr, out.length - nr);
+			if (k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			nr += k;
+		}
+		return nr;
+	}
+
+	static int getInt(byte[] b, int i)
+	{
+		return (b[i] << 24) | ((b[i + 1] & 0xff) << 16) |
+			((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+	}
+
+	static long getLong(byte[] b, int i)
+	{
+		return ((long) getInt(b, i) << 32) | (getInt(b, i + 4) & 0xffffffffL);
+	}
+
+	static void putInt(byte[] b, int i, int v)
+	{
+		b[i] = (byte) (v >>> 24);
+		b[i + 1] = (byte) (v >>> 16);
+		b[i + 2] = (byte) (v >>> 8);
+		b[i + 3] = (byte) v;
+	}
+
+	static void putLong(byte[] b, int i, long v)
+	{
+		putInt(b, i, (int) (v >>> 32));
+		putInt(b, i + 4, (int) v);
+	}
+}
@@ -0,0 +1,183 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Base class of readers of compressed files.  When a chunk is needed,
+ * it is decoded together with the following ones, as many as there are
+ * threads, since files are often read sequentially.  Decoded chunks are
+ * kept until another chunk is needed.  Threads are created when chunks
+ * are decoded, and released once the last chunk has been decoded or
+ * when {@link #close} is called.
+ * See {@link CompressedChunks} for a description of the file format.
+ */
+abstract class CompressedFileReader
+{
+	private final File file;
+	private final FileChannel fc;
+	private final int elementSize;
+	private final int stride;
+	/** Number of values in a chunk, except the last one. */
+	final int chunkValues;
+	/** Number of values in this file. */
+	final long numberOfValues;
+	private final long[] offsets;
+	private final int threads = Runtime.getRuntime().availableProcessors();
+	private WorkerPool pool;
+	private int firstCached = -1;
+	private byte[][] cached;
+	/** Position of relative get methods. */
+	long position;
+
+	CompressedFileReader(File file, int elementSize) throws IOException
+	{
+		this.file = file;
+		fc = new FileInputStream(file).getChannel();
+		ByteBuffer header = read(0L, CompressedChunks.HEADER_SIZE);
+		if (header.getInt() != CompressedChunks.MAGIC)
+			throw new IOException(file+" is not a compressed file");
+		if (header.getInt() > CompressedChunks.VERSION)
+			throw new IOException("File "+file+" has been written by a newer version of jCAE and cannot be read");
+		if (header.getInt() != elementSize)
+			throw new IOException("Unexpected element type in "+file);
+		this.elementSize = elementSize;
+		stride = header.getInt();
+		chunkValues = CompressedChunks.CHUNK_RECORDS * stride;
+		ByteBuffer trailer = read(fc.size() - CompressedChunks.TRAILER_SIZE,
+			CompressedChunks.TRAILER_SIZE);
+		numberOfValues = trailer.getLong();
+		int nrChunks = trailer.getInt();
+		if (trailer.getInt() != CompressedChunks.MAGIC)
+			throw new IOException("File "+file+" is truncated");
+		ByteBuffer index = read(fc.size() - CompressedChunks.TRAILER_SIZE -
+			8L * (nrChunks + 1), 8 * (nrChunks + 1));
+		offsets = new long[nrChunks + 1];
+		for (int i = 0; i <= nrChunks; i++)
+			offsets[i] = index.getLong();
+	}
+
+	private ByteBuffer read(long start, int size) throws IOException
+	{
+		ByteBuffer bb = ByteBuffer.allocate(size);
+		while (bb.hasRemaining())
+		{
+			if (fc.read(bb, start + bb.position()) < 0)
+				throw new IOException("Unexpected end of file "+file);
+		}
+		bb.flip();
+		return bb;
+	}
+
+	/**
+	 * Returns decoded values of a chunk.
+	 *
+	 * @param c  chunk index
+	 * @return big-endian values
+	 */
+	final byte[] chunk(int c) throws IOException
+	{
+		if (firstCached >= 0 && c >= firstCached && c < firstCached + cached.length)
+			return cached[c - firstCached];
+		int nrChunks = offsets.length - 1;
+		if (c < 0 || c >= nrChunks)
+			throw new IndexOutOfBoundsException("Chunk "+c+" not found in "+file);
+		int end = Math.min(nrChunks, c + threads);
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(end - c);
+		for (int i = c; i < end; i++)
+		{
+			final byte[] in = read(offsets[i], (int) (offsets[i+1] - offsets[i])).array();
+			final int n = (int) Math.min(chunkValues, numberOfValues - (long) i * chunkValues);
+			tasks.add(new Callable<byte[]>()
+			{
+				public byte[] call() throws IOException
+				{
+					return CompressedChunks.decode(in, n, elementSize, stride);
+				}
+			});
+		}
+		// No thread is created when a single chunk is decoded
+		if (pool == null)
+			pool = new WorkerPool(end - c);
+		List<byte[]> result = pool.invokeAll(tasks);
+		// Files are usually read sequentially, release threads
+		if (end == nrChunks)
+			releasePool();
+		cached = result.toArray(new byte[result.size()][]);
+		firstCached = c;
+		return cached[0];
+	}
+
+	/**
+	 * Copies raw values into a buffer, until it is full.
+	 *
+	 * @param index  index of the first value
+	 * @param dst  destination buffer
+	 */
+	final void copy(long index, ByteBuffer dst) throws IOException
+	{
+		while (dst.hasRemaining())
+		{
+			int c = (int) (index / chunkValues);
+			int from = (int) (index - (long) c * chunkValues) * elementSize;
+			byte[] b = chunk(c);
+			int nr = Math.min(dst.remaining(), b.length - from);
+			dst.put(b, from, nr);
+			index += nr / elementSize;
+		}
+	}
+
+	public final long size()
+	{
+		return numberOfValues;
+	}
+
+	public final boolean isEOF()
+	{
+		return position >= numberOfValues;
+	}
+
+	private void releasePool()
+	{
+		if (pool != null)
+			pool.shutdown();
+		pool = null;
+	}
+
+	public final void close()
+	{
+		releasePool();
+		cached = null;
+		firstCached = -1;
+		try
+		{
+			fc.close();
+		} catch (IOException ex) {/* Do not care */}
+	}
+}
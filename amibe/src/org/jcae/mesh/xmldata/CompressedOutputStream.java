@@ -0,0 +1,184 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import gnu.trove.list.array.TLongArrayList;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Stream writing big-endian values into a compressed file.
+ * Bytes are gathered into chunks, which are encoded concurrently
+ * when there are enough chunks to keep all threads busy.  Chunks are
+ * independent, so output does not depend on the number of threads.
+ * Threads are released by {@link #close}.
+ * See {@link CompressedChunks} for a description of the file format.
+ */
+class CompressedOutputStream extends OutputStream
+{
+	private final DataOutputStream out;
+	private final int elementSize;
+	private final int stride;
+	private final int chunkBytes;
+	private final WorkerPool pool;
+	private final List<byte[]> pending = new ArrayList<byte[]>();
+	private final TLongArrayList offsets = new TLongArrayList();
+	private byte[] current;
+	private int position;
+	private long offset;
+	private long numberOfValues;
+
+	/**
+	 * Creates a compressed file.
+	 *
+	 * @param file  output file
+	 * @param elementSize  4 for ints, 8 for doubles
+	 * @param stride  number of values in a record
+	 * @throws IOException if file cannot be created
+	 */
+	CompressedOutputStream(File file, int elementSize, int stride)
+		throws IOException
+	{
+		this.elementSize = elementSize;
+		this.stride = stride;
+		chunkBytes = CompressedChunks.CHUNK_RECORDS * stride * elementSize;
+		current = new byte[chunkBytes];
+		out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(file), 64 * 1024));
+		pool = new WorkerPool();
+		out.writeInt(CompressedChunks.MAGIC);
+		out.writeInt(CompressedChunks.VERSION);
+		out.writeInt(elementSize);
+		out.writeInt(stride);
+		offset = CompressedChunks.HEADER_SIZE;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		current[position++] = (byte) b;
+		if (position == chunkBytes)
+			nextChunk();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			int nr = Math.min(len, chunkBytes - position);
+			System.arraycopy(b, off, current, position, nr);
+			position += nr;
+			off += nr;
+			len -= nr;
+			if (position == chunkBytes)
+				nextChunk();
+		}
+	}
+
+	private void nextChunk() throws IOException
+	{
+		pending.add(current);
+		current = new byte[chunkBytes];
+		position = 0;
+		if (pending.size() >= pool.getThreads())
+			writePending(chunkBytes);
+	}
+
+	/**
+	 * Encodes pending chunks and writes them.
+	 *
+	 * @param lastSize  number of bytes in the last pending chunk
+	 */
+	private void writePending(final int lastSize) throws IOException
+	{
+		List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>(pending.size());
+		for (int i = 0; i < pending.size(); i++)
+		{
+			final byte[] raw = pending.get(i);
+			final int len = (i == pending.size() - 1 ? lastSize : chunkBytes);
+			tasks.add(new Callable<byte[]>()
+			{
+				public byte[] call()
+				{
+					return CompressedChunks.encode(raw, len, elementSize, stride);
+				}
+			});
+			numberOfValues += len / elementSize;
+		}
+		pending.clear();
+		for (byte[] chunk : pool.invokeAll(tasks))
+		{
+			offsets.add(offset);
+			out.write(chunk);
+			offset += chunk.length;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		// Chunks are written only when they are full
+	}
+
+	/**
+	 * Writes remaining values and the chunk index, then closes the file
+	 * and shuts down threads.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (current == null)
+			return;
+		try
+		{
+			if (position % elementSize != 0)
+				throw new IOException("Incomplete value at end of stream");
+			if (position > 0)
+			{
+				pending.add(current);
+				writePending(position);
+			}
+			else if (!pending.isEmpty())
+				writePending(chunkBytes);
+		}
+		finally
+		{
+			current = null;
+			pool.shutdown();
+		}
+		int nrChunks = offsets.size();
+		offsets.add(offset);
+		for (int i = 0; i < offsets.size(); i++)
+			out.writeLong(offsets.get(i));
+		out.writeLong(numberOfValues);
+		out.writeInt(nrChunks);
+		out.writeInt(CompressedChunks.MAGIC);
+		out.close();
+	}
+}
@@ -0,0 +1,95 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * DoubleFileReader reading a compressed file.
+ * @see CompressedChunks
+ */
+public class DoubleFileReaderByChunks extends CompressedFileReader implements DoubleFileReader
+{
+	public DoubleFileReaderByChunks(File file) throws IOException
+	{
+		super(file, 8);
+	}
+
+	public double get() throws IOException
+	{
+		if (position >= numberOfValues)
+			throw new IOException("End of file");
+		double ret = get(position);
+		position++;
+		return ret;
+	}
+
+	private double get(long index) throws IOException
+	{
+		int c = (int) (index / chunkValues);
+		byte[] b = chunk(c);
+		int i = (int) (index - (long) c * chunkValues);
+		return Double.longBitsToDouble(CompressedChunks.getLong(b, 8 * i));
+	}
+
+	public double get(int index) throws IOException
+	{
+		if (index < 0 || index >= numberOfValues)
+			throw new IndexOutOfBoundsException();
+		return get((long) index);
+	}
+
+	public int get(double[] dst) throws IOException
+	{
+		return get(dst, 0, dst.length);
+	}
+
+	public final int get(double[] dst, int offset, int len) throws IOException
+	{
+		len = (int) Math.min(len, numberOfValues - position);
+		int ret = 0;
+		while (ret < len)
+		{
+			int c = (int) (position / chunkValues);
+			byte[] b = chunk(c);
+			int start = (int) (position - (long) c * chunkValues);
+			int end = Math.min(b.length / 8, start + len - ret);
+			for (int i = start; i < end; i++)
+				dst[offset++] = Double.longBitsToDouble(CompressedChunks.getLong(b, 8 * i));
+			ret += end - start;
+			position += end - start;
+		}
+		return ret;
+	}
+
+	public int get(int index, double[] dst) throws IOException
+	{
+		return get(index, dst, 0, dst.length);
+	}
+
+	public final int get(int index, double[] dst, int offset, int len) throws IOException
+	{
+		if (index < 0 || index > numberOfValues)
+			throw new IndexOutOfBoundsException();
+		position = index;
+		return get(dst, offset, len);
+	}
+}
@@ -0,0 +1,95 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * IntFileReader reading a compressed file.
+ * @see CompressedChunks
+ */
+public class IntFileReaderByChunks extends CompressedFileReader implements IntFileReader
+{
+	public IntFileReaderByChunks(File file) throws IOException
+	{
+		super(file, 4);
+	}
+
+	public int get() throws IOException
+	{
+		if (position >= numberOfValues)
+			throw new IOException("End of file");
+		int ret = get(position);
+		position++;
+		return ret;
+	}
+
+	private int get(long index) throws IOException
+	{
+		int c = (int) (index / chunkValues);
+		byte[] b = chunk(c);
+		int i = (int) (index - (long) c * chunkValues);
+		return CompressedChunks.getInt(b, 4 * i);
+	}
+
+	public int get(int index) throws IOException
+	{
+		if (index < 0 || index >= numberOfValues)
+			throw new IndexOutOfBoundsException();
+		return get((long) index);
+	}
+
+	public int get(int[] dst) throws IOException
+	{
+		return get(dst, 0, dst.length);
+	}
+
+	public final int get(int[] dst, int offset, int len) throws IOException
+	{
+		len = (int) Math.min(len, numberOfValues - position);
+		int ret = 0;
+		while (ret < len)
+		{
+			int c = (int) (position / chunkValues);
+			byte[] b = chunk(c);
+			int start = (int) (position - (long) c * chunkValues);
+			int end = Math.min(b.length / 4, start + len - ret);
+			for (int i = start; i < end; i++)
+				dst[offset++] = CompressedChunks.getInt(b, 4 * i);
+			ret += end - start;
+			position += end - start;
+		}
+		return ret;
+	}
+
+	public int get(int index, int[] dst) throws IOException
+	{
+		return get(index, dst, 0, dst.length);
+	}
+
+	public final int get(int index, int[] dst, int offset, int len) throws IOException
+	{
+		if (index < 0 || index > numberOfValues)
+			throw new IndexOutOfBoundsException();
+		position = index;
+		return get(dst, offset, len);
+	}
+}
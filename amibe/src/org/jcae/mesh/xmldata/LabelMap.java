@@ -0,0 +1,99 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Maps labels found in a mesh file to indices.  Labels are usually
+ * numbered from 1 and written in increasing order, so the map is only
+ * materialized when this convention is not followed: values are first
+ * implicit, then stored in an array indexed by labels, and finally in a
+ * primitive open-addressing hash table if labels are not contiguous.
+ * Pairs must be added by increasing number of entries.
+ */
+final class LabelMap
+{
+	private static final int NO_ENTRY = -1;
+	// Number of entries
+	private int size;
+	// Values, if labels are contiguous but values differ from label-1
+	private TIntArrayList values;
+	// Values, if labels are not contiguous
+	private TIntIntHashMap map;
+
+	/**
+	 * Adds a pair.
+	 *
+	 * @param label  label
+	 * @param value  value, must be non-negative
+	 */
+	void put(int label, int value)
+	{
+		if (map == null && label == size + 1)
+		{
+			if (values == null && value != size)
+			{
+				values = new TIntArrayList(Math.max(16, 2 * size));
+				for (int i = 0; i < size; i++)
+					values.add(i);
+			}
+			if (values != null)
+				values.add(value);
+		}
+		else
+		{
+			if (map == null)
+			{
+				map = new TIntIntHashMap(Math.max(16, 2 * size), 0.5f, NO_ENTRY, NO_ENTRY);
+				for (int i = 0; i < size; i++)
+					map.put(i + 1, values == null ? i : values.getQuick(i));
+				values = null;
+			}
+			map.put(label, value);
+		}
+		size++;
+	}
+
+	/**
+	 * Returns the value associated to a label.
+	 *
+	 * @param label  label
+	 * @return  value, or -1 if this label is not found
+	 */
+	int get(int label)
+	{
+		if (map != null)
+			return map.get(label);
+		if (label < 1 || label > size)
+			return NO_ENTRY;
+		return values == null ? label - 1 : values.getQuick(label - 1);
+	}
+
+	/**
+	 * Returns the number of pairs.
+	 */
+	int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,333 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+package org.jcae.mesh.xmldata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of an Amibe mesh backed by memory mapped files.
+ * Node coordinates and triangle connectivity are read directly from
+ * <code>nodes*d.bin</code> and <code>triangles*d.bin</code>, no
+ * {@link org.jcae.mesh.amibe.ds.Vertex} nor
+ * {@link org.jcae.mesh.amibe.ds.Triangle} is created, so that very large
+ * meshes can be processed with a small heap.  Files are mapped by slabs
+ * of at most {@link #RECORDS_PER_SLAB} records to overcome the 2GB limit
+ * of <code>ByteBuffer</code>.  Files written in compressed format (see
+ * {@link CompressedChunks}) cannot be mapped, they are decoded into heap
+ * buffers instead.
+ *
+ * <p>
+ * A view restricted to a group is obtained with {@link #getGroup}; it
+ * shares node and triangle buffers with this instance and only maps
+ * the triangle ids of this group.  Triangle indices passed to methods
+ * of a group view are then local to this group, whereas node indices are
+ * always global.
+ * </p>
+ *
+ * <p>
+ * Instances are thread-safe since only absolute reads are performed.
+ * Views must not be used after their parent mesh has been closed.
+ * </p>
+ */
+public class MappedMesh
+{
+	/** Maximal number of records which are mapped at once. */
+	static final int RECORDS_PER_SLAB = 1 << 25;
+	private static final int SLAB_SHIFT = 25;
+	private static final int SLAB_MASK = RECORDS_PER_SLAB - 1;
+
+	private final int dim;
+	private final int numberOfNodes;
+	private final int numberOfTriangles;
+	private final DoubleBuffer[] nodes;
+	private final IntBuffer[] triangles;
+	// Triangle ids of a group view, null for the whole mesh
+	private final IntBuffer[] triangleIds;
+	// Buffers owned by this instance and released by close()
+	private final ByteBuffer[] owned;
+
+	/**
+	 * Maps node and triangle files.
+	 *
+	 * @param nodeFile  file containing node coordinates
+	 * @param triaFile  file containing triangle connectivity
+	 * @param dim  number of coordinates per node
+	 * @throws IOException if a file cannot be mapped
+	 */
+	public MappedMesh(File nodeFile, File triaFile, int dim) throws IOException
+	{
+		this.dim = dim;
+		ByteBuffer[] n = map(nodeFile, 0L, -1L, 8 * dim);
+		ByteBuffer[] t = map(triaFile, 0L, -1L, 12);
+		nodes = new DoubleBuffer[n.length];
+		long nn = 0L;
+		for (int i = 0; i < n.length; i++)
+		{
+			nodes[i] = n[i].asDoubleBuffer();
+			nn += nodes[i].capacity() / dim;
+		}
+		triangles = new IntBuffer[t.length];
+		long nt = 0L;
+		for (int i = 0; i < t.length; i++)
+		{
+			triangles[i] = t[i].asIntBuffer();
+			nt += triangles[i].capacity() / 3;
+		}
+		numberOfNodes = checkedCount(nn, nodeFile);
+		numberOfTriangles = checkedCount(nt, triaFile);
+		triangleIds = null;
+		owned = new ByteBuffer[n.length + t.length];
+		System.arraycopy(n, 0, owned, 0, n.length);
+		System.arraycopy(t, 0, owned, n.length, t.length);
+	}
+
+	private MappedMesh(MappedMesh parent, File idsFile, long offset, int nr)
+		throws IOException
+	{
+		dim = parent.dim;
+		numberOfNodes = parent.numberOfNodes;
+		nodes = parent.nodes;
+		triangles = parent.triangles;
+		numberOfTriangles = nr;
+		if (nr == 0)
+			owned = new ByteBuffer[0];
+		else
+			owned = map(idsFile, 4L * offset, nr, 4);
+		triangleIds = new IntBuffer[owned.length];
+		for (int i = 0; i < owned.length; i++)
+			triangleIds[i] = owned[i].asIntBuffer();
+	}
+
+	private static int checkedCount(long n, File f) throws IOException
+	{
+		if (n > Integer.MAX_VALUE)
+			throw new IOException("Too many records in "+f);
+		return (int) n;
+	}
+
+	/**
+	 * Maps a file region by slabs of {@link #RECORDS_PER_SLAB} records.
+	 *
+	 * @param f  file
+	 * @param start  offset in bytes of the first record
+	 * @param nr  number of records, or -1 to map until the end of file
+	 * @param recordSize  record size in bytes
+	 */
+	private static ByteBuffer[] map(File f, long start, long nr, int recordSize)
+		throws IOException
+	{
+		File compressed = CompressedChunks.find(f);
+		if (compressed != null)
+			return decode(compressed, start, nr, recordSize);
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			FileChannel fc = in.getChannel();
+			if (nr < 0L)
+				nr = (fc.size() - start) / recordSize;
+			else if (start + nr * recordSize > fc.size())
+				throw new IOException("File "+f+" is too short");
+			int nrSlabs = (int) ((nr + RECORDS_PER_SLAB - 1) / RECORDS_PER_SLAB);
+			ByteBuffer[] ret = new ByteBuffer[Math.max(1, nrSlabs)];
+			if (nrSlabs == 0)
+				ret[0] = fc.map(FileChannel.MapMode.READ_ONLY, start, 0L);
+			for (int i = 0; i < nrSlabs; i++)
+			{
+				long first = (long) i * RECORDS_PER_SLAB;
+				long size = Math.min(RECORDS_PER_SLAB, nr - first) * recordSize;
+				ret[i] = fc.map(FileChannel.MapMode.READ_ONLY,
+					start + first * recordSize, size);
+			}
+			return ret;
+		}
+		finally
+		{
+			// Mappings remain valid after the channel is closed
+			in.close();
+		}
+	}
+
+	/**
+	 * Decodes a region of a compressed file into heap buffers.
+	 * Arguments are the same as in {@link #map}.
+	 */
+	private static ByteBuffer[] decode(File f, long start, long nr, int recordSize)
+		throws IOException
+	{
+		// Compressed files contain ints or doubles
+		int elementSize = (recordSize % 8 == 0 ? 8 : 4);
+		CompressedFileReader reader;
+		if (elementSize == 8)
+			reader = new DoubleFileReaderByChunks(f);
+		else
+			reader = new IntFileReaderByChunks(f);
+		try
+		{
+			long first = start / elementSize;
+			if (nr < 0L)
+				nr = (reader.size() - first) * elementSize / recordSize;
+			else if (first + nr * recordSize / elementSize > reader.size())
+				throw new IOException("File "+f+" is too short");
+			int nrSlabs = (int) ((nr + RECORDS_PER_SLAB - 1) / RECORDS_PER_SLAB);
+			ByteBuffer[] ret = new ByteBuffer[Math.max(1, nrSlabs)];
+			if (nrSlabs == 0)
+				ret[0] = ByteBuffer.allocate(0);
+			for (int i = 0; i < nrSlabs; i++)
+			{
+				long r = (long) i * RECORDS_PER_SLAB;
+				int size = (int) Math.min(RECORDS_PER_SLAB, nr - r) * recordSize;
+				ret[i] = ByteBuffer.allocate(size);
+				reader.copy(first + r * recordSize / elementSize, ret[i]);
+				ret[i].flip();
+			}
+			return ret;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Returns a view of the triangles of a group.
+	 *
+	 * @param group  group of the Amibe mesh from which this mesh was mapped
+	 * @return a view containing triangles of this group
+	 * @throws IOException if group file cannot be mapped
+	 */
+	public MappedMesh getGroup(AmibeReader.Group group) throws IOException
+	{
+		if (triangleIds != null)
+			throw new IllegalStateException("Cannot create a group view from a group view");
+		return new MappedMesh(this, group.getTriaIdsFile(),
+			group.getTriasOffset(), group.getNumberOfTrias());
+	}
+
+	/** Returns the number of coordinates of nodes. */
+	public final int getDimension()
+	{
+		return dim;
+	}
+
+	/** Returns the number of nodes. */
+	public final int getNumberOfNodes()
+	{
+		return numberOfNodes;
+	}
+
+	/**
+	 * Returns the number of triangles, including triangles connected to
+	 * the outer vertex.
+	 */
+	public final int getNumberOfTriangles()
+	{
+		return numberOfTriangles;
+	}
+
+	/**
+	 * Returns a node coordinate.
+	 *
+	 * @param node  node index
+	 * @param c  coordinate index, between 0 and <code>getDimension()-1</code>
+	 * @return node coordinate
+	 */
+	public final double getCoordinate(int node, int c)
+	{
+		return nodes[node >>> SLAB_SHIFT].get((node & SLAB_MASK) * dim + c);
+	}
+
+	/**
+	 * Copies node coordinates into an array.
+	 *
+	 * @param node  node index
+	 * @param coords  array of length at least <code>getDimension()</code>
+	 */
+	public final void getNode(int node, double[] coords)
+	{
+		DoubleBuffer b = nodes[node >>> SLAB_SHIFT];
+		int offset = (node & SLAB_MASK) * dim;
+		for (int c = 0; c < dim; c++)
+			coords[c] = b.get(offset + c);
+	}
+
+	/**
+	 * Returns the index of a triangle in the whole mesh.  This is the
+	 * identity when this instance is not a group view.
+	 *
+	 * @param tria  triangle index in this view
+	 * @return triangle index in the whole mesh
+	 */
+	public final int getTriangleId(int tria)
+	{
+		if (triangleIds == null)
+			return tria;
+		return triangleIds[tria >>> SLAB_SHIFT].get(tria & SLAB_MASK);
+	}
+
+	/**
+	 * Returns a vertex of a triangle.  A negative value denotes the outer
+	 * vertex.
+	 *
+	 * @param tria  triangle index in this view
+	 * @param j  local vertex index, between 0 and 2
+	 * @return node index
+	 */
+	public final int getTriangleVertex(int tria, int j)
+	{
+		int t = getTriangleId(tria);
+		return triangles[t >>> SLAB_SHIFT].get(3 * (t & SLAB_MASK) + j);
+	}
+
+	/**
+	 * Copies triangle vertices into an array.
+	 *
+	 * @param tria  triangle index in this view
+	 * @param vertices  array of length at least 3
+	 */
+	public final void getTriangle(int tria, int[] vertices)
+	{
+		int t = getTriangleId(tria);
+		IntBuffer b = triangles[t >>> SLAB_SHIFT];
+		int offset = 3 * (t & SLAB_MASK);
+		vertices[0] = b.get(offset);
+		vertices[1] = b.get(offset + 1);
+		vertices[2] = b.get(offset + 2);
+	}
+
+	/**
+	 * Unmaps buffers owned by this instance.  Closing a group view does
+	 * not unmap buffers of the whole mesh.
+	 */
+	public void close()
+	{
+		for (ByteBuffer b : owned)
+		{
+			if (b instanceof MappedByteBuffer)
+				IntFileReaderByMmap.clean((MappedByteBuffer) b);
+		}
+	}
+}
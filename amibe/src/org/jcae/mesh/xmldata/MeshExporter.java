@@ -175,13 +175,14 @@ abstract public class MeshExporter
 	
 	private final static String CR=System.getProperty("line.separator");
 	private final static NumberFormat FORMAT_D25_16=new FormatD25_16();
-	private final static NumberFormat FORMAT_I10=new FormatI10();
+	private final static int BUFFER_SIZE=1 << 20;
 	
 	private AmibeReader.Dim3 amibeReader;
 	protected SubMesh subMesh;
 	protected List<Group> groupsToExport;
 	protected int[][] groups;
 	private int numberOfTriangles;
+	private int threads = Runtime.getRuntime().availableProcessors();
 	/**
 	 * @param directory The directory which contains 3d files
 	 * @param groupIds The list of ids of groups to convert
@@ -217,6 +218,22 @@ abstract public class MeshExporter
 		return subMesh;
 	}
 
+	/**
+	 * Sets the number of threads used to format nodes and elements.
+	 * Output files do not depend on this number.
+	 * @param threads number of threads, default is the number of
+	 * available processors
+	 */
+	public final void setThreads(int threads)
+	{
+		this.threads = threads;
+	}
+
+	public final int getThreads()
+	{
+		return threads;
+	}
+
 	private void readGroups() throws IOException
 	{
 		numberOfTriangles=0;
@@ -284,7 +301,7 @@ abstract public class MeshExporter
 		try
 		{
 			FileOutputStream fos=new FileOutputStream(fileName);
-			BufferedOutputStream bos=new BufferedOutputStream(fos);
+			BufferedOutputStream bos=new BufferedOutputStream(fos, BUFFER_SIZE);
 			PrintStream pstream;
 
 			if(fileName.endsWith(".gz"))
@@ -344,6 +361,159 @@ abstract public class MeshExporter
 		//To be implemented by instanciating class
 	}
 	
+	/**
+	 * Writes a node list.  Nodes are read by the calling thread, labels
+	 * are stored into <code>amibeToUNV</code> and are indices in
+	 * <code>nodesID</code> plus 1.
+	 */
+	abstract static class NodeWriter extends ChunkedTextWriter
+	{
+		private final DoubleFileReader dfrN;
+		private final int[] nodesID;
+		private final TIntIntHashMap amibeToUNV;
+		private double[] coords = new double[0];
+		private int offset;
+
+		NodeWriter(int threads, DoubleFileReader dfrN, int[] nodesID,
+			TIntIntHashMap amibeToUNV)
+		{
+			super(threads);
+			this.dfrN = dfrN;
+			this.nodesID = nodesID;
+			this.amibeToUNV = amibeToUNV;
+		}
+
+		@Override
+		final void load(int start, int end) throws IOException
+		{
+			if (coords.length < 3 * (end - start))
+				coords = new double[3 * (end - start)];
+			offset = start;
+			for (int i = start; i < end; i++)
+			{
+				int iid = nodesID[i] * 3;
+				int k = 3 * (i - start);
+				coords[k] = dfrN.get(iid);
+				coords[k+1] = dfrN.get(iid+1);
+				coords[k+2] = dfrN.get(iid+2);
+				amibeToUNV.put(nodesID[i], i + 1);
+			}
+		}
+
+		@Override
+		final void format(int start, int end, AsciiBuffer out)
+		{
+			for (int i = start; i < end; i++)
+			{
+				int k = 3 * (i - offset);
+				formatNode(out, i + 1, coords[k], coords[k+1], coords[k+2]);
+			}
+		}
+
+		abstract void formatNode(AsciiBuffer out, int label, double x, double y, double z);
+	}
+
+	/**
+	 * Iterates over triangles of all groups.
+	 */
+	private static final class GroupCursor
+	{
+		private final int[][] groups;
+		private int group;
+		private int index;
+
+		GroupCursor(int[][] groups)
+		{
+			this.groups = groups;
+		}
+
+		/** Returns the next triangle id */
+		int next()
+		{
+			while (index >= groups[group].length)
+			{
+				group++;
+				index = 0;
+			}
+			return groups[group][index++];
+		}
+
+		/** Returns the group index of the last triangle */
+		int group()
+		{
+			return group;
+		}
+	}
+
+	/**
+	 * Writes triangles of exported groups.  Labels are stored into
+	 * <code>amibeTriaToUNVTria</code> and are indices in the
+	 * <code>triangles</code> array plus 1.
+	 */
+	abstract static class TriangleWriter extends ChunkedTextWriter
+	{
+		private final GroupCursor cursor;
+		private final int[] triangles;
+		private final TIntIntHashMap amibeNodeToUNVNode;
+		private final TIntIntHashMap amibeTriaToUNVTria;
+		private int[] nodes = new int[0];
+		private int[] groupIndex = new int[0];
+		private int offset;
+
+		TriangleWriter(int threads, int[][] groups, int[] triangles,
+			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
+		{
+			super(threads);
+			this.cursor = new GroupCursor(groups);
+			this.triangles = triangles;
+			this.amibeNodeToUNVNode = amibeNodeToUNVNode;
+			this.amibeTriaToUNVTria = amibeTriaToUNVTria;
+		}
+
+		@Override
+		final void load(int start, int end)
+		{
+			if (groupIndex.length < end - start)
+			{
+				groupIndex = new int[end - start];
+				nodes = new int[3 * (end - start)];
+			}
+			offset = start;
+			for (int i = start; i < end; i++)
+			{
+				amibeTriaToUNVTria.put(cursor.next(), i + 1);
+				groupIndex[i - start] = cursor.group();
+				for (int k = 0; k < 3; k++)
+					nodes[3 * (i - start) + k] = amibeNodeToUNVNode.get(triangles[3 * i + k]);
+			}
+		}
+
+		@Override
+		final void format(int start, int end, AsciiBuffer out)
+		{
+			for (int i = start; i < end; i++)
+			{
+				int k = 3 * (i - offset);
+				formatTriangle(out, i + 1, nodes[k], nodes[k+1], nodes[k+2], groupIndex[i - offset]);
+			}
+		}
+
+		abstract void formatTriangle(AsciiBuffer out, int label, int n0, int n1, int n2, int group);
+	}
+
+	/**
+	 * Writes an <code>AsciiBuffer</code> into a stream and clears it
+	 * when it is large enough.
+	 */
+	static void flush(PrintStream out, AsciiBuffer buffer, boolean force)
+	{
+		if (force || buffer.size() >= BUFFER_SIZE)
+		{
+			buffer.writeTo(out);
+			buffer.clear();
+		}
+	}
+
 	public static class UNV extends MeshExporter
 	{
 		public static enum Unit
@@ -371,8 +541,15 @@ abstract public class MeshExporter
 		
 		public static void writeSingleNode(PrintStream out, int count, double x, double y, double z)
 		{
-			out.println(FORMAT_I10.format(count)+"         1         1         1");
-			out.println(FORMAT_D25_16.format(x)+FORMAT_D25_16.format(y)+FORMAT_D25_16.format(z));
+			AsciiBuffer b = new AsciiBuffer(128);
+			appendSingleNode(b, count, x, y, z);
+			b.writeTo(out);
+		}
+
+		static void appendSingleNode(AsciiBuffer out, int count, double x, double y, double z)
+		{
+			out.appendI10(count).append("         1         1         1").newLine();
+			out.appendD25_16(x).appendD25_16(y).appendD25_16(z).newLine();
 		}
 
 		// We use our own convention for elements:
@@ -399,10 +576,12 @@ abstract public class MeshExporter
 			}
 			else
 				throw new IllegalArgumentException();
-			out.println(FORMAT_I10.format(count)+FORMAT_I10.format(type)+"         1         1         1"+FORMAT_I10.format(ids.length-1));
+			AsciiBuffer b = new AsciiBuffer(128);
+			b.appendI10(count).appendI10(type).append("         1         1         1").appendI10(ids.length-1).newLine();
 			for (int i = 1; i < ids.length; i++)
-				out.print(FORMAT_I10.format(ids[i]));
-			out.println();
+				b.appendI10(ids[i]);
+			b.newLine();
+			b.writeTo(out);
 		}
 
 		public static void writeSingleTriangle(PrintStream out, int count, int n0, int n1, int n2)
@@ -412,41 +591,55 @@ abstract public class MeshExporter
 
 		public static void writeSingleTriangle(PrintStream out, int count, int n0, int n1, int n2, int physical)
 		{
-			out.println(FORMAT_I10.format(count) + "        91" +
-				FORMAT_I10.format(physical) + "         1         1         3");
-			out.println(FORMAT_I10.format(n0)+FORMAT_I10.format(n1)+FORMAT_I10.format(n2));
+			AsciiBuffer b = new AsciiBuffer(128);
+			appendSingleTriangle(b, count, n0, n1, n2, physical);
+			b.writeTo(out);
+		}
+
+		static void appendSingleTriangle(AsciiBuffer out, int count, int n0, int n1, int n2, int physical)
+		{
+			out.appendI10(count).append("        91").appendI10(physical).append("         1         1         3").newLine();
+			out.appendI10(n0).appendI10(n1).appendI10(n2).newLine();
 		}
 
 		/** Write a linear, quad or cubic triangle */
 		public static void writeHOTria(PrintStream out, int count, int[] nodes, int physical) {
+			AsciiBuffer b = new AsciiBuffer(128);
+			appendHOTria(b, count, nodes, physical);
+			b.writeTo(out);
+		}
+
+		static void appendHOTria(AsciiBuffer out, int count, int[] nodes, int physical) {
 			// element label
-			out.print(FORMAT_I10.format(count));
+			out.appendI10(count);
 			// fe descriptor: 91 for linear, 92 for quad, 93 for cubic
-			out.print(FORMAT_I10.format(90+nodes.length/3));
+			out.appendI10(90+nodes.length/3);
 			// physical property table number
-			out.print(FORMAT_I10.format(physical));
+			out.appendI10(physical);
 			// material property table number and color
-			out.print("         1         1");
-			out.println(FORMAT_I10.format(nodes.length));
+			out.append("         1         1");
+			out.appendI10(nodes.length).newLine();
 			for(int i = 0; i < nodes.length; i++)
-				out.print(FORMAT_I10.format(nodes[i]));
-			out.println();
+				out.appendI10(nodes[i]);
+			out.newLine();
 		}
 
 		public static void writeSingleGroup(PrintStream out, int groupId, String name, int[] ids)
 		{
-			out.println(FORMAT_I10.format(groupId)+"         0         0         0         0         0         0"+FORMAT_I10.format(ids.length));
-			out.println(name);
+			AsciiBuffer b = new AsciiBuffer(64 + 20 * ids.length);
+			b.appendI10(groupId).append("         0         0         0         0         0         0").appendI10(ids.length).newLine();
+			b.append(name).newLine();
 			boolean newline = true;
 			for(int j : ids)
 			{
-				out.print(FORMAT_I10.format(8)+FORMAT_I10.format(j)+FORMAT_I10.format(0)+FORMAT_I10.format(0));
+				b.appendI10(8).appendI10(j).appendI10(0).appendI10(0);
 				newline = !newline;
 				if (newline)
-					out.println("");
+					b.newLine();
 			}
 			if (!newline)
-				out.println();
+				b.newLine();
+			b.writeTo(out);
 		}
 
 		@Override
@@ -478,21 +671,17 @@ abstract public class MeshExporter
 			DoubleFileReader dfrN = subMesh.getNodes();
 
 			out.println("    -1"+CR+"  2411");
-			int count =  0;
-			double x,y,z;
-			for(int i=0; i<nodesID.length; i++)
+			new NodeWriter(getThreads(), dfrN, nodesID, amibeToUNV)
 			{
-				int iid=nodesID[i]*3;
-				x=dfrN.get(iid);
-				y=dfrN.get(iid+1);
-				z=dfrN.get(iid+2);
-				count++;
-				amibeToUNV.put(nodesID[i], count);
-				writeSingleNode(out, count, x, y, z);
-			}
+				@Override
+				void formatNode(AsciiBuffer b, int label, double x, double y, double z)
+				{
+					appendSingleNode(b, label, x, y, z);
+				}
+			}.write(out, nodesID.length);
 			out.println("    -1");
 			dfrN.close();
-			logger.info("Total number of nodes: "+count);
+			logger.info("Total number of nodes: "+nodesID.length);
 		}
 		
 		/**
@@ -504,19 +693,22 @@ abstract public class MeshExporter
 			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
 		{
 			out.println("    -1"+CR+"  2412");
-			int count=0;
-			int triaIndex=0;
-			for(int i=0; i<groups.length; i++)
+			int count = triangles.length / 3;
+			try
 			{
-				for(int j=0; j<groups[i].length; j++)
+				new TriangleWriter(getThreads(), groups, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria)
 				{
-					count++;
-					amibeTriaToUNVTria.put(groups[i][j], count);
-					writeSingleTriangle(out, count,
-						amibeNodeToUNVNode.get(triangles[triaIndex++]),
-						amibeNodeToUNVNode.get(triangles[triaIndex++]),
-						amibeNodeToUNVNode.get(triangles[triaIndex++]));
-				}
+					@Override
+					void formatTriangle(AsciiBuffer b, int label, int n0, int n1, int n2, int group)
+					{
+						appendSingleTriangle(b, label, n0, n1, n2, 1);
+					}
+				}.write(out, count);
+			}
+			catch (IOException ex)
+			{
+				// TriangleWriter does not read files
+				throw new RuntimeException(ex);
 			}
 			out.println("    -1");
 			logger.info("Total number of triangles: "+count);
@@ -530,26 +722,29 @@ abstract public class MeshExporter
 		public void writeGroups(PrintStream out, TIntIntHashMap amibeTriaToUNVTria)
 		{
 			out.println("    -1"+CR+"  2435");
+			AsciiBuffer b = new AsciiBuffer(BUFFER_SIZE);
 			for(int i=0;i<groups.length; i++)
 			{				
-				out.println(FORMAT_I10.format(i+1)+
-					"         0         0         0         0         0         0"+
-					FORMAT_I10.format(groups[i].length));
+				b.appendI10(i+1).
+					append("         0         0         0         0         0         0").
+					appendI10(groups[i].length).newLine();
 				
-				out.println(groupsToExport.get(i).getName());
+				b.append(groupsToExport.get(i).getName()).newLine();
 				int countg=0;
 				for(int j=0; j<groups[i].length; j++)
 				{
-					out.print("         8"
-						+FORMAT_I10.format(amibeTriaToUNVTria.get(groups[i][j]))
-						+"         0         0");
+					b.append("         8").
+						appendI10(amibeTriaToUNVTria.get(groups[i][j])).
+						append("         0         0");
 					countg++;
 					if ((countg % 2) == 0)
-						out.println("");
+						b.newLine();
+					flush(out, b, false);
 				}
 				if ((countg % 2) !=0 )
-					out.println();
+					b.newLine();
 			}
+			flush(out, b, true);
 			out.println("    -1");
 		}
 	}
@@ -575,30 +770,46 @@ abstract public class MeshExporter
 			TIntIntHashMap amibeNodeToUNVNode, TIntIntHashMap amibeTriaToUNVTria)
 			throws IOException
 		{
-			DoubleFileReader dfrN = subMesh.getNodes();
+			final DoubleFileReader dfrN = subMesh.getNodes();
 			
 			out.println("solid export");
-			int count=0;
-			double x,y,z;
-			for(int i=0; i<groups.length; i++)
+			int count = triangles.length / 3;
+			new ChunkedTextWriter(getThreads())
 			{
-				for(int j=0; j<groups[i].length; j++)
+				private double[] coords = new double[0];
+				private int offset;
+
+				@Override
+				void load(int start, int end) throws IOException
 				{
-					out.println("facet");
-					out.println("   outer loop");
-					for(int k=0; k < 3; k++)
+					if (coords.length < 9 * (end - start))
+						coords = new double[9 * (end - start)];
+					offset = start;
+					for (int k = 3 * start; k < 3 * end; k++)
 					{
-						int iid=triangles[count*3+k]*3;
-						x=dfrN.get(iid);
-						y=dfrN.get(iid+1);
-						z=dfrN.get(iid+2);
-						out.println("     vertex "+x+" "+y+" "+z);
+						int iid = triangles[k] * 3;
+						int c = 3 * (k - 3 * start);
+						coords[c] = dfrN.get(iid);
+						coords[c+1] = dfrN.get(iid+1);
+						coords[c+2] = dfrN.get(iid+2);
 					}
-					out.println("   endloop");
-					out.println("endfacet");
-					count++;
 				}
-			}
+
+				@Override
+				void format(int start, int end, AsciiBuffer b)
+				{
+					for (int c = 9 * (start - offset); c < 9 * (end - offset); c += 9)
+					{
+						b.append("facet").newLine();
+						b.append("   outer loop").newLine();
+						for (int k = c; k < c + 9; k += 3)
+							b.append("     vertex ").append(coords[k]).append(' ').
+								append(coords[k+1]).append(' ').append(coords[k+2]).newLine();
+						b.append("   endloop").newLine();
+						b.append("endfacet").newLine();
+					}
+				}
+			}.write(out, count);
 			dfrN.close();
 			out.println("endsolid export");
 			logger.info("Total number of triangles: "+count);
@@ -640,21 +851,17 @@ abstract public class MeshExporter
 		{
 			DoubleFileReader dfrN = subMesh.getNodes();
 			
-			int count =  0;
-			double x,y,z;
 			out.println("\nVertices\n"+nodesID.length);
-			for(int i=0; i<nodesID.length; i++)
+			new NodeWriter(getThreads(), dfrN, nodesID, amibeToUNV)
 			{
-				int iid=nodesID[i]*3;
-				x=dfrN.get(iid);
-				y=dfrN.get(iid+1);
-				z=dfrN.get(iid+2);
-				count++;
-				amibeToUNV.put(nodesID[i], count);
-				out.println(x+" "+y+" "+z+" 0");
-			}
+				@Override
+				void formatNode(AsciiBuffer b, int label, double x, double y, double z)
+				{
+					b.append(x).append(' ').append(y).append(' ').append(z).append(" 0").newLine();
+				}
+			}.write(out, nodesID.length);
 			dfrN.close();
-			logger.info("Total number of nodes: "+count);
+			logger.info("Total number of nodes: "+nodesID.length);
 		}
 		
 		/**
@@ -670,16 +877,21 @@ abstract public class MeshExporter
 				count += groups[i].length;
 			
 			out.println("\nTriangles\n"+count);
-			int triaIndex=0;
-			count=0;
-			for(int i=0; i<groups.length; i++)
+			try
 			{
-				for(int j=0; j<groups[i].length; j++)
+				new TriangleWriter(getThreads(), groups, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria)
 				{
-					count++;
-					amibeTriaToUNVTria.put(groups[i][j], count);
-					out.println(amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+(i+1));
-				}
+					@Override
+					void formatTriangle(AsciiBuffer b, int label, int n0, int n1, int n2, int group)
+					{
+						b.append(n0).append(' ').append(n1).append(' ').append(n2).append(' ').append(group+1).newLine();
+					}
+				}.write(out, count);
+			}
+			catch (IOException ex)
+			{
+				// TriangleWriter does not read files
+				throw new RuntimeException(ex);
 			}
 			logger.info("Total number of triangles: "+count);
 		}
@@ -696,35 +908,54 @@ abstract public class MeshExporter
 			
 			out.println("\nNormals\n"+(3*count));
 
-			double x,y,z;
-			for(int i=0; i<groups.length; i++)
+			final int[] labels = new int[count];
+			GroupCursor cursor = new GroupCursor(groups);
+			for(int i=0; i<count; i++)
+				labels[i] = amibeTriaToUNVTria.get(cursor.next());
+			final DoubleFileReader normals = dfrN;
+			new ChunkedTextWriter(getThreads())
 			{
-				for(int j=0; j<groups[i].length; j++)
+				private double[] coords = new double[0];
+				private int offset;
+
+				@Override
+				void load(int start, int end) throws IOException
 				{
-					int iid = (amibeTriaToUNVTria.get(groups[i][j]) - 1)* 9;
-					for (int k = 0; k < 3; k++)
+					if (coords.length < 9 * (end - start))
+						coords = new double[9 * (end - start)];
+					offset = start;
+					for (int i = start; i < end; i++)
 					{
-						x=dfrN.get(iid);
-						y=dfrN.get(iid+1);
-						z=dfrN.get(iid+2);
-						out.println(x+" "+y+" "+z);
-						iid += 3;
+						int iid = (labels[i] - 1) * 9;
+						for (int k = 0; k < 9; k++)
+							coords[9 * (i - start) + k] = normals.get(iid + k);
 					}
 				}
-			}
+
+				@Override
+				void format(int start, int end, AsciiBuffer b)
+				{
+					for (int c = 3 * (start - offset); c < 3 * (end - offset); c++)
+						b.append(coords[3*c]).append(' ').append(coords[3*c+1]).append(' ').append(coords[3*c+2]).newLine();
+				}
+			}.write(out, count);
 			dfrN.close();
 
 			out.println("\nNormalAtTriangleVertices\n"+(3*count));
-			for(int i=0; i<groups.length; i++)
+			new ChunkedTextWriter(getThreads())
 			{
-				for(int j=0; j<groups[i].length; j++)
+				@Override
+				void format(int start, int end, AsciiBuffer b)
 				{
-					int nT = amibeTriaToUNVTria.get(groups[i][j]);
-					out.println(nT+" 1 "+(3*nT-2));
-					out.println(nT+" 2 "+(3*nT-1));
-					out.println(nT+" 3 "+(3*nT));
+					for (int i = start; i < end; i++)
+					{
+						int nT = labels[i];
+						b.append(nT).append(" 1 ").append(3*nT-2).newLine();
+						b.append(nT).append(" 2 ").append(3*nT-1).newLine();
+						b.append(nT).append(" 3 ").append(3*nT).newLine();
+					}
 				}
-			}
+			}.write(out, count);
 		}
 	}
 	
@@ -754,22 +985,18 @@ abstract public class MeshExporter
 		{
 			DoubleFileReader dfrN = subMesh.getNodes();
 			
-			int count =  0;
-			double x,y,z;
 			out.println("# Part 1 - node list");
 			out.println(""+nodesID.length+" 3 0 0");
-			for(int i=0; i<nodesID.length; i++)
+			new NodeWriter(getThreads(), dfrN, nodesID, amibeToUNV)
 			{
-				int iid=nodesID[i]*3;
-				x=dfrN.get(iid);
-				y=dfrN.get(iid+1);
-				z=dfrN.get(iid+2);
-				count++;
-				amibeToUNV.put(nodesID[i], count);
-				out.println("   "+count+" "+x+" "+y+" "+z);
-			}
+				@Override
+				void formatNode(AsciiBuffer b, int label, double x, double y, double z)
+				{
+					b.append("   ").append(label).append(' ').append(x).append(' ').append(y).append(' ').append(z).newLine();
+				}
+			}.write(out, nodesID.length);
 			dfrN.close();
-			logger.info("Total number of nodes: "+count);
+			logger.info("Total number of nodes: "+nodesID.length);
 		}
 		
 		/**
@@ -786,18 +1013,22 @@ abstract public class MeshExporter
 			
 			out.println("# Part 2 - element list");
 			out.println(""+count+" 0");
-			int triaIndex=0;
-			count=0;
-			for(int i=0; i<groups.length; i++)
+			try
 			{
-				for(int j=0; j<groups[i].length; j++)
+				new TriangleWriter(getThreads(), groups, triangles, amibeNodeToUNVNode, amibeTriaToUNVTria)
 				{
-					count++;
-					amibeTriaToUNVTria.put(groups[i][j], count);
-					out.println("   1 0 0");
-					out.println("   3 "+
-							amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++])+" "+amibeNodeToUNVNode.get(triangles[triaIndex++]));
-				}
+					@Override
+					void formatTriangle(AsciiBuffer b, int label, int n0, int n1, int n2, int group)
+					{
+						b.append("   1 0 0").newLine();
+						b.append("   3 ").append(n0).append(' ').append(n1).append(' ').append(n2).newLine();
+					}
+				}.write(out, count);
+			}
+			catch (IOException ex)
+			{
+				// TriangleWriter does not read files
+				throw new RuntimeException(ex);
 			}
 		}
 	}
@@ -223,33 +223,29 @@ public class MeshToMMesh3DConvert implements FilterInterface, JCAEXMLData
 				xpath.evaluate("number/text()", submeshNodes));
 			LOGGER.fine("Reading "+numberOfNodes+" nodes");
 			double [] normals = new double[3*numberOfNodes];
+			//  All nodes are evaluated at once, normals are stored in
+			//  the same order as nodes.
+			double [] uv = new double[2*numberOfNodes];
+			dfrN.get(uv);
+			double [] xyz = new double[3*numberOfNodes];
+			surface.arrayValues(numberOfNodes, uv, xyz, null, null, normals);
 			//  Interior nodes
+			double [] p3 = new double[3];
 			for (int i = 0; i < numberOfNodes - numberOfReferences; i++)
 			{
-				double u = dfrN.get();
-				double v = dfrN.get();
-				double [] p3 = surface.value(u, v);
+				System.arraycopy(xyz, 3 * i, p3, 0, 3);
 				amibeWriter.addNode(p3);
 				if (unvWriter != null)
 					unvWriter.writeNode(i+nodeOffset+1, p3);
-				surface.setParameter(u, v);
-				p3 = surface.normal();
-				System.arraycopy(p3, 0, normals, 3 * i, 3);
 			}
 			//  Boundary nodes
 			ifrR.get(refs);
 			for (int i = 0; i < numberOfReferences; i++)
 			{
-				double u = dfrN.get();
-				double v = dfrN.get();
-				surface.setParameter(u, v);
-				double [] p3 = surface.normal();
-				System.arraycopy(p3, 0, normals, 3 * (i + numberOfNodes - numberOfReferences), 3);
 				if (!xrefs.contains(refs[i]))
 				{
-					p3 = surface.value(u, v);
 					xrefs.put(refs[i], offsetBnd);
-					System.arraycopy(p3, 0, coordRefs, 3 * offsetBnd, 3);
+					System.arraycopy(xyz, 3 * (i + numberOfNodes - numberOfReferences), coordRefs, 3 * offsetBnd, 3);
 					offsetBnd++;
 					amibeWriter.addNodeRef(refs[i]);
 				}
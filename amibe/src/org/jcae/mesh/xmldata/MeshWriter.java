@@ -278,7 +278,7 @@ public class MeshWriter
 		}
 		TObjectIntHashMap<Vertex> nodeIndex=new TObjectIntHashMap<Vertex>(nodelist.size());
 		AmibeWriter.Dim3 aw = new AmibeWriter.Dim3(xmlDir, false,
-			submesh.hasPersistentReferences());
+			submesh.hasPersistentReferences(), compressed);
 		if (brepFile != null)
 			aw.setShape(brepFile);
 
@@ -306,6 +306,7 @@ public class MeshWriter
 
 	private Mesh submesh;
 	private String brepFile;
+	private boolean compressed;
 	private TIntHashSet selectedGroupsID;
 	public MeshWriter(Mesh mesh) {
 		this.submesh = mesh;
@@ -315,6 +316,15 @@ public class MeshWriter
 		this.brepFile = brepFile;
 	}
 
+	/**
+	 * Write binary files of 3D meshes in compressed format.
+	 * These files can be read by {@link AmibeReader} and {@link MeshReader}
+	 * as usual.
+	 */
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	protected boolean isSelected(Triangle triangle) {
 		if(!triangle.isWritable())
 			return false;
@@ -79,24 +79,34 @@ public class PrimitiveFileReaderFactory
 	}
 
 	/**
-	 * Return an IntFileReader instance.
+	 * Return an IntFileReader instance.  If <code>file</code> does not
+	 * exist but has been written in compressed format, the compressed
+	 * file is read.
 	 *
 	 * @param file  a file name containing only integers
 	 * @return an IntFileReader instance
 	 */
 	public final IntFileReader getIntReader(File file) throws IOException
 	{
+		File compressed = CompressedChunks.find(file);
+		if (compressed != null)
+			return new IntFileReaderByChunks(compressed);
 		return instance.getIntFileReader(file);
 	}
 
 	/**
-	 * Return a DoubleFileReader instance.
+	 * Return a DoubleFileReader instance.  If <code>file</code> does not
+	 * exist but has been written in compressed format, the compressed
+	 * file is read.
 	 *
 	 * @param file  a file name containing only double values
 	 * @return a DoubleFileReader instance
 	 */
 	public final DoubleFileReader getDoubleReader(File file) throws IOException
 	{
+		File compressed = CompressedChunks.find(file);
+		if (compressed != null)
+			return new DoubleFileReaderByChunks(compressed);
 		return instance.getDoubleFileReader(file);
 	}
 
@@ -23,8 +23,8 @@ package org.jcae.mesh.xmldata;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
@@ -44,7 +44,8 @@ import java.util.regex.Pattern;
  * Convert a UNV mesh to an Amibe mesh.
  * <ul>
  * <li>The convertion is out-of-core and can handle large mesh.</li>
- * <li>The nodes and triangles of the input file must have contiguous ids.</li>
+ * <li>The nodes and triangles of the input file must have contiguous ids,
+ * unless the input is given as a file.</li>
  * <li>Only triangles, nodes, and groups are imported.</li>
  * <li>2412-21 (linear beams) and 2412-92 (parabolic trias) are exported as a minimal unv
  * if setStripedUnv as been called.</li>
@@ -204,6 +205,7 @@ public class UNV2Amibe
 	private String stripedUnvFile;
 	private IDMapping idMapping;
 	private double scale = 1.0;
+	private int threads = Runtime.getRuntime().availableProcessors();
 
 	/** a list of 2412 elements which won't be store in the amibe file */
 	private final ArrayList<Element> elements=new ArrayList<Element>();
@@ -213,11 +215,30 @@ public class UNV2Amibe
 		importMesh(new File(input), output);
 	}
 
+	/**
+	 * Imports a UNV file.  The file is memory mapped and nodes and elements
+	 * are parsed concurrently, see {@link #setThreads}.  Node and element
+	 * labels do not need to be contiguous.
+	 */
 	public final void importMesh(File input, String output) throws IOException
 	{
-		BufferedReader br=new BufferedReader(new FileReader(input));
-		importMesh(br, output);
-		br.close();
+		AmibeWriter.Dim3 out = new AmibeWriter.Dim3(output);
+		out.setFixNoGroup(true);
+		FileInputStream in = new FileInputStream(input);
+		try
+		{
+			UNVMappedParser parser = new UNVMappedParser(this, in.getChannel(), threads);
+			parser.parse(out, scale);
+			if (parser.getUnitBlock() != null)
+				unitBlock = parser.getUnitBlock();
+		}
+		finally
+		{
+			in.close();
+		}
+		out.finish();
+		if(stripedUnvFile!=null)
+			writeStripedUnv(out);
 	}
 
 	public final void importMesh(BufferedReader in, String outputDir) throws IOException
@@ -539,6 +560,17 @@ public class UNV2Amibe
 		this.scale = scale;
 	}
 
+	/**
+	 * Sets the number of threads used to parse files given to
+	 * {@link #importMesh(File, String)}.  Output does not depend on
+	 * this number.
+	 * @param threads number of threads, default is the number of
+	 * available processors
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	public static void main(String[] args)
 	{
 		try
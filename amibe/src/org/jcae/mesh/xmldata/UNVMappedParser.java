@@ -0,0 +1,660 @@
+/* jCAE stand for Java Computer Aided Engineering. Features are : Small CAD
+   modeler, Finite element mesher, Plugin architecture.
+
+    Copyright (C) 2011, by EADS France
+
+    This library is free software; you can redistribute it and/or
+    modify it under the terms of the GNU Lesser General Public
+    License as published by the Free Software Foundation; either
+    version 2.1 of the License, or (at your option) any later version.
+
+    This library is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+    Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public
+    License along with this library; if not, write to the Free Software
+    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA */
+
+
+package org.jcae.mesh.xmldata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.amibe.util.WorkerPool;
+
+/**
+ * Reads a UNV file through memory mapped buffers.  Datasets are read
+ * in file order.  Nodes (2411 and 781 datasets) and elements (2412) are
+ * split into chunks of records which are parsed concurrently, then
+ * written in order into an <code>AmibeWriter.Dim3</code>, so output does
+ * not depend on the number of threads.  Groups and units are parsed by
+ * the calling thread.
+ * <p>
+ * Records are interpreted as by {@link UNV2Amibe#importMesh(java.io.BufferedReader, String)},
+ * except that node and element labels do not have to be contiguous:
+ * they are mapped to Amibe indices with a {@link LabelMap}.
+ * </p>
+ */
+final class UNVMappedParser
+{
+	private static final Logger LOGGER=Logger.getLogger(UNV2Amibe.class.getName());
+	// Size of memory mapped buffers used by the calling thread
+	private static final long WINDOW_SIZE = 1L << 28;
+	// Number of records parsed by a single task
+	private static final int CHUNK_SIZE = 1 << 16;
+	// Kinds of 2412 records
+	private static final int SKIP = 0, TRIA = 1, BEAM = 2, UNKNOWN = 3;
+	/** Value of elements which are not imported in elementLabels */
+	private static final int IGNORED_ELEMENT = Integer.MAX_VALUE;
+
+	private final UNV2Amibe owner;
+	private final FileChannel channel;
+	private final long size;
+	private final int threads;
+	private WorkerPool pool;
+	// Current window of the file
+	private ByteBuffer window;
+	private long windowStart;
+	// Absolute position of the next line
+	private long position;
+	// Current line, relative to window
+	private int lineStart, lineEnd;
+	private final Tokenizer tokenizer = new Tokenizer();
+
+	private final LabelMap nodeLabels = new LabelMap();
+	// Values are 2*index for triangles and 2*index+1 for beams
+	private final LabelMap elementLabels = new LabelMap();
+	private int nbTrias;
+	private int nbBeams;
+	private String unitBlock;
+
+	UNVMappedParser(UNV2Amibe owner, FileChannel channel, int threads) throws IOException
+	{
+		this.owner = owner;
+		this.channel = channel;
+		this.size = channel.size();
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the content of the 164 dataset, or <code>null</code>.
+	 */
+	String getUnitBlock()
+	{
+		return unitBlock;
+	}
+
+	void parse(AmibeWriter.Dim3 out, double scale) throws IOException
+	{
+		pool = new WorkerPool(threads);
+		try
+		{
+			double unit = 1.0;
+			while (nextLine())
+			{
+				if (!isEndOfDataset())
+					continue;
+				if (!nextLine())
+					break;
+				String type = lineString().trim();
+				if (type.equals("2411") || type.equals("781"))
+					convertNodes(unit / scale, out);
+				else if (type.equals("2412"))
+					convertFaces(out);
+				else if (type.equals("164"))
+					unit = readUnit();
+				else if ("2430".equals(type) || "2435".equals(type) ||
+					"2477".equals(type) || "2467".equals(type))
+					convertGroups(type, out);
+				else
+					skipDataset();
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	private void map(long start) throws IOException
+	{
+		windowStart = start;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, start,
+			Math.min(WINDOW_SIZE, size - start));
+	}
+
+	/**
+	 * Moves to the next line.
+	 *
+	 * @return <code>false</code> if end of file is reached
+	 */
+	private boolean nextLine() throws IOException
+	{
+		if (position >= size)
+			return false;
+		if (window == null || position >= windowStart + window.limit())
+			map(position);
+		int i = (int) (position - windowStart);
+		while (true)
+		{
+			int limit = window.limit();
+			int j = i;
+			while (j < limit && window.get(j) != '\n')
+				j++;
+			if (j < limit || windowStart + limit == size)
+			{
+				lineStart = i;
+				lineEnd = j;
+				position = windowStart + Math.min(j + 1, limit);
+				return true;
+			}
+			// Line crosses window boundary
+			if (i == 0)
+				throw new IOException("Line too long at offset "+windowStart);
+			map(windowStart + i);
+			i = 0;
+		}
+	}
+
+	private long lineOffset()
+	{
+		return windowStart + lineStart;
+	}
+
+	private String lineString()
+	{
+		return AsciiNumbers.toString(window, lineStart, lineEnd);
+	}
+
+	/** Tells whether current line contains <code>-1</code> */
+	private boolean isEndOfDataset()
+	{
+		return isEndOfDataset(window, lineStart, lineEnd);
+	}
+
+	private static boolean isEndOfDataset(ByteBuffer b, int start, int end)
+	{
+		while (start < end && (b.get(start) & 0xff) <= ' ')
+			start++;
+		while (end > start && (b.get(end - 1) & 0xff) <= ' ')
+			end--;
+		return end - start == 2 && b.get(start) == '-' && b.get(start + 1) == '1';
+	}
+
+	private static int nextLineStart(ByteBuffer b, int from)
+	{
+		int limit = b.limit();
+		while (from < limit && b.get(from) != '\n')
+			from++;
+		return Math.min(from + 1, limit);
+	}
+
+	private static int lineEnd(ByteBuffer b, int from)
+	{
+		int limit = b.limit();
+		while (from < limit && b.get(from) != '\n')
+			from++;
+		return from;
+	}
+
+	private void skipDataset() throws IOException
+	{
+		while (nextLine() && !isEndOfDataset())
+		{
+		}
+	}
+
+	private double readUnit() throws IOException
+	{
+		nextLine();
+		unitBlock = lineString()+'\n';
+		nextLine();
+		String line = lineString();
+		unitBlock += line +'\n';
+		StringTokenizer st = new StringTokenizer(line);
+		double unit = Double.parseDouble(st.nextToken().replace('D','E'));
+		while (nextLine() && !isEndOfDataset())
+			unitBlock += lineString().trim();
+		return unit;
+	}
+
+	/**
+	 * A range of records.
+	 */
+	private abstract static class Chunk implements Callable<Chunk>
+	{
+		final FileChannel channel;
+		final long start;
+		final long end;
+		final int nr;
+		Chunk(FileChannel channel, long start, long end, int nr)
+		{
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.nr = nr;
+		}
+
+		final ByteBuffer map() throws IOException
+		{
+			return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		}
+	}
+
+	private static final class NodeChunk extends Chunk
+	{
+		private final double unit;
+		final int [] labels;
+		final double [] coords;
+		NodeChunk(FileChannel channel, long start, long end, int nr, double unit)
+		{
+			super(channel, start, end, nr);
+			this.unit = unit;
+			labels = new int[nr];
+			coords = new double[3 * nr];
+		}
+
+		public Chunk call() throws IOException
+		{
+			ByteBuffer b = map();
+			Tokenizer tok = new Tokenizer();
+			int pos = 0;
+			for (int i = 0; i < nr; i++)
+			{
+				int end = lineEnd(b, pos);
+				tok.reset(b, pos, end);
+				tok.next();
+				labels[i] = AsciiNumbers.parseInt(b, tok.start, tok.end);
+				pos = nextLineStart(b, end);
+				end = lineEnd(b, pos);
+				tok.reset(b, pos, end);
+				tok.next();
+				coords[3*i] = AsciiNumbers.parseDouble(b, tok.start, tok.end) / unit;
+				tok.next();
+				coords[3*i+1] = AsciiNumbers.parseDouble(b, tok.start, tok.end) / unit;
+				if (tok.next())
+					coords[3*i+2] = AsciiNumbers.parseDouble(b, tok.start, tok.end) / unit;
+				else
+					coords[3*i+2] = 0.0 / unit;
+				pos = nextLineStart(b, end);
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Returns the number of lines of a 2412 record, header included.
+	 */
+	private static int recordLines(int type)
+	{
+		switch(type)
+		{
+			case 41:
+			case 51:
+			case 61:
+			case 74:
+			case 91:
+			case 42:
+			case 92:
+			case 111:
+				return 2;
+			case 11:
+			case 21:
+			case 22:
+			case 24:
+				return 3;
+			case 118:
+				return 4;
+			default:
+				return 1;
+		}
+	}
+
+	private static final class ElementChunk extends Chunk
+	{
+		final int [] labels;
+		final int [] kinds;
+		// Type of unknown elements, or nodes
+		final int [] data;
+		ElementChunk(FileChannel channel, long start, long end, int nr)
+		{
+			super(channel, start, end, nr);
+			labels = new int[nr];
+			kinds = new int[nr];
+			data = new int[3 * nr];
+		}
+
+		public Chunk call() throws IOException
+		{
+			ByteBuffer b = map();
+			Tokenizer tok = new Tokenizer();
+			int pos = 0;
+			for (int i = 0; i < nr; i++)
+			{
+				int end = lineEnd(b, pos);
+				tok.reset(b, pos, end);
+				tok.next();
+				labels[i] = AsciiNumbers.parseInt(b, tok.start, tok.end);
+				tok.next();
+				int type = AsciiNumbers.parseInt(b, tok.start, tok.end);
+				int nrLines = recordLines(type);
+				pos = nextLineStart(b, end);
+				switch(type)
+				{
+					case 41:
+					case 51:
+					case 61:
+					case 74:
+					case 91:
+						kinds[i] = TRIA;
+						readNodes(b, pos, tok, 3, 1, 3 * i);
+						break;
+					case 42:
+					case 92:
+						kinds[i] = TRIA;
+						readNodes(b, pos, tok, 3, 2, 3 * i);
+						break;
+					case 11:
+					case 21:
+						kinds[i] = BEAM;
+						readNodes(b, nextLineStart(b, pos), tok, 2, 1, 3 * i);
+						break;
+					case 22:
+					case 24:
+						kinds[i] = BEAM;
+						readNodes(b, nextLineStart(b, pos), tok, 2, 2, 3 * i);
+						break;
+					case 94:
+					case 111:
+					case 118:
+						kinds[i] = SKIP;
+						break;
+					default:
+						kinds[i] = UNKNOWN;
+						data[3 * i] = type;
+				}
+				for (int k = 1; k < nrLines; k++)
+					pos = nextLineStart(b, pos);
+			}
+			return this;
+		}
+
+		/** Reads nodes found on a line, every <code>step</code> tokens */
+		private void readNodes(ByteBuffer b, int pos, Tokenizer tok, int nr, int step, int offset)
+		{
+			tok.reset(b, pos, lineEnd(b, pos));
+			for (int k = 0; k < nr; k++)
+			{
+				for (int s = (k == 0 ? step - 1 : 0); s < step; s++)
+					tok.next();
+				data[offset + k] = AsciiNumbers.parseInt(b, tok.start, tok.end);
+			}
+		}
+	}
+
+	private void run(List<? extends Chunk> chunks)
+	{
+		pool.invokeAll(chunks);
+	}
+
+	private void convertNodes(double unit, AmibeWriter.Dim3 out) throws IOException
+	{
+		int nrChunks = Math.max(1, threads);
+		boolean finished = false;
+		while (!finished)
+		{
+			List<NodeChunk> chunks = new ArrayList<NodeChunk>(nrChunks);
+			for (int c = 0; c < nrChunks && !finished; c++)
+			{
+				long start = -1L;
+				int n = 0;
+				while (n < CHUNK_SIZE)
+				{
+					if (!nextLine() || isEndOfDataset())
+					{
+						finished = true;
+						break;
+					}
+					if (start < 0L)
+						start = lineOffset();
+					if (!nextLine())
+					{
+						finished = true;
+						break;
+					}
+					n++;
+				}
+				if (n > 0)
+					chunks.add(new NodeChunk(channel, start, position, n, unit));
+			}
+			run(chunks);
+			for (NodeChunk c : chunks)
+			{
+				for (int i = 0; i < c.nr; i++)
+				{
+					nodeLabels.put(c.labels[i], nodeLabels.size());
+					out.addNode(c.coords[3*i], c.coords[3*i+1], c.coords[3*i+2]);
+				}
+			}
+		}
+	}
+
+	/** Returns the Amibe index of a node label */
+	private int getNode(int label) throws IOException
+	{
+		int ret = nodeLabels.get(label);
+		if (ret < 0)
+			throw new IOException("Node "+label+" not found, nodes must be defined before elements and groups");
+		return ret;
+	}
+
+	private void convertFaces(AmibeWriter.Dim3 out) throws IOException
+	{
+		LOGGER.fine("Reading triangles");
+		int nrChunks = Math.max(1, threads);
+		boolean finished = false;
+		while (!finished)
+		{
+			List<ElementChunk> chunks = new ArrayList<ElementChunk>(nrChunks);
+			for (int c = 0; c < nrChunks && !finished; c++)
+			{
+				long start = -1L;
+				int n = 0;
+				while (n < CHUNK_SIZE)
+				{
+					if (!nextLine() || isEndOfDataset())
+					{
+						finished = true;
+						break;
+					}
+					if (start < 0L)
+						start = lineOffset();
+					tokenizer.reset(window, lineStart, lineEnd);
+					tokenizer.next();
+					tokenizer.next();
+					int type = AsciiNumbers.parseInt(window, tokenizer.start, tokenizer.end);
+					int nrLines = recordLines(type);
+					for (int k = 1; k < nrLines && !finished; k++)
+						finished = !nextLine();
+					if (!finished)
+						n++;
+				}
+				if (n > 0)
+					chunks.add(new ElementChunk(channel, start, position, n));
+			}
+			run(chunks);
+			for (ElementChunk c : chunks)
+			{
+				for (int i = 0; i < c.nr; i++)
+				{
+					int k = 3 * i;
+					switch(c.kinds[i])
+					{
+						case TRIA:
+							out.addTriangle(getNode(c.data[k]), getNode(c.data[k+1]), getNode(c.data[k+2]));
+							elementLabels.put(c.labels[i], 2 * nbTrias);
+							nbTrias++;
+							break;
+						case BEAM:
+							out.addBeam(getNode(c.data[k]), getNode(c.data[k+1]));
+							elementLabels.put(c.labels[i], 2 * nbBeams + 1);
+							nbBeams++;
+							break;
+						case UNKNOWN:
+							LOGGER.log(Level.WARNING, "Warning: Section 2412, type {0} unknown", c.data[k]);
+							elementLabels.put(c.labels[i], IGNORED_ELEMENT);
+							break;
+						default:
+							// Volume elements may belong to groups
+							elementLabels.put(c.labels[i], IGNORED_ELEMENT);
+							break;
+					}
+				}
+			}
+		}
+	}
+
+	/** Returns the first non blank character of current line */
+	private int firstChar()
+	{
+		for (int i = lineStart; i < lineEnd; i++)
+		{
+			int c = window.get(i) & 0xff;
+			if (c > ' ')
+				return c;
+		}
+		return -1;
+	}
+
+	private void convertGroups(String type, AmibeWriter out) throws IOException
+	{
+		boolean quads = !"2430".equals(type);
+		if (!nextLine())
+			return;
+		while(!isEndOfDataset())
+		{
+			// Number of elements is the last token
+			tokenizer.reset(window, lineStart, lineEnd);
+			int last = -1;
+			int lastEnd = -1;
+			while (tokenizer.next())
+			{
+				last = tokenizer.start;
+				lastEnd = tokenizer.end;
+			}
+			int nbelem = AsciiNumbers.parseInt(window, last, lastEnd);
+			// Read group name
+			if (!nextLine())
+				return;
+			String groupName = lineString().trim();
+			boolean skipGroup = owner.skipGroup(groupName);
+			boolean groupCreated = false;
+			if (!nextLine())
+				return;
+			if(nbelem == 0)
+				continue;
+			int c = firstChar();
+			while (c == '8' || c == '7')
+			{
+				tokenizer.reset(window, lineStart, lineEnd);
+				// read one element over two, the first one doesnt matter
+				while(tokenizer.next() && tokenizer.next())
+				{
+					int ind = AsciiNumbers.parseInt(window, tokenizer.start, tokenizer.end);
+					if (ind != 0 && !skipGroup)
+					{
+						if(c == '8')
+						{
+							if(!groupCreated)
+							{
+								out.nextGroup(groupName);
+								groupCreated = true;
+							}
+							int id = elementLabels.get(ind);
+							if (id < 0)
+								throw new IOException("Element "+ind+" of group "+groupName+" not found");
+							// Volume elements are not imported
+							if (id != IGNORED_ELEMENT)
+							{
+								if((id & 1) != 0)
+									out.addBeamToGroup(id >> 1);
+								else
+									out.addTriaToGroup(id >> 1);
+							}
+						}
+						else //c == '7'
+						{
+							if(!groupCreated)
+							{
+								out.nextNodeGroup(groupName);
+								groupCreated = true;
+							}
+							out.addNodeToGroup(getNode(ind));
+						}
+					}
+					
+					nbelem--;
+					if (quads)
+					{
+						tokenizer.next();
+						tokenizer.next();
+					}
+				}
+				if (!nextLine())
+					return;
+				if  (nbelem <= 0)
+					break;
+				c = firstChar();
+			}
+		}
+	}
+
+	/**
+	 * Splits a line into tokens separated by white spaces, like
+	 * <code>StringTokenizer</code>.
+	 */
+	private static final class Tokenizer
+	{
+		private ByteBuffer buffer;
+		private int position;
+		private int limit;
+		// Current token
+		int start;
+		int end;
+
+		void reset(ByteBuffer b, int from, int to)
+		{
+			buffer = b;
+			position = from;
+			limit = to;
+		}
+
+		private boolean isDelimiter(int c)
+		{
+			return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+		}
+
+		boolean next()
+		{
+			while (position < limit && isDelimiter(buffer.get(position)))
+				position++;
+			if (position >= limit)
+				return false;
+			start = position;
+			while (position < limit && !isDelimiter(buffer.get(position)))
+				position++;
+			end = position;
+			return true;
+		}
+	}
+}
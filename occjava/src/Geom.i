@@ -107,6 +107,27 @@ class Handle_Geom_Surface: public Handle_Geom_Geometry
 		return (*self)->Value(U, V);
 	}
 
+	%javamethodmodifiers arrayValues(int, double[], double[]) const "
+	/**
+	 * Compute points of the surface at several locations.  This is the
+	 * same as calling value() for each location, but there is a single
+	 * JNI call.
+	 * @param size  number of locations
+	 * @param uv  an array of size 2*size which contains {u0, v0, u1, v1, ...}
+	 * @param xyz  an array of size 3*size which will receive {x0, y0, z0, x1, ...}
+	 */
+	public";
+	void arrayValues(int size, double uv[], double xyz[]) const
+	{
+		for (int i = 0; i < size; i++)
+		{
+			gp_Pnt gp=(*self)->Value(uv[2*i], uv[2*i+1]);
+			xyz[3*i]   = gp.X();
+			xyz[3*i+1] = gp.Y();
+			xyz[3*i+2] = gp.Z();
+		}
+	}
+
 	%javamethodmodifiers bounds(double bounds[4]) const "
 	/**
 	 * Return the bounds of the parameters of the surface.
@@ -105,6 +105,24 @@ class GeomLProp_SLProps
 	public";
 	
 	%javamethodmodifiers normalArray(double*, double*, int) "private";
+	%javamethodmodifiers arrayProperties(int, double*, int, double*, double*, double*) "
+	/**
+	 * Compute derivatives and normals at several locations with a
+	 * single JNI call.  Results are the same as when calling
+	 * setParameters() and then d1U(), d1V() or normal() for each location.
+	 * Invalid normals are set to zero.
+	 * @param size  number of locations
+	 * @param uv  an array of size 2*size which contains {u0, v0, u1, v1, ...}
+	 * @param what  a combination of 1 (compute d1U), 2 (compute d1V) and
+	 *   4 (compute normals)
+	 * @param d1u  an array of size 3*size which will receive u derivatives
+	 *   if requested, otherwise it is not used and can be empty
+	 * @param d1v  an array of size 3*size which will receive v derivatives
+	 *   if requested, otherwise it is not used and can be empty
+	 * @param normal  an array of size 3*size which will receive normals
+	 *   if requested, otherwise it is not used and can be empty
+	 */
+	public";
 
 	GeomLProp_SLProps(const Standard_Integer degree, const Standard_Real resolution);
 	void SetParameters(const Standard_Real u, const Standard_Real v) ;
@@ -168,6 +186,44 @@ class GeomLProp_SLProps
 		}
 	}
 
+	void arrayProperties(int size, double* uv, int what, double* d1u, double* d1v, double* normal)
+	{
+		for(int i=0;i<size;i++)
+		{
+			self->SetParameters(uv[2*i],uv[2*i+1]);
+			if(what & 1)
+			{
+				const gp_Vec & d=self->D1U();
+				d1u[3*i]=d.X();
+				d1u[3*i+1]=d.Y();
+				d1u[3*i+2]=d.Z();
+			}
+			if(what & 2)
+			{
+				const gp_Vec & d=self->D1V();
+				d1v[3*i]=d.X();
+				d1v[3*i+1]=d.Y();
+				d1v[3*i+2]=d.Z();
+			}
+			if(what & 4)
+			{
+				if(!self->IsNormalDefined())
+				{
+					normal[3*i]=0;
+					normal[3*i+1]=0;
+					normal[3*i+2]=0;
+				}
+				else
+				{
+					const gp_Dir & d=self->Normal();
+					normal[3*i]=d.X();
+					normal[3*i+1]=d.Y();
+					normal[3*i+2]=d.Z();
+				}
+			}
+		}
+	}
+
 	Standard_Real minCurvature()
 	{
 		if (!self->IsCurvatureDefined())
@@ -42,6 +42,7 @@ import org.jcae.mesh.amibe.ds.Mesh;
 import org.jcae.mesh.amibe.ds.Vertex;
 import org.jcae.mesh.amibe.traits.MeshTraitsBuilder;
 import org.jcae.mesh.oemm.OEMM;
+import org.jcae.mesh.oemm.LeafCache;
 import org.jcae.mesh.oemm.MeshReader;
 import org.jcae.viewer3d.bg.ViewableBG;
 import java.util.logging.Level;
@@ -54,6 +55,8 @@ public class OEMMBehavior extends Behavior
 {
 	private static Logger logger = Logger.getLogger(OEMMBehavior.class.getName());
 	private static final int DEFAULT_MAX_TRIANGLES_NBR = -1;
+	// Memory budget of fine leaves cache, in megabytes
+	private static final int DEFAULT_CACHE_SIZE = 256;
 	private boolean frozen = false;
 	private MeshReader coarseReader;
 	private MeshReader fineReader;
@@ -168,6 +171,9 @@ public class OEMMBehavior extends Behavior
 		
 		fineReader = new MeshReader(oemm);
 		fineReader.setLoadNonReadableTriangles(true);
+		long cacheSize = Long.getLong("org.jcae.viewer3d.OEMMBehavior.cacheSize", DEFAULT_CACHE_SIZE).longValue();
+		if (cacheSize > 0)
+			fineReader.setCache(new LeafCache(oemm, cacheSize << 20));
 
 		mtb.addTriangleList();
 		coarseReader = new MeshReader(coarseOEMM);
@@ -446,6 +452,20 @@ public class OEMMBehavior extends Behavior
 	private void showFineNodes(final Set<Integer> ids)
 	{
 		int nrTriangles = 0;
+		if (fineReader.getCache() != null)
+		{
+			// Read leaves which have to be loaded and their
+			// neighbours in background
+			TIntHashSet leaves = new TIntHashSet(ids.size());
+			for (Integer arg0: ids)
+			{
+				int i = arg0.intValue();
+				if (cacheOemmNodeId2BranchGroup[i] == null || cacheOemmNodeId2BranchGroup[i].get() == null)
+					leaves.add(i);
+			}
+			if (!leaves.isEmpty())
+				fineReader.getCache().prefetch(leaves);
+		}
 		for (Integer arg0: ids) {
 			ViewHolder vh = getFineMeshFromCache(arg0.intValue());
 			if (!visibleFineOemmNodeId2BranchGroup.containsKey(arg0)) {
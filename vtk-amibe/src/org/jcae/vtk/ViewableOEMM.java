@@ -28,9 +28,24 @@ import java.awt.Color;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jcae.mesh.oemm.LevelOfDetail;
 import org.jcae.mesh.oemm.OEMM;
 import vtk.vtkActor;
+import vtk.vtkCamera;
 import vtk.vtkCellCenterDepthSort;
 import vtk.vtkDataSet;
 import vtk.vtkExtractSelectedFrustum;
@@ -40,11 +55,26 @@ import vtk.vtkPolyData;
 import vtk.vtkPolyDataMapper;
 
 /**
- *
+ * Viewer of out-of-core meshes.  Octree is displayed, and edges of
+ * selected octants are loaded.
+ * <p>
+ * If levels of detail have been computed by
+ * {@link org.jcae.mesh.MeshOEMMLevelOfDetail}, triangles of all visible
+ * octants can also be displayed, see {@link #setLevelOfDetail}.  Far
+ * octants are displayed with coarse levels, and levels are loaded by a
+ * background thread when camera moves.
+ * </p>
  * @author ibarz
  */
-public class ViewableOEMM extends Viewable implements MouseMotionListener
+public class ViewableOEMM extends Viewable implements MouseMotionListener, MouseWheelListener
 {
+	private final static Logger LOGGER = Logger.getLogger(ViewableOEMM.class.getName());
+	/**
+	 * Minimal number of bytes of levels of detail loaded before scene is
+	 * rendered.  Batches are also at least as large as displayed levels,
+	 * so that merged arrays grow geometrically.
+	 */
+	private final static long LEVEL_OF_DETAIL_MIN_BATCH = 4L << 20;
 	private final OEMM oemm;
 	private final MeshVisuReader reader;
 	private final vtkActor octree;
@@ -58,6 +88,23 @@ public class ViewableOEMM extends Viewable implements MouseMotionListener
 	private final Node freeEdgesNode;
 	private final Node octreeNode;
 	volatile boolean rendering = false;
+	private boolean levelOfDetailEnabled = false;
+	private double levelOfDetailTolerance = 1.0;
+	private long levelOfDetailMemory = 256L << 20;
+	// Fields below are created when level of detail mode is enabled
+	private LevelOfDetail levelOfDetail;
+	private Node levelOfDetailNode;
+	private LeafNode[] levelOfDetailLeaves;
+	// Displayed level of each octant, -1 if it is not displayed.  It is
+	// modified only by levelOfDetailLoader thread.
+	private int[] displayedLevels;
+	// Memory used by displayed levels, modified only by
+	// levelOfDetailLoader thread.
+	private long displayedMemory;
+	private ExecutorService levelOfDetailLoader;
+	// Incremented by each request, so that loader thread can stop
+	// processing an obsolete request.
+	private final AtomicInteger levelOfDetailRequest = new AtomicInteger();
 
 	public ViewableOEMM(OEMM oemm)
 	{
@@ -298,6 +345,7 @@ public class ViewableOEMM extends Viewable implements MouseMotionListener
 	{
 		super.addCanvas(canvas);
 		canvas.addMouseMotionListener(this);
+		canvas.addMouseWheelListener(this);
 		canvas.GetRenderer().AddViewProp(octree);
 	}
 
@@ -306,11 +354,27 @@ public class ViewableOEMM extends Viewable implements MouseMotionListener
 	{
 		super.removeCanvas(canvas);
 		canvas.removeMouseMotionListener(this);
+		canvas.removeMouseWheelListener(this);
 		canvas.GetRenderer().RemoveViewProp(octree);
 	}
 
+	@Override
+	public void delete()
+	{
+		if (levelOfDetailLoader != null)
+		{
+			levelOfDetailRequest.incrementAndGet();
+			levelOfDetailLoader.shutdownNow();
+			levelOfDetailLoader = null;
+		}
+		super.delete();
+	}
+
 	public void mouseDragged(MouseEvent e)
 	{
+		if (levelOfDetailEnabled)
+			updateLevelOfDetail(Utils.retrieveCanvas(e));
+
 		if (!automaticSelection || rendering)
 			return;
 		
@@ -326,6 +390,426 @@ public class ViewableOEMM extends Viewable implements MouseMotionListener
 		// Do nothing
 	}
 
+	public void mouseWheelMoved(MouseWheelEvent e)
+	{
+		if (levelOfDetailEnabled)
+			updateLevelOfDetail(Utils.retrieveCanvas(e));
+	}
+
+	/**
+	 * Tells whether levels of detail have been computed for this OEMM.
+	 */
+	public boolean hasLevelOfDetail()
+	{
+		return LevelOfDetail.exists(oemm);
+	}
+
+	public boolean isLevelOfDetail()
+	{
+		return levelOfDetailEnabled;
+	}
+
+	/**
+	 * Enables or disables level of detail mode.  When enabled, triangles of
+	 * octants within the view frustum are displayed, each octant with the
+	 * coarsest level whose error is smaller than
+	 * {@link #setLevelOfDetailTolerance tolerance} on screen.  Levels are
+	 * updated when the camera is moved with the mouse, or by calling
+	 * {@link #updateLevelOfDetail}.
+	 *
+	 * @param enabled  enable level of detail mode
+	 * @throws IllegalStateException if levels of detail have not been computed
+	 */
+	public void setLevelOfDetail(boolean enabled)
+	{
+		if (enabled == levelOfDetailEnabled)
+			return;
+		if (enabled && levelOfDetail == null)
+		{
+			if (!hasLevelOfDetail())
+				throw new IllegalStateException("Levels of detail have not been computed in "+oemm.getDirectory());
+			createLevelOfDetail();
+		}
+		levelOfDetailEnabled = enabled;
+		if (enabled)
+		{
+			if (!listCanvas.isEmpty())
+				updateLevelOfDetail(listCanvas.get(0));
+		}
+		else
+		{
+			// Unload all octants
+			int[] levels = new int[displayedLevels.length];
+			Arrays.fill(levels, -1);
+			submitLevels(levels, new double[levels.length]);
+		}
+	}
+
+	public double getLevelOfDetailTolerance()
+	{
+		return levelOfDetailTolerance;
+	}
+
+	/**
+	 * Sets the maximal error of displayed levels, in pixels.
+	 * Default value is 1.
+	 */
+	public void setLevelOfDetailTolerance(double pixels)
+	{
+		levelOfDetailTolerance = pixels;
+	}
+
+	public long getLevelOfDetailMemory()
+	{
+		return levelOfDetailMemory;
+	}
+
+	/**
+	 * Sets the memory budget of displayed levels, in bytes.  When levels
+	 * selected by tolerance do not fit, coarser levels are displayed, and
+	 * farthest octants are not displayed if this is not enough.  This
+	 * budget includes arrays merged for display and their VTK copies.
+	 * Default value is 256MB.
+	 */
+	public void setLevelOfDetailMemory(long bytes)
+	{
+		levelOfDetailMemory = bytes;
+	}
+
+	/**
+	 * Selects levels of detail for the current camera of this canvas, and
+	 * loads them in background.  This method returns immediately, scene
+	 * is rendered each time levels have been loaded whose size is at least
+	 * that of levels already displayed.
+	 */
+	public void updateLevelOfDetail(Canvas canvas)
+	{
+		if (!levelOfDetailEnabled)
+			return;
+		double[] pixels = new double[displayedLevels.length];
+		int[] levels = computeLevels(canvas, pixels);
+		submitLevels(levels, pixels);
+	}
+
+	private void createLevelOfDetail()
+	{
+		levelOfDetail = new LevelOfDetail(oemm);
+		int n = oemm.getNumberOfLeaves();
+		// All octants have a leaf node, so that Node.refresh() only
+		// merges modified leaves.
+		levelOfDetailNode = new Node(rootNode);
+		levelOfDetailNode.setDebugName("Level of detail");
+		levelOfDetailNode.setManager(true);
+		levelOfDetailLeaves = new LeafNode[n];
+		for (int i = 0; i < n; i++)
+			levelOfDetailLeaves[i] = new LeafNode(levelOfDetailNode,
+				LeafNode.DataProvider.EMPTY, Color.LIGHT_GRAY);
+		displayedLevels = new int[n];
+		Arrays.fill(displayedLevels, -1);
+		levelOfDetailLoader = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "OEMM level of detail loader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Returns the level to display for each octant, or -1 if it is not
+	 * visible.
+	 * @param pixels  filled with the number of pixels per model unit
+	 * of each visible octant
+	 */
+	private int[] computeLevels(Canvas canvas, final double[] pixels)
+	{
+		int width = canvas.getWidth();
+		int height = Math.max(canvas.getHeight(), 1);
+		double[] planes = new double[24];
+		lockCanvas();
+		vtkCamera camera = canvas.GetRenderer().GetActiveCamera();
+		double[] position = camera.GetPosition();
+		boolean parallel = camera.GetParallelProjection() != 0;
+		double factor = parallel ?
+			height / (2.0 * camera.GetParallelScale()) :
+			height / (2.0 * Math.tan(Math.toRadians(camera.GetViewAngle()) / 2.0));
+		camera.GetFrustumPlanes((double) width / height, planes);
+		unlockCanvas();
+
+		int n = oemm.getNumberOfLeaves();
+		final int[] levels = new int[n];
+		int[] ijk = new int[3];
+		double[] lower = new double[3];
+		double[] upper = new double[3];
+		double[] center = new double[3];
+		long memory = 0L;
+		for (int i = 0; i < n; i++)
+		{
+			levels[i] = -1;
+			pixels[i] = 0.0;
+			OEMM.Node node = oemm.leaves[i];
+			ijk[0] = node.i0;
+			ijk[1] = node.j0;
+			ijk[2] = node.k0;
+			oemm.int2double(ijk, lower);
+			for (int k = 0; k < 3; k++)
+				ijk[k] += node.size;
+			oemm.int2double(ijk, upper);
+			double radius = 0.0;
+			double distance = 0.0;
+			for (int k = 0; k < 3; k++)
+			{
+				center[k] = 0.5 * (lower[k] + upper[k]);
+				radius += (upper[k] - center[k]) * (upper[k] - center[k]);
+				distance += (position[k] - center[k]) * (position[k] - center[k]);
+			}
+			radius = Math.sqrt(radius);
+			if (!intersectFrustum(planes, center, radius))
+				continue;
+			if (parallel)
+				pixels[i] = factor;
+			else
+				pixels[i] = factor / Math.max(Math.sqrt(distance) - radius, Double.MIN_VALUE);
+			int level = levelOfDetail.getNumberOfLevels(i) - 1;
+			while (level > 0 && levelOfDetail.getError(i, level) * pixels[i] > levelOfDetailTolerance)
+				level--;
+			levels[i] = level;
+			memory += getDisplayMemory(i, level);
+		}
+		if (memory <= levelOfDetailMemory)
+			return levels;
+
+		// Coarsen octants whose error increases least on screen
+		PriorityQueue<Integer> queue = new PriorityQueue<Integer>(n, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				return Double.compare(nextError(o1.intValue()), nextError(o2.intValue()));
+			}
+
+			private double nextError(int leaf)
+			{
+				return levelOfDetail.getError(leaf, levels[leaf] + 1) * pixels[leaf];
+			}
+		});
+		for (int i = 0; i < n; i++)
+		{
+			if (levels[i] >= 0 && levels[i] + 1 < levelOfDetail.getNumberOfLevels(i))
+				queue.add(Integer.valueOf(i));
+		}
+		while (memory > levelOfDetailMemory && !queue.isEmpty())
+		{
+			int leaf = queue.poll().intValue();
+			memory -= getDisplayMemory(leaf, levels[leaf]);
+			levels[leaf]++;
+			memory += getDisplayMemory(leaf, levels[leaf]);
+			if (levels[leaf] + 1 < levelOfDetail.getNumberOfLevels(leaf))
+				queue.add(Integer.valueOf(leaf));
+		}
+		if (memory <= levelOfDetailMemory)
+			return levels;
+
+		// Remove farthest octants
+		List<Integer> visible = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++)
+		{
+			if (levels[i] >= 0)
+				visible.add(Integer.valueOf(i));
+		}
+		Collections.sort(visible, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				return Double.compare(pixels[o1.intValue()], pixels[o2.intValue()]);
+			}
+		});
+		for (int k = 0; k < visible.size() && memory > levelOfDetailMemory; k++)
+		{
+			int leaf = visible.get(k).intValue();
+			memory -= getDisplayMemory(leaf, levels[leaf]);
+			levels[leaf] = -1;
+		}
+		return levels;
+	}
+
+	/**
+	 * Returns an estimate of memory used to display a level, in bytes.
+	 * Each vertex is stored in merged coordinates of levelOfDetailNode
+	 * and copied into vtkPoints, and room is kept for normals if they
+	 * are merged or computed for shading.  Each triangle is
+	 * stored in merged cells and leaf ids, and copied into a
+	 * vtkCellArray with 64-bit ids and into cell scalars.
+	 * @param leaf  leaf index
+	 * @param level  level number, or -1 if octant is not displayed
+	 */
+	private long getDisplayMemory(int leaf, int level)
+	{
+		if (level < 0)
+			return 0L;
+		long nv = levelOfDetail.getNumberOfVertices(leaf, level);
+		long nt = levelOfDetail.getNumberOfTriangles(leaf, level);
+		return (12L + 12L + 12L) * nv + (16L + 4L + 32L + 4L) * nt;
+	}
+
+	/**
+	 * Tells whether a sphere intersects a frustum, planes are given by
+	 * vtkCamera.GetFrustumPlanes, with normals pointing inside.
+	 */
+	private static boolean intersectFrustum(double[] planes, double[] center, double radius)
+	{
+		for (int i = 0; i < planes.length; i += 4)
+		{
+			double norm = Math.sqrt(planes[i] * planes[i] +
+				planes[i + 1] * planes[i + 1] + planes[i + 2] * planes[i + 2]);
+			double d = planes[i] * center[0] + planes[i + 1] * center[1] +
+				planes[i + 2] * center[2] + planes[i + 3];
+			if (d < - radius * norm)
+				return false;
+		}
+		return true;
+	}
+
+	private void submitLevels(final int[] levels, final double[] pixels)
+	{
+		final int request = levelOfDetailRequest.incrementAndGet();
+		levelOfDetailLoader.submit(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					loadLevels(request, levels, pixels);
+				}
+				catch (RuntimeException ex)
+				{
+					LOGGER.log(Level.SEVERE, "Cannot load levels of detail", ex);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Loads levels, this method is called by levelOfDetailLoader thread.
+	 */
+	private void loadLevels(int request, final int[] levels, final double[] pixels)
+	{
+		// Octants which are removed are processed first to release
+		// memory, then nearest octants are loaded first.
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < levels.length; i++)
+		{
+			if (levels[i] != displayedLevels[i])
+				order.add(Integer.valueOf(i));
+		}
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				int i1 = o1.intValue();
+				int i2 = o2.intValue();
+				if ((levels[i1] < 0) != (levels[i2] < 0))
+					return levels[i1] < 0 ? -1 : 1;
+				return Double.compare(pixels[i2], pixels[i1]);
+			}
+		});
+		// Node.refresh() copies all merged arrays, so batches are as
+		// large as displayed levels to keep copies linear in the size
+		// of displayed levels.
+		TIntArrayList leaves = new TIntArrayList();
+		List<LeafNode.DataProvider> providers = new ArrayList<LeafNode.DataProvider>();
+		long batchMemory = 0L;
+		for (Integer o : order)
+		{
+			// Stop if a new request has been submitted, levels already
+			// read are displayed anyway.
+			if (levelOfDetailRequest.get() != request)
+				break;
+			int leaf = o.intValue();
+			// Release removed octants before loading new ones
+			if (levels[leaf] >= 0 && batchMemory == 0L)
+				displayLevels(leaves, providers, levels);
+			leaves.add(leaf);
+			if (levels[leaf] < 0)
+				providers.add(LeafNode.DataProvider.EMPTY);
+			else
+				providers.add(new LevelDataProvider(leaf, levels[leaf],
+					levelOfDetail.read(leaf, levels[leaf])));
+			batchMemory += getDisplayMemory(leaf, levels[leaf]);
+			if (batchMemory >= Math.max(LEVEL_OF_DETAIL_MIN_BATCH, displayedMemory))
+			{
+				displayLevels(leaves, providers, levels);
+				batchMemory = 0L;
+			}
+		}
+		displayLevels(leaves, providers, levels);
+	}
+
+	private void displayLevels(TIntArrayList leaves, List<LeafNode.DataProvider> providers, int[] levels)
+	{
+		if (leaves.isEmpty())
+			return;
+		lockCanvas();
+		for (int i = 0; i < leaves.size(); i++)
+		{
+			int leaf = leaves.get(i);
+			levelOfDetailLeaves[leaf].setDataProvider(providers.get(i));
+			displayedMemory += getDisplayMemory(leaf, levels[leaf]) -
+				getDisplayMemory(leaf, displayedLevels[leaf]);
+			displayedLevels[leaf] = levels[leaf];
+		}
+		levelOfDetailNode.refresh();
+		unlockCanvas();
+		render();
+		leaves.resetQuick();
+		providers.clear();
+	}
+
+	/**
+	 * Triangles of a level of detail.  They are only kept until merged
+	 * by Node.refresh(), and read again from disk if needed.
+	 */
+	private class LevelDataProvider extends LeafNode.DataProvider
+	{
+		private final int leaf;
+		private final int level;
+		private LevelOfDetail.Level data;
+
+		LevelDataProvider(int leaf, int level, LevelOfDetail.Level data)
+		{
+			this.leaf = leaf;
+			this.level = level;
+			this.data = data;
+		}
+
+		@Override
+		public void load()
+		{
+			LevelOfDetail.Level l = data;
+			if (l == null)
+				l = levelOfDetail.read(leaf, level);
+			data = null;
+			int nbrOfTriangles = l.triangles.length / 3;
+			int[] cells = new int[4 * nbrOfTriangles];
+			for (int i = 0, j = 0; i < l.triangles.length; i += 3)
+			{
+				cells[j++] = 3;
+				cells[j++] = l.triangles[i];
+				cells[j++] = l.triangles[i + 1];
+				cells[j++] = l.triangles[i + 2];
+			}
+			setNodes(l.coords);
+			setPolys(nbrOfTriangles, cells);
+		}
+
+		@Override
+		public void unLoad()
+		{
+			clean();
+		}
+	}
+
 	private void performAutomaticSelection(PickContext pickContext)
 	{
 		int [] pressPosition = pickContext.getPressPosition();
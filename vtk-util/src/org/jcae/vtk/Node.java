@@ -57,6 +57,8 @@ public class Node extends AbstractNode
 	private int nbrOfVertices;
 	private int nbrOfLines;
 	private int nbrOfPolys;
+	// Leaves and arrays of the last merge
+	private MergedLeaves merged;
 	
 	// Lookup table for color of leaves
 	private vtkLookupTable table;
@@ -108,6 +110,55 @@ public class Node extends AbstractNode
 		}
 	}
 
+	/**
+	 * Leaves and arrays of the last merge.  Offsets of leaves in merged
+	 * arrays are kept so that only modified leaves have to be merged
+	 * again.
+	 */
+	private static class MergedLeaves
+	{
+		final LeafNode[] leaves;
+		final LeafNode.DataProvider[] dataProviders;
+		final boolean[] visible;
+		final boolean[] hasNormals;
+		// Data provider modification times when leaves were merged
+		final long[] modifiedTimes;
+		// Offsets of leaves in nodes, vertices, lines and polys arrays
+		final int[] nodes;
+		final int[] vertices;
+		final int[] lines;
+		final int[] polys;
+		NodeData data;
+		int[] ids;
+
+		MergedLeaves(int numberOfLeaves)
+		{
+			leaves = new LeafNode[numberOfLeaves];
+			dataProviders = new LeafNode.DataProvider[numberOfLeaves];
+			visible = new boolean[numberOfLeaves];
+			hasNormals = new boolean[numberOfLeaves];
+			modifiedTimes = new long[numberOfLeaves];
+			nodes = new int[numberOfLeaves + 1];
+			vertices = new int[numberOfLeaves + 1];
+			lines = new int[numberOfLeaves + 1];
+			polys = new int[numberOfLeaves + 1];
+		}
+
+		void set(int leafIndex, LeafNode leaf, int offsetNode, int offsetVertex, int offsetLine, int offsetPoly)
+		{
+			nodes[leafIndex] = offsetNode;
+			vertices[leafIndex] = offsetVertex;
+			lines[leafIndex] = offsetLine;
+			polys[leafIndex] = offsetPoly;
+			if (leaf == null)
+				return;
+			leaves[leafIndex] = leaf;
+			dataProviders[leafIndex] = leaf.getDataProvider();
+			visible[leafIndex] = leaf.isVisible();
+			hasNormals[leafIndex] = dataProviders[leafIndex].getNormals() != null;
+		}
+	}
+
 	public Node(Node parent)
 	{
 		super(parent);
@@ -227,40 +278,103 @@ public class Node extends AbstractNode
 			return;
 		}
 		
+		boolean dataModified = lastUpdate <= dataTime;
+		boolean selectionModified = lastUpdate <= selectionTime;
 		List<LeafNode> leaves = null;
-		if(lastUpdate <= dataTime || lastUpdate <= selectionTime)
+		boolean[] modified = null;
+		boolean[] loaded = null;
+		if (dataModified || selectionModified)
 		{
-			//Loaded data provider are needed in refreshData and
-			//refreshHighlight
 			leaves = getLeaves();
-			for (LeafNode leaf : leaves)
-				leaf.getDataProvider().load();
+			modified = getModifiedLeaves(leaves);
+			//Loaded data provider are needed in refreshData for
+			//modified leaves, and in refreshHighlight for leaves
+			//with a cell selection
+			loaded = new boolean[leaves.size()];
+			for (int i = 0; i < loaded.length; i++)
+			{
+				LeafNode leaf = leaves.get(i);
+				loaded[i] = (dataModified && (modified == null || modified[i])) ||
+					(selectionModified && leaf.hasCellSelection());
+				if (loaded[i])
+					leaf.getDataProvider().load();
+			}
 		}
 
 		// Were data modified?
-		if (lastUpdate <= dataTime)
+		if (dataModified && (modified == null || !refreshModifiedData(leaves, modified)))
+		{
+			// All leaves are merged
+			for (int i = 0; i < loaded.length; i++)
+			{
+				if (!loaded[i])
+				{
+					leaves.get(i).getDataProvider().load();
+					loaded[i] = true;
+				}
+			}
 			refreshData(leaves);
+		}
 
 		// Was actor modified?
 		if (lastUpdate <= modificationTime)
 			refreshActor();
 
 		// Did selection happen?
-		if (lastUpdate <= selectionTime)
+		if (selectionModified)
 			refreshHighlight();
 
 		if(leaves != null)
-			for (LeafNode leaf : leaves)
-				leaf.getDataProvider().unLoad();
+		{
+			for (int i = 0; i < loaded.length; i++)
+			{
+				if (!loaded[i])
+					continue;
+				LeafNode.DataProvider dataProvider = leaves.get(i).getDataProvider();
+				dataProvider.unLoad();
+				// Data of this leaf are up to date in merged arrays,
+				// they are not merged again until modified.
+				if (merged != null && (dataModified || (modified != null && !modified[i])))
+					merged.modifiedTimes[i] = dataProvider.getModifiedTime();
+			}
+		}
 
 		lastUpdate = System.nanoTime();
 	}
 
+	/**
+	 * Finds leaves which have been modified since the last merge.
+	 * A leaf is modified if its visibility changed, or if it is visible
+	 * and its data provider has been modified.
+	 * @return modified leaves, or null if leaves have been added, removed
+	 * or moved and a full merge is needed.
+	 */
+	private boolean[] getModifiedLeaves(List<LeafNode> leaves)
+	{
+		if (merged == null || data == null || merged.leaves.length != leaves.size())
+			return null;
+
+		boolean[] toReturn = new boolean[leaves.size()];
+		for (int i = 0; i < toReturn.length; ++i)
+		{
+			LeafNode leaf = leaves.get(i);
+			if (leaf != merged.leaves[i])
+				return null;
+			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
+			toReturn[i] = leaf.isVisible() != merged.visible[i] ||
+				(leaf.isVisible() && (dataProvider != merged.dataProviders[i] ||
+				dataProvider.getModifiedTime() != merged.modifiedTimes[i]));
+		}
+		return toReturn;
+	}
+
 	private void refreshData(List<LeafNode> leaves)
 	{
 		if (LOGGER.isLoggable(Level.FINEST))
 			LOGGER.finest("Refresh data for "+this);
 		// Compute the sizes
+		int numberOfLeaves = leaves.size();
+		MergedLeaves newMerged = new MergedLeaves(numberOfLeaves);
 		int nodesSize = 0;
 		int verticesSize = 0;
 		int linesSize = 0;
@@ -270,13 +384,15 @@ public class Node extends AbstractNode
 		nbrOfPolys = 0;
 		boolean buildNormals = true;
 		
-		int numberOfLeaves = leaves.size();
 		offsetsVertices = new TIntArrayList(numberOfLeaves + 1);
 		offsetsLines    = new TIntArrayList(numberOfLeaves + 1);
 		offsetsPolys    = new TIntArrayList(numberOfLeaves + 1);
 
-		for (LeafNode leaf : leaves)
+		for (int i = 0; i < numberOfLeaves; ++i)
 		{
+			LeafNode leaf = leaves.get(i);
+			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
+			newMerged.set(i, leaf, nodesSize, verticesSize, linesSize, polysSize);
 			offsetsVertices.add(nbrOfVertices);
 			offsetsLines.add(nbrOfLines);
 			offsetsPolys.add(nbrOfPolys);
@@ -284,7 +400,6 @@ public class Node extends AbstractNode
 			if (!leaf.isVisible())
 				continue;
 
-			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
 			nodesSize += dataProvider.getNodes().length;
 			verticesSize += dataProvider.getVertices().length;
 			linesSize += dataProvider.getLines().length;
@@ -300,6 +415,7 @@ public class Node extends AbstractNode
 			if (dataProvider.getNormals() == null)
 				buildNormals = false;
 		}
+		newMerged.set(numberOfLeaves, null, nodesSize, verticesSize, linesSize, polysSize);
 		offsetsVertices.add(nbrOfVertices);
 		offsetsLines.add(nbrOfLines);
 		offsetsPolys.add(nbrOfPolys);
@@ -309,17 +425,12 @@ public class Node extends AbstractNode
 			buildNormals = false;
 
 		// Compute the arrays
-		float[] nodes = new float[nodesSize];
 		float[] normals = null;
 		if (buildNormals)
 			normals = new float[nodesSize];
-		int[] vertices = new int[verticesSize];
-		int[] lines = new int[linesSize];
-		int[] polys = new int[polysSize];
-		int offsetNode = 0;
-		int offsetVertex = 0;
-		int offsetLine = 0;
-		int offsetPoly = 0;
+		NodeData nodeData = new NodeData(new float[nodesSize], normals,
+			nbrOfVertices, new int[verticesSize], nbrOfLines, new int[linesSize],
+			nbrOfPolys, new int[polysSize]);
 
 		for (int i = 0; i < numberOfLeaves; ++i)
 		{
@@ -328,60 +439,213 @@ public class Node extends AbstractNode
 			if (!leaf.isVisible())
 				continue;
 
-			LeafNode.DataProvider dataProvider = leaf.getDataProvider();
-
-			final int numberOfNode = offsetNode / 3;
-			float[] nodesNode = dataProvider.getNodes();
-			System.arraycopy(nodesNode, 0, nodes, offsetNode, nodesNode.length);
-			if (buildNormals)
-			{
-				float[] normalsNode = dataProvider.getNormals();
-				if (normalsNode == null)
-					Arrays.fill(normals, offsetNode, offsetNode + nodesNode.length, 0.f);
-				else
-					System.arraycopy(normalsNode, 0, normals, offsetNode, normalsNode.length);
-			}
-			offsetNode += nodesNode.length;
+			copyLeaf(leaf.getDataProvider(), nodeData, newMerged, i);
+		}
 
+		newMerged.data = nodeData;
+		newMerged.ids = computeIds(numberOfLeaves);
+		merged = newMerged;
+		updateData();
+	}
 
+	/**
+	 * Merges leaves which have been modified since the last merge.
+	 * Unmodified leaves are copied from the previous merged arrays, their
+	 * data providers are not loaded.  If sizes did not change, only
+	 * ranges of modified leaves are overwritten.
+	 * @param leaves  all leaves
+	 * @param modified  modified leaves, their data providers are loaded
+	 * @return false if normals of unmodified leaves are not available
+	 * and a full merge is needed.
+	 */
+	private boolean refreshModifiedData(List<LeafNode> leaves, boolean[] modified)
+	{
+		int numberOfLeaves = leaves.size();
+		int numberOfModified = 0;
+		for (boolean b : modified)
+			if (b)
+				numberOfModified++;
+		if (numberOfModified == 0)
+			return true;
+		if (LOGGER.isLoggable(Level.FINEST))
+			LOGGER.finest("Refresh data of "+numberOfModified+" leaves for "+this);
 
-			int[] verticesNode = dataProvider.getVertices();
-			System.arraycopy(verticesNode, 0, vertices, offsetVertex, verticesNode.length);
+		MergedLeaves oldMerged = merged;
+		MergedLeaves newMerged = new MergedLeaves(numberOfLeaves);
+		TIntArrayList newOffsetsVertices = new TIntArrayList(numberOfLeaves + 1);
+		TIntArrayList newOffsetsLines    = new TIntArrayList(numberOfLeaves + 1);
+		TIntArrayList newOffsetsPolys    = new TIntArrayList(numberOfLeaves + 1);
+		int nodesSize = 0;
+		int verticesSize = 0;
+		int linesSize = 0;
+		int polysSize = 0;
+		int newNbrOfVertices = 0;
+		int newNbrOfLines = 0;
+		int newNbrOfPolys = 0;
+		boolean buildNormals = true;
 
-			// Make an offset
-			for (int j = offsetVertex; j < offsetVertex + verticesNode.length;)
+		for (int i = 0; i < numberOfLeaves; ++i)
+		{
+			newMerged.set(i, leaves.get(i), nodesSize, verticesSize, linesSize, polysSize);
+			newOffsetsVertices.add(newNbrOfVertices);
+			newOffsetsLines.add(newNbrOfLines);
+			newOffsetsPolys.add(newNbrOfPolys);
+			if (!modified[i])
 			{
-				vertices[++j] += numberOfNode;
-				++j;
+				// Data provider may not be loaded
+				newMerged.hasNormals[i] = oldMerged.hasNormals[i];
+				newMerged.modifiedTimes[i] = oldMerged.modifiedTimes[i];
 			}
-			offsetVertex += verticesNode.length;
 
-			int[] linesNode = dataProvider.getLines();
-			System.arraycopy(linesNode, 0, lines, offsetLine, linesNode.length);
+			if (!newMerged.visible[i])
+				continue;
 
-			// Make an offset
-			for (int j = offsetLine; j < offsetLine + linesNode.length;)
+			if (modified[i])
 			{
-				lines[++j] += numberOfNode;
-				lines[++j] += numberOfNode;
-				++j;
+				LeafNode.DataProvider dataProvider = newMerged.dataProviders[i];
+				nodesSize += dataProvider.getNodes().length;
+				verticesSize += dataProvider.getVertices().length;
+				linesSize += dataProvider.getLines().length;
+				polysSize += dataProvider.getPolys().length;
+				newNbrOfVertices += dataProvider.getNbrOfVertices();
+				newNbrOfLines += dataProvider.getNbrOfLines();
+				newNbrOfPolys += dataProvider.getNbrOfPolys();
 			}
-			offsetLine += linesNode.length;
+			else
+			{
+				nodesSize += oldMerged.nodes[i + 1] - oldMerged.nodes[i];
+				verticesSize += oldMerged.vertices[i + 1] - oldMerged.vertices[i];
+				linesSize += oldMerged.lines[i + 1] - oldMerged.lines[i];
+				polysSize += oldMerged.polys[i + 1] - oldMerged.polys[i];
+				newNbrOfVertices += offsetsVertices.get(i + 1) - offsetsVertices.get(i);
+				newNbrOfLines += offsetsLines.get(i + 1) - offsetsLines.get(i);
+				newNbrOfPolys += offsetsPolys.get(i + 1) - offsetsPolys.get(i);
+			}
+			if (!newMerged.hasNormals[i])
+				buildNormals = false;
+		}
+		newMerged.set(numberOfLeaves, null, nodesSize, verticesSize, linesSize, polysSize);
+		newOffsetsVertices.add(newNbrOfVertices);
+		newOffsetsLines.add(newNbrOfLines);
+		newOffsetsPolys.add(newNbrOfPolys);
 
-			int[] polysNode = dataProvider.getPolys();
-			System.arraycopy(polysNode, 0, polys, offsetPoly, polysNode.length);
+		// If there is no nodes then there is no normals
+		if (nodesSize == 0)
+			buildNormals = false;
+		NodeData oldData = oldMerged.data;
+		if (buildNormals && oldData.normals == null)
+			return false;
+
+		boolean sameSizes = buildNormals == (oldData.normals != null) &&
+			Arrays.equals(newMerged.nodes, oldMerged.nodes) &&
+			Arrays.equals(newMerged.vertices, oldMerged.vertices) &&
+			Arrays.equals(newMerged.lines, oldMerged.lines) &&
+			Arrays.equals(newMerged.polys, oldMerged.polys) &&
+			newOffsetsVertices.equals(offsetsVertices) &&
+			newOffsetsLines.equals(offsetsLines) &&
+			newOffsetsPolys.equals(offsetsPolys);
+
+		NodeData nodeData;
+		if (sameSizes)
+			nodeData = oldData;
+		else
+		{
+			float[] normals = null;
+			if (buildNormals)
+				normals = new float[nodesSize];
+			nodeData = new NodeData(new float[nodesSize], normals,
+				newNbrOfVertices, new int[verticesSize], newNbrOfLines, new int[linesSize],
+				newNbrOfPolys, new int[polysSize]);
+		}
 
-			// Make an offset
-			for (int j = offsetPoly; j < offsetPoly + polysNode.length;)
+		for (int i = 0; i < numberOfLeaves; ++i)
+		{
+			if (!newMerged.visible[i])
+				continue;
+			if (modified[i])
+				copyLeaf(newMerged.dataProviders[i], nodeData, newMerged, i);
+			else if (!sameSizes)
 			{
-				int size = polys[j++];
-				for (int c = 0; c < size; ++c)
-					polys[j++] += numberOfNode;
+				int oldOffsetNode = oldMerged.nodes[i];
+				int offsetNode = newMerged.nodes[i];
+				int length = oldMerged.nodes[i + 1] - oldOffsetNode;
+				System.arraycopy(oldData.nodes, oldOffsetNode, nodeData.nodes, offsetNode, length);
+				if (buildNormals)
+					System.arraycopy(oldData.normals, oldOffsetNode, nodeData.normals, offsetNode, length);
+				int shift = (offsetNode - oldOffsetNode) / 3;
+				copyCells(oldData.vertices, oldMerged.vertices[i], nodeData.vertices,
+					newMerged.vertices[i], oldMerged.vertices[i + 1] - oldMerged.vertices[i], shift);
+				copyCells(oldData.lines, oldMerged.lines[i], nodeData.lines,
+					newMerged.lines[i], oldMerged.lines[i + 1] - oldMerged.lines[i], shift);
+				copyCells(oldData.polys, oldMerged.polys[i], nodeData.polys,
+					newMerged.polys[i], oldMerged.polys[i + 1] - oldMerged.polys[i], shift);
 			}
-			offsetPoly += polysNode.length;
 		}
 
-		// Compute the id association array
+		offsetsVertices = newOffsetsVertices;
+		offsetsLines = newOffsetsLines;
+		offsetsPolys = newOffsetsPolys;
+		nbrOfVertices = newNbrOfVertices;
+		nbrOfLines = newNbrOfLines;
+		nbrOfPolys = newNbrOfPolys;
+		newMerged.data = nodeData;
+		if (sameSizes)
+			newMerged.ids = oldMerged.ids;
+		else
+			newMerged.ids = computeIds(numberOfLeaves);
+		merged = newMerged;
+		updateData();
+		return true;
+	}
+
+	/**
+	 * Copies data of a leaf into merged arrays.
+	 */
+	private static void copyLeaf(LeafNode.DataProvider dataProvider, NodeData nodeData, MergedLeaves offsets, int leafIndex)
+	{
+		int offsetNode = offsets.nodes[leafIndex];
+		final int numberOfNode = offsetNode / 3;
+		float[] nodesNode = dataProvider.getNodes();
+		System.arraycopy(nodesNode, 0, nodeData.nodes, offsetNode, nodesNode.length);
+		if (nodeData.normals != null)
+		{
+			float[] normalsNode = dataProvider.getNormals();
+			if (normalsNode == null)
+				Arrays.fill(nodeData.normals, offsetNode, offsetNode + nodesNode.length, 0.f);
+			else
+				System.arraycopy(normalsNode, 0, nodeData.normals, offsetNode, normalsNode.length);
+		}
+
+		int[] verticesNode = dataProvider.getVertices();
+		copyCells(verticesNode, 0, nodeData.vertices, offsets.vertices[leafIndex], verticesNode.length, numberOfNode);
+		int[] linesNode = dataProvider.getLines();
+		copyCells(linesNode, 0, nodeData.lines, offsets.lines[leafIndex], linesNode.length, numberOfNode);
+		int[] polysNode = dataProvider.getPolys();
+		copyCells(polysNode, 0, nodeData.polys, offsets.polys[leafIndex], polysNode.length, numberOfNode);
+	}
+
+	/**
+	 * Copies cells and makes an offset on node indices.
+	 */
+	private static void copyCells(int[] src, int srcPos, int[] dest, int destPos, int length, int offset)
+	{
+		System.arraycopy(src, srcPos, dest, destPos, length);
+		if (offset == 0)
+			return;
+		for (int j = destPos; j < destPos + length;)
+		{
+			int size = dest[j++];
+			for (int c = 0; c < size; ++c)
+				dest[j++] += offset;
+		}
+	}
+
+	/**
+	 * Computes the id association array, which gives the leaf index of
+	 * each cell.
+	 */
+	private int[] computeIds(int numberOfLeaves)
+	{
 		int[] ids = new int[nbrOfVertices + nbrOfLines + nbrOfPolys];
 		for (int leafIndex = 0; leafIndex < numberOfLeaves; ++leafIndex)
 		{
@@ -400,13 +664,18 @@ public class Node extends AbstractNode
 			end = nbrOfVertices + nbrOfLines + offsetsPolys.get(leafIndex + 1);
 			Arrays.fill(ids, begin, end, leafIndex);
 		}
+		return ids;
+	}
 
-		NodeData nodeData = new NodeData(nodes, normals, nbrOfVertices, vertices, nbrOfLines, lines, nbrOfPolys, polys);
-
-		createData(nodeData);
+	/**
+	 * Creates polydata from merged arrays and binds it to the mapper.
+	 */
+	private void updateData()
+	{
+		createData(merged.data);
 
 		vtkIntArray idsNative = new vtkIntArray();
-		idsNative.SetJavaArray(ids);
+		idsNative.SetJavaArray(merged.ids);
 		vtkCellData cellData = data.GetCellData();
 		cellData.SetScalars(idsNative);
 		cellData = null;
@@ -476,6 +745,7 @@ public class Node extends AbstractNode
 		offsetsVertices = null;
 		offsetsLines = null;
 		offsetsPolys = null;
+		merged = null;
 		table = null;
 		for(AbstractNode n : children)
 			n.deleteData();